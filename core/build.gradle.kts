@@ -0,0 +1,27 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Navigation core: plain Java with no Android dependencies, so the hot paths can be unit
+// tested and benchmarked on any JVM (./gradlew :core:test :core:jmh).
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Allocation rates alongside throughput; the per-sample paths are expected to stay at ~0 B/op
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    // Narrow a run with e.g. -PjmhInclude=Fusion
+    project.findProperty("jmhInclude")?.let { includes.add(it.toString()) }
+}
@@ -0,0 +1,115 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and reloading a 30 minute walk: the chunked delta/varint archive against a plain dump
+ * of (x, y) floats. The reload benchmarks cover what PathView needs on start: the archive maps
+ * the file and decodes the chunks in a 10 m viewport, the naive file has to be read whole.
+ * File sizes are printed once in setup. Scores are us per save / reload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArchiveBenchmark {
+
+    private static final int SECONDS = 30 * 60;
+    private static final float VIEW_HALF_SIZE = 5f;
+
+    private final TrajectoryStore store = new TrajectoryStore();
+    private float viewX, viewY;
+    private File archiveFile, naiveFile;
+
+    private final float[] xs = new float[TrajectoryStore.CHUNK_SIZE + 2], ys = new float[xs.length];
+    private float[] naiveXs, naiveYs;
+
+    @Setup
+    public void setUp() throws IOException {
+        // SLAM-like track: the generator's poses, 30 Hz walking
+        SyntheticStreams s = SyntheticStreams.generate(SECONDS, 1);
+        for (int i = 0; i < s.poseCount; i++) store.append(s.poseXY[i * 2], s.poseXY[i * 2 + 1]);
+        int mid = s.poseCount / 2;
+        viewX = s.poseXY[mid * 2];
+        viewY = s.poseXY[mid * 2 + 1];
+        naiveXs = new float[store.level(0).size() + 1];
+        naiveYs = new float[naiveXs.length];
+
+        archiveFile = File.createTempFile("bench", ".snmap");
+        naiveFile = File.createTempFile("bench", ".floats");
+        encodeArchive();
+        encodeNaiveFloats();
+    }
+
+    @TearDown
+    public void tearDown() {
+        archiveFile.delete();
+        naiveFile.delete();
+    }
+
+    @Benchmark
+    public long encodeArchive() throws IOException {
+        try (MapArchiveWriter writer = new MapArchiveWriter(archiveFile)) {
+            writer.writeTrack(0, store);
+            return writer.size();
+        }
+    }
+
+    @Benchmark
+    public long encodeNaiveFloats() throws IOException {
+        TrajectoryStore.Level level = store.level(0);
+        try (FileChannel channel = FileChannel.open(naiveFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(level.size() * 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 0; c < level.chunkCount(); c++) {
+                TrajectoryStore.Chunk chunk = level.chunk(c);
+                for (int i = 0; i < chunk.size; i++) out.putFloat(chunk.xs[i]).putFloat(chunk.ys[i]);
+            }
+            out.flip();
+            while (out.hasRemaining()) channel.write(out);
+            return channel.size();
+        }
+    }
+
+    @Benchmark
+    public int loadVisibleRegion() throws IOException {
+        MapArchiveReader reader = new MapArchiveReader(archiveFile);
+        int points = 0;
+        for (int c = 0; c < reader.chunkCount(); c++) {
+            if (!reader.intersects(c, viewX - VIEW_HALF_SIZE, viewY - VIEW_HALF_SIZE,
+                    viewX + VIEW_HALF_SIZE, viewY + VIEW_HALF_SIZE)) continue;
+            points += reader.readTrack(c, xs, ys);
+        }
+        return points;
+    }
+
+    @Benchmark
+    public int loadNaiveFloats() throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(naiveFile.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        int n = data.limit() / 8;
+        for (int i = 0; i < n; i++) {
+            naiveXs[i] = data.getFloat(i * 8);
+            naiveYs[i] = data.getFloat(i * 8 + 4);
+        }
+        return n;
+    }
+}
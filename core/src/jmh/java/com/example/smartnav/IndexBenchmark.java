@@ -0,0 +1,91 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries PathView makes against the track index, over three tracks of a two hour walk (SLAM,
+ * plus DR and fused as drifting copies): a tap (nearest within 32 px), a radius query and the
+ * range query for a zoomed-in viewport. nearestLinearScan is the same tap without the index.
+ * Scores are ns per query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IndexBenchmark {
+
+    private static final int SECONDS = 2 * 60 * 60;
+    private static final int QUERIES = 1024;
+    private static final float TAP_SLOP = 32 / 50f; // 32 px at the default 50 px/m
+    private static final int TRACK_DR = 0, TRACK_SLAM = 1, TRACK_FUSED = 2; // as in PathView
+
+    private final TrackIndex index = new TrackIndex();
+    private final float[] queryXs = new float[QUERIES], queryYs = new float[QUERIES];
+    private int nextQuery;
+    private int visited;
+    private final TrackIndex.Visitor counter = id -> visited++;
+
+    @Setup
+    public void setUp() {
+        SyntheticStreams s = SyntheticStreams.generate(SECONDS, 1);
+        for (int i = 0; i < s.poseCount; i++) {
+            float x = s.poseXY[i * 2], y = s.poseXY[i * 2 + 1];
+            float drift = i * 1e-5f;
+            index.add(TRACK_SLAM, x, y);
+            index.add(TRACK_DR, x + drift, y - drift);
+            index.add(TRACK_FUSED, x + drift * 0.1f, y);
+        }
+        // Queries near the walked area, like taps on the drawn path
+        Random random = new Random(5);
+        for (int q = 0; q < QUERIES; q++) {
+            int pose = random.nextInt(s.poseCount);
+            queryXs[q] = s.poseXY[pose * 2] + (random.nextFloat() - 0.5f);
+            queryYs[q] = s.poseXY[pose * 2 + 1] + (random.nextFloat() - 0.5f);
+        }
+    }
+
+    @Benchmark
+    public int nearest() {
+        int q = nextQuery++ & (QUERIES - 1);
+        return index.nearest(queryXs[q], queryYs[q], TAP_SLOP, ~0);
+    }
+
+    @Benchmark
+    public int nearestLinearScan() {
+        int q = nextQuery++ & (QUERIES - 1);
+        float x = queryXs[q], y = queryYs[q];
+        int best = -1;
+        float bestSq = TAP_SLOP * TAP_SLOP;
+        for (int id = 0, n = index.size(); id < n; id++) {
+            float dx = index.x(id) - x, dy = index.y(id) - y;
+            float dSq = dx * dx + dy * dy;
+            if (dSq < bestSq) {
+                bestSq = dSq;
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public int radius2m() {
+        int q = nextQuery++ & (QUERIES - 1);
+        return index.radius(queryXs[q], queryYs[q], 2f, ~0, counter);
+    }
+
+    /** A phone screen at the default zoom: about 22 x 48 m. */
+    @Benchmark
+    public int viewportRange() {
+        int q = nextQuery++ & (QUERIES - 1);
+        float x = queryXs[q], y = queryYs[q];
+        return index.range(x - 11, y - 24, x + 11, y + 24, 1 << TRACK_SLAM, counter);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trajectory storage and map accumulation along a generated walk. Scores are ns per appended
+ * point / per merged cloud point (voxels, occupancy grid).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapBenchmark {
+
+    private static final int SECONDS = 60;
+    private static final int SAMPLES = SECONDS * 200;
+    private static final int CLOUD_FRAMES = 64;
+    private static final int CLOUD_POINTS = 3000; // a busy ARCore frame
+
+    private final float[] xs = new float[SAMPLES], ys = new float[SAMPLES];
+    private final TrajectoryStore store = new TrajectoryStore();
+
+    private final FloatBuffer[] clouds = new FloatBuffer[CLOUD_FRAMES];
+    private final float[] cloudCameraX = new float[CLOUD_FRAMES], cloudCameraZ = new float[CLOUD_FRAMES];
+    private final VoxelMap voxelMap = new VoxelMap(0.05f, 200_000);
+    // Every point used, so the score is the full per-point cost including the free-space ray
+    private final OccupancyGrid occupancy = new OccupancyGrid(0.1f, -1.2f, 0.5f, 0f, 8f, CLOUD_POINTS);
+    private int nextCloud;
+
+    @Setup
+    public void setUp() {
+        // Positions as the sensor thread would produce them
+        SyntheticStreams s = SyntheticStreams.generate(SECONDS, 1);
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        for (int i = 0; i < SAMPLES; i++) {
+            dr.onRotationVector(s.rotations[i * 4], s.rotations[i * 4 + 1], s.rotations[i * 4 + 2], s.rotations[i * 4 + 3]);
+            dr.onLinearAcceleration(s.imuTimestamps[i], s.accels[i * 3], s.accels[i * 3 + 1], s.accels[i * 3 + 2]);
+            xs[i] = dr.getX();
+            ys[i] = dr.getY();
+        }
+
+        // Feature points scattered within a few metres of the camera at evenly spaced poses
+        Random random = new Random(7);
+        for (int f = 0; f < CLOUD_FRAMES; f++) {
+            int pose = f * (s.poseCount - 1) / (CLOUD_FRAMES - 1);
+            float cx = s.poseXY[pose * 2], cz = -s.poseXY[pose * 2 + 1];
+            cloudCameraX[f] = cx;
+            cloudCameraZ[f] = cz;
+            FloatBuffer cloud = ByteBuffer.allocateDirect(CLOUD_POINTS * 16).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            for (int i = 0; i < CLOUD_POINTS; i++) {
+                cloud.put(cx + (random.nextFloat() - 0.5f) * 6)
+                        .put((random.nextFloat() - 0.3f) * 2.5f)
+                        .put(cz + (random.nextFloat() - 0.5f) * 6)
+                        .put(random.nextFloat());
+            }
+            cloud.flip();
+            clouds[f] = cloud;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long trajectoryAppend() {
+        TrajectoryStore store = this.store;
+        store.clear();
+        for (int i = 0; i < SAMPLES; i++) store.append(xs[i], ys[i]);
+        return store.level(0).size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLOUD_POINTS)
+    public int voxelInsertFrame() {
+        FloatBuffer cloud = clouds[nextCloud];
+        nextCloud = (nextCloud + 1) % CLOUD_FRAMES;
+        voxelMap.insertFrame(cloud);
+        return voxelMap.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLOUD_POINTS)
+    public int occupancyIntegrateFrame() {
+        int f = nextCloud;
+        nextCloud = (nextCloud + 1) % CLOUD_FRAMES;
+        return occupancy.integrateCloud(clouds[f], cloudCameraX[f], 0.5f, cloudCameraZ[f], 0, 0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packed trajectory history on an hour of DR at 200 Hz (jittered timestamps): appending,
+ * sequential decode (what rendering or an analysis pass does), random access by index and
+ * lookup by timestamp. Append and decode are ns per sample, the others ns per query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PackedTrajectoryBenchmark {
+
+    private static final int SECONDS = 60 * 60;
+    private static final int SAMPLES = SECONDS * 200;
+    private static final int QUERIES = 1024;
+
+    private final long[] ts = new long[SAMPLES];
+    private final float[] xs = new float[SAMPLES], ys = new float[SAMPLES];
+    private final PackedTrajectory full = new PackedTrajectory();
+    private final PackedTrajectory scratch = new PackedTrajectory();
+    private final PackedTrajectory.Reader reader = full.newReader();
+    private final long[] queryIndices = new long[QUERIES], queryTimes = new long[QUERIES];
+    private int nextQuery;
+    private float sum;
+    private final TrajectoryBuffer.Consumer summer = (t, x, y) -> sum += x;
+
+    @Setup
+    public void setUp() {
+        SyntheticStreams s = SyntheticStreams.generate(SECONDS, 1);
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        Random jitter = new Random(2);
+        for (int i = 0; i < SAMPLES; i++) {
+            dr.onRotationVector(s.rotations[i * 4], s.rotations[i * 4 + 1], s.rotations[i * 4 + 2], s.rotations[i * 4 + 3]);
+            dr.onLinearAcceleration(s.imuTimestamps[i], s.accels[i * 3], s.accels[i * 3 + 1], s.accels[i * 3 + 2]);
+            ts[i] = s.imuTimestamps[i] + (long) (jitter.nextGaussian() * 20_000);
+            xs[i] = dr.getX();
+            ys[i] = dr.getY();
+            full.append(ts[i], xs[i], ys[i]);
+        }
+        Random random = new Random(3);
+        for (int q = 0; q < QUERIES; q++) {
+            queryIndices[q] = random.nextInt(SAMPLES);
+            queryTimes[q] = ts[random.nextInt(SAMPLES)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long append() {
+        scratch.clear();
+        for (int i = 0; i < SAMPLES; i++) scratch.append(ts[i], xs[i], ys[i]);
+        return scratch.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float sequentialDecode() {
+        sum = 0;
+        full.forEach(0, SAMPLES, reader, summer);
+        return sum;
+    }
+
+    @Benchmark
+    public float randomGet() {
+        full.get(queryIndices[nextQuery++ & (QUERIES - 1)], reader);
+        return reader.x();
+    }
+
+    @Benchmark
+    public long indexAtTime() {
+        return full.indexAt(queryTimes[nextQuery++ & (QUERIES - 1)], reader);
+    }
+}
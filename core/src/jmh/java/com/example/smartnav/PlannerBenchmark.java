@@ -0,0 +1,109 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route planning on a synthetic floor plan: a grid of square rooms (walls one cell thick, a
+ * doorway in each wall) filling the planning window, start and goal in opposite corners.
+ * fullSearch is what every replan would cost without the incremental search; the replan
+ * benchmarks are a one cell step of the start and a doorway on the route closing / reopening.
+ * Scores are us per plan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlannerBenchmark {
+
+    private static final float CELL = 0.1f;
+    private static final int DOOR = 8; // cells
+
+    /** Window side in cells: 25.6 m and 51.2 m floors. */
+    @Param({"256", "512"})
+    public int size;
+
+    /** Room side in cells. */
+    @Param({"40"})
+    public int room;
+
+    private boolean[] blocked;
+    private PathPlanner planner;
+    private float startX, startY, goalX, goalY;
+    private float[] route;
+    private int stepToggle;
+    private int doorX, doorY;
+    private boolean doorClosed;
+
+    @Setup
+    public void setUp() {
+        blocked = new boolean[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean wallX = x % room == 0, wallY = y % room == 0;
+                // Doorways in the middle of each wall segment
+                boolean doorInX = wallX && Math.abs(y % room - room / 2) < DOOR / 2;
+                boolean doorInY = wallY && Math.abs(x % room - room / 2) < DOOR / 2;
+                boolean edge = x == 0 || y == 0 || x == size - 1 || y == size - 1;
+                blocked[y * size + x] = edge || ((wallX || wallY) && !doorInX && !doorInY);
+            }
+        }
+        PathPlanner.CostMap map = (x, y) -> x < 0 || y < 0 || x >= size || y >= size || blocked[y * size + x];
+        startX = (room / 2 + 0.5f) * CELL;
+        startY = startX;
+        goalX = (size - room / 2 - 0.5f) * CELL;
+        goalY = goalX;
+        planner = new PathPlanner(CELL, size + 8, map);
+        fullSearch();
+
+        route = new float[size * size];
+        int n = planner.extractPath(route);
+
+        // The first doorway the route passes through
+        for (int i = 1; i < n; i++) {
+            int x = (int) (route[i * 2] / CELL), y = (int) (route[i * 2 + 1] / CELL);
+            if (x % room == 0 || y % room == 0) {
+                doorX = x;
+                doorY = y;
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public float fullSearch() {
+        planner.setGoal(goalX, goalY, startX, startY);
+        planner.plan(Integer.MAX_VALUE);
+        return planner.pathCost();
+    }
+
+    @Benchmark
+    public float replanAfterStep() {
+        stepToggle ^= 1;
+        planner.setStart(route[2 + stepToggle * 2], route[3 + stepToggle * 2]);
+        planner.plan(Integer.MAX_VALUE);
+        return planner.pathCost();
+    }
+
+    @Benchmark
+    public float replanAfterDoorChange() {
+        doorClosed = !doorClosed;
+        // Close (or reopen) the whole doorway, along whichever wall it is in
+        boolean vertical = doorX % room == 0;
+        int from = (vertical ? doorY : doorX) / room * room + room / 2 - DOOR / 2;
+        for (int d = 0; d < DOOR; d++) {
+            int x = vertical ? doorX : from + d, y = vertical ? from + d : doorY;
+            blocked[y * size + x] = doorClosed;
+            planner.cellChanged(x, y);
+        }
+        planner.plan(Integer.MAX_VALUE);
+        return planner.pathCost();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.smartnav;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-IMU-sample cost of the sensor-thread hot path: dead reckoning alone, DR + fusion, the
+ * full path including the ring buffer hand-off to the UI, and the batched (FIFO burst) path.
+ * stepDeadReckoning is the step-detection engine on the same walk sampled at 50 Hz instead of
+ * 200 Hz, so per second of walking it costs a quarter of its per-sample score.
+ * Scores are ns per sample; with {@code -prof gc} all of them should report ~0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SensorPipelineBenchmark {
+
+    private static final int SECONDS = 60;
+    private static final int SAMPLES = SECONDS * 200;
+    private static final int STEP_SAMPLES = SECONDS * 50;
+
+    private SyntheticStreams streams, stepStreams;
+    private final DeadReckoningEngine dr = new DeadReckoningEngine();
+    private final StepDeadReckoningEngine stepDr = new StepDeadReckoningEngine();
+    private final FusionEngine fusion = new FusionEngine();
+    private final TrajectoryBuffer ring = new TrajectoryBuffer(4096);
+    private final BatchedImuProcessor batch = new BatchedImuProcessor(512, 2_000_000_000L, dr::onWorldAcceleration);
+
+    @Setup
+    public void setUp() {
+        streams = SyntheticStreams.generate(SECONDS, 1);
+        if (streams.imuCount != SAMPLES) throw new IllegalStateException("imu samples " + streams.imuCount);
+        stepStreams = SyntheticStreams.generate(SECONDS, 1, 50);
+        if (stepStreams.imuCount != STEP_SAMPLES) throw new IllegalStateException("imu samples " + stepStreams.imuCount);
+        stepDr.setForwardAxis(1, 0, 0); // the generator points device +X along the walk
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float deadReckoning() {
+        SyntheticStreams s = streams;
+        float[] q = s.rotations, a = s.accels;
+        dr.reset();
+        for (int i = 0; i < SAMPLES; i++) {
+            dr.onRotationVector(q[i * 4], q[i * 4 + 1], q[i * 4 + 2], q[i * 4 + 3]);
+            dr.onLinearAcceleration(s.imuTimestamps[i], a[i * 3], a[i * 3 + 1], a[i * 3 + 2]);
+        }
+        return dr.getX() + dr.getY();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEP_SAMPLES)
+    public float stepDeadReckoning() {
+        SyntheticStreams s = stepStreams;
+        float[] q = s.rotations, a = s.accels;
+        stepDr.reset();
+        for (int i = 0; i < STEP_SAMPLES; i++) {
+            stepDr.onRotationVector(q[i * 4], q[i * 4 + 1], q[i * 4 + 2], q[i * 4 + 3]);
+            stepDr.onLinearAcceleration(s.imuTimestamps[i], a[i * 3], a[i * 3 + 1], a[i * 3 + 2]);
+        }
+        return stepDr.getX() + stepDr.getY();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float deadReckoningAndFusion() {
+        SyntheticStreams s = streams;
+        float[] q = s.rotations, a = s.accels;
+        dr.reset();
+        fusion.reset();
+        int pose = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long t = s.imuTimestamps[i];
+            dr.onRotationVector(q[i * 4], q[i * 4 + 1], q[i * 4 + 2], q[i * 4 + 3]);
+            if (dr.onLinearAcceleration(t, a[i * 3], a[i * 3 + 1], a[i * 3 + 2])) {
+                fusion.predict(t, dr.getWorldAccelX(), dr.getWorldAccelY());
+            }
+            if (pose < s.poseCount && s.poseAfterImu[pose] == i + 1) {
+                fusion.correct(s.poseTimestamps[pose], s.poseXY[pose * 2], s.poseXY[pose * 2 + 1]);
+                pose++;
+            }
+        }
+        return fusion.getX() + fusion.getY();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long deadReckoningToRing() {
+        SyntheticStreams s = streams;
+        float[] q = s.rotations, a = s.accels;
+        dr.reset();
+        for (int i = 0; i < SAMPLES; i++) {
+            long t = s.imuTimestamps[i];
+            dr.onRotationVector(q[i * 4], q[i * 4 + 1], q[i * 4 + 2], q[i * 4 + 3]);
+            if (dr.onLinearAcceleration(t, a[i * 3], a[i * 3 + 1], a[i * 3 + 2])) {
+                ring.add(t, dr.getX(), dr.getY());
+            }
+        }
+        return ring.getWriteSeq();
+    }
+
+    /** Same stream delivered as 1 s FIFO bursts (all accel, then all rotation) and processed per burst. */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float batchedDeadReckoning() {
+        SyntheticStreams s = streams;
+        float[] q = s.rotations, a = s.accels;
+        dr.reset();
+        batch.clear();
+        int burst = 200;
+        for (int start = 0; start < SAMPLES; start += burst) {
+            int end = Math.min(SAMPLES, start + burst);
+            for (int i = start; i < end; i++) {
+                batch.addAccel(s.imuTimestamps[i], a[i * 3], a[i * 3 + 1], a[i * 3 + 2]);
+            }
+            for (int i = start; i < end; i++) {
+                batch.addRotation(s.imuTimestamps[i], q[i * 4], q[i * 4 + 1], q[i * 4 + 2], q[i * 4 + 3]);
+            }
+            batch.process(s.imuTimestamps[end - 1]);
+        }
+        return dr.getX() + dr.getY();
+    }
+}
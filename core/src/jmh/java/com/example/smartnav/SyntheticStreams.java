@@ -0,0 +1,76 @@
+package com.example.smartnav;
+
+/**
+ * A generated session flattened into primitive arrays, so benchmarks measure the code under
+ * test rather than the generator or listener dispatch.
+ */
+final class SyntheticStreams implements SessionReplayer.Listener {
+
+    final int imuCapacity;
+    int imuCount;
+    final long[] imuTimestamps;
+    final float[] rotations;   // x, y, z, w per IMU sample
+    final float[] accels;      // ax, ay, az per IMU sample
+
+    int poseCount;
+    final long[] poseTimestamps;
+    final float[] poseXY;      // plot frame x, y
+    final int[] poseAfterImu;  // number of IMU samples emitted before the pose
+
+    private SyntheticStreams(SyntheticTrajectoryGenerator.Config config) {
+        imuCapacity = (int) (config.durationSeconds * config.imuRateHz);
+        imuTimestamps = new long[imuCapacity];
+        rotations = new float[imuCapacity * 4];
+        accels = new float[imuCapacity * 3];
+        int poses = (int) (config.durationSeconds * config.frameRateHz) + 2;
+        poseTimestamps = new long[poses];
+        poseXY = new float[poses * 2];
+        poseAfterImu = new int[poses];
+    }
+
+    static SyntheticStreams generate(double seconds, long seed) {
+        return generate(seconds, seed, new SyntheticTrajectoryGenerator.Config().imuRateHz);
+    }
+
+    static SyntheticStreams generate(double seconds, long seed, int imuRateHz) {
+        SyntheticTrajectoryGenerator.Config config = new SyntheticTrajectoryGenerator.Config();
+        config.durationSeconds = seconds;
+        config.seed = seed;
+        config.imuRateHz = imuRateHz;
+        SyntheticStreams streams = new SyntheticStreams(config);
+        new SyntheticTrajectoryGenerator(config).generate(streams);
+        return streams;
+    }
+
+    @Override
+    public void onRotation(long t, float x, float y, float z, float w) {
+        int i = imuCount * 4;
+        rotations[i] = x;
+        rotations[i + 1] = y;
+        rotations[i + 2] = z;
+        rotations[i + 3] = w;
+    }
+
+    @Override
+    public void onAccel(long t, float ax, float ay, float az) {
+        int i = imuCount;
+        imuTimestamps[i] = t;
+        accels[i * 3] = ax;
+        accels[i * 3 + 1] = ay;
+        accels[i * 3 + 2] = az;
+        imuCount++;
+    }
+
+    @Override
+    public void onTrackingState(long t, int state) {
+    }
+
+    @Override
+    public void onPose(long t, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+        int i = poseCount++;
+        poseTimestamps[i] = t;
+        poseXY[i * 2] = tx;
+        poseXY[i * 2 + 1] = -tz;
+        poseAfterImu[i] = imuCount;
+    }
+}
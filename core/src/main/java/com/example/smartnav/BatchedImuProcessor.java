@@ -0,0 +1,157 @@
+package com.example.smartnav;
+
+/**
+ * Stages rotation-vector and linear-acceleration samples delivered in hardware-FIFO bursts and
+ * turns each burst into world-frame accelerations in one pass.
+ *
+ * The two sensors have separate FIFOs, so a burst does not arrive in timestamp order: all
+ * rotation samples of a batch may come before or after the acceleration samples they
+ * interleave with. Every acceleration sample is rotated by the newest rotation whose timestamp
+ * is not later than its own, which is what the per-event path would have used had events
+ * arrived in order. Acceleration samples newer than the newest staged rotation are held back
+ * until the rotation stream catches up (or for at most {@code maxHoldNs}, in case the rotation
+ * sensor stalls).
+ *
+ * Staging and output are structure-of-arrays rings, preallocated; single-threaded (sensor thread).
+ */
+public class BatchedImuProcessor {
+
+    public interface Sink {
+        void onWorldAcceleration(long timestampNs, float east, float north, float up);
+    }
+
+    private final int mask;
+    private final long maxHoldNs;
+    private final Sink sink;
+
+    // Staged samples (rings, oldest at head)
+    private final long[] rotT;
+    private final float[] rotX, rotY, rotZ, rotW;
+    private int rotHead, rotCount;
+    private final long[] accT;
+    private final float[] accX, accY, accZ;
+    private int accHead, accCount;
+    private long newestRotation = Long.MIN_VALUE;
+
+    // Output of the rotate pass, handed to the sink in order
+    private final long[] outT;
+    private final float[] outE, outN, outU;
+
+    private final float[] matrix = new float[9];
+    private boolean hasRotation = false;
+
+    private long passes, samplesOut, overflows;
+
+    /**
+     * @param capacity  staged samples per sensor (rounded up to a power of two); should hold at
+     *                  least one FIFO burst, larger bursts are processed early
+     * @param maxHoldNs how long an acceleration sample may wait for a matching rotation
+     */
+    public BatchedImuProcessor(int capacity, long maxHoldNs, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.maxHoldNs = maxHoldNs;
+        this.sink = sink;
+        rotT = new long[size];
+        rotX = new float[size];
+        rotY = new float[size];
+        rotZ = new float[size];
+        rotW = new float[size];
+        accT = new long[size];
+        accX = new float[size];
+        accY = new float[size];
+        accZ = new float[size];
+        outT = new long[size];
+        outE = new float[size];
+        outN = new float[size];
+        outU = new float[size];
+    }
+
+    public void addRotation(long timestampNs, float x, float y, float z, float w) {
+        if (rotCount > mask) {
+            // No acceleration is consuming rotations: the oldest one can only matter as "current"
+            applyRotation(rotHead);
+            rotHead = (rotHead + 1) & mask;
+            rotCount--;
+        }
+        int i = (rotHead + rotCount) & mask;
+        rotT[i] = timestampNs;
+        rotX[i] = x;
+        rotY[i] = y;
+        rotZ[i] = z;
+        rotW[i] = w;
+        rotCount++;
+        if (timestampNs > newestRotation) newestRotation = timestampNs;
+    }
+
+    public void addAccel(long timestampNs, float ax, float ay, float az) {
+        if (accCount > mask) {
+            overflows++;
+            process(Long.MAX_VALUE);
+        }
+        int i = (accHead + accCount) & mask;
+        accT[i] = timestampNs;
+        accX[i] = ax;
+        accY[i] = ay;
+        accZ[i] = az;
+        accCount++;
+    }
+
+    /**
+     * Rotates every staged acceleration sample that is safe to process at {@code nowNs} (same
+     * timebase as the sample timestamps; {@link Long#MAX_VALUE} flushes everything) and hands
+     * the results to the sink in timestamp order.
+     *
+     * @return number of samples handed to the sink
+     */
+    public int process(long nowNs) {
+        long watermark = Math.max(newestRotation, nowNs - maxHoldNs);
+
+        // Pass 1: merge with the rotation stream and rotate into the output arrays
+        int n = 0;
+        float[] m = matrix;
+        while (accCount > 0) {
+            int a = accHead;
+            long t = accT[a];
+            if (t > watermark) break;
+            while (rotCount > 0 && rotT[rotHead] <= t) {
+                applyRotation(rotHead);
+                rotHead = (rotHead + 1) & mask;
+                rotCount--;
+            }
+            if (hasRotation) {
+                float ax = accX[a], ay = accY[a], az = accZ[a];
+                outT[n] = t;
+                outE[n] = m[0] * ax + m[1] * ay + m[2] * az;
+                outN[n] = m[3] * ax + m[4] * ay + m[5] * az;
+                outU[n] = m[6] * ax + m[7] * ay + m[8] * az;
+                n++;
+            }
+            accHead = (accHead + 1) & mask;
+            accCount--;
+        }
+
+        // Pass 2: integrate downstream
+        for (int i = 0; i < n; i++) sink.onWorldAcceleration(outT[i], outE[i], outN[i], outU[i]);
+        passes++;
+        samplesOut += n;
+        return n;
+    }
+
+    /** Drops staged samples (the current orientation is kept). */
+    public void clear() {
+        rotHead = rotCount = 0;
+        accHead = accCount = 0;
+    }
+
+    private void applyRotation(int i) {
+        DeadReckoningEngine.rotationMatrix(rotX[i], rotY[i], rotZ[i], rotW[i], matrix, 0);
+        hasRotation = true;
+    }
+
+    public int pendingAccel() { return accCount; }
+    public int pendingRotation() { return rotCount; }
+    public long passes() { return passes; }
+    public long samplesOut() { return samplesOut; }
+    public long overflows() { return overflows; }
+}
@@ -0,0 +1,68 @@
+package com.example.smartnav;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Picks the points of an ARCore point cloud worth streaming: those whose id was not in the
+ * previous cloud (ARCore keeps ids stable while a feature stays tracked), above a confidence
+ * floor, evenly decimated down to a per-frame budget. One instance per stream, GL thread only.
+ */
+public class CloudDelta {
+
+    private int[] previous = new int[0];
+    private int previousCount = 0;
+    private int[] current = new int[0];
+
+    /**
+     * @param ids        point ids, one per point (position to limit)
+     * @param points     x, y, z, confidence per point (position to limit)
+     * @param outIndices receives the indices of the chosen points
+     * @return how many indices were written, at most {@code maxPoints} and {@code outIndices.length}
+     */
+    public int select(IntBuffer ids, FloatBuffer points, float minConfidence, int maxPoints, int[] outIndices) {
+        int count = Math.min(ids.remaining(), points.remaining() / 4);
+        int idBase = ids.position(), pointBase = points.position();
+        maxPoints = Math.min(maxPoints, outIndices.length);
+
+        // First pass: count the new points, so the stride spreads the budget over the whole cloud
+        int fresh = 0;
+        for (int i = 0; i < count; i++) {
+            if (isFresh(ids.get(idBase + i), points.get(pointBase + i * 4 + 3), minConfidence)) fresh++;
+        }
+        int selected = 0;
+        if (fresh > 0 && maxPoints > 0) {
+            float stride = Math.max(1f, fresh / (float) maxPoints);
+            float next = 0;
+            int seen = 0;
+            for (int i = 0; i < count && selected < maxPoints; i++) {
+                if (!isFresh(ids.get(idBase + i), points.get(pointBase + i * 4 + 3), minConfidence)) continue;
+                if (seen++ >= next) {
+                    outIndices[selected++] = i;
+                    next += stride;
+                }
+            }
+        }
+
+        // This cloud becomes the reference for the next one, dropped points included: a point
+        // skipped by decimation is not re-sent every frame either
+        if (current.length < count) current = new int[Math.max(count, current.length * 2)];
+        for (int i = 0; i < count; i++) current[i] = ids.get(idBase + i);
+        Arrays.sort(current, 0, count);
+        int[] swap = previous;
+        previous = current;
+        previousCount = count;
+        current = swap;
+        return selected;
+    }
+
+    /** Forget the previous cloud: the next one is sent in full (e.g. for a new client). */
+    public void reset() {
+        previousCount = 0;
+    }
+
+    private boolean isFresh(int id, float confidence, float minConfidence) {
+        return confidence >= minConfidence && Arrays.binarySearch(previous, 0, previousCount, id) < 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.smartnav;
+
+/**
+ * A dead-reckoning engine as the sensor thread drives it, so the acceleration integrator
+ * ({@link DeadReckoningEngine}) and the step detector ({@link StepDeadReckoningEngine}) can be
+ * swapped at runtime. Positions are in the world frame (x = East, y = North).
+ */
+public interface DeadReckoner {
+
+    /** Updates the orientation from a unit quaternion (TYPE_ROTATION_VECTOR values[0..3]). */
+    void onRotationVector(float x, float y, float z, float w);
+
+    /** One TYPE_LINEAR_ACCELERATION sample in device coordinates. @return true if the position moved */
+    boolean onLinearAcceleration(long timestampNs, float ax, float ay, float az);
+
+    /** One linear acceleration sample already rotated to East, North, Up. @return true if the position moved */
+    boolean onWorldAcceleration(long timestampNs, float east, float north, float up);
+
+    /** Continues from the given position, e.g. the one the previous engine reached. */
+    void setPosition(float x, float y);
+
+    void reset();
+
+    float getX();
+    float getY();
+    float getWorldAccelX();
+    float getWorldAccelY();
+}
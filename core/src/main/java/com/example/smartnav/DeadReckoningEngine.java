@@ -0,0 +1,151 @@
+package com.example.smartnav;
+
+/**
+ * Naive dead reckoning (double integration of linear acceleration) with all state preallocated.
+ *
+ * Plain Java on purpose: no Android types, so it can be fed from SensorEvents on the device or
+ * from synthetic / recorded streams in JVM unit tests. Nothing in the per-sample path allocates.
+ */
+public class DeadReckoningEngine implements DeadReckoner {
+
+    private static final float NANO_TO_SEC = 1.0f / 1_000_000_000.0f;
+
+    // Row-major 3x3 device -> world rotation (same layout as SensorManager.getRotationMatrixFromVector)
+    private final float[] rotation = new float[9];
+    private boolean hasRotation = false;
+
+    // World-frame state (x = East, y = North, z = Up)
+    private float posX, posY, posZ;
+    private float velX, velY, velZ;
+    private float worldAccelX, worldAccelY, worldAccelZ;
+
+    private long lastTimestamp = 0;
+    private long sampleCount = 0;
+
+    /**
+     * Updates the orientation from a TYPE_ROTATION_VECTOR sample whose scalar part is missing
+     * (values.length == 3 on some devices). The scalar part is reconstructed from the unit norm.
+     */
+    public void onRotationVector(float x, float y, float z) {
+        onRotationVector(x, y, z, scalarPart(x, y, z));
+    }
+
+    /** Scalar part of a unit quaternion given its vector part, as SensorManager reconstructs it. */
+    public static float scalarPart(float x, float y, float z) {
+        float w = 1 - x * x - y * y - z * z;
+        return w > 0 ? (float) Math.sqrt(w) : 0;
+    }
+
+    @Override
+    public void onRotationVector(float x, float y, float z, float w) {
+        rotationMatrix(x, y, z, w, rotation, 0);
+        hasRotation = true;
+    }
+
+    /** Writes the row-major 3x3 rotation of a unit quaternion into {@code out[offset..offset+8]}. */
+    public static void rotationMatrix(float x, float y, float z, float w, float[] out, int offset) {
+        float sqX = 2 * x * x;
+        float sqY = 2 * y * y;
+        float sqZ = 2 * z * z;
+        float xy = 2 * x * y;
+        float zw = 2 * z * w;
+        float xz = 2 * x * z;
+        float yw = 2 * y * w;
+        float yz = 2 * y * z;
+        float xw = 2 * x * w;
+
+        out[offset] = 1 - sqY - sqZ;
+        out[offset + 1] = xy - zw;
+        out[offset + 2] = xz + yw;
+        out[offset + 3] = xy + zw;
+        out[offset + 4] = 1 - sqX - sqZ;
+        out[offset + 5] = yz - xw;
+        out[offset + 6] = xz - yw;
+        out[offset + 7] = yz + xw;
+        out[offset + 8] = 1 - sqX - sqY;
+    }
+
+    /**
+     * Integrates one TYPE_LINEAR_ACCELERATION sample given in device coordinates.
+     *
+     * @return true if the position was advanced (i.e. there was a previous sample and an orientation)
+     */
+    @Override
+    public boolean onLinearAcceleration(long timestampNs, float ax, float ay, float az) {
+        long last = lastTimestamp;
+        lastTimestamp = timestampNs;
+        if (last == 0 || !hasRotation) return false;
+
+        float dt = (timestampNs - last) * NANO_TO_SEC;
+        if (dt <= 0) return false;
+
+        // world = R * device
+        float[] r = rotation;
+        worldAccelX = r[0] * ax + r[1] * ay + r[2] * az;
+        worldAccelY = r[3] * ax + r[4] * ay + r[5] * az;
+        worldAccelZ = r[6] * ax + r[7] * ay + r[8] * az;
+        integrate(dt);
+        return true;
+    }
+
+    /**
+     * Integrates one sample that is already in world coordinates (East, North, Up), e.g. rotated
+     * by {@link BatchedImuProcessor}. The engine's own orientation is not used.
+     *
+     * @return true if the position was advanced (i.e. there was a previous sample)
+     */
+    @Override
+    public boolean onWorldAcceleration(long timestampNs, float east, float north, float up) {
+        long last = lastTimestamp;
+        lastTimestamp = timestampNs;
+        if (last == 0) return false;
+
+        float dt = (timestampNs - last) * NANO_TO_SEC;
+        if (dt <= 0) return false;
+
+        worldAccelX = east;
+        worldAccelY = north;
+        worldAccelZ = up;
+        integrate(dt);
+        return true;
+    }
+
+    private void integrate(float dt) {
+        velX += worldAccelX * dt;
+        velY += worldAccelY * dt;
+        velZ += worldAccelZ * dt;
+        posX += velX * dt;
+        posY += velY * dt;
+        posZ += velZ * dt;
+        sampleCount++;
+    }
+
+    /** Moves to the given position at rest; the height is kept. */
+    @Override
+    public void setPosition(float x, float y) {
+        posX = x;
+        posY = y;
+        velX = velY = velZ = 0;
+    }
+
+    @Override
+    public void reset() {
+        posX = posY = posZ = 0;
+        velX = velY = velZ = 0;
+        worldAccelX = worldAccelY = worldAccelZ = 0;
+        lastTimestamp = 0;
+        sampleCount = 0;
+        // Orientation is kept: it is absolute and still valid after a reset
+    }
+
+    @Override public float getX() { return posX; }
+    @Override public float getY() { return posY; }
+    public float getZ() { return posZ; }
+    public float getVelocityX() { return velX; }
+    public float getVelocityY() { return velY; }
+    @Override public float getWorldAccelX() { return worldAccelX; }
+    @Override public float getWorldAccelY() { return worldAccelY; }
+    public long getLastTimestamp() { return lastTimestamp; }
+    public long getSampleCount() { return sampleCount; }
+    public boolean hasRotation() { return hasRotation; }
+}
@@ -0,0 +1,149 @@
+package com.example.smartnav;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Scores a position estimator against the SLAM poses of a recorded (or generated) session.
+ *
+ * Sensor records drive a {@link Track}; every SLAM pose taken while tracking is converted to
+ * the same plot frame MainActivity uses (x = tx, y = -tz, relative to the first pose), paired
+ * with the track position interpolated at the pose timestamp, and fed to {@link DriftMetrics}.
+ * This is the offline twin of the live DR/SLAM comparison, so integration variants can be
+ * compared on the same data.
+ */
+public class DriftEvaluator implements SessionReplayer.Listener {
+
+    /** ARCore's TrackingState.TRACKING ordinal, as recorded by SessionRecorder.Lane#recordTrackingState. */
+    public static final int TRACKING = 0;
+
+    /** A position estimator driven by the sensor stream. */
+    public interface Track {
+        void onRotation(long timestampNs, float x, float y, float z, float w);
+
+        /** @return true if the position was updated */
+        boolean onAccel(long timestampNs, float ax, float ay, float az);
+
+        /** SLAM fix in the plot frame; estimators that do not fuse SLAM ignore it. */
+        default void onSlamFix(long timestampNs, float x, float y) {
+        }
+
+        float x();
+        float y();
+    }
+
+    /** Plain dead reckoning, as drawn by the blue line. */
+    public static Track deadReckoning() {
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        return new Track() {
+            @Override public void onRotation(long t, float x, float y, float z, float w) { dr.onRotationVector(x, y, z, w); }
+            @Override public boolean onAccel(long t, float ax, float ay, float az) { return dr.onLinearAcceleration(t, ax, ay, az); }
+            @Override public float x() { return dr.getX(); }
+            @Override public float y() { return dr.getY(); }
+        };
+    }
+
+    /**
+     * Step-detection dead reckoning, the low-rate alternative to the blue line. Every sample
+     * counts as an update so poses pair up between steps too.
+     */
+    public static Track stepDeadReckoning(StepDeadReckoningEngine engine) {
+        return new Track() {
+            @Override public void onRotation(long t, float x, float y, float z, float w) { engine.onRotationVector(x, y, z, w); }
+            @Override public boolean onAccel(long t, float ax, float ay, float az) {
+                engine.onLinearAcceleration(t, ax, ay, az);
+                return engine.hasRotation();
+            }
+            @Override public float x() { return engine.getX(); }
+            @Override public float y() { return engine.getY(); }
+        };
+    }
+
+    /** DR + SLAM fusion, as drawn by the green line (scored against the poses that correct it). */
+    public static Track fused() {
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        FusionEngine fusion = new FusionEngine();
+        return new Track() {
+            @Override public void onRotation(long t, float x, float y, float z, float w) { dr.onRotationVector(x, y, z, w); }
+            @Override public boolean onAccel(long t, float ax, float ay, float az) {
+                boolean advanced = dr.onLinearAcceleration(t, ax, ay, az);
+                fusion.predict(t, dr.getWorldAccelX(), dr.getWorldAccelY());
+                return advanced;
+            }
+            @Override public void onSlamFix(long t, float x, float y) { fusion.correct(t, x, y); }
+            @Override public float x() { return fusion.getX(); }
+            @Override public float y() { return fusion.getY(); }
+        };
+    }
+
+    private final Track track;
+    private final DriftMetrics metrics;
+    private final TimedSampleRing history = new TimedSampleRing(256, 2);
+    private final float[] sample = new float[2];
+
+    private int trackingState = -1;
+    private boolean anchored;
+    private float anchorX, anchorZ;
+
+    // A pose waits until the track has a sample at or after its timestamp to interpolate against
+    private boolean posePending;
+    private long poseTimestamp;
+    private float poseX, poseY;
+
+    public DriftEvaluator(Track track, DriftMetrics metrics) {
+        this.track = track;
+        this.metrics = metrics;
+    }
+
+    /** Replays a recorded session through {@code track} and returns its scores. */
+    public static DriftMetrics score(File session, Track track) throws IOException {
+        DriftMetrics metrics = new DriftMetrics();
+        new SessionReplayer(session).replay(new DriftEvaluator(track, metrics));
+        return metrics;
+    }
+
+    public DriftMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void onRotation(long timestampNs, float x, float y, float z, float w) {
+        track.onRotation(timestampNs, x, y, z, w);
+    }
+
+    @Override
+    public void onAccel(long timestampNs, float ax, float ay, float az) {
+        if (!track.onAccel(timestampNs, ax, ay, az)) return;
+        sample[0] = track.x();
+        sample[1] = track.y();
+        history.add(timestampNs, sample);
+        if (posePending && timestampNs >= poseTimestamp) {
+            posePending = false;
+            if (history.sampleAt(poseTimestamp, sample)) {
+                metrics.add(poseTimestamp, sample[0], sample[1], poseX, poseY);
+            }
+        }
+    }
+
+    @Override
+    public void onTrackingState(long timestampNs, int state) {
+        trackingState = state;
+    }
+
+    @Override
+    public void onPose(long timestampNs, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+        if (trackingState != TRACKING) return;
+        if (!anchored) {
+            anchored = true;
+            anchorX = tx;
+            anchorZ = tz;
+        }
+        float x = tx - anchorX;
+        float y = -(tz - anchorZ);
+        track.onSlamFix(timestampNs, x, y);
+        posePending = true;
+        poseTimestamp = timestampNs;
+        poseX = x;
+        poseY = y;
+    }
+}
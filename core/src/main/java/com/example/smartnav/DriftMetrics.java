@@ -0,0 +1,182 @@
+package com.example.smartnav;
+
+/**
+ * Streaming error statistics of an estimated 2D track (e.g. DR) against a reference track
+ * (SLAM), fed with time-aligned position pairs as they arrive.
+ *
+ * <ul>
+ *   <li>ATE (absolute trajectory error): RMSE of the raw position difference, and RMSE after
+ *       the best rigid 2D alignment (rotation + translation) of all pairs so far. The alignment
+ *       is the closed-form Procrustes solution, kept exact from running sums.</li>
+ *   <li>RPE (relative pose error): for every pair, the error of the estimated displacement over
+ *       the last {@code windowNs} against the reference displacement, after rotating by the
+ *       alignment yaw; reported as RMSE and latest value.</li>
+ *   <li>Drift per meter: summed RPE over summed reference distance of those windows.</li>
+ * </ul>
+ * Every update is O(1) amortized; only the pairs inside the RPE window are kept.
+ */
+public class DriftMetrics {
+
+    public static final long DEFAULT_WINDOW_NS = 5_000_000_000L;
+    private static final double MIN_WINDOW_DISTANCE = 0.5; // m; shorter windows say little about drift
+
+    // RPE window: ring of recent pairs
+    private final int mask;
+    private final long windowNs;
+    private final long[] wt;
+    private final double[] wex, wey, wrx, wry;
+    private int head, count;
+
+    // Running sums, relative to the first pair to limit cancellation
+    private boolean hasOrigin;
+    private double ox, oy;
+    private long n;
+    private double sEx, sEy, sRx, sRy, sEE, sRR, sDot, sCross, sRawSq;
+
+    private double lastRawError, rpeSq, lastRpe, driftError, driftDistance, pathLength;
+    private long rpeCount;
+    private double lastRx, lastRy;
+    private final double[] dotCross = new double[2];
+
+    public DriftMetrics() {
+        this(1024, DEFAULT_WINDOW_NS);
+    }
+
+    /** @param windowCapacity pairs kept for the RPE window (rounded up to a power of two) */
+    public DriftMetrics(int windowCapacity, long windowNs) {
+        int size = Integer.highestOneBit(Math.max(4, windowCapacity) - 1) << 1;
+        mask = size - 1;
+        this.windowNs = windowNs;
+        wt = new long[size];
+        wex = new double[size];
+        wey = new double[size];
+        wrx = new double[size];
+        wry = new double[size];
+    }
+
+    /** Adds one pair: estimated and reference position at the same timestamp (non-decreasing). */
+    public void add(long timestampNs, float estX, float estY, float refX, float refY) {
+        if (!hasOrigin) {
+            hasOrigin = true;
+            ox = refX;
+            oy = refY;
+            lastRx = refX;
+            lastRy = refY;
+        }
+        double ex = estX - ox, ey = estY - oy, rx = refX - ox, ry = refY - oy;
+
+        // ---- ATE sums ----
+        n++;
+        sEx += ex;
+        sEy += ey;
+        sRx += rx;
+        sRy += ry;
+        sEE += ex * ex + ey * ey;
+        sRR += rx * rx + ry * ry;
+        sDot += ex * rx + ey * ry;
+        sCross += ex * ry - ey * rx;
+        double dx = rx - ex, dy = ry - ey;
+        lastRawError = Math.sqrt(dx * dx + dy * dy);
+        sRawSq += dx * dx + dy * dy;
+        pathLength += Math.hypot(refX - lastRx, refY - lastRy);
+        lastRx = refX;
+        lastRy = refY;
+
+        // ---- RPE over the window ----
+        // Oldest kept pair should be the newest one that is at least windowNs old
+        while (count >= 2 && timestampNs - wt[(head + 1) & mask] >= windowNs) {
+            head = (head + 1) & mask;
+            count--;
+        }
+        if (count > 0 && timestampNs - wt[head] >= windowNs) {
+            double yaw = alignmentYaw();
+            double c = Math.cos(yaw), s = Math.sin(yaw);
+            double dex = ex - wex[head], dey = ey - wey[head];
+            double drx = rx - wrx[head], dry = ry - wry[head];
+            double errX = drx - (c * dex - s * dey), errY = dry - (s * dex + c * dey);
+            lastRpe = Math.sqrt(errX * errX + errY * errY);
+            rpeSq += lastRpe * lastRpe;
+            rpeCount++;
+            double distance = Math.sqrt(drx * drx + dry * dry);
+            if (distance >= MIN_WINDOW_DISTANCE) {
+                driftError += lastRpe;
+                driftDistance += distance;
+            }
+        }
+        if (count > mask) {
+            // Window holds more pairs than fit: thin out from the old end
+            head = (head + 1) & mask;
+            count--;
+        }
+        int i = (head + count) & mask;
+        wt[i] = timestampNs;
+        wex[i] = ex;
+        wey[i] = ey;
+        wrx[i] = rx;
+        wry[i] = ry;
+        count++;
+    }
+
+    public void reset() {
+        head = count = 0;
+        hasOrigin = false;
+        n = 0;
+        sEx = sEy = sRx = sRy = sEE = sRR = sDot = sCross = sRawSq = 0;
+        lastRawError = rpeSq = lastRpe = driftError = driftDistance = pathLength = 0;
+        rpeCount = 0;
+    }
+
+    public long count() { return n; }
+
+    /** Reference path length covered so far (m). */
+    public double pathLength() { return pathLength; }
+
+    /** Latest raw distance between the tracks (m). */
+    public double currentError() { return lastRawError; }
+
+    /** RMSE of the raw position difference (m). */
+    public double rawAte() {
+        return n == 0 ? 0 : Math.sqrt(sRawSq / n);
+    }
+
+    /** Rotation (rad) that best maps the estimated track onto the reference. */
+    public double alignmentYaw() {
+        double[] cs = centeredDotCross();
+        return Math.atan2(cs[1], cs[0]);
+    }
+
+    /** RMSE after the best rigid 2D alignment of the estimated track onto the reference (m). */
+    public double alignedAte() {
+        if (n == 0) return 0;
+        double mex = sEx / n, mey = sEy / n, mrx = sRx / n, mry = sRy / n;
+        double ee = sEE - n * (mex * mex + mey * mey);
+        double rr = sRR - n * (mrx * mrx + mry * mry);
+        double[] cs = centeredDotCross();
+        double sse = ee + rr - 2 * Math.hypot(cs[0], cs[1]);
+        return Math.sqrt(Math.max(0, sse) / n);
+    }
+
+    /** RMSE of the windowed relative errors (m per window). */
+    public double rpe() {
+        return rpeCount == 0 ? 0 : Math.sqrt(rpeSq / rpeCount);
+    }
+
+    public double lastRpe() { return lastRpe; }
+
+    /** Relative error per meter travelled (0.05 = 5 cm per m), over windows that moved at least 0.5 m. */
+    public double driftPerMeter() {
+        return driftDistance == 0 ? 0 : driftError / driftDistance;
+    }
+
+    private double[] centeredDotCross() {
+        double[] out = dotCross;
+        if (n == 0) {
+            out[0] = out[1] = 0;
+            return out;
+        }
+        double mex = sEx / n, mey = sEy / n, mrx = sRx / n, mry = sRy / n;
+        out[0] = sDot - n * (mex * mrx + mey * mry);
+        out[1] = sCross - n * (mex * mry - mey * mrx);
+        return out;
+    }
+}
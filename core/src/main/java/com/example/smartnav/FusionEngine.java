@@ -0,0 +1,232 @@
+package com.example.smartnav;
+
+/**
+ * Streaming error-state Kalman filter that fuses IMU dead reckoning with ARCore SLAM positions.
+ *
+ * Predicts at IMU rate from world-frame linear acceleration (the DR engine's East/North output)
+ * and corrects with the SLAM plot position whenever ARCore is tracking. Without corrections it
+ * simply keeps predicting, i.e. falls back to inertial-only dead reckoning.
+ *
+ * The DR world frame (East/North from the rotation vector) and the SLAM plot frame (ARCore's
+ * arbitrary gravity-aligned frame) differ by an unknown yaw, so that yaw is part of the state:
+ * <pre>
+ *   x = [px, py, vx, vy, psi]     (plot frame, psi rotates East/North into it)
+ * </pre>
+ * All matrices are fixed-size double arrays allocated once; predict and correct do not allocate.
+ * Not thread-safe: the sensor thread owns it, SLAM poses arrive through a {@link PoseHandoff}.
+ */
+public class FusionEngine {
+
+    static final int N = 5;
+    private static final int PX = 0, PY = 1, VX = 2, VY = 3, PSI = 4;
+    private static final double NANO_TO_SEC = 1e-9;
+
+    // Noise model (tuned for handheld walking with a phone-grade IMU)
+    private double accelNoise = 0.5;         // m/s^2, white
+    private double velocityRandomWalk = 0.05; // m/s per sqrt(s), absorbs accel bias
+    private double yawRandomWalk = 0.002;     // rad per sqrt(s)
+    private double measurementNoise = 0.05;   // m, SLAM position
+    private static final double INITIAL_YAW_SIGMA = Math.PI;
+    private static final double GATE_CHI2 = 30.0; // ~5.5 sigma for 2 dof
+    private static final int MAX_REJECTED_BEFORE_RESET = 10;
+
+    // Nominal state and error covariance (row-major N x N)
+    private final double[] x = new double[N];
+    private final double[] P = new double[N * N];
+
+    // Scratch, reused every step
+    private final double[] F = new double[N * N];
+    private final double[] tmp = new double[N * N];
+    private final double[] K = new double[N * 2];
+
+    private long lastPredictTimestamp = 0;
+    private int rejectedInRow = 0;
+    private long corrections = 0;
+
+    public FusionEngine() {
+        reset();
+    }
+
+    public void reset() {
+        for (int i = 0; i < N; i++) x[i] = 0;
+        for (int i = 0; i < N * N; i++) P[i] = 0;
+        P[PX * N + PX] = P[PY * N + PY] = 1e-4;
+        P[VX * N + VX] = P[VY * N + VY] = 1e-2;
+        P[PSI * N + PSI] = INITIAL_YAW_SIGMA * INITIAL_YAW_SIGMA;
+        lastPredictTimestamp = 0;
+        rejectedInRow = 0;
+        corrections = 0;
+    }
+
+    public void setNoise(double accelNoise, double velocityRandomWalk, double yawRandomWalk, double measurementNoise) {
+        this.accelNoise = accelNoise;
+        this.velocityRandomWalk = velocityRandomWalk;
+        this.yawRandomWalk = yawRandomWalk;
+        this.measurementNoise = measurementNoise;
+    }
+
+    /** Propagates the state with one world-frame (East, North) linear acceleration sample. */
+    public void predict(long timestampNs, float accelEast, float accelNorth) {
+        long last = lastPredictTimestamp;
+        lastPredictTimestamp = timestampNs;
+        if (last == 0) return;
+        double dt = (timestampNs - last) * NANO_TO_SEC;
+        if (dt <= 0 || dt > 0.5) return; // sensor gap: skip rather than integrate garbage
+
+        double c = Math.cos(x[PSI]), s = Math.sin(x[PSI]);
+        double ax = c * accelEast - s * accelNorth;
+        double ay = s * accelEast + c * accelNorth;
+
+        // Nominal state
+        double halfDt2 = 0.5 * dt * dt;
+        x[PX] += x[VX] * dt + ax * halfDt2;
+        x[PY] += x[VY] * dt + ay * halfDt2;
+        x[VX] += ax * dt;
+        x[VY] += ay * dt;
+
+        // Error-state transition: d(ax)/d(psi) = -ay, d(ay)/d(psi) = ax
+        double[] f = F;
+        for (int i = 0; i < N * N; i++) f[i] = 0;
+        for (int i = 0; i < N; i++) f[i * N + i] = 1;
+        f[PX * N + VX] = dt;
+        f[PY * N + VY] = dt;
+        f[PX * N + PSI] = -ay * halfDt2;
+        f[PY * N + PSI] = ax * halfDt2;
+        f[VX * N + PSI] = -ay * dt;
+        f[VY * N + PSI] = ax * dt;
+
+        // P = F P F^T
+        multiply(f, P, tmp);
+        multiplyTransposed(tmp, f, P);
+
+        // + Q (white acceleration on each axis, plus random walks)
+        double qa = accelNoise * accelNoise;
+        double qv = velocityRandomWalk * velocityRandomWalk * dt;
+        double dt2 = dt * dt;
+        double qpp = 0.25 * dt2 * dt2 * qa;
+        double qpv = 0.5 * dt2 * dt * qa;
+        double qvv = dt2 * qa + qv;
+        P[PX * N + PX] += qpp;
+        P[PY * N + PY] += qpp;
+        P[PX * N + VX] += qpv;
+        P[VX * N + PX] += qpv;
+        P[PY * N + VY] += qpv;
+        P[VY * N + PY] += qpv;
+        P[VX * N + VX] += qvv;
+        P[VY * N + VY] += qvv;
+        P[PSI * N + PSI] += yawRandomWalk * yawRandomWalk * dt;
+    }
+
+    /**
+     * Corrects with a SLAM plot position measured at {@code timestampNs}. A measurement older than
+     * the last prediction is moved forward along the current velocity first.
+     *
+     * @return false if the measurement was rejected as an outlier
+     */
+    public boolean correct(long timestampNs, float measuredX, float measuredY) {
+        double zx = measuredX, zy = measuredY;
+        if (lastPredictTimestamp != 0 && timestampNs != 0) {
+            double lag = (lastPredictTimestamp - timestampNs) * NANO_TO_SEC;
+            if (lag > 0 && lag < 0.5) {
+                zx += x[VX] * lag;
+                zy += x[VY] * lag;
+            }
+        }
+
+        double r = measurementNoise * measurementNoise;
+        double s00 = P[PX * N + PX] + r;
+        double s01 = P[PX * N + PY];
+        double s10 = P[PY * N + PX];
+        double s11 = P[PY * N + PY] + r;
+        double det = s00 * s11 - s01 * s10;
+        if (det <= 0) return false;
+        double i00 = s11 / det, i01 = -s01 / det, i10 = -s10 / det, i11 = s00 / det;
+
+        double yx = zx - x[PX];
+        double yy = zy - x[PY];
+        double mahalanobis = yx * (i00 * yx + i01 * yy) + yy * (i10 * yx + i11 * yy);
+        if (mahalanobis > GATE_CHI2) {
+            if (++rejectedInRow < MAX_REJECTED_BEFORE_RESET) return false;
+            // SLAM consistently disagrees (e.g. relocalized): trust it and reopen the position
+            rejectedInRow = 0;
+            x[PX] = zx;
+            x[PY] = zy;
+            P[PX * N + PX] += yx * yx;
+            P[PY * N + PY] += yy * yy;
+            return true;
+        }
+        rejectedInRow = 0;
+
+        // K = P H^T S^-1, with H = [I2 0]: P H^T is just the first two columns of P
+        for (int i = 0; i < N; i++) {
+            double p0 = P[i * N + PX], p1 = P[i * N + PY];
+            K[i * 2] = p0 * i00 + p1 * i10;
+            K[i * 2 + 1] = p0 * i01 + p1 * i11;
+        }
+
+        // Inject the error estimate into the nominal state
+        for (int i = 0; i < N; i++) x[i] += K[i * 2] * yx + K[i * 2 + 1] * yy;
+        x[PSI] = wrapAngle(x[PSI]);
+
+        // P = (I - K H) P  ->  P_ij -= K_i0 P_0j + K_i1 P_1j
+        for (int i = 0; i < N * N; i++) tmp[i] = P[i];
+        for (int i = 0; i < N; i++) {
+            double k0 = K[i * 2], k1 = K[i * 2 + 1];
+            for (int j = 0; j < N; j++) {
+                P[i * N + j] = tmp[i * N + j] - k0 * tmp[PX * N + j] - k1 * tmp[PY * N + j];
+            }
+        }
+        symmetrize(P);
+        corrections++;
+        return true;
+    }
+
+    public float getX() { return (float) x[PX]; }
+    public float getY() { return (float) x[PY]; }
+    public float getVelocityX() { return (float) x[VX]; }
+    public float getVelocityY() { return (float) x[VY]; }
+    /** Estimated yaw (rad) from the DR East/North frame to the SLAM plot frame. */
+    public float getYawOffset() { return (float) x[PSI]; }
+    public double getPositionVariance() { return P[PX * N + PX] + P[PY * N + PY]; }
+    public long getCorrectionCount() { return corrections; }
+
+    // ===========================================================
+    // FIXED-SIZE MATRIX HELPERS (N x N, row-major)
+    // ===========================================================
+    private static void multiply(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) sum += a[i * N + k] * b[k * N + j];
+                out[i * N + j] = sum;
+            }
+        }
+    }
+
+    /** out = a * b^T */
+    private static void multiplyTransposed(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) sum += a[i * N + k] * b[j * N + k];
+                out[i * N + j] = sum;
+            }
+        }
+    }
+
+    private static void symmetrize(double[] m) {
+        for (int i = 0; i < N; i++) {
+            for (int j = i + 1; j < N; j++) {
+                double avg = 0.5 * (m[i * N + j] + m[j * N + i]);
+                m[i * N + j] = avg;
+                m[j * N + i] = avg;
+            }
+        }
+    }
+
+    private static double wrapAngle(double a) {
+        while (a > Math.PI) a -= 2 * Math.PI;
+        while (a < -Math.PI) a += 2 * Math.PI;
+        return a;
+    }
+}
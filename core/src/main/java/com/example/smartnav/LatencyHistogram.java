@@ -0,0 +1,84 @@
+package com.example.smartnav;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram that any thread can record into without locks or allocation.
+ *
+ * Buckets are log-linear over microseconds: four sub-buckets per power of two, so every
+ * reported percentile is within 25% of the true value, from 1 us up to ~16 s. Larger values
+ * land in the last bucket (and still update {@link #max()}).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 24; // 2^24 us ~ 16.8 s
+    static final int BUCKET_COUNT = MAX_EXPONENT * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketFor(nanos));
+        total.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) break;
+        }
+    }
+
+    public long count() { return total.get(); }
+    public long max() { return maxNanos.get(); }
+
+    public long mean() {
+        long n = total.get();
+        return n == 0 ? 0 : sumNanos.get() / n;
+    }
+
+    /**
+     * Upper bound (in ns) of the bucket holding the given percentile, or 0 if nothing was
+     * recorded. Concurrent records may make the result slightly stale, never inconsistent.
+     */
+    public long percentile(double percentile) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * n);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBoundNanos(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+        total.set(0);
+        sumNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int bucketFor(long nanos) {
+        long micros = nanos >>> 10; // ~us; a 2.4% scale error is far below bucket resolution
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundNanos(int bucket) {
+        if (bucket < SUB_BUCKETS) return ((long) bucket + 1) << 10;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+        return (lower + (1L << (exponent - SUB_BUCKET_BITS))) << 10;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.smartnav;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Opens an archive written by {@link MapArchiveWriter} through memory mapping.
+ *
+ * Opening parses the header and the chunk index only; chunk payloads stay in the page cache
+ * until a caller decodes them, so reload time depends on the region being shown rather than on
+ * the size of the map. Decoding does not touch shared state and may run on any thread.
+ */
+public class MapArchiveReader {
+
+    private static final float UNITS_PER_METER = MapArchiveWriter.UNITS_PER_METER;
+
+    private final MappedByteBuffer data;
+    private final int chunkCount;
+    private final byte[] kinds, tracks;
+    private final int[] counts, offsets, lengths;
+    private final int[] bounds; // minA, minB, maxA, maxB per chunk, in mm
+
+    public MapArchiveReader(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Map archive too large to map: " + file);
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.limit() < MapArchiveWriter.FILE_HEADER_SIZE || data.getInt(0) != MapArchiveWriter.MAGIC) {
+            throw new IOException("Not a map archive: " + file);
+        }
+        short version = data.getShort(4);
+        if (version != MapArchiveWriter.VERSION) throw new IOException("Unsupported map archive version " + version);
+        long indexOffset = data.getLong(8);
+        if (indexOffset < MapArchiveWriter.FILE_HEADER_SIZE || indexOffset + 4 > data.limit()) {
+            throw new IOException("Map archive was not closed: " + file);
+        }
+
+        int pos = (int) indexOffset;
+        chunkCount = data.getInt(pos);
+        pos += 4;
+        if (chunkCount < 0 || (long) chunkCount * MapArchiveWriter.INDEX_ENTRY_SIZE > data.limit() - pos) {
+            throw new IOException("Corrupt map archive index: " + file);
+        }
+        kinds = new byte[chunkCount];
+        tracks = new byte[chunkCount];
+        counts = new int[chunkCount];
+        offsets = new int[chunkCount];
+        lengths = new int[chunkCount];
+        bounds = new int[chunkCount * 4];
+        for (int c = 0; c < chunkCount; c++) {
+            kinds[c] = data.get(pos);
+            tracks[c] = data.get(pos + 1);
+            counts[c] = data.getInt(pos + 2);
+            offsets[c] = data.getInt(pos + 6);
+            lengths[c] = data.getInt(pos + 10);
+            for (int b = 0; b < 4; b++) bounds[c * 4 + b] = data.getInt(pos + 14 + b * 4);
+            pos += MapArchiveWriter.INDEX_ENTRY_SIZE;
+            if (offsets[c] < MapArchiveWriter.FILE_HEADER_SIZE || (long) offsets[c] + lengths[c] > indexOffset) {
+                throw new IOException("Corrupt map archive index: " + file);
+            }
+        }
+    }
+
+    public int chunkCount() { return chunkCount; }
+    public int kind(int chunk) { return kinds[chunk]; }
+    public int track(int chunk) { return tracks[chunk]; }
+    /** Points or voxels in the chunk. */
+    public int count(int chunk) { return counts[chunk]; }
+
+    /** Total points or voxels over the chunks of one kind. */
+    public long totalCount(int kind) {
+        long total = 0;
+        for (int c = 0; c < chunkCount; c++) if (kinds[c] == kind) total += counts[c];
+        return total;
+    }
+
+    // Bounds in metres: plot x/y for tracks, world x/z for voxels
+    public float minA(int chunk) { return bounds[chunk * 4] / UNITS_PER_METER; }
+    public float minB(int chunk) { return bounds[chunk * 4 + 1] / UNITS_PER_METER; }
+    public float maxA(int chunk) { return bounds[chunk * 4 + 2] / UNITS_PER_METER; }
+    public float maxB(int chunk) { return bounds[chunk * 4 + 3] / UNITS_PER_METER; }
+
+    public boolean intersects(int chunk, float minA, float minB, float maxA, float maxB) {
+        return maxA(chunk) >= minA && minA(chunk) <= maxA && maxB(chunk) >= minB && minB(chunk) <= maxB;
+    }
+
+    /**
+     * Decodes a track chunk into {@code xs}/{@code ys} (at least {@link #count} long).
+     *
+     * @return number of points
+     */
+    public int readTrack(int chunk, float[] xs, float[] ys) {
+        if (kinds[chunk] != MapArchiveWriter.KIND_TRACK) throw new IllegalArgumentException("Not a track chunk: " + chunk);
+        ByteBuffer in = chunkBytes(chunk);
+        int n = counts[chunk];
+        long x = 0, y = 0;
+        for (int i = 0; i < n; i++) {
+            x += VarInts.getSigned(in);
+            y += VarInts.getSigned(in);
+            xs[i] = x / UNITS_PER_METER;
+            ys[i] = y / UNITS_PER_METER;
+        }
+        return n;
+    }
+
+    /**
+     * Decodes a voxel chunk into {@code out} as (x, y, z, confidence) quadruples, starting at its
+     * current position, like {@link VoxelMap#copyTo}.
+     *
+     * @return number of voxels written
+     */
+    public int readVoxels(int chunk, FloatBuffer out) {
+        if (kinds[chunk] != MapArchiveWriter.KIND_VOXELS) throw new IllegalArgumentException("Not a voxel chunk: " + chunk);
+        int n = Math.min(counts[chunk], out.remaining() / 4);
+        ByteBuffer in = chunkBytes(chunk);
+        long x = 0, y = 0, z = 0;
+        for (int i = 0; i < n; i++) {
+            x += VarInts.getSigned(in);
+            y += VarInts.getSigned(in);
+            z += VarInts.getSigned(in);
+            float confidence = (in.get() & 0xFF) / 255f;
+            out.put(x / UNITS_PER_METER).put(y / UNITS_PER_METER).put(z / UNITS_PER_METER).put(confidence);
+        }
+        return n;
+    }
+
+    /** Encoded payload of a chunk, as an independent view of the mapping. */
+    ByteBuffer chunkBytes(int chunk) {
+        ByteBuffer view = data.duplicate();
+        view.limit(offsets[chunk] + lengths[chunk]).position(offsets[chunk]);
+        return view;
+    }
+
+    int rawBounds(int chunk, int which) {
+        return bounds[chunk * 4 + which];
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.smartnav;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Writes trajectories and voxel maps to a compact archive that {@link MapArchiveReader} can
+ * reload lazily, one region at a time.
+ *
+ * Coordinates are quantized to millimetres and stored as zigzag varint deltas from the previous
+ * point of the same chunk, so a walked path costs ~2 bytes per axis instead of 4 per float. Data
+ * is split into chunks with a bounding box each; the index at the end of the file lists them, so
+ * a reader only decodes the chunks that intersect what it needs.
+ *
+ * File layout (little-endian header and index):
+ * <pre>
+ *   header : int MAGIC, short VERSION, short reserved, long indexOffset
+ *   chunk  : KIND_TRACK  : per point varint dx, dy (mm, first one absolute)
+ *            KIND_VOXELS : per voxel varint dx, dy, dz (mm, first one absolute) + byte confidence
+ *   index  : int chunkCount, then per chunk:
+ *            byte kind, byte track, int count, int offset, int length, int minA, minB, maxA, maxB
+ * </pre>
+ * Track chunks follow {@link TrajectoryStore}'s finest level; each one repeats the previous
+ * chunk's last point, so chunks draw connected without their neighbours. Bounds are in mm over
+ * the plot axes for tracks and over world x/z for voxels, which are grouped in
+ * {@value #VOXEL_TILE_SIZE} m tiles. indexOffset stays 0 until {@link #close()}, so a file cut
+ * short by a crash is rejected instead of half-read.
+ */
+public class MapArchiveWriter implements Closeable {
+
+    public static final int MAGIC = 0x53_4E_4D_50; // "SNMP"
+    public static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 2 + 7 * 4;
+
+    public static final byte KIND_TRACK = 1;
+    public static final byte KIND_VOXELS = 2;
+
+    public static final float VOXEL_TILE_SIZE = 4f;
+    static final float UNITS_PER_METER = 1000f;
+
+    private static final int TILE_BITS = 21;
+    private static final int TILE_BIAS = 1 << (TILE_BITS - 1);
+    private static final int INDEX_BITS = 20; // voxels per archive: 1M
+
+    private final FileChannel channel;
+    private ByteBuffer chunk = ByteBuffer.allocate(16 * 1024);
+    private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private int chunkCount = 0;
+    private long position = FILE_HEADER_SIZE;
+    private long[] voxelOrder = new long[0];
+    private boolean closed = false;
+
+    public MapArchiveWriter(File file) throws IOException {
+        // RandomAccessFile rather than FileChannel.open(Path): java.nio.file needs Android API 26
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(0).flip();
+        while (header.hasRemaining()) channel.write(header);
+    }
+
+    public int chunkCount() { return chunkCount; }
+
+    /** Bytes written so far, not counting the index. */
+    public long size() { return position; }
+
+    // ===========================================================
+    // TRACKS
+    // ===========================================================
+
+    /** Writes the finest level of {@code store}, plus its head if that level has not kept it. */
+    public void writeTrack(int track, TrajectoryStore store) throws IOException {
+        TrajectoryStore.Level level = store.level(0);
+        boolean hasPrevious = false;
+        float prevX = 0, prevY = 0;
+        for (int c = 0; c < level.chunkCount(); c++) {
+            TrajectoryStore.Chunk source = level.chunk(c);
+            if (source.size == 0) continue;
+            boolean last = c == level.chunkCount() - 1;
+            boolean withHead = last && store.hasHead()
+                    && (source.xs[source.size - 1] != store.headX() || source.ys[source.size - 1] != store.headY());
+
+            TrackEncoder encoder = new TrackEncoder();
+            if (hasPrevious) encoder.add(prevX, prevY);
+            for (int i = 0; i < source.size; i++) encoder.add(source.xs[i], source.ys[i]);
+            if (withHead) encoder.add(store.headX(), store.headY());
+            encoder.finish(track);
+
+            prevX = source.xs[source.size - 1];
+            prevY = source.ys[source.size - 1];
+            hasPrevious = true;
+        }
+    }
+
+    /** Writes one track chunk from parallel arrays; used for tracks that are not in a store. */
+    public void writeTrack(int track, float[] xs, float[] ys, int count) throws IOException {
+        if (count == 0) return;
+        TrackEncoder encoder = new TrackEncoder();
+        for (int i = 0; i < count; i++) encoder.add(xs[i], ys[i]);
+        encoder.finish(track);
+    }
+
+    private final class TrackEncoder {
+        private int count = 0;
+        private int lastX, lastY;
+        private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        TrackEncoder() {
+            chunk.clear();
+        }
+
+        void add(float x, float y) {
+            ensureChunk(2 * 5);
+            int qx = quantize(x), qy = quantize(y);
+            // Deltas of the quantized values, so rounding error never accumulates
+            VarInts.putSigned(chunk, (long) qx - lastX);
+            VarInts.putSigned(chunk, (long) qy - lastY);
+            lastX = qx;
+            lastY = qy;
+            if (qx < minX) minX = qx;
+            if (qx > maxX) maxX = qx;
+            if (qy < minY) minY = qy;
+            if (qy > maxY) maxY = qy;
+            count++;
+        }
+
+        void finish(int track) throws IOException {
+            if (count > 0) writeChunk(KIND_TRACK, track, count, minX, minY, maxX, maxY);
+        }
+    }
+
+    // ===========================================================
+    // VOXELS
+    // ===========================================================
+
+    /**
+     * Writes {@code count} voxels stored as (x, y, z, confidence) quadruples from the buffer's
+     * current position, the format of {@link VoxelMap#copyTo}. Voxels are grouped into tiles
+     * on the x/z plane, one chunk per tile.
+     *
+     * @return number of chunks written
+     */
+    public int writeVoxels(FloatBuffer voxels, int count) throws IOException {
+        if (count > 1 << INDEX_BITS) throw new IllegalArgumentException("Too many voxels: " + count);
+        if (voxelOrder.length < count) voxelOrder = new long[count];
+        int base = voxels.position();
+
+        // Sort by (tile, input index) with one primitive sort
+        for (int i = 0; i < count; i++) {
+            long tx = tile(voxels.get(base + i * 4)) & ((1L << TILE_BITS) - 1);
+            long tz = tile(voxels.get(base + i * 4 + 2)) & ((1L << TILE_BITS) - 1);
+            voxelOrder[i] = (((tx << TILE_BITS) | tz) << INDEX_BITS) | i;
+        }
+        Arrays.sort(voxelOrder, 0, count);
+
+        int chunks = 0;
+        int start = 0;
+        while (start < count) {
+            long tileKey = voxelOrder[start] >>> INDEX_BITS;
+            int end = start + 1;
+            while (end < count && voxelOrder[end] >>> INDEX_BITS == tileKey) end++;
+
+            chunk.clear();
+            ensureChunk((end - start) * (3 * 5 + 1));
+            int lastX = 0, lastY = 0, lastZ = 0;
+            int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            for (int k = start; k < end; k++) {
+                int p = base + (int) (voxelOrder[k] & ((1 << INDEX_BITS) - 1)) * 4;
+                int qx = quantize(voxels.get(p)), qy = quantize(voxels.get(p + 1)), qz = quantize(voxels.get(p + 2));
+                VarInts.putSigned(chunk, (long) qx - lastX);
+                VarInts.putSigned(chunk, (long) qy - lastY);
+                VarInts.putSigned(chunk, (long) qz - lastZ);
+                float confidence = Math.max(0f, Math.min(1f, voxels.get(p + 3)));
+                chunk.put((byte) Math.round(confidence * 255));
+                lastX = qx;
+                lastY = qy;
+                lastZ = qz;
+                if (qx < minX) minX = qx;
+                if (qx > maxX) maxX = qx;
+                if (qz < minZ) minZ = qz;
+                if (qz > maxZ) maxZ = qz;
+            }
+            writeChunk(KIND_VOXELS, 0, end - start, minX, minZ, maxX, maxZ);
+            chunks++;
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static int tile(float v) {
+        return (int) Math.floor(v / VOXEL_TILE_SIZE) + TILE_BIAS;
+    }
+
+    // ===========================================================
+    // CARRY-OVER
+    // ===========================================================
+
+    /**
+     * Copies every chunk of the given kind from an existing archive verbatim, without decoding.
+     * Lets a save keep earlier sessions while re-encoding only what changed.
+     *
+     * @return number of chunks copied
+     */
+    public int copyChunks(MapArchiveReader source, int kind) throws IOException {
+        int copied = 0;
+        for (int c = 0; c < source.chunkCount(); c++) {
+            if (source.kind(c) != kind) continue;
+            ByteBuffer bytes = source.chunkBytes(c);
+            int length = bytes.remaining();
+            appendIndex((byte) source.kind(c), source.track(c), source.count(c), length,
+                    source.rawBounds(c, 0), source.rawBounds(c, 1), source.rawBounds(c, 2), source.rawBounds(c, 3));
+            while (bytes.hasRemaining()) position += channel.write(bytes);
+            copied++;
+        }
+        return copied;
+    }
+
+    // ===========================================================
+    // FILE
+    // ===========================================================
+
+    /** Writes the index and publishes it in the header. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            long indexOffset = position;
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            count.putInt(chunkCount).flip();
+            while (count.hasRemaining()) channel.write(count);
+            index.flip();
+            while (index.hasRemaining()) channel.write(index);
+
+            ByteBuffer offset = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            offset.putLong(indexOffset).flip();
+            channel.force(false); // index on disk before the header points at it
+            while (offset.hasRemaining()) channel.write(offset, 8 + offset.position());
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeChunk(byte kind, int track, int count, int minA, int minB, int maxA, int maxB) throws IOException {
+        chunk.flip();
+        appendIndex(kind, track, count, chunk.remaining(), minA, minB, maxA, maxB);
+        while (chunk.hasRemaining()) position += channel.write(chunk);
+        chunk.clear();
+    }
+
+    private void appendIndex(byte kind, int track, int count, int length, int minA, int minB, int maxA, int maxB) {
+        if (closed) throw new IllegalStateException("Archive is closed");
+        if (position + length > Integer.MAX_VALUE) throw new IllegalStateException("Archive too large to map");
+        if (index.remaining() < INDEX_ENTRY_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            index.flip();
+            grown.put(index);
+            index = grown;
+        }
+        index.put(kind).put((byte) track).putInt(count).putInt((int) position).putInt(length)
+                .putInt(minA).putInt(minB).putInt(maxA).putInt(maxB);
+        chunkCount++;
+    }
+
+    private void ensureChunk(int bytes) {
+        if (chunk.remaining() >= bytes) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(chunk.capacity() * 2, chunk.position() + bytes));
+        chunk.flip();
+        grown.put(chunk);
+        chunk = grown;
+    }
+
+    static int quantize(float metres) {
+        return Math.round(metres * UNITS_PER_METER);
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.smartnav;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * 2D occupancy grid on the floor plane, built incrementally from ARCore point clouds.
+ *
+ * Confident points inside a height band around the camera (walls, furniture; not floor or
+ * ceiling) are projected onto the plot frame. The cell they fall in gets a log-odds "hit", and
+ * the cells on the ray from the camera to it get a "miss", so free space is mapped as well as
+ * obstacles. Log-odds are fixed point (1 unit = 0.1) in one byte per cell, clamped so a
+ * changed scene can be re-learned.
+ *
+ * Cells are grouped into square tiles of {@link #TILE_CELLS}^2 that are allocated on first
+ * touch, so memory follows the explored area. The work per cloud is bounded: at most
+ * {@code maxPointsPerCloud} points are used (evenly subsampled) and rays are cut at
+ * {@code maxRange}.
+ *
+ * One writer thread integrates clouds and may {@link #clear()}; readers (the renderer) walk the
+ * published tiles without locking. Between clears, tiles are only appended to the published
+ * array (a clear reuses the indices for new Tile objects, so readers caching per index compare
+ * identity). Each tile's volatile version is bumped after its cells change, so a reader that saw
+ * a version also sees the cells written before it; cells read mid-update are stale at worst.
+ */
+public class OccupancyGrid {
+
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE_CELLS = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_CELLS - 1;
+
+    // Log-odds in units of 0.1: a hit is p = 0.71, a miss p = 0.40
+    public static final int HIT = 9;
+    public static final int MISS = -4;
+    public static final int MIN_LOG_ODDS = -40;
+    public static final int MAX_LOG_ODDS = 60;
+    /** At or above: drawn as an obstacle (p >= 0.88). */
+    public static final int OCCUPIED = 20;
+    /** At or below: drawn as free space (p <= 0.31). */
+    public static final int FREE = -8;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** Called on the writer thread, during integration, when a cell crosses {@link #OCCUPIED}. */
+    public interface OccupancyListener {
+        void onOccupancyChanged(int cellX, int cellY, boolean occupied);
+    }
+
+    /** A square block of cells. Cells are indexed [localY * TILE_CELLS + localX]. */
+    public static final class Tile {
+        public final int tileX, tileY;
+        final byte[] cells = new byte[TILE_CELLS * TILE_CELLS];
+        private final int index;
+        private volatile int version;
+        private int touchedStamp = -1; // writer only
+
+        Tile(int tileX, int tileY, int index) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.index = index;
+        }
+
+        /** Incremented after every cloud that changed the tile. */
+        public int version() { return version; }
+
+        public int cell(int localX, int localY) {
+            return cells[localY * TILE_CELLS + localX];
+        }
+    }
+
+    private final float cellSize;
+    private final float inverseCellSize;
+    private final float minHeight, maxHeight, minConfidence, maxRange;
+    private final int maxPointsPerCloud;
+
+    // Published tiles: the array is replaced before tileCount grows past its length
+    private volatile Tile[] tiles = new Tile[16];
+    private volatile int tileCount = 0;
+    private volatile long updateCount = 0;
+
+    // Writer only: tile lookup by packed (tileX, tileY)
+    private long[] keys = new long[32];
+    private int[] indices = new int[32];
+    private Tile lastTile;
+    private int[] touched = new int[16];
+    private int touchedCount = 0;
+    private int stamp = 0;
+    private OccupancyListener listener;
+
+    public OccupancyGrid() {
+        this(0.1f, -1.2f, 0.5f, 0.3f, 8f, 1024);
+    }
+
+    /**
+     * @param minHeight lowest point kept, relative to the camera height (m); excludes the floor
+     * @param maxHeight highest point kept, relative to the camera height (m); excludes the ceiling
+     */
+    public OccupancyGrid(float cellSize, float minHeight, float maxHeight, float minConfidence,
+                         float maxRange, int maxPointsPerCloud) {
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1f / cellSize;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.minConfidence = minConfidence;
+        this.maxRange = maxRange;
+        this.maxPointsPerCloud = maxPointsPerCloud;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public float cellSize() { return cellSize; }
+    public float tileSize() { return cellSize * TILE_CELLS; }
+
+    /** Published tile count; read it before {@link #tile}. */
+    public int tileCount() { return tileCount; }
+    public Tile tile(int index) { return tiles[index]; }
+
+    /** Incremented after every cloud that changed the grid, and on clear. */
+    public long updateCount() { return updateCount; }
+
+    // ===========================================================
+    // WRITER
+    // ===========================================================
+
+    /**
+     * Integrates one ARCore cloud (x, y, z, confidence quadruples in world coordinates, from the
+     * buffer's position; the position is left untouched) seen from the camera at (camX, camY,
+     * camZ). World (x, z) maps to the plot frame as (x - originX, -(z - originZ)).
+     *
+     * @return number of points integrated
+     */
+    public int integrateCloud(FloatBuffer cloud, float camX, float camY, float camZ, float originX, float originZ) {
+        int start = cloud.position();
+        int count = cloud.remaining() / 4;
+        int stride = (count + maxPointsPerCloud - 1) / Math.max(1, maxPointsPerCloud);
+        if (stride < 1) stride = 1;
+
+        float sx = camX - originX, sy = -(camZ - originZ);
+        int sensorX = cellIndex(sx), sensorY = cellIndex(sy);
+        float maxRangeSq = maxRange * maxRange;
+        stamp++;
+        int used = 0;
+        for (int i = 0; i < count; i += stride) {
+            int p = start + i * 4;
+            if (cloud.get(p + 3) < minConfidence) continue;
+            float height = cloud.get(p + 1) - camY;
+            if (height < minHeight || height > maxHeight) continue;
+            float px = cloud.get(p) - originX, py = -(cloud.get(p + 2) - originZ);
+            float dx = px - sx, dy = py - sy;
+            if (dx * dx + dy * dy > maxRangeSq) continue;
+            integrateRay(sensorX, sensorY, cellIndex(px), cellIndex(py));
+            used++;
+        }
+        publishTouched();
+        return used;
+    }
+
+    /** Writer thread only. Not called for cells dropped by {@link #clear()}. */
+    public void setListener(OccupancyListener listener) {
+        this.listener = listener;
+    }
+
+    /** Writer thread only: forgets every cell. Tiles already handed to readers stay intact. */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        lastTile = null;
+        touchedCount = 0;
+        tileCount = 0;
+        updateCount++;
+    }
+
+    /** Misses along the ray (Bresenham), a hit at its end. */
+    private void integrateRay(int x0, int y0, int x1, int y1) {
+        int dx = Math.abs(x1 - x0), dy = -Math.abs(y1 - y0);
+        int stepX = x0 < x1 ? 1 : -1, stepY = y0 < y1 ? 1 : -1;
+        int err = dx + dy;
+        int x = x0, y = y0;
+        while (x != x1 || y != y1) {
+            update(x, y, MISS);
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x += stepX;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y += stepY;
+            }
+        }
+        update(x1, y1, HIT);
+    }
+
+    private void update(int cellX, int cellY, int delta) {
+        Tile tile = tileFor(cellX >> TILE_SHIFT, cellY >> TILE_SHIFT);
+        int i = (cellY & TILE_MASK) * TILE_CELLS + (cellX & TILE_MASK);
+        int old = tile.cells[i];
+        int v = Math.max(MIN_LOG_ODDS, Math.min(MAX_LOG_ODDS, old + delta));
+        tile.cells[i] = (byte) v;
+        if (listener != null && (old >= OCCUPIED) != (v >= OCCUPIED)) {
+            listener.onOccupancyChanged(cellX, cellY, v >= OCCUPIED);
+        }
+    }
+
+    private Tile tileFor(int tileX, int tileY) {
+        Tile tile = lastTile;
+        if (tile == null || tile.tileX != tileX || tile.tileY != tileY) {
+            tile = findOrCreate(tileX, tileY);
+            lastTile = tile;
+        }
+        if (tile.touchedStamp != stamp) {
+            tile.touchedStamp = stamp;
+            if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+            touched[touchedCount++] = tile.index;
+        }
+        return tile;
+    }
+
+    private void publishTouched() {
+        if (touchedCount == 0) return;
+        Tile[] published = tiles;
+        for (int t = 0; t < touchedCount; t++) {
+            Tile tile = published[touched[t]];
+            tile.version = tile.version + 1;
+        }
+        touchedCount = 0;
+        updateCount++;
+    }
+
+    // ===========================================================
+    // TILE LOOKUP (writer only)
+    // ===========================================================
+    private static long key(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h >>> 40) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private Tile findOrCreate(int tileX, int tileY) {
+        long key = key(tileX, tileY);
+        int slot = slotOf(key);
+        if (keys[slot] == key) return tiles[indices[slot]];
+
+        int index = tileCount;
+        Tile tile = new Tile(tileX, tileY, index);
+        Tile[] published = tiles;
+        if (index == published.length) {
+            published = Arrays.copyOf(published, index * 2);
+            tiles = published; // before tileCount covers the new slot
+        }
+        published[index] = tile;
+        tileCount = index + 1;
+
+        keys[slot] = key;
+        indices[slot] = index;
+        if (tileCount * 2 > keys.length) rehash();
+        return tile;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldIndices = indices;
+        keys = new long[oldKeys.length * 2];
+        indices = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            indices[slot] = oldIndices[i];
+        }
+    }
+
+    // ===========================================================
+    // QUERIES
+    // ===========================================================
+    private int cellIndex(float v) {
+        return (int) Math.floor(v * inverseCellSize);
+    }
+
+    /**
+     * Log-odds (units of 0.1) of the cell containing the plot point; 0 if never observed.
+     * Scans the published tiles, so it is meant for tests and occasional lookups.
+     */
+    public int logOddsAt(float x, float y) {
+        int cellX = cellIndex(x), cellY = cellIndex(y);
+        int tileX = cellX >> TILE_SHIFT, tileY = cellY >> TILE_SHIFT;
+        int n = tileCount;
+        Tile[] published = tiles;
+        for (int t = 0; t < n; t++) {
+            Tile tile = published[t];
+            if (tile.tileX == tileX && tile.tileY == tileY) return tile.cell(cellX & TILE_MASK, cellY & TILE_MASK);
+        }
+        return 0;
+    }
+
+    /** Writer thread only: log-odds of a cell by grid index, through the tile hash. */
+    public int cellLogOdds(int cellX, int cellY) {
+        int tileX = cellX >> TILE_SHIFT, tileY = cellY >> TILE_SHIFT;
+        Tile tile = lastTile;
+        if (tile == null || tile.tileX != tileX || tile.tileY != tileY) {
+            long key = key(tileX, tileY);
+            int slot = slotOf(key);
+            if (keys[slot] != key) return 0;
+            tile = tiles[indices[slot]];
+        }
+        return tile.cell(cellX & TILE_MASK, cellY & TILE_MASK);
+    }
+
+    public boolean isOccupied(int cellX, int cellY) {
+        return cellLogOdds(cellX, cellY) >= OCCUPIED;
+    }
+
+    public static float probability(int logOdds) {
+        return (float) (1 / (1 + Math.exp(-logOdds * 0.1)));
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.smartnav;
+
+import java.util.Arrays;
+
+/**
+ * Append-only, lossy-but-bounded trajectory history (timestamp, x, y) at a few bits per sample,
+ * for keeping every sample of a multi-hour session in memory.
+ *
+ * Timestamps are quantized to {@code timeQuantumNs} and positions to {@code quantum} metres, so
+ * the decoded error is below one quantum and never accumulates. Each field is stored as the
+ * change of its delta (delta-of-delta): near zero for evenly spaced sensor timestamps and smooth
+ * motion, exactly zero when standing still or walking at constant velocity. Noisy fields (SLAM
+ * poses) pack tighter as plain deltas; each block picks per field whichever is narrower.
+ *
+ * Samples are grouped into blocks of {@link #BLOCK_SIZE}. A sealed block is bit-packed with one
+ * width per field, just wide enough for its largest zigzagged residual (0 bits when they are all
+ * zero), into 32 KB pages of longs. The block index (parallel primitive arrays) holds each
+ * block's first sample and incoming deltas, so any block decodes on its own: random access is one
+ * block decode, sequential reads stream through the pages. The newest, still open block is kept
+ * unpacked.
+ *
+ * Not thread-safe; MainActivity appends and reads on the UI thread.
+ */
+public class PackedTrajectory {
+
+    public static final int BLOCK_SIZE = 128;
+    public static final long DEFAULT_TIME_QUANTUM_NS = 10_000L; // 10 us
+    public static final float DEFAULT_QUANTUM = 0.001f;         // 1 mm
+
+    private static final int PAGE_SHIFT = 12; // 4096 longs = 32 KB
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    // Per block and field: residual width (0..64) and whether residuals are plain deltas
+    private static final int FIELD_BITS = 8;
+    private static final int WIDTH_MASK = 0x7F;
+    private static final int PLAIN_DELTA = 0x80;
+
+    private final long timeQuantumNs;
+    private final float quantum;
+    private final float invQuantum;
+
+    // Bit-packed residuals of sealed blocks
+    private long[][] pages = new long[16][];
+    private long bitPosition = 0;
+
+    // Block index
+    private int blockCount = 0;
+    private long[] blockBitStart = new long[64];
+    private long[] blockFirstT = new long[64];
+    private long[] blockFirstX = new long[64], blockFirstY = new long[64];
+    private long[] blockDeltaT = new long[64], blockDeltaX = new long[64], blockDeltaY = new long[64];
+    private int[] blockFields = new int[64];
+
+    // Open block, quantized but not packed
+    private final long[] openT = new long[BLOCK_SIZE], openX = new long[BLOCK_SIZE], openY = new long[BLOCK_SIZE];
+    private int openCount = 0;
+    // Last sample and deltas into it, carried into the next block's index entry
+    private long lastT, lastX, lastY, lastDeltaT, lastDeltaX, lastDeltaY;
+
+    public PackedTrajectory() {
+        this(DEFAULT_TIME_QUANTUM_NS, DEFAULT_QUANTUM);
+    }
+
+    public PackedTrajectory(long timeQuantumNs, float quantum) {
+        this.timeQuantumNs = timeQuantumNs;
+        this.quantum = quantum;
+        this.invQuantum = 1f / quantum;
+    }
+
+    public void append(long timestampNs, float x, float y) {
+        long t = Math.floorDiv(timestampNs, timeQuantumNs);
+        long qx = Math.round(x * invQuantum), qy = Math.round(y * invQuantum);
+        if (size() > 0) {
+            lastDeltaT = t - lastT;
+            lastDeltaX = qx - lastX;
+            lastDeltaY = qy - lastY;
+        }
+        if (openCount == 0) openBlock(t, qx, qy);
+        openT[openCount] = t;
+        openX[openCount] = qx;
+        openY[openCount] = qy;
+        openCount++;
+        lastT = t;
+        lastX = qx;
+        lastY = qy;
+        if (openCount == BLOCK_SIZE) sealBlock();
+    }
+
+    public void clear() {
+        for (int p = 0; p < pages.length && pages[p] != null; p++) Arrays.fill(pages[p], 0);
+        bitPosition = 0;
+        blockCount = 0;
+        openCount = 0;
+        lastDeltaT = lastDeltaX = lastDeltaY = 0;
+    }
+
+    public long size() {
+        return (long) sealedBlocks() * BLOCK_SIZE + openCount;
+    }
+
+    /** Memory held by samples and index, excluding unused array capacity. */
+    public long bytesUsed() {
+        long packed = (bitPosition + 7) / 8;
+        long index = (long) blockCount * (7 * 8 + 4);
+        return packed + index + (long) openCount * 3 * 8;
+    }
+
+    public float bytesPerSample() {
+        long n = size();
+        return n == 0 ? 0 : bytesUsed() / (float) n;
+    }
+
+    public long timeQuantumNs() { return timeQuantumNs; }
+    public float quantum() { return quantum; }
+
+    // ===========================================================
+    // RANDOM ACCESS
+    // ===========================================================
+
+    /** Sample {@code index} into {@code reader}'s t(), x(), y(), leaving it positioned there. */
+    public void get(long index, Reader reader) {
+        if (!reader.seek(index) || !reader.next()) throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+    }
+
+    /**
+     * Index of the last sample at or before {@code timestampNs}, or -1 if all are later. Binary
+     * search over the block index, then a scan of one block; assumes timestamps never go back.
+     */
+    public long indexAt(long timestampNs, Reader reader) {
+        long n = size();
+        if (n == 0) return -1;
+        long t = Math.floorDiv(timestampNs, timeQuantumNs);
+        int lo = 0, hi = blockCount - 1;
+        if (t < blockFirstT[0]) return -1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockFirstT[mid] <= t) lo = mid;
+            else hi = mid - 1;
+        }
+        long found = (long) lo * BLOCK_SIZE;
+        reader.seek(found);
+        for (long i = found; i < n && reader.next(); i++) {
+            if (reader.qt > t) break;
+            found = i;
+        }
+        return found;
+    }
+
+    // ===========================================================
+    // SEQUENTIAL DECODE
+    // ===========================================================
+
+    /** Visits samples {@code [from, to)} in order. @return how many were visited */
+    public long forEach(long from, long to, Reader reader, TrajectoryBuffer.Consumer consumer) {
+        to = Math.min(to, size());
+        if (from >= to || !reader.seek(from)) return 0;
+        long visited = 0;
+        while (visited < to - from && reader.next()) {
+            consumer.accept(reader.t(), reader.x(), reader.y());
+            visited++;
+        }
+        return visited;
+    }
+
+    public Reader newReader() {
+        return new Reader();
+    }
+
+    /**
+     * Decoding position; reusable, so reading allocates nothing. Invalidated by {@link #clear()};
+     * appends are picked up as it reaches them.
+     */
+    public final class Reader {
+        private long next;         // index of the sample next() decodes
+        private int block = -1;    // block being decoded, -1 before the first next()
+        private int inBlock;       // position within it of the sample next() decodes
+        private boolean inOpenBlock;
+        private long bit;
+        private int wT, wX, wY;
+        private boolean plainT, plainX, plainY;
+        private long qt, qx, qy, dT, dX, dY;
+
+        private Reader() {
+        }
+
+        /** Positions the reader so that {@link #next()} returns sample {@code index}. */
+        public boolean seek(long index) {
+            if (index < 0 || index > size()) return false;
+            next = index;
+            block = -1;
+            return true;
+        }
+
+        /** Decodes the next sample. @return false at the end */
+        public boolean next() {
+            if (next >= size()) return false;
+            int b = (int) (next / BLOCK_SIZE);
+            int j = (int) (next % BLOCK_SIZE);
+            if (b != block || j != inBlock || (inOpenBlock && b < sealedBlocks())) {
+                // Jumped (seek), moved into another block, or the open block was packed since:
+                // start from the block's index entry
+                enterBlock(b);
+                while (inBlock < j) step();
+            }
+            step();
+            next++;
+            return true;
+        }
+
+        private void enterBlock(int b) {
+            block = b;
+            inBlock = 0;
+            inOpenBlock = b >= sealedBlocks();
+            if (!inOpenBlock) {
+                bit = blockBitStart[b];
+                int fields = blockFields[b];
+                int f = fields & 0xFF;
+                wT = f & WIDTH_MASK;
+                plainT = (f & PLAIN_DELTA) != 0;
+                f = (fields >>> FIELD_BITS) & 0xFF;
+                wX = f & WIDTH_MASK;
+                plainX = (f & PLAIN_DELTA) != 0;
+                f = (fields >>> (2 * FIELD_BITS)) & 0xFF;
+                wY = f & WIDTH_MASK;
+                plainY = (f & PLAIN_DELTA) != 0;
+            }
+            dT = blockDeltaT[b];
+            dX = blockDeltaX[b];
+            dY = blockDeltaY[b];
+        }
+
+        private void step() {
+            int j = inBlock++;
+            if (inOpenBlock) {
+                // Open block: plain arrays
+                qt = openT[j];
+                qx = openX[j];
+                qy = openY[j];
+                return;
+            }
+            if (j == 0) {
+                qt = blockFirstT[block];
+                qx = blockFirstX[block];
+                qy = blockFirstY[block];
+                return;
+            }
+            long r = VarInts.unzigzag(readBits(bit, wT));
+            dT = plainT ? r : dT + r;
+            bit += wT;
+            r = VarInts.unzigzag(readBits(bit, wX));
+            dX = plainX ? r : dX + r;
+            bit += wX;
+            r = VarInts.unzigzag(readBits(bit, wY));
+            dY = plainY ? r : dY + r;
+            bit += wY;
+            qt += dT;
+            qx += dX;
+            qy += dY;
+        }
+
+        public long t() { return qt * timeQuantumNs; }
+        public float x() { return qx * quantum; }
+        public float y() { return qy * quantum; }
+        /** Index of the sample last returned by next(). */
+        public long index() { return next - 1; }
+    }
+
+    // ===========================================================
+    // ENCODER
+    // ===========================================================
+    private int sealedBlocks() {
+        return openCount > 0 ? blockCount - 1 : blockCount;
+    }
+
+    private void openBlock(long t, long qx, long qy) {
+        if (blockCount == blockFirstT.length) growIndex();
+        int b = blockCount++;
+        blockFirstT[b] = t;
+        blockFirstX[b] = qx;
+        blockFirstY[b] = qy;
+        blockDeltaT[b] = lastDeltaT;
+        blockDeltaX[b] = lastDeltaX;
+        blockDeltaY[b] = lastDeltaY;
+    }
+
+    private void sealBlock() {
+        int b = blockCount - 1;
+        // Widest zigzagged residual per field, both as delta-of-delta and as plain delta
+        long orT = 0, orX = 0, orY = 0, plainOrT = 0, plainOrX = 0, plainOrY = 0;
+        long pT = blockDeltaT[b], pX = blockDeltaX[b], pY = blockDeltaY[b];
+        for (int j = 1; j < BLOCK_SIZE; j++) {
+            long dT = openT[j] - openT[j - 1], dX = openX[j] - openX[j - 1], dY = openY[j] - openY[j - 1];
+            orT |= VarInts.zigzag(dT - pT);
+            orX |= VarInts.zigzag(dX - pX);
+            orY |= VarInts.zigzag(dY - pY);
+            plainOrT |= VarInts.zigzag(dT);
+            plainOrX |= VarInts.zigzag(dX);
+            plainOrY |= VarInts.zigzag(dY);
+            pT = dT;
+            pX = dX;
+            pY = dY;
+        }
+        int fT = field(orT, plainOrT), fX = field(orX, plainOrX), fY = field(orY, plainOrY);
+        blockFields[b] = fT | fX << FIELD_BITS | fY << (2 * FIELD_BITS);
+        blockBitStart[b] = bitPosition;
+
+        int wT = fT & WIDTH_MASK, wX = fX & WIDTH_MASK, wY = fY & WIDTH_MASK;
+        ensureBits((long) (BLOCK_SIZE - 1) * (wT + wX + wY));
+        // Prediction: the previous delta, or nothing for plain deltas
+        long mT = (fT & PLAIN_DELTA) != 0 ? 0 : 1, mX = (fX & PLAIN_DELTA) != 0 ? 0 : 1, mY = (fY & PLAIN_DELTA) != 0 ? 0 : 1;
+        pT = blockDeltaT[b];
+        pX = blockDeltaX[b];
+        pY = blockDeltaY[b];
+        for (int j = 1; j < BLOCK_SIZE; j++) {
+            long dT = openT[j] - openT[j - 1], dX = openX[j] - openX[j - 1], dY = openY[j] - openY[j - 1];
+            writeBits(VarInts.zigzag(dT - mT * pT), wT);
+            writeBits(VarInts.zigzag(dX - mX * pX), wX);
+            writeBits(VarInts.zigzag(dY - mY * pY), wY);
+            pT = dT;
+            pX = dX;
+            pY = dY;
+        }
+        openCount = 0;
+    }
+
+    private static int field(long deltaOfDeltaOr, long plainOr) {
+        int width = 64 - Long.numberOfLeadingZeros(deltaOfDeltaOr);
+        int plainWidth = 64 - Long.numberOfLeadingZeros(plainOr);
+        return plainWidth < width ? plainWidth | PLAIN_DELTA : width;
+    }
+
+    private void growIndex() {
+        int n = blockFirstT.length * 2;
+        blockBitStart = Arrays.copyOf(blockBitStart, n);
+        blockFirstT = Arrays.copyOf(blockFirstT, n);
+        blockFirstX = Arrays.copyOf(blockFirstX, n);
+        blockFirstY = Arrays.copyOf(blockFirstY, n);
+        blockDeltaT = Arrays.copyOf(blockDeltaT, n);
+        blockDeltaX = Arrays.copyOf(blockDeltaX, n);
+        blockDeltaY = Arrays.copyOf(blockDeltaY, n);
+        blockFields = Arrays.copyOf(blockFields, n);
+    }
+
+    /** Makes sure the pages cover {@code bits} more bits, plus one word a read may touch past the end. */
+    private void ensureBits(long bits) {
+        long lastWord = (bitPosition + bits) >>> 6;
+        int lastPage = (int) ((lastWord + 1) >>> PAGE_SHIFT);
+        if (lastPage >= pages.length) pages = Arrays.copyOf(pages, Math.max(pages.length * 2, lastPage + 1));
+        for (int p = 0; p <= lastPage; p++) {
+            if (pages[p] == null) pages[p] = new long[1 << PAGE_SHIFT];
+        }
+    }
+
+    private void writeBits(long value, int width) {
+        if (width == 0) return;
+        long word = bitPosition >>> 6;
+        int offset = (int) (bitPosition & 63);
+        pages[(int) (word >>> PAGE_SHIFT)][(int) (word & PAGE_MASK)] |= value << offset;
+        if (offset + width > 64) {
+            word++;
+            pages[(int) (word >>> PAGE_SHIFT)][(int) (word & PAGE_MASK)] |= value >>> (64 - offset);
+        }
+        bitPosition += width;
+    }
+
+    private long readBits(long position, int width) {
+        if (width == 0) return 0;
+        long word = position >>> 6;
+        int offset = (int) (position & 63);
+        long value = pages[(int) (word >>> PAGE_SHIFT)][(int) (word & PAGE_MASK)] >>> offset;
+        if (offset + width > 64) {
+            word++;
+            value |= pages[(int) (word >>> PAGE_SHIFT)][(int) (word & PAGE_MASK)] << (64 - offset);
+        }
+        return width == 64 ? value : value & ((1L << width) - 1);
+    }
+}
@@ -0,0 +1,434 @@
+package com.example.smartnav;
+
+import java.util.Arrays;
+
+/**
+ * Incremental shortest-path planner (D* Lite) on an 8-connected grid of cells, for routing from
+ * the current position to a goal over the occupancy map.
+ *
+ * The search runs backwards from the goal, so g values are costs-to-goal and a moving start
+ * only shifts the heuristic (the km offset) instead of invalidating the search tree. When cells
+ * change between blocked and free, only the affected vertices are repaired. Both make replans
+ * after a step or a newly seen wall a small fraction of a full search.
+ *
+ * Planning happens in a square window of at most {@code maxWindowCells} per side around start
+ * and goal; outside it counts as blocked. Node state lives in primitive arrays indexed by cell
+ * and is initialised lazily (per-node generation stamp), so a new goal does not clear the whole
+ * window. The open list is a binary heap of node indices with a position index per node, so
+ * key updates and removals are O(log n). {@link #plan} takes an expansion budget and can be
+ * resumed, so a long search can be spread over several frames.
+ *
+ * Moves cost 1 (straight) or sqrt(2) (diagonal) per cell; diagonals may not cut the corner of a
+ * blocked cell. Not thread-safe.
+ */
+public class PathPlanner {
+
+    /** Whether a grid cell is an obstacle. Queried once per cell per goal, then kept in sync via {@link #cellChanged}. */
+    public interface CostMap {
+        boolean isBlocked(int cellX, int cellY);
+    }
+
+    public static final int NO_GOAL = 0;
+    public static final int SEARCHING = 1; // budget ran out; call plan() again
+    public static final int DONE = 2;
+    public static final int NO_PATH = 3;
+
+    private static final float INF = Float.POSITIVE_INFINITY;
+    private static final float SQRT2 = (float) Math.sqrt(2);
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private final float cellSize;
+    private final float inverseCellSize;
+    private final int maxWindow;
+    private final CostMap costMap;
+
+    // Node state, indexed (y - originY) * width + (x - originX); valid only where seen == generation
+    private final float[] g, rhs, keyA, keyB;
+    private final int[] heapPos;
+    private final int[] seen;
+    private final boolean[] blocked;
+    private int generation = 0;
+
+    private final int[] heap;
+    private int heapSize = 0;
+
+    // Cells reported changed since the last plan(); deduplicated per node
+    private final int[] pendingStamp;
+    private int[] pending = new int[64];
+    private int pendingCount = 0;
+    private int pendingGeneration = 1;
+
+    private boolean hasGoal = false;
+    private int originX, originY, width;
+    private int goalCell, startCell;
+    private float goalX, goalY, startX, startY;
+    private float km = 0;
+    private int status = NO_GOAL;
+    private long expansions = 0;
+
+    public PathPlanner(float cellSize, int maxWindowCells, CostMap costMap) {
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1f / cellSize;
+        this.maxWindow = maxWindowCells;
+        this.costMap = costMap;
+        int n = maxWindowCells * maxWindowCells;
+        g = new float[n];
+        rhs = new float[n];
+        keyA = new float[n];
+        keyB = new float[n];
+        heapPos = new int[n];
+        seen = new int[n];
+        blocked = new boolean[n];
+        heap = new int[n];
+        pendingStamp = new int[n];
+    }
+
+    public int status() { return status; }
+    public boolean hasGoal() { return hasGoal; }
+    public float goalX() { return goalX; }
+    public float goalY() { return goalY; }
+    /** Total node expansions since construction. */
+    public long expansions() { return expansions; }
+
+    /** Cost of the current route in metres, or infinity if there is none (yet). */
+    public float pathCost() {
+        if (!hasGoal) return INF;
+        touch(startCell);
+        return g[startCell] * cellSize;
+    }
+
+    // ===========================================================
+    // INPUTS
+    // ===========================================================
+
+    /**
+     * Sets a new goal (plot frame, metres) and starts a fresh search from {@code (startX, startY)}.
+     *
+     * @return false if start and goal do not fit in one planning window
+     */
+    public boolean setGoal(float goalX, float goalY, float startX, float startY) {
+        int gx = cell(goalX), gy = cell(goalY), sx = cell(startX), sy = cell(startY);
+        if (Math.abs(gx - sx) > maxWindow - 4 || Math.abs(gy - sy) > maxWindow - 4) return false;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        hasGoal = true;
+        resetWindow(sx, sy, gx, gy);
+        this.startX = startX;
+        this.startY = startY;
+        startCell = node(sx, sy);
+        return true;
+    }
+
+    public void clearGoal() {
+        hasGoal = false;
+        status = NO_GOAL;
+        heapSize = 0;
+        pendingCount = 0;
+    }
+
+    /** Moves the start (plot frame, metres). Cheap unless it leaves the planning window. */
+    public void setStart(float x, float y) {
+        startX = x;
+        startY = y;
+        if (!hasGoal) return;
+        int sx = cell(x), sy = cell(y);
+        if (sx <= originX || sy <= originY || sx >= originX + width - 1 || sy >= originY + width - 1) {
+            // Walked out of the window: re-centre on start and goal and search again
+            if (!setGoal(goalX, goalY, x, y)) clearGoal();
+            return;
+        }
+        int s = node(sx, sy);
+        if (s == startCell) return;
+        km += heuristic(startCell, s);
+        startCell = s;
+        if (status == DONE || status == NO_PATH) status = SEARCHING;
+    }
+
+    /** The cell's blocked state may have changed; repaired on the next {@link #plan}. */
+    public void cellChanged(int cellX, int cellY) {
+        if (!hasGoal) return;
+        int lx = cellX - originX, ly = cellY - originY;
+        if (lx < 0 || ly < 0 || lx >= width || ly >= width) return;
+        int i = ly * width + lx;
+        if (seen[i] != generation || pendingStamp[i] == pendingGeneration) return; // read fresh when reached
+        pendingStamp[i] = pendingGeneration;
+        if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = i;
+    }
+
+    // ===========================================================
+    // SEARCH
+    // ===========================================================
+
+    /**
+     * Applies pending cell changes and continues the search for at most {@code maxExpansions}
+     * node expansions.
+     *
+     * @return {@link #DONE}, {@link #NO_PATH}, {@link #SEARCHING} or {@link #NO_GOAL}
+     */
+    public int plan(int maxExpansions) {
+        if (!hasGoal) return status = NO_GOAL;
+        applyPendingChanges();
+
+        int budget = maxExpansions;
+        touch(startCell);
+        while (heapSize > 0) {
+            int u = heap[0];
+            float startA = Math.min(g[startCell], rhs[startCell]) + km;
+            float startB = Math.min(g[startCell], rhs[startCell]);
+            boolean startConsistent = g[startCell] == rhs[startCell];
+            if (!lessThan(keyA[u], keyB[u], startA, startB) && startConsistent) break;
+            if (budget-- <= 0) return status = SEARCHING;
+            expansions++;
+
+            float oldA = keyA[u], oldB = keyB[u];
+            float gu = g[u], ru = rhs[u];
+            float newB = Math.min(gu, ru);
+            float newA = newB + heuristic(startCell, u) + km;
+            if (lessThan(oldA, oldB, newA, newB)) {
+                // Stale key (the start moved since it was queued): requeue with the current one
+                keyA[u] = newA;
+                keyB[u] = newB;
+                siftDown(0);
+            } else if (gu > ru) {
+                g[u] = ru;
+                removeTop();
+                updateNeighbours(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                updateNeighbours(u);
+            }
+        }
+        return status = g[startCell] == INF ? NO_PATH : DONE;
+    }
+
+    /**
+     * Writes the route from the start to the goal as (x, y) pairs in metres: the start itself,
+     * cell centres along the way and the goal.
+     *
+     * @return number of points written (0 if there is no finished route)
+     */
+    public int extractPath(float[] out) {
+        if (!hasGoal || status != DONE) return 0;
+        int maxPoints = out.length / 2;
+        int n = 0;
+        if (maxPoints == 0) return 0;
+        out[n * 2] = startX;
+        out[n * 2 + 1] = startY;
+        n++;
+        int u = startCell;
+        while (u != goalCell && n < maxPoints - 1) {
+            int best = -1;
+            float bestCost = INF;
+            int ux = u % width, uy = u / width;
+            for (int d = 0; d < 8; d++) {
+                float c = edgeCost(ux, uy, d);
+                if (c == INF) continue;
+                int v = u + DY[d] * width + DX[d];
+                touch(v);
+                if (c + g[v] < bestCost) {
+                    bestCost = c + g[v];
+                    best = v;
+                }
+            }
+            if (best < 0) break;
+            u = best;
+            if (u != goalCell) {
+                out[n * 2] = (originX + u % width + 0.5f) * cellSize;
+                out[n * 2 + 1] = (originY + u / width + 0.5f) * cellSize;
+                n++;
+            }
+        }
+        out[n * 2] = goalX;
+        out[n * 2 + 1] = goalY;
+        return n + 1;
+    }
+
+    private void resetWindow(int sx, int sy, int gx, int gy) {
+        width = maxWindow;
+        originX = (sx + gx) / 2 - width / 2;
+        originY = (sy + gy) / 2 - width / 2;
+        if (++generation == 0) {
+            // Stamp wrapped: every stale entry could look current again
+            Arrays.fill(seen, 0);
+            generation = 1;
+        }
+        pendingCount = 0;
+        pendingGeneration++;
+        heapSize = 0;
+        km = 0;
+        goalCell = node(gx, gy);
+        touch(goalCell);
+        rhs[goalCell] = 0;
+        insert(goalCell, heuristic(node(sx, sy), goalCell), 0);
+        status = SEARCHING;
+    }
+
+    private void applyPendingChanges() {
+        for (int p = 0; p < pendingCount; p++) {
+            int i = pending[p];
+            boolean nowBlocked = costMap.isBlocked(originX + i % width, originY + i / width);
+            if (nowBlocked == blocked[i]) continue;
+            blocked[i] = nowBlocked;
+            // Edges into i and diagonals cutting its corners changed: repair i and its neighbours
+            updateVertex(i);
+            updateNeighbours(i);
+        }
+        if (pendingCount > 0 && (status == DONE || status == NO_PATH)) status = SEARCHING;
+        pendingCount = 0;
+        pendingGeneration++;
+    }
+
+    private void updateNeighbours(int u) {
+        int ux = u % width, uy = u / width;
+        for (int d = 0; d < 8; d++) {
+            int x = ux + DX[d], y = uy + DY[d];
+            if (x < 0 || y < 0 || x >= width || y >= width) continue;
+            updateVertex(y * width + x);
+        }
+    }
+
+    private void updateVertex(int u) {
+        touch(u);
+        if (u != goalCell) {
+            float best = INF;
+            int ux = u % width, uy = u / width;
+            for (int d = 0; d < 8; d++) {
+                float c = edgeCost(ux, uy, d);
+                if (c == INF) continue;
+                int v = u + DY[d] * width + DX[d];
+                touch(v);
+                float cost = c + g[v];
+                if (cost < best) best = cost;
+            }
+            rhs[u] = best;
+        }
+        float gu = g[u], ru = rhs[u];
+        if (gu != ru) {
+            float b = Math.min(gu, ru);
+            float a = b + heuristic(startCell, u) + km;
+            if (heapPos[u] >= 0) update(u, a, b);
+            else insert(u, a, b);
+        } else if (heapPos[u] >= 0) {
+            remove(u);
+        }
+    }
+
+    /** Cost of moving from local cell (ux, uy) in direction d, or INF. */
+    private float edgeCost(int ux, int uy, int d) {
+        int x = ux + DX[d], y = uy + DY[d];
+        if (x < 0 || y < 0 || x >= width || y >= width) return INF;
+        if (isBlocked(y * width + x)) return INF;
+        if (d < 4) return 1;
+        // No cutting corners: both orthogonal cells must be free
+        if (isBlocked(uy * width + x) || isBlocked(y * width + ux)) return INF;
+        return SQRT2;
+    }
+
+    private boolean isBlocked(int i) {
+        touch(i);
+        return blocked[i];
+    }
+
+    /** Lazily initialises a node for the current generation. */
+    private void touch(int i) {
+        if (seen[i] == generation) return;
+        seen[i] = generation;
+        g[i] = INF;
+        rhs[i] = INF;
+        heapPos[i] = -1;
+        blocked[i] = costMap.isBlocked(originX + i % width, originY + i / width);
+    }
+
+    /** Octile distance in cells. */
+    private float heuristic(int a, int b) {
+        int dx = Math.abs(a % width - b % width), dy = Math.abs(a / width - b / width);
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v * inverseCellSize);
+    }
+
+    private int node(int cellX, int cellY) {
+        return (cellY - originY) * width + (cellX - originX);
+    }
+
+    private static boolean lessThan(float a1, float b1, float a2, float b2) {
+        return a1 < a2 || (a1 == a2 && b1 < b2);
+    }
+
+    // ===========================================================
+    // INDEXED BINARY HEAP
+    // ===========================================================
+    private void insert(int u, float a, float b) {
+        keyA[u] = a;
+        keyB[u] = b;
+        heap[heapSize] = u;
+        heapPos[u] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void update(int u, float a, float b) {
+        boolean decreased = lessThan(a, b, keyA[u], keyB[u]);
+        keyA[u] = a;
+        keyB[u] = b;
+        if (decreased) siftUp(heapPos[u]);
+        else siftDown(heapPos[u]);
+    }
+
+    private void removeTop() {
+        remove(heap[0]);
+    }
+
+    private void remove(int u) {
+        int pos = heapPos[u];
+        heapPos[u] = -1;
+        int last = heap[--heapSize];
+        if (pos == heapSize) return;
+        heap[pos] = last;
+        heapPos[last] = pos;
+        siftUp(pos);
+        siftDown(heapPos[last]);
+    }
+
+    private void siftUp(int pos) {
+        int u = heap[pos];
+        float a = keyA[u], b = keyB[u];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = heap[parent];
+            if (!lessThan(a, b, keyA[p], keyB[p])) break;
+            heap[pos] = p;
+            heapPos[p] = pos;
+            pos = parent;
+        }
+        heap[pos] = u;
+        heapPos[u] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int u = heap[pos];
+        float a = keyA[u], b = keyB[u];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize) break;
+            int c = heap[child];
+            if (child + 1 < heapSize) {
+                int r = heap[child + 1];
+                if (lessThan(keyA[r], keyB[r], keyA[c], keyB[c])) {
+                    child++;
+                    c = r;
+                }
+            }
+            if (!lessThan(keyA[c], keyB[c], a, b)) break;
+            heap[pos] = c;
+            heapPos[c] = pos;
+            pos = child;
+        }
+        heap[pos] = u;
+        heapPos[u] = pos;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.smartnav;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency histograms and event counters for the sensor and frame pipelines.
+ *
+ * Recording is lock-free and allocation-free, so it can sit on the sensor and GL hot paths.
+ * Formatting (overlay text, file dumps) allocates and belongs on the UI thread.
+ */
+public class PipelineMetrics {
+
+    // Stages (latency histograms)
+    public static final int STAGE_AR_UPDATE = 0;
+    public static final int STAGE_BACKGROUND = 1;
+    public static final int STAGE_POINT_CLOUD = 2;
+    public static final int STAGE_FRAME = 3;
+    public static final int STAGE_SENSOR_TO_UI = 4;
+    public static final int STAGE_SENSOR_INTERVAL = 5;
+    public static final int STAGE_SENSOR_BATCH = 6;
+    public static final int STAGE_OCCUPANCY = 7;
+    public static final int STAGE_PLANNER = 8;
+    public static final int STAGE_VOXEL_MERGE = 9;    // GL thread, new clouds into the VoxelMap
+    public static final int STAGE_OCCUPANCY_COPY = 10; // GL thread, cloud hand-off to the map thread
+    public static final int STAGE_TELEMETRY = 11;      // GL thread, cloud delta to the telemetry lane
+    public static final int STAGE_POSE = 12;           // GL thread, camera matrices + SLAM pose publish
+    private static final String[] STAGE_NAMES = {
+            "ar.update", "background", "pointcloud", "frame", "sensor->ui", "sensor.dt", "sensor.batch",
+            "occupancy", "planner", "voxel.merge", "occ.copy", "telemetry", "pose"
+    };
+
+    // Counters
+    public static final int COUNT_SENSOR_EVENTS = 0;
+    public static final int COUNT_AR_FRAMES_NEW = 1;
+    public static final int COUNT_AR_FRAMES_REPEATED = 2;
+    public static final int COUNT_DRAW_EXCEPTIONS = 3;
+    public static final int COUNT_SENSOR_WAKEUPS = 4; // sensor deliveries more than 2 ms apart
+    public static final int COUNT_SENSOR_BATCHES = 5;
+    public static final int COUNT_CLOUDS_DROPPED = 6; // occupancy updates skipped, map thread busy
+    private static final String[] COUNTER_NAMES = {
+            "sensor.events", "ar.frames.new", "ar.frames.repeated", "draw.exceptions",
+            "sensor.wakeups", "sensor.batches", "clouds.dropped"
+    };
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+
+    public PipelineMetrics() {
+        for (int i = 0; i < stages.length; i++) stages[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    public void increment(int counter) {
+        counters.incrementAndGet(counter);
+    }
+
+    public LatencyHistogram stage(int stage) {
+        return stages[stage];
+    }
+
+    public long counter(int counter) {
+        return counters.get(counter);
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : stages) h.reset();
+        for (int i = 0; i < COUNTER_NAMES.length; i++) counters.set(i, 0);
+    }
+
+    /** Compact p50/p99 table for the on-screen overlay. */
+    public void formatOverlay(StringBuilder out) {
+        out.setLength(0);
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram h = stages[i];
+            out.append(String.format(Locale.US, "%-11s p50 %7.2f  p99 %7.2f ms  n=%d%n",
+                    STAGE_NAMES[i], h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.count()));
+        }
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            if (i > 0) out.append(i % 3 == 0 ? "\n" : "  ");
+            out.append(COUNTER_NAMES[i]).append(' ').append(counters.get(i));
+        }
+    }
+
+    /** Full dump (one stage per line) for comparing devices and builds. */
+    public void dump(Writer out) throws IOException {
+        out.write("stage,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram h = stages[i];
+            out.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                    STAGE_NAMES[i], h.count(), h.mean() / 1e6, h.percentile(50) / 1e6,
+                    h.percentile(90) / 1e6, h.percentile(99) / 1e6, h.max() / 1e6));
+        }
+        out.write("counter,value\n");
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            out.write(COUNTER_NAMES[i] + "," + counters.get(i) + "\n");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.smartnav;
+
+/**
+ * Lock-free single-writer handoff of the latest 2D pose between threads (seqlock).
+ *
+ * The writer (e.g. the GL thread) publishes at its own rate and never waits; readers (sensor
+ * thread, UI frame callback) copy the newest value into their own {@link Sample} and retry if a
+ * write raced with the copy. Only the latest value is kept: readers that fall behind skip
+ * intermediate poses, which is what pose consumers want.
+ */
+public class PoseHandoff {
+
+    /** Reader-owned copy of a published pose. */
+    public static final class Sample {
+        public long version;
+        public long timestampNs;
+        public float x, y;
+        public int trackingState;
+    }
+
+    // Odd while a write is in progress. Fields are volatile so the retry check is sound under the JMM.
+    private volatile long sequence = 0;
+    private volatile long timestampNs;
+    private volatile float x, y;
+    private volatile int trackingState;
+
+    /** Writer thread only. */
+    public void publish(long timestampNs, float x, float y, int trackingState) {
+        long seq = sequence;
+        sequence = seq + 1;
+        this.timestampNs = timestampNs;
+        this.x = x;
+        this.y = y;
+        this.trackingState = trackingState;
+        sequence = seq + 2;
+    }
+
+    /** Number of completed publishes; cheap way for readers to detect new data. */
+    public long version() {
+        return sequence >>> 1;
+    }
+
+    /**
+     * Copies the newest pose into {@code out} if it is newer than {@code out.version}.
+     *
+     * @return true if {@code out} was updated
+     */
+    public boolean readIfNewer(Sample out) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            long version = before >>> 1;
+            if (version == out.version) return false;
+            long t = timestampNs;
+            float px = x, py = y;
+            int state = trackingState;
+            if (sequence != before) continue;
+            out.version = version;
+            out.timestampNs = t;
+            out.x = px;
+            out.y = py;
+            out.trackingState = state;
+            return true;
+        }
+    }
+}
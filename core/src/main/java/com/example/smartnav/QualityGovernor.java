@@ -0,0 +1,175 @@
+package com.example.smartnav;
+
+/**
+ * Picks a rendering / sensing quality level from measured frame timing and the device thermal
+ * status, so a long session backs off before the OS throttles it.
+ *
+ * Level 0 is full quality; each level up lowers the point budget and point size, updates the
+ * point cloud less often, redraws PathView less often and asks for a lower sensor rate (see the
+ * per-level getters). Plain Java state machine with the clock passed in, so it can be replayed
+ * against recorded frame timings in tests. Not thread-safe; MainActivity drives it from the GL
+ * thread.
+ *
+ * Frames are judged in windows of {@link #WINDOW_NS}:
+ * <ul>
+ *   <li>a frame is late if it came more than 1.5 budgets after the previous one (a missed vsync),
+ *       or its own work took longer than the budget;</li>
+ *   <li>a frame is calm if it is on time and its work took less than half the budget.</li>
+ * </ul>
+ * More than {@link #OVERLOAD_FRACTION} late frames in a window steps one level down in quality.
+ * Stepping back up takes {@code recoveryWindows} calm windows in a row (dead band in between:
+ * neither). If quality has to drop again within {@link #RELAPSE_NS} of a recovery, the number of
+ * calm windows needed doubles, so a load right at the edge settles instead of oscillating.
+ * Every change is followed by at least {@link #MIN_DWELL_NS} at the new level.
+ *
+ * Thermal status (PowerManager.THERMAL_STATUS_*) sets a floor: LIGHT keeps at least level 1,
+ * MODERATE level 2, SEVERE and worse level 3. Reaching a floor applies at once; when the
+ * device cools down, quality comes back through calm windows like any other recovery.
+ */
+public class QualityGovernor {
+
+    public static final int LEVEL_COUNT = 4;
+
+    // PowerManager.THERMAL_STATUS_* values
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    public static final int REASON_NONE = 0;
+    public static final int REASON_FRAME_TIME = 1;
+    public static final int REASON_THERMAL = 2;
+    public static final int REASON_RECOVERED = 3;
+
+    public static final long WINDOW_NS = 1_000_000_000L;
+    public static final float OVERLOAD_FRACTION = 0.1f;
+    public static final float CALM_FRACTION = 0.95f;
+    public static final long MIN_DWELL_NS = 2_000_000_000L;
+    public static final long RELAPSE_NS = 30_000_000_000L;
+    public static final int BASE_RECOVERY_WINDOWS = 5;
+    public static final int MAX_RECOVERY_WINDOWS = 300; // at worst, try a better level every 5 min
+    private static final int MIN_WINDOW_FRAMES = 10;
+
+    // Per level
+    private static final int[] MAX_CLOUD_POINTS = {20_000, 8_000, 3_000, 1_000};
+    private static final float[] POINT_SIZE_PX = {22f, 16f, 12f, 8f};
+    private static final long[] CLOUD_UPDATE_INTERVAL_NS = {0, 100_000_000L, 250_000_000L, 500_000_000L};
+    private static final long[] PATH_REDRAW_INTERVAL_MS = {0, 33, 66, 200};
+    private static final int[] SENSOR_PERIOD_US = {0, 5_000, 10_000, 20_000}; // 0 = SENSOR_DELAY_FASTEST
+    private static final int[] THERMAL_FLOOR = {0, 1, 2, 3};
+
+    private final long frameBudgetNs;
+
+    private int level = 0;
+    private int reason = REASON_NONE;
+    private int thermalStatus = THERMAL_NONE;
+    private long lastChangeNs = Long.MIN_VALUE / 2;
+    private long lastRecoveryNs = Long.MIN_VALUE / 2;
+    private int recoveryWindows = BASE_RECOVERY_WINDOWS;
+    private int calmWindows = 0;
+    private long changes = 0;
+
+    // Current window
+    private long lastFrameNs = 0;
+    private long windowStartNs = 0;
+    private int frames, late, calm;
+
+    /** @param frameBudgetNs one display refresh period, e.g. 16_666_667 at 60 Hz */
+    public QualityGovernor(long frameBudgetNs) {
+        this.frameBudgetNs = frameBudgetNs;
+    }
+
+    /**
+     * One rendered frame.
+     *
+     * @param nowNs  when the frame started (monotonic clock)
+     * @param workNs how long the frame's own work took
+     * @return true if the level changed
+     */
+    public boolean onFrame(long nowNs, long workNs) {
+        long last = lastFrameNs;
+        lastFrameNs = nowNs;
+        if (last == 0) {
+            windowStartNs = nowNs;
+            return false;
+        }
+        long interval = nowNs - last;
+        if (interval > 4 * WINDOW_NS) {
+            // Paused or backgrounded: nothing was rendered, so nothing to judge
+            resetWindow(nowNs);
+            return false;
+        }
+        frames++;
+        boolean isLate = interval * 2 > frameBudgetNs * 3 || workNs > frameBudgetNs;
+        if (isLate) late++;
+        else if (workNs * 2 < frameBudgetNs) calm++;
+
+        if (nowNs - windowStartNs < WINDOW_NS || frames < MIN_WINDOW_FRAMES) return false;
+        boolean overloaded = late > frames * OVERLOAD_FRACTION;
+        boolean wasCalm = calm >= frames * CALM_FRACTION;
+        resetWindow(nowNs);
+
+        if (overloaded) {
+            calmWindows = 0;
+            if (level == LEVEL_COUNT - 1 || nowNs - lastChangeNs < MIN_DWELL_NS) return false;
+            // Dropped again soon after recovering: the level above is not sustainable yet
+            if (nowNs - lastRecoveryNs < RELAPSE_NS) recoveryWindows = Math.min(MAX_RECOVERY_WINDOWS, recoveryWindows * 2);
+            else recoveryWindows = BASE_RECOVERY_WINDOWS;
+            return setLevel(nowNs, level + 1, REASON_FRAME_TIME);
+        }
+        if (!wasCalm) {
+            calmWindows = 0;
+            return false;
+        }
+        calmWindows++;
+        if (calmWindows < recoveryWindows || level <= thermalFloor() || nowNs - lastChangeNs < MIN_DWELL_NS) return false;
+        calmWindows = 0;
+        lastRecoveryNs = nowNs;
+        return setLevel(nowNs, level - 1, REASON_RECOVERED);
+    }
+
+    /** @param status a PowerManager.THERMAL_STATUS_* value. @return true if the level changed */
+    public boolean onThermalStatus(long nowNs, int status) {
+        thermalStatus = status;
+        int floor = thermalFloor();
+        if (level >= floor) return false;
+        calmWindows = 0;
+        return setLevel(nowNs, floor, REASON_THERMAL);
+    }
+
+    private int thermalFloor() {
+        return THERMAL_FLOOR[Math.max(0, Math.min(thermalStatus, THERMAL_FLOOR.length - 1))];
+    }
+
+    private boolean setLevel(long nowNs, int newLevel, int why) {
+        level = newLevel;
+        reason = why;
+        lastChangeNs = nowNs;
+        changes++;
+        return true;
+    }
+
+    private void resetWindow(long nowNs) {
+        windowStartNs = nowNs;
+        frames = late = calm = 0;
+    }
+
+    public int level() { return level; }
+    /** Why the level last changed, one of REASON_*. */
+    public int reason() { return reason; }
+    public long changes() { return changes; }
+    public int thermalStatus() { return thermalStatus; }
+    public int recoveryWindows() { return recoveryWindows; }
+
+    public int maxCloudPoints() { return MAX_CLOUD_POINTS[level]; }
+    public float pointSizePx() { return POINT_SIZE_PX[level]; }
+    /** Minimum time between point-cloud uploads / voxel merges; 0 = every new cloud. */
+    public long cloudUpdateIntervalNs() { return CLOUD_UPDATE_INTERVAL_NS[level]; }
+    /** Minimum time between PathView redraws for track updates; 0 = every update. */
+    public long pathRedrawIntervalMs() { return PATH_REDRAW_INTERVAL_MS[level]; }
+    /** Requested sensor sampling period; 0 = SENSOR_DELAY_FASTEST. */
+    public int sensorPeriodUs() { return SENSOR_PERIOD_US[level]; }
+
+    public static long pathRedrawIntervalMs(int level) { return PATH_REDRAW_INTERVAL_MS[level]; }
+    public static int sensorPeriodUs(int level) { return SENSOR_PERIOD_US[level]; }
+}
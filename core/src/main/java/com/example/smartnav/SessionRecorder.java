@@ -0,0 +1,219 @@
+package com.example.smartnav;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends timestamped IMU samples, rotation vectors, tracking state and SLAM poses to a compact
+ * binary log, for offline replay with {@link SessionReplayer}.
+ *
+ * Each producing thread (sensor thread, GL thread) gets its own {@link Lane} and fills a
+ * preallocated direct buffer. Full buffers are handed to a writer thread that drains them into a
+ * FileChannel, so the hot threads never touch the file. If the writer falls behind and the pool
+ * runs dry, records are dropped and counted instead of blocking the producer.
+ *
+ * File layout (little-endian):
+ * <pre>
+ *   header : int MAGIC, short VERSION, short reserved
+ *   block  : byte lane, int payloadLength, payload
+ *   record : byte type, long timestampNs, type-specific floats/ints (see TYPE_*)
+ * </pre>
+ * Records within a block are in timestamp order; blocks of different lanes interleave.
+ */
+public class SessionRecorder implements Closeable {
+
+    public static final int MAGIC = 0x53_4E_41_56; // "SNAV"
+    public static final short VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 5;
+
+    static final byte TYPE_ACCEL = 1;     // float ax, ay, az (device frame, m/s^2)
+    static final byte TYPE_ROTATION = 2;  // float x, y, z, w (unit quaternion)
+    static final byte TYPE_TRACKING = 3;  // int TrackingState ordinal
+    static final byte TYPE_POSE = 4;      // float tx, ty, tz, qx, qy, qz, qw (ARCore world)
+    static final int MAX_RECORD_SIZE = 1 + 8 + 7 * 4;
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+    private final ArrayBlockingQueue<ByteBuffer> filledBuffers;
+    private final Thread writerThread;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private volatile IOException writeError;
+
+    private final Lane[] lanes = new Lane[Byte.MAX_VALUE];
+    private int laneCount = 0;
+    private boolean closed = false;
+
+    public SessionRecorder(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_POOL_SIZE);
+    }
+
+    public SessionRecorder(File file, int bufferSize, int poolSize) throws IOException {
+        // minSdk 24: FileChannel.open(Path) and File.toPath() only exist from API 26
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+        while (header.hasRemaining()) channel.write(header);
+
+        freeBuffers = new ArrayBlockingQueue<>(poolSize);
+        filledBuffers = new ArrayBlockingQueue<>(poolSize + 1);
+        for (int i = 0; i < poolSize; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        writerThread = new Thread(this::writeLoop, "SessionRecorder");
+        writerThread.start();
+    }
+
+    /** Creates a lane for one producing thread. Lanes must not be shared between threads. */
+    public synchronized Lane newLane() {
+        if (closed) throw new IllegalStateException("Recorder is closed");
+        if (laneCount == lanes.length) throw new IllegalStateException("Too many lanes");
+        Lane lane = new Lane((byte) laneCount);
+        lanes[laneCount++] = lane;
+        return lane;
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /** Flushes every lane, waits for the writer to drain and closes the file. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            for (int i = 0; i < laneCount; i++) lanes[i].finish();
+        }
+        try {
+            filledBuffers.put(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+        if (writeError != null) throw writeError;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer buffer = filledBuffers.take();
+                if (buffer == END_OF_STREAM) return;
+                try {
+                    if (writeError == null) {
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    // Keep recycling buffers so producers keep running; close() reports it
+                    writeError = e;
+                }
+                buffer.clear();
+                freeBuffers.offer(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===========================================================
+    // LANE: one per producing thread
+    // ===========================================================
+    public final class Lane {
+        private final byte id;
+        private ByteBuffer current;
+        private boolean finished = false;
+
+        private Lane(byte id) {
+            this.id = id;
+        }
+
+        // Methods are synchronized only so close() can flush safely; the lock is uncontended
+        // otherwise and costs next to nothing on the owning thread.
+
+        public synchronized void recordAccel(long timestampNs, float ax, float ay, float az) {
+            ByteBuffer b = reserve();
+            if (b == null) return;
+            b.put(TYPE_ACCEL).putLong(timestampNs).putFloat(ax).putFloat(ay).putFloat(az);
+        }
+
+        public synchronized void recordRotation(long timestampNs, float x, float y, float z, float w) {
+            ByteBuffer b = reserve();
+            if (b == null) return;
+            b.put(TYPE_ROTATION).putLong(timestampNs).putFloat(x).putFloat(y).putFloat(z).putFloat(w);
+        }
+
+        public synchronized void recordTrackingState(long timestampNs, int state) {
+            ByteBuffer b = reserve();
+            if (b == null) return;
+            b.put(TYPE_TRACKING).putLong(timestampNs).putInt(state);
+        }
+
+        public synchronized void recordPose(long timestampNs, float tx, float ty, float tz,
+                                            float qx, float qy, float qz, float qw) {
+            ByteBuffer b = reserve();
+            if (b == null) return;
+            b.put(TYPE_POSE).putLong(timestampNs).putFloat(tx).putFloat(ty).putFloat(tz)
+                    .putFloat(qx).putFloat(qy).putFloat(qz).putFloat(qw);
+        }
+
+        /** Hands the partially filled buffer to the writer. */
+        public synchronized void flush() {
+            if (current != null && current.position() > BLOCK_HEADER_SIZE) {
+                submit(current);
+                current = null;
+            }
+        }
+
+        private synchronized void finish() {
+            flush();
+            if (current != null) {
+                current.clear();
+                freeBuffers.offer(current);
+                current = null;
+            }
+            finished = true;
+        }
+
+        /** Returns a buffer with room for one record, or null if the record has to be dropped. */
+        private ByteBuffer reserve() {
+            if (finished) return null;
+            ByteBuffer b = current;
+            if (b != null && b.remaining() < MAX_RECORD_SIZE) {
+                submit(b);
+                b = current = null;
+            }
+            if (b == null) {
+                b = freeBuffers.poll();
+                if (b == null) {
+                    droppedRecords.incrementAndGet();
+                    return null;
+                }
+                b.put(id).putInt(0); // block header, length patched on submit
+                current = b;
+            }
+            return b;
+        }
+
+        private void submit(ByteBuffer b) {
+            b.putInt(1, b.position() - BLOCK_HEADER_SIZE);
+            b.flip();
+            // Cannot fail: the queue is larger than the pool
+            filledBuffers.offer(b);
+        }
+    }
+}
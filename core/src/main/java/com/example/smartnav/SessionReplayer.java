@@ -0,0 +1,190 @@
+package com.example.smartnav;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Replays a log written by {@link SessionRecorder} through memory mapping.
+ *
+ * Blocks from the different recorder lanes are merged back into one stream ordered by
+ * timestamp, so the listener sees samples in the same order the device produced them. Replay
+ * runs as fast as the listener allows; nothing is allocated per record.
+ */
+public class SessionReplayer {
+
+    /** Receives replayed records; mirrors the recorder's record types. */
+    public interface Listener {
+        void onAccel(long timestampNs, float ax, float ay, float az);
+        void onRotation(long timestampNs, float x, float y, float z, float w);
+        void onTrackingState(long timestampNs, int state);
+        void onPose(long timestampNs, float tx, float ty, float tz, float qx, float qy, float qz, float qw);
+    }
+
+    private final MappedByteBuffer data;
+    private final LaneCursor[] cursors;
+
+    public SessionReplayer(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Session log too large to map: " + file);
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.limit() < SessionRecorder.FILE_HEADER_SIZE || data.getInt(0) != SessionRecorder.MAGIC) {
+            throw new IOException("Not a session log: " + file);
+        }
+        short version = data.getShort(4);
+        if (version != SessionRecorder.VERSION) throw new IOException("Unsupported session log version " + version);
+
+        cursors = indexBlocks();
+    }
+
+    /** Total number of records in the log. */
+    public long countRecords() {
+        long count = 0;
+        for (LaneCursor cursor : cursors) {
+            for (int b = 0; b < cursor.blockCount; b++) {
+                int pos = cursor.blockStart[b];
+                int end = cursor.blockEnd[b];
+                while (pos < end) {
+                    pos += recordSize(data.get(pos));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Feeds every record to the listener in timestamp order.
+     *
+     * @return number of records replayed
+     */
+    public long replay(Listener listener) {
+        for (LaneCursor cursor : cursors) cursor.rewind();
+
+        long count = 0;
+        while (true) {
+            LaneCursor next = null;
+            long nextTs = Long.MAX_VALUE;
+            for (LaneCursor cursor : cursors) {
+                if (!cursor.hasNext()) continue;
+                long ts = cursor.peekTimestamp(data);
+                if (ts < nextTs) {
+                    next = cursor;
+                    nextTs = ts;
+                }
+            }
+            if (next == null) return count;
+            next.pos = dispatch(next.pos, listener);
+            next.advanceBlockIfDone();
+            count++;
+        }
+    }
+
+    private int dispatch(int pos, Listener listener) {
+        MappedByteBuffer d = data;
+        byte type = d.get(pos);
+        long ts = d.getLong(pos + 1);
+        int p = pos + 9;
+        switch (type) {
+            case SessionRecorder.TYPE_ACCEL:
+                listener.onAccel(ts, d.getFloat(p), d.getFloat(p + 4), d.getFloat(p + 8));
+                break;
+            case SessionRecorder.TYPE_ROTATION:
+                listener.onRotation(ts, d.getFloat(p), d.getFloat(p + 4), d.getFloat(p + 8), d.getFloat(p + 12));
+                break;
+            case SessionRecorder.TYPE_TRACKING:
+                listener.onTrackingState(ts, d.getInt(p));
+                break;
+            case SessionRecorder.TYPE_POSE:
+                listener.onPose(ts, d.getFloat(p), d.getFloat(p + 4), d.getFloat(p + 8),
+                        d.getFloat(p + 12), d.getFloat(p + 16), d.getFloat(p + 20), d.getFloat(p + 24));
+                break;
+            default:
+                throw new IllegalStateException("Corrupt session log: record type " + type + " at " + pos);
+        }
+        return pos + recordSize(type);
+    }
+
+    static int recordSize(byte type) {
+        switch (type) {
+            case SessionRecorder.TYPE_ACCEL: return 9 + 3 * 4;
+            case SessionRecorder.TYPE_ROTATION: return 9 + 4 * 4;
+            case SessionRecorder.TYPE_TRACKING: return 9 + 4;
+            case SessionRecorder.TYPE_POSE: return 9 + 7 * 4;
+            default: throw new IllegalStateException("Corrupt session log: record type " + type);
+        }
+    }
+
+    private LaneCursor[] indexBlocks() throws IOException {
+        LaneCursor[] byLane = new LaneCursor[Byte.MAX_VALUE];
+        int laneCount = 0;
+        int pos = SessionRecorder.FILE_HEADER_SIZE;
+        int limit = data.limit();
+        while (pos + SessionRecorder.BLOCK_HEADER_SIZE <= limit) {
+            int lane = data.get(pos);
+            int length = data.getInt(pos + 1);
+            int start = pos + SessionRecorder.BLOCK_HEADER_SIZE;
+            if (lane < 0 || length < 0 || start + length > limit) {
+                throw new IOException("Corrupt session log: bad block at " + pos);
+            }
+            if (byLane[lane] == null) {
+                byLane[lane] = new LaneCursor();
+                laneCount++;
+            }
+            byLane[lane].addBlock(start, start + length);
+            pos = start + length;
+        }
+
+        LaneCursor[] result = new LaneCursor[laneCount];
+        int i = 0;
+        for (LaneCursor cursor : byLane) if (cursor != null) result[i++] = cursor;
+        return result;
+    }
+
+    private static final class LaneCursor {
+        int[] blockStart = new int[16];
+        int[] blockEnd = new int[16];
+        int blockCount = 0;
+
+        int block;
+        int pos;
+
+        void addBlock(int start, int end) {
+            if (start == end) return;
+            if (blockCount == blockStart.length) {
+                blockStart = Arrays.copyOf(blockStart, blockCount * 2);
+                blockEnd = Arrays.copyOf(blockEnd, blockCount * 2);
+            }
+            blockStart[blockCount] = start;
+            blockEnd[blockCount] = end;
+            blockCount++;
+        }
+
+        void rewind() {
+            block = 0;
+            pos = blockCount > 0 ? blockStart[0] : 0;
+        }
+
+        boolean hasNext() {
+            return block < blockCount;
+        }
+
+        long peekTimestamp(MappedByteBuffer data) {
+            return data.getLong(pos + 1);
+        }
+
+        void advanceBlockIfDone() {
+            if (pos >= blockEnd[block]) {
+                block++;
+                if (block < blockCount) pos = blockStart[block];
+            }
+        }
+    }
+}
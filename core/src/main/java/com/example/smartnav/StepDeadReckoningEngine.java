@@ -0,0 +1,207 @@
+package com.example.smartnav;
+
+/**
+ * Pedestrian dead reckoning by step detection: counts steps in the vertical acceleration, sizes
+ * each one with the Weinberg stride model and moves along the heading from the rotation vector.
+ *
+ * Unlike {@link DeadReckoningEngine} nothing is integrated twice, so sensor noise does not grow
+ * into position error, and 50 Hz input is plenty: a step is a 1.5-2.5 Hz bounce. The position
+ * only moves when a step completes.
+ *
+ * Step detector, per sample: world-up acceleration through a one-pole low-pass; a step is the
+ * filtered signal rising above {@link #MIN_PEAK} and falling back through zero, at most one per
+ * {@link #MIN_STEP_INTERVAL_NS}. Stride = K * (peak - valley)^(1/4) (Weinberg), from the peak of
+ * this step and the valley before it. Heading is the device forward axis, averaged in the
+ * horizontal plane over the samples of the step. Unless {@link #setForwardAxis} fixes it, the
+ * forward axis is chosen per step: the top edge (+Y) for a phone held flat, the camera look
+ * axis (-Z) for one held upright, whichever lies more horizontal over the step.
+ */
+public class StepDeadReckoningEngine implements DeadReckoner {
+
+    /** Weinberg constant for the filtered signal; calibrate per person for better distances. */
+    public static final float DEFAULT_WEINBERG_K = 0.45f;
+    public static final float MIN_PEAK = 1.0f;                    // m/s^2, filtered vertical
+    public static final long MIN_STEP_INTERVAL_NS = 250_000_000L; // 4 steps/s
+    private static final long MAX_STEP_INTERVAL_NS = 1_000_000_000L;
+    private static final float MAX_STRIDE = 1.4f;                 // m
+    private static final float CUTOFF_HZ = 3f;
+    private static final float NANO_TO_SEC = 1.0f / 1_000_000_000.0f;
+    private static final float RC = 1f / (2 * (float) Math.PI * CUTOFF_HZ);
+
+    private final float weinbergK;
+    private final float[] rotation = new float[9];
+    private boolean hasRotation = false;
+    private float forwardX = 0, forwardY = 1, forwardZ = 0;
+    private boolean autoForward = true;
+
+    private float posX, posY;
+    private float worldAccelX, worldAccelY;
+    private long lastTimestamp = 0;
+
+    // Detector state
+    private float filtered;
+    private boolean abovePeak;
+    private float cycleMax, cycleMin;
+    private long lastStepTimestamp;
+    private float headingSumX, headingSumY;
+    private float lookSumX, lookSumY; // -Z, the camera look axis, while the axis is automatic
+    private float headingX, headingY = 1;
+
+    private long stepCount;
+    private float lastStride, distance;
+
+    public StepDeadReckoningEngine() {
+        this(DEFAULT_WEINBERG_K);
+    }
+
+    public StepDeadReckoningEngine(float weinbergK) {
+        this.weinbergK = weinbergK;
+        reset();
+    }
+
+    /**
+     * Fixes the device axis the user walks along. By default it is picked per step between +Y
+     * (phone flat, top edge ahead) and -Z (phone upright, back camera ahead, the pose ARCore
+     * needs); upright, +Y points almost straight up and gives no usable heading.
+     */
+    public void setForwardAxis(float x, float y, float z) {
+        forwardX = x;
+        forwardY = y;
+        forwardZ = z;
+        autoForward = false;
+    }
+
+    @Override
+    public void onRotationVector(float x, float y, float z, float w) {
+        DeadReckoningEngine.rotationMatrix(x, y, z, w, rotation, 0);
+        hasRotation = true;
+    }
+
+    /** @return true if a step completed and the position moved */
+    @Override
+    public boolean onLinearAcceleration(long timestampNs, float ax, float ay, float az) {
+        if (!hasRotation) {
+            lastTimestamp = timestampNs;
+            return false;
+        }
+        float[] r = rotation;
+        worldAccelX = r[0] * ax + r[1] * ay + r[2] * az;
+        worldAccelY = r[3] * ax + r[4] * ay + r[5] * az;
+        return detect(timestampNs, r[6] * ax + r[7] * ay + r[8] * az);
+    }
+
+    /**
+     * Same as {@link #onLinearAcceleration} for a sample already in East, North, Up. The heading
+     * still comes from the last {@link #onRotationVector}, so keep that aligned with the sample.
+     */
+    @Override
+    public boolean onWorldAcceleration(long timestampNs, float east, float north, float up) {
+        worldAccelX = east;
+        worldAccelY = north;
+        if (!hasRotation) {
+            lastTimestamp = timestampNs;
+            return false;
+        }
+        return detect(timestampNs, up);
+    }
+
+    private boolean detect(long timestampNs, float up) {
+        long last = lastTimestamp;
+        lastTimestamp = timestampNs;
+        if (last == 0) {
+            filtered = up;
+            cycleMax = cycleMin = up;
+            return false;
+        }
+        float dt = (timestampNs - last) * NANO_TO_SEC;
+        if (dt <= 0) return false;
+        filtered += dt / (RC + dt) * (up - filtered);
+        if (filtered > cycleMax) cycleMax = filtered;
+        if (filtered < cycleMin) cycleMin = filtered;
+
+        float[] r = rotation;
+        headingSumX += r[0] * forwardX + r[1] * forwardY + r[2] * forwardZ;
+        headingSumY += r[3] * forwardX + r[4] * forwardY + r[5] * forwardZ;
+        lookSumX -= r[2];
+        lookSumY -= r[5];
+
+        if (!abovePeak) {
+            if (filtered > MIN_PEAK) {
+                abovePeak = true;
+                // First step after standing: turns made while standing are not part of it
+                if (timestampNs - lastStepTimestamp > MAX_STEP_INTERVAL_NS) {
+                    headingSumX = r[0] * forwardX + r[1] * forwardY + r[2] * forwardZ;
+                    headingSumY = r[3] * forwardX + r[4] * forwardY + r[5] * forwardZ;
+                    lookSumX = -r[2];
+                    lookSumY = -r[5];
+                }
+            }
+            return false;
+        }
+        if (filtered > 0) return false;
+        // Back down through zero: the peak is complete
+        abovePeak = false;
+        boolean stepped = false;
+        if (timestampNs - lastStepTimestamp >= MIN_STEP_INTERVAL_NS) {
+            lastStepTimestamp = timestampNs;
+            step(cycleMax - cycleMin);
+            stepped = true;
+        }
+        // The valley after this peak belongs to the next step
+        cycleMax = cycleMin = filtered;
+        return stepped;
+    }
+
+    private void step(float amplitude) {
+        float sumX = headingSumX, sumY = headingSumY;
+        if (autoForward && lookSumX * lookSumX + lookSumY * lookSumY > sumX * sumX + sumY * sumY) {
+            sumX = lookSumX;
+            sumY = lookSumY;
+        }
+        float norm = (float) Math.sqrt(sumX * sumX + sumY * sumY);
+        // Forward axis close to vertical: no usable heading, keep the previous one
+        if (norm > 1e-3f) {
+            headingX = sumX / norm;
+            headingY = sumY / norm;
+        }
+        headingSumX = headingSumY = 0;
+        lookSumX = lookSumY = 0;
+        float stride = Math.min(MAX_STRIDE, weinbergK * (float) Math.sqrt(Math.sqrt(amplitude)));
+        posX += headingX * stride;
+        posY += headingY * stride;
+        lastStride = stride;
+        distance += stride;
+        stepCount++;
+    }
+
+    @Override
+    public void setPosition(float x, float y) {
+        posX = x;
+        posY = y;
+    }
+
+    @Override
+    public void reset() {
+        posX = posY = 0;
+        worldAccelX = worldAccelY = 0;
+        lastTimestamp = 0;
+        filtered = 0;
+        abovePeak = false;
+        cycleMax = cycleMin = 0;
+        lastStepTimestamp = Long.MIN_VALUE / 2;
+        headingSumX = headingSumY = 0;
+        lookSumX = lookSumY = 0;
+        stepCount = 0;
+        lastStride = distance = 0;
+        // Orientation is kept: it is absolute and still valid after a reset
+    }
+
+    @Override public float getX() { return posX; }
+    @Override public float getY() { return posY; }
+    @Override public float getWorldAccelX() { return worldAccelX; }
+    @Override public float getWorldAccelY() { return worldAccelY; }
+    public long getStepCount() { return stepCount; }
+    public float getLastStride() { return lastStride; }
+    public float getDistance() { return distance; }
+    public boolean hasRotation() { return hasRotation; }
+}
@@ -0,0 +1,196 @@
+package com.example.smartnav;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic IMU + SLAM streams for benchmarks and tests.
+ *
+ * Simulates a pedestrian holding the phone flat and pointed along the walking direction:
+ * walks, 90 degree turns and stops, with a vertical step bounce while moving. Events are emitted
+ * in timestamp order through the same {@link SessionReplayer.Listener} a replayed recording
+ * uses, so anything that consumes a recording can consume a generated session too:
+ * <ul>
+ *   <li>onRotation / onAccel at the IMU rate: device-to-ENU quaternion and device-frame linear
+ *       acceleration with bias and white noise,</li>
+ *   <li>onTrackingState at the frame rate, followed by onPose while tracking: ARCore-style camera
+ *       poses (y up) in a world frame yawed against ENU, with position noise; tracking drops out
+ *       at random for a configurable time.</li>
+ * </ul>
+ * The same seed always produces the same stream.
+ */
+public class SyntheticTrajectoryGenerator {
+
+    /** Tracking state values, matching the ordinals of ARCore's TrackingState. */
+    public static final int TRACKING = DriftEvaluator.TRACKING;
+    public static final int PAUSED = 1;
+
+    /** Noise-free plot-frame position (the frame MainActivity plots SLAM in) at every camera frame. */
+    public interface TruthListener {
+        void onTruth(long timestampNs, float x, float y, boolean tracking);
+    }
+
+    public static final class Config {
+        public long seed = 1;
+        public double durationSeconds = 60;
+        public int imuRateHz = 200;
+        public int frameRateHz = 30;
+        public long startTimestampNs = 1_000_000_000L;
+
+        // Motion
+        public double walkSpeed = 1.3;            // m/s
+        public double maxLinearAccel = 1.5;       // m/s^2 when starting / stopping
+        public double turnRate = Math.toRadians(60);
+        public double stepFrequencyHz = 1.8;
+        public double bounceAmplitude = 0.03;     // m, vertical half-amplitude at walking speed
+        public double stopProbability = 0.2;      // per segment
+        public double turnProbability = 0.35;     // per segment
+
+        // Sensors
+        public double accelNoise = 0.05;          // m/s^2, white
+        public double accelBias = 0.02;           // m/s^2, constant per axis (random sign)
+        public double headingNoise = Math.toRadians(0.5);
+        public double poseNoise = 0.01;           // m
+        public double yawOffset = Math.toRadians(30); // ARCore world vs ENU
+
+        // Tracking dropouts
+        public double dropoutsPerMinute = 2;
+        public double minDropoutSeconds = 0.5;
+        public double maxDropoutSeconds = 3;
+    }
+
+    private static final int WALK = 0, TURN = 1, STOP = 2;
+
+    private final Config config;
+
+    public SyntheticTrajectoryGenerator(Config config) {
+        this.config = config;
+    }
+
+    public SyntheticTrajectoryGenerator() {
+        this(new Config());
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /** Generates the whole session. @return number of events emitted */
+    public long generate(SessionReplayer.Listener out) {
+        return generate(out, null);
+    }
+
+    /** Generates the whole session, reporting ground truth at every frame if {@code truth} is non-null. */
+    public long generate(SessionReplayer.Listener out, TruthListener truth) {
+        Config c = config;
+        Random random = new Random(c.seed);
+        double dt = 1.0 / c.imuRateHz;
+        long dtNs = 1_000_000_000L / c.imuRateHz;
+        long frameDtNs = 1_000_000_000L / c.frameRateHz;
+        int steps = (int) (c.durationSeconds * c.imuRateHz);
+
+        double biasX = random.nextBoolean() ? c.accelBias : -c.accelBias;
+        double biasY = random.nextBoolean() ? c.accelBias : -c.accelBias;
+        double biasZ = random.nextBoolean() ? c.accelBias : -c.accelBias;
+        double cosOffset = Math.cos(c.yawOffset), sinOffset = Math.sin(c.yawOffset);
+        double dropoutChancePerFrame = c.dropoutsPerMinute / (60.0 * c.frameRateHz);
+
+        // ENU ground truth
+        double x = 0, y = 0, z = 0, prevZ = 0, prevPrevZ = 0;
+        double speed = 0, heading = random.nextDouble() * 2 * Math.PI;
+        double stepPhase = 0;
+
+        int segment = STOP;
+        double segmentLeft = 1.0; // start standing still for a second
+        double turnLeft = 0;
+
+        long nextFrameNs = c.startTimestampNs;
+        long dropoutEndNs = 0;
+        long events = 0;
+
+        for (int i = 0; i < steps; i++) {
+            long t = c.startTimestampNs + i * dtNs;
+
+            // ---- Segment schedule ----
+            segmentLeft -= dt;
+            if (segmentLeft <= 0 && turnLeft == 0) {
+                double r = random.nextDouble();
+                if (r < c.stopProbability) {
+                    segment = STOP;
+                    segmentLeft = 1 + 3 * random.nextDouble();
+                } else if (r < c.stopProbability + c.turnProbability) {
+                    segment = TURN;
+                    turnLeft = random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+                    segmentLeft = 0;
+                } else {
+                    segment = WALK;
+                    segmentLeft = 3 + 7 * random.nextDouble();
+                }
+            }
+
+            // ---- Horizontal motion ----
+            double targetSpeed = segment == STOP ? 0 : c.walkSpeed;
+            double maxDv = c.maxLinearAccel * dt;
+            double newSpeed = speed + Math.max(-maxDv, Math.min(maxDv, targetSpeed - speed));
+            double newHeading = heading;
+            if (turnLeft != 0) {
+                double turn = Math.copySign(Math.min(Math.abs(turnLeft), c.turnRate * dt), turnLeft);
+                newHeading += turn;
+                turnLeft -= turn;
+                if (Math.abs(turnLeft) < 1e-9) turnLeft = 0;
+            }
+            double vx = speed * Math.cos(heading), vy = speed * Math.sin(heading);
+            double nvx = newSpeed * Math.cos(newHeading), nvy = newSpeed * Math.sin(newHeading);
+            double ax = (nvx - vx) / dt, ay = (nvy - vy) / dt;
+            speed = newSpeed;
+            heading = newHeading;
+            x += nvx * dt;
+            y += nvy * dt;
+
+            // ---- Step bounce (amplitude scales with speed so stops are still) ----
+            stepPhase += 2 * Math.PI * c.stepFrequencyHz * dt;
+            prevPrevZ = prevZ;
+            prevZ = z;
+            z = c.bounceAmplitude * (speed / c.walkSpeed) * Math.sin(stepPhase);
+            double az = i < 2 ? 0 : (z - 2 * prevZ + prevPrevZ) / (dt * dt);
+
+            // ---- IMU: rotation first so the accel sample sees the current orientation ----
+            double deviceYaw = heading + random.nextGaussian() * c.headingNoise;
+            double half = deviceYaw / 2;
+            out.onRotation(t, 0, 0, (float) Math.sin(half), (float) Math.cos(half));
+            double cy = Math.cos(deviceYaw), sy = Math.sin(deviceYaw);
+            out.onAccel(t,
+                    (float) (cy * ax + sy * ay + biasX + random.nextGaussian() * c.accelNoise),
+                    (float) (-sy * ax + cy * ay + biasY + random.nextGaussian() * c.accelNoise),
+                    (float) (az + biasZ + random.nextGaussian() * c.accelNoise));
+            events += 2;
+
+            // ---- Camera frames ----
+            if (t >= nextFrameNs) {
+                nextFrameNs += frameDtNs;
+                if (t >= dropoutEndNs && random.nextDouble() < dropoutChancePerFrame) {
+                    double seconds = c.minDropoutSeconds
+                            + (c.maxDropoutSeconds - c.minDropoutSeconds) * random.nextDouble();
+                    dropoutEndNs = t + (long) (seconds * 1e9);
+                }
+                boolean tracking = t >= dropoutEndNs;
+
+                // ARCore world: ENU yawed by yawOffset, with plot (x, y) = (tx, -tz)
+                double px = cosOffset * x - sinOffset * y;
+                double py = sinOffset * x + cosOffset * y;
+                out.onTrackingState(t, tracking ? TRACKING : PAUSED);
+                events++;
+                if (tracking) {
+                    double halfYaw = (heading + c.yawOffset) / 2;
+                    out.onPose(t,
+                            (float) (px + random.nextGaussian() * c.poseNoise),
+                            (float) (z + random.nextGaussian() * c.poseNoise),
+                            (float) (-py + random.nextGaussian() * c.poseNoise),
+                            0, (float) Math.sin(halfYaw), 0, (float) Math.cos(halfYaw));
+                    events++;
+                }
+                if (truth != null) truth.onTruth(t, (float) px, (float) py, tracking);
+            }
+        }
+        return events;
+    }
+}
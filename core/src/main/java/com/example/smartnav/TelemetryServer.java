@@ -0,0 +1,333 @@
+package com.example.smartnav;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams live telemetry (fused poses, tracking state, point-cloud deltas) as fixed-layout binary
+ * frames to one client on the loopback interface, e.g. a laptop behind {@code adb forward}.
+ *
+ * Each producing thread fills frames through its own {@link Lane}: records are appended to a
+ * pooled direct buffer and the frame is published when it is full, when its batch interval has
+ * passed, or explicitly. Publishing swaps the frame into the lane's one-slot mailbox; a frame the
+ * server had not picked up yet is stale and goes straight back to the pool (counted as dropped).
+ * A slow or absent client therefore costs producers nothing: there is no queue to grow, and with
+ * three buffers per lane (filling, mailbox, in flight) the pool never runs dry.
+ *
+ * One server thread accepts the client (a new connection replaces the old one) and writes
+ * mailbox frames round-robin over a non-blocking channel, straight from the direct buffers.
+ *
+ * Frame layout (little-endian):
+ * <pre>
+ *   header : int MAGIC, byte type, byte reserved, short recordCount, int seq,
+ *            int payloadLength, long publishNanos (System.nanoTime() at publish)
+ *   payload: recordCount fixed-size records (see TYPE_*)
+ * </pre>
+ */
+public class TelemetryServer implements Closeable {
+
+    public static final int MAGIC = 0x53_4E_54_4C; // "SNTL"
+    public static final int FRAME_HEADER_SIZE = 24;
+    public static final int DEFAULT_PORT = 7007;
+
+    public static final byte TYPE_POSES = 1;  // long timestampNs, float x, float y, int trackingState
+    public static final byte TYPE_CLOUD = 2;  // float x, y (plot frame), float height, float confidence
+    public static final int POSE_RECORD_SIZE = 20;
+    public static final int POINT_RECORD_SIZE = 16;
+
+    private static final int BUFFERS_PER_LANE = 3;
+    private static final int MAX_LANES = 8;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread serverThread;
+    private volatile boolean running = true;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private final Lane[] lanes = new Lane[MAX_LANES];
+    private volatile int laneCount = 0;
+
+    // Server thread only
+    private SocketChannel client;
+    private SelectionKey clientKey;
+    private ByteBuffer inFlight;
+    private Lane inFlightLane;
+    private int nextLane = 0;
+    private final ByteBuffer readScratch = ByteBuffer.allocate(256);
+
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong recordsDropped = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong clientsAccepted = new AtomicLong();
+
+    /** Listens on the loopback interface; port 0 picks a free one (see {@link #port()}). */
+    public TelemetryServer(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        serverThread = new Thread(this::serve, "TelemetryServer");
+        serverThread.start();
+    }
+
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long framesPublished() { return framesPublished.get(); }
+    /** Frames replaced in a mailbox before the server could send them. */
+    public long framesDropped() { return framesDropped.get(); }
+    /** Records in dropped frames, plus any added while a lane had no free buffer. */
+    public long recordsDropped() { return recordsDropped.get(); }
+    public long framesSent() { return framesSent.get(); }
+    public long bytesSent() { return bytesSent.get(); }
+    public long clientsAccepted() { return clientsAccepted.get(); }
+
+    /**
+     * Creates a lane for one producing thread. Lanes must not be shared between threads.
+     *
+     * @param maxRecords    records per frame; a full frame is published
+     * @param batchInterval a frame is published once its first record is this old (ns), checked on add
+     */
+    public synchronized Lane newLane(byte type, int maxRecords, long batchInterval) {
+        if (laneCount == lanes.length) throw new IllegalStateException("Too many lanes");
+        Lane lane = new Lane(type, maxRecords, batchInterval);
+        lanes[laneCount] = lane;
+        laneCount = laneCount + 1;
+        return lane;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            serverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (client != null) client.close();
+        serverChannel.close();
+        selector.close();
+    }
+
+    private void requestWakeup() {
+        // At most one wakeup per server loop iteration, however many frames are published
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    // ===========================================================
+    // SERVER THREAD
+    // ===========================================================
+    private void serve() {
+        try {
+            while (running) {
+                // Cleared before the mailboxes are checked: a later publish wakes the select below
+                wakeupPending.set(false);
+                if (client != null) writeFrames();
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) readFromClient();
+                    // Writable: handled by writeFrames() at the top of the loop
+                }
+            }
+        } catch (IOException e) {
+            // Selector failure: nothing left to serve; producers keep recycling their frames
+        } finally {
+            releaseInFlight();
+        }
+    }
+
+    /** Sends mailbox frames until none are left or the socket is full. */
+    private void writeFrames() {
+        try {
+            while (true) {
+                if (inFlight == null && !takeFrame()) break;
+                int written = client.write(inFlight);
+                bytesSent.addAndGet(written);
+                if (inFlight.hasRemaining()) {
+                    // Socket buffer full: continue when it drains; newer frames replace this lane's mailbox meanwhile
+                    clientKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                framesSent.incrementAndGet();
+                releaseInFlight();
+            }
+            clientKey.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            dropClient();
+        }
+    }
+
+    private boolean takeFrame() {
+        int n = laneCount;
+        for (int i = 0; i < n; i++) {
+            Lane lane = lanes[(nextLane + i) % n];
+            ByteBuffer frame = lane.mailbox.getAndSet(null);
+            if (frame != null) {
+                nextLane = (nextLane + i + 1) % n;
+                inFlight = frame;
+                inFlightLane = lane;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseInFlight() {
+        if (inFlight == null) return;
+        inFlight.clear();
+        inFlightLane.free.offer(inFlight);
+        inFlight = null;
+        inFlightLane = null;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel accepted = serverChannel.accept();
+        if (accepted == null) return;
+        dropClient();
+        accepted.configureBlocking(false);
+        accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        client = accepted;
+        clientKey = accepted.register(selector, SelectionKey.OP_READ);
+        clientsAccepted.incrementAndGet();
+    }
+
+    /** Clients do not send anything; reading only notices when they hang up. */
+    private void readFromClient() {
+        try {
+            readScratch.clear();
+            if (client.read(readScratch) < 0) dropClient();
+        } catch (IOException e) {
+            dropClient();
+        }
+    }
+
+    private void dropClient() {
+        if (client == null) return;
+        // A partly sent frame would corrupt the next client's stream
+        releaseInFlight();
+        clientKey.cancel();
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+        client = null;
+        clientKey = null;
+    }
+
+    // ===========================================================
+    // LANE: one per producing thread
+    // ===========================================================
+    public final class Lane {
+        private final byte type;
+        private final int recordSize;
+        private final int maxRecords;
+        private final long batchInterval;
+        final ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS_PER_LANE);
+        final AtomicReference<ByteBuffer> mailbox = new AtomicReference<>();
+
+        // Producer only
+        private ByteBuffer current;
+        private int records = 0;
+        private long firstRecordNanos;
+        private int seq = 0;
+
+        private Lane(byte type, int maxRecords, long batchInterval) {
+            this.type = type;
+            this.recordSize = type == TYPE_POSES ? POSE_RECORD_SIZE : POINT_RECORD_SIZE;
+            this.maxRecords = Math.min(maxRecords, Short.MAX_VALUE);
+            this.batchInterval = batchInterval;
+            for (int i = 0; i < BUFFERS_PER_LANE; i++) {
+                free.add(ByteBuffer.allocateDirect(FRAME_HEADER_SIZE + this.maxRecords * recordSize)
+                        .order(ByteOrder.LITTLE_ENDIAN));
+            }
+        }
+
+        public void putPose(long timestampNs, float x, float y, int trackingState) {
+            if (!beginRecord()) return;
+            current.putLong(timestampNs).putFloat(x).putFloat(y).putInt(trackingState);
+            endRecord();
+        }
+
+        public void putPoint(float x, float y, float height, float confidence) {
+            if (!beginRecord()) return;
+            current.putFloat(x).putFloat(y).putFloat(height).putFloat(confidence);
+            endRecord();
+        }
+
+        /** Publishes the records added so far, if any. */
+        public void publish() {
+            if (current == null || records == 0) return;
+            ByteBuffer frame = current;
+            int payload = frame.position() - FRAME_HEADER_SIZE;
+            frame.putInt(0, MAGIC)
+                    .put(4, type)
+                    .put(5, (byte) 0)
+                    .putShort(6, (short) records)
+                    .putInt(8, seq++)
+                    .putInt(12, payload)
+                    .putLong(16, System.nanoTime());
+            frame.flip();
+            current = null;
+            records = 0;
+
+            ByteBuffer stale = mailbox.getAndSet(frame);
+            framesPublished.incrementAndGet();
+            if (stale != null) {
+                recordsDropped.addAndGet(stale.getShort(6));
+                stale.clear();
+                free.offer(stale);
+                framesDropped.incrementAndGet();
+            }
+            requestWakeup();
+        }
+
+        private boolean beginRecord() {
+            if (current == null) {
+                // Never empty with three buffers per lane, short of a server thread that died mid-frame
+                current = free.poll();
+                if (current == null) {
+                    recordsDropped.incrementAndGet();
+                    return false;
+                }
+                current.position(FRAME_HEADER_SIZE);
+                firstRecordNanos = System.nanoTime();
+            }
+            return true;
+        }
+
+        private void endRecord() {
+            records++;
+            if (records == maxRecords || System.nanoTime() - firstRecordNanos >= batchInterval) publish();
+        }
+    }
+}
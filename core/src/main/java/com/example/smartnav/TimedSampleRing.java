@@ -0,0 +1,200 @@
+package com.example.smartnav;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring of timestamped float vectors (e.g. orientation quaternions, or world
+ * acceleration + DR position) that can be queried at any timestamp in the retained window.
+ *
+ * One writer appends in non-decreasing timestamp order; any number of readers look up a
+ * timestamp by binary search (O(log n)) and get a linear interpolation of the two neighbouring
+ * samples, or a slerp for quaternion channels. No locks, no allocation: slots are published by
+ * the volatile write sequence, like {@link TrajectoryBuffer}, and a read that the writer
+ * lapped while it was copying is detected and retried.
+ *
+ * Slots live in atomic arrays (release stores, acquire loads) rather than plain arrays: with
+ * plain loads the JIT may move the copy past the final write-sequence check, and a lapped
+ * slot would go undetected.
+ */
+public class TimedSampleRing {
+
+    private static final int MAX_RETRIES = 4;
+
+    private final int mask;
+    private final int channels;
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray values; // float bits
+    private long lastTimestamp = Long.MIN_VALUE; // writer only
+
+    // Number of samples ever written. Volatile write publishes the slot contents to readers.
+    private volatile long writeSeq = 0;
+    // Samples before this sequence were dropped by clear()
+    private volatile long clearedBefore = 0;
+
+    /** @param capacity rounded up to a power of two */
+    public TimedSampleRing(int capacity, int channels) {
+        int size = Integer.highestOneBit(Math.max(4, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.channels = channels;
+        timestamps = new AtomicLongArray(size);
+        values = new AtomicIntegerArray(size * channels);
+    }
+
+    /** Writer thread only. Samples older than the newest one are ignored. */
+    public void add(long timestampNs, float[] sample) {
+        if (timestampNs < lastTimestamp) return;
+        lastTimestamp = timestampNs;
+        long seq = writeSeq;
+        int slot = (int) seq & mask;
+        timestamps.lazySet(slot, timestampNs);
+        int base = slot * channels;
+        for (int c = 0; c < channels; c++) values.lazySet(base + c, Float.floatToRawIntBits(sample[c]));
+        writeSeq = seq + 1;
+    }
+
+    /** Writer thread only; convenience for 4-channel rings (quaternions). */
+    public void add(long timestampNs, float x, float y, float z, float w) {
+        if (timestampNs < lastTimestamp) return;
+        lastTimestamp = timestampNs;
+        long seq = writeSeq;
+        int slot = (int) seq & mask;
+        int base = slot * channels;
+        timestamps.lazySet(slot, timestampNs);
+        values.lazySet(base, Float.floatToRawIntBits(x));
+        values.lazySet(base + 1, Float.floatToRawIntBits(y));
+        values.lazySet(base + 2, Float.floatToRawIntBits(z));
+        values.lazySet(base + 3, Float.floatToRawIntBits(w));
+        writeSeq = seq + 1;
+    }
+
+    /** Writer thread only: forgets all samples (e.g. after a DR reset). Slots are reused later. */
+    public void clear() {
+        clearedBefore = writeSeq;
+    }
+
+    public int channels() { return channels; }
+    public int capacity() { return mask + 1; }
+    public long getWriteSeq() { return writeSeq; }
+
+    /**
+     * Copies the newest sample into {@code out} (at least {@link #channels()} long).
+     *
+     * @return its timestamp, or -1 if the ring is empty
+     */
+    public long latest(float[] out) {
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long end = writeSeq;
+            if (end <= clearedBefore) return -1;
+            int slot = (int) (end - 1) & mask;
+            long t = timestamps.get(slot);
+            for (int c = 0; c < channels; c++) out[c] = value(slot * channels + c);
+            if (writeSeq - (end - 1) < capacity()) return t;
+        }
+        return -1;
+    }
+
+    /**
+     * Linearly interpolates every channel at {@code timestampNs}.
+     *
+     * @return false if the timestamp is outside the retained window (or the ring is empty)
+     */
+    public boolean sampleAt(long timestampNs, float[] out) {
+        return query(timestampNs, out, false);
+    }
+
+    /**
+     * Like {@link #sampleAt}, but channels 0..3 are treated as a unit quaternion (x, y, z, w) and
+     * slerped along the shortest arc; remaining channels are lerped.
+     */
+    public boolean orientationAt(long timestampNs, float[] out) {
+        return query(timestampNs, out, true);
+    }
+
+    /**
+     * Like {@link #orientationAt}, but a timestamp past the newest sample gets the newest sample:
+     * for a reading that arrived before the next rotation did, that is the best estimate there is.
+     *
+     * @return false if the ring is empty or the timestamp is older than the retained window
+     */
+    public boolean orientationAtOrLatest(long timestampNs, float[] out) {
+        if (query(timestampNs, out, true)) return true;
+        long newest = latest(out);
+        if (newest < 0) return false;
+        // A newer sample may have landed between the two reads: interpolate against it then
+        return timestampNs >= newest || query(timestampNs, out, true);
+    }
+
+    private boolean query(long t, float[] out, boolean slerp) {
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long end = writeSeq;
+            // Leave a quarter of the ring as slack so the writer rarely laps an in-flight read
+            long start = Math.max(clearedBefore, end - capacity() + (capacity() >> 2));
+            if (end <= start) return false;
+            if (t < timestamps.get((int) start & mask) || t > timestamps.get((int) (end - 1) & mask)) {
+                if (writeSeq - start < capacity()) return false;
+                continue;
+            }
+
+            // Last sequence whose timestamp is <= t
+            long lo = start, hi = end - 1;
+            while (lo < hi) {
+                long mid = (lo + hi + 1) >>> 1;
+                if (timestamps.get((int) mid & mask) <= t) lo = mid;
+                else hi = mid - 1;
+            }
+            int a = (int) lo & mask;
+            int b = lo + 1 < end ? (int) (lo + 1) & mask : a;
+            long ta = timestamps.get(a), tb = timestamps.get(b);
+            float f = tb > ta ? (float) ((double) (t - ta) / (tb - ta)) : 0f;
+            int first = 0;
+            if (slerp) {
+                slerp(a * channels, b * channels, f, out);
+                first = 4;
+            }
+            int baseA = a * channels, baseB = b * channels;
+            for (int c = first; c < channels; c++) {
+                float va = value(baseA + c);
+                out[c] = va + (value(baseB + c) - va) * f;
+            }
+            // Valid only if the writer did not reach the oldest slot we searched while we copied
+            if (writeSeq - start < capacity()) return true;
+        }
+        return false;
+    }
+
+    private float value(int index) {
+        return Float.intBitsToFloat(values.get(index));
+    }
+
+    private void slerp(int a, int b, float f, float[] out) {
+        float ax = value(a), ay = value(a + 1), az = value(a + 2), aw = value(a + 3);
+        float bx = value(b), by = value(b + 1), bz = value(b + 2), bw = value(b + 3);
+        float dot = ax * bx + ay * by + az * bz + aw * bw;
+        if (dot < 0) {
+            // q and -q are the same rotation: take the short way round
+            dot = -dot;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+        float wa, wb;
+        if (dot > 0.9995f) {
+            // Nearly parallel: nlerp is accurate and avoids dividing by sin(~0)
+            wa = 1 - f;
+            wb = f;
+        } else {
+            double theta = Math.acos(dot);
+            double sin = Math.sin(theta);
+            wa = (float) (Math.sin((1 - f) * theta) / sin);
+            wb = (float) (Math.sin(f * theta) / sin);
+        }
+        float x = wa * ax + wb * bx, y = wa * ay + wb * by, z = wa * az + wb * bz, w = wa * aw + wb * bw;
+        float inv = (float) (1 / Math.sqrt(x * x + y * y + z * z + w * w));
+        out[0] = x * inv;
+        out[1] = y * inv;
+        out[2] = z * inv;
+        out[3] = w * inv;
+    }
+}
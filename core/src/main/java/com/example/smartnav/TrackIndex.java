@@ -0,0 +1,350 @@
+package com.example.smartnav;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index over the points of several tracks, for hit-testing, nearest-point queries and
+ * viewport culling without scanning whole trajectories.
+ *
+ * Points are kept at a minimum spacing per track (radial decimation, like a
+ * {@link TrajectoryStore} level) in primitive arrays, each linked to the previous and next point
+ * of its track, so a query result can be drawn as segments. A uniform grid of square cells,
+ * allocated on first touch in an open-addressing hash, lists the point ids in each cell; adding
+ * a point is O(1) and queries only look at the cells they overlap.
+ *
+ * Memory is bounded: when {@code maxPoints} is reached the spacing doubles and the index is
+ * rebuilt from the points it keeps, which renumbers them (ids are only valid until the next
+ * {@link #add} or {@link #clear}). Not thread-safe; PathView uses it from the UI thread only.
+ */
+public class TrackIndex {
+
+    public static final int MAX_TRACKS = 8;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** Receives the ids of matching points. */
+    public interface Visitor {
+        void visit(int id);
+    }
+
+    private final float cellSize;
+    private final float inverseCellSize;
+    private final float baseSpacing;
+    private final int maxPoints;
+    private float spacing;
+
+    // Points, in insertion order per track
+    private float[] xs = new float[1024], ys = new float[1024];
+    private int[] prev = new int[1024], next = new int[1024];
+    private byte[] tracks = new byte[1024];
+    private int size = 0;
+    private final int[] last = new int[MAX_TRACKS];
+
+    // Cells: packed (cellX, cellY) -> cell index, each with a growable list of point ids
+    private long[] keys = new long[64];
+    private int[] slots = new int[64];
+    private int[] cellXs = new int[32], cellYs = new int[32];
+    private int[][] cellIds = new int[32][];
+    private int[] cellCounts = new int[32];
+    private int cellCount = 0;
+
+    public TrackIndex() {
+        this(1f, 0.01f, 1 << 19);
+    }
+
+    /**
+     * @param cellSize grid cell side (m)
+     * @param spacing  minimum distance between indexed points of one track (m)
+     */
+    public TrackIndex(float cellSize, float spacing, int maxPoints) {
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1f / cellSize;
+        this.baseSpacing = spacing;
+        this.spacing = spacing;
+        this.maxPoints = maxPoints;
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(last, -1);
+    }
+
+    public int size() { return size; }
+    public float spacing() { return spacing; }
+    public float cellSize() { return cellSize; }
+
+    public float x(int id) { return xs[id]; }
+    public float y(int id) { return ys[id]; }
+    public int track(int id) { return tracks[id]; }
+    /** Previous point of the same track, or -1. */
+    public int prev(int id) { return prev[id]; }
+    /** Next point of the same track, or -1. */
+    public int next(int id) { return next[id]; }
+    /** Newest point of a track, or -1. */
+    public int last(int track) { return last[track]; }
+
+    // ===========================================================
+    // UPDATES
+    // ===========================================================
+
+    /** @return true if the point was indexed (false: closer than the spacing to the track's last one) */
+    public boolean add(int track, float x, float y) {
+        if (tooClose(track, x, y)) return false;
+        while (size == maxPoints) {
+            // Points already further apart than twice the spacing are all kept: repeat until one goes
+            compact(spacing * 2);
+            if (tooClose(track, x, y)) return false;
+        }
+        append(track, x, y);
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+        spacing = baseSpacing;
+        Arrays.fill(last, -1);
+        clearCells();
+    }
+
+    private boolean tooClose(int track, float x, float y) {
+        int p = last[track];
+        if (p < 0) return false;
+        float dx = x - xs[p], dy = y - ys[p];
+        return dx * dx + dy * dy < spacing * spacing;
+    }
+
+    private void append(int track, float x, float y) {
+        if (size == xs.length) grow(Math.min(maxPoints, size * 2));
+        int id = size++;
+        xs[id] = x;
+        ys[id] = y;
+        tracks[id] = (byte) track;
+        int p = last[track];
+        prev[id] = p;
+        next[id] = -1;
+        if (p >= 0) next[p] = id;
+        last[track] = id;
+        addToCell(id);
+    }
+
+    private void grow(int capacity) {
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+        tracks = Arrays.copyOf(tracks, capacity);
+    }
+
+    /** Re-decimates every track at a larger spacing, in place, and rebuilds the grid. */
+    private void compact(float newSpacing) {
+        spacing = newSpacing;
+        float spacingSq = newSpacing * newSpacing;
+        int n = size;
+        size = 0;
+        Arrays.fill(last, -1);
+        clearCells();
+        for (int id = 0; id < n; id++) {
+            int track = tracks[id];
+            float x = xs[id], y = ys[id];
+            int p = last[track];
+            if (p >= 0) {
+                float dx = x - xs[p], dy = y - ys[p];
+                if (dx * dx + dy * dy < spacingSq) continue;
+            }
+            // Writing never overtakes reading, so in-place is safe
+            append(track, x, y);
+        }
+    }
+
+    // ===========================================================
+    // QUERIES
+    // ===========================================================
+
+    /**
+     * Nearest point of the tracks in {@code trackMask} (bit per track) within {@code maxDistance}.
+     *
+     * @return its id, or -1
+     */
+    public int nearest(float x, float y, float maxDistance, int trackMask) {
+        int cx = cellIndex(x), cy = cellIndex(y);
+        int best = -1;
+        float bestSq = maxDistance * maxDistance;
+        long maxRing = (long) Math.ceil(maxDistance * inverseCellSize);
+        if ((2 * maxRing + 1) * (2 * maxRing + 1) > 4L * cellCount + 16) {
+            // Search area far larger than the data: cheaper to look at every allocated cell
+            for (int cell = 0; cell < cellCount; cell++) {
+                int[] ids = cellIds[cell];
+                for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+                    int id = ids[i];
+                    if ((trackMask & (1 << tracks[id])) == 0) continue;
+                    float ddx = xs[id] - x, ddy = ys[id] - y;
+                    float dSq = ddx * ddx + ddy * ddy;
+                    if (dSq < bestSq) {
+                        bestSq = dSq;
+                        best = id;
+                    }
+                }
+            }
+            return best;
+        }
+        for (int r = 0; r <= maxRing; r++) {
+            // Every point in ring r is at least (r - 1) cells away
+            float ringDistance = (r - 1) * cellSize;
+            if (r > 1 && ringDistance * ringDistance >= bestSq) break;
+            for (int dy = -r; dy <= r; dy++) {
+                // Whole top and bottom rows, only the two ends of the rows between
+                int step = dy == -r || dy == r ? 1 : 2 * r;
+                for (int dx = -r; dx <= r; dx += step) {
+                    int cell = findCell(cx + dx, cy + dy);
+                    if (cell < 0) continue;
+                    int[] ids = cellIds[cell];
+                    for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+                        int id = ids[i];
+                        if ((trackMask & (1 << tracks[id])) == 0) continue;
+                        float ddx = xs[id] - x, ddy = ys[id] - y;
+                        float dSq = ddx * ddx + ddy * ddy;
+                        if (dSq < bestSq) {
+                            bestSq = dSq;
+                            best = id;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Visits every point of the masked tracks within {@code radius} of (x, y). @return visited count */
+    public int radius(float x, float y, float radius, int trackMask, Visitor visitor) {
+        float radiusSq = radius * radius;
+        int count = 0;
+        int minCx = cellIndex(x - radius), maxCx = cellIndex(x + radius);
+        int minCy = cellIndex(y - radius), maxCy = cellIndex(y + radius);
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int cell = findCell(cx, cy);
+                if (cell < 0) continue;
+                int[] ids = cellIds[cell];
+                for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+                    int id = ids[i];
+                    if ((trackMask & (1 << tracks[id])) == 0) continue;
+                    float dx = xs[id] - x, dy = ys[id] - y;
+                    if (dx * dx + dy * dy > radiusSq) continue;
+                    visitor.visit(id);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Visits every point of the masked tracks inside the rectangle. @return visited count */
+    public int range(float minX, float minY, float maxX, float maxY, int trackMask, Visitor visitor) {
+        int minCx = cellIndex(minX), maxCx = cellIndex(maxX);
+        int minCy = cellIndex(minY), maxCy = cellIndex(maxY);
+        long spanned = (long) (maxCx - minCx + 1) * (maxCy - minCy + 1);
+        int count = 0;
+        if (spanned > cellCount) {
+            // Zoomed out past the data: walk the allocated cells instead of the empty ones
+            for (int cell = 0; cell < cellCount; cell++) {
+                int cx = cellXs[cell], cy = cellYs[cell];
+                if (cx < minCx || cx > maxCx || cy < minCy || cy > maxCy) continue;
+                count += visitCell(cell, minX, minY, maxX, maxY, trackMask, visitor);
+            }
+            return count;
+        }
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int cell = findCell(cx, cy);
+                if (cell >= 0) count += visitCell(cell, minX, minY, maxX, maxY, trackMask, visitor);
+            }
+        }
+        return count;
+    }
+
+    private int visitCell(int cell, float minX, float minY, float maxX, float maxY, int trackMask, Visitor visitor) {
+        int[] ids = cellIds[cell];
+        int count = 0;
+        for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+            int id = ids[i];
+            if ((trackMask & (1 << tracks[id])) == 0) continue;
+            float x = xs[id], y = ys[id];
+            if (x < minX || x > maxX || y < minY || y > maxY) continue;
+            visitor.visit(id);
+            count++;
+        }
+        return count;
+    }
+
+    // ===========================================================
+    // CELLS
+    // ===========================================================
+    private int cellIndex(float v) {
+        return (int) Math.floor(v * inverseCellSize);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h >>> 40) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int findCell(int cellX, int cellY) {
+        long key = key(cellX, cellY);
+        int slot = slotOf(key);
+        return keys[slot] == key ? slots[slot] : -1;
+    }
+
+    private void addToCell(int id) {
+        int cellX = cellIndex(xs[id]), cellY = cellIndex(ys[id]);
+        long key = key(cellX, cellY);
+        int slot = slotOf(key);
+        int cell;
+        if (keys[slot] == key) {
+            cell = slots[slot];
+        } else {
+            cell = cellCount++;
+            if (cell == cellCounts.length) {
+                int capacity = cell * 2;
+                cellXs = Arrays.copyOf(cellXs, capacity);
+                cellYs = Arrays.copyOf(cellYs, capacity);
+                cellIds = Arrays.copyOf(cellIds, capacity);
+                cellCounts = Arrays.copyOf(cellCounts, capacity);
+            }
+            cellXs[cell] = cellX;
+            cellYs[cell] = cellY;
+            cellCounts[cell] = 0;
+            if (cellIds[cell] == null) cellIds[cell] = new int[16];
+            keys[slot] = key;
+            slots[slot] = cell;
+            if (cellCount * 2 > keys.length) rehash();
+        }
+        int n = cellCounts[cell];
+        if (n == cellIds[cell].length) cellIds[cell] = Arrays.copyOf(cellIds[cell], n * 2);
+        cellIds[cell][n] = id;
+        cellCounts[cell] = n + 1;
+    }
+
+    /** Empties the grid; cell id arrays are kept for reuse. */
+    private void clearCells() {
+        Arrays.fill(keys, EMPTY);
+        cellCount = 0;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            slots[slot] = oldSlots[i];
+        }
+    }
+}
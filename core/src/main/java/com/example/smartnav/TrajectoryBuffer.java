@@ -0,0 +1,144 @@
+package com.example.smartnav;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring of (timestamp, x, y) samples backed by primitive arrays, shared between
+ * one writer thread (e.g. the sensor thread) and readers on other threads (the UI frame callback).
+ *
+ * The writer never waits. Each reader keeps a {@link Cursor} and drains whatever arrived since
+ * its last read; if it falls more than {@code capacity} samples behind, the oldest samples are
+ * overwritten and skipped. A drain covers the samples written up to its start and never
+ * delivers a torn sample: slots live in atomic arrays (release stores, acquire loads), so the
+ * copy cannot move past the final write-sequence check, like {@link TimedSampleRing}.
+ *
+ * Resets go through epochs instead of swapping arrays. A reader calls {@link #requestReset},
+ * which moves its cursor to a new epoch at once; the writer picks the request up with
+ * {@link #beginRequestedEpoch} before its next sample and resets whatever produces them. Every
+ * slot is tagged with the epoch it was written in and readers skip older epochs, so samples the
+ * writer produced between the request and the switch never reach a reader that already reset.
+ */
+public class TrajectoryBuffer {
+
+    private final int mask;
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray xs, ys; // float bits
+    private final AtomicIntegerArray epochs;
+    private int epoch = 0; // writer only
+
+    // Number of samples ever written. Volatile write publishes the slot contents to readers.
+    private volatile long writeSeq = 0;
+    private final AtomicInteger requestedEpoch = new AtomicInteger();
+
+    /** A reader's position: the next sequence to read and the epoch it follows. */
+    public static final class Cursor {
+        long seq = 0;
+        int epoch = 0;
+
+        public long seq() { return seq; }
+        public int epoch() { return epoch; }
+    }
+
+    /** Receives drained samples; implemented by the reader, so no per-sample objects are created. */
+    public interface Consumer {
+        void accept(long timestampNs, float x, float y);
+    }
+
+    /** @param capacity rounded up to a power of two */
+    public TrajectoryBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        timestamps = new AtomicLongArray(size);
+        xs = new AtomicIntegerArray(size);
+        ys = new AtomicIntegerArray(size);
+        epochs = new AtomicIntegerArray(size);
+    }
+
+    public long getWriteSeq() {
+        return writeSeq;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // ===========================================================
+    // WRITER
+    // ===========================================================
+
+    /** Writer thread only. */
+    public void add(long timestampNs, float x, float y) {
+        long seq = writeSeq;
+        int slot = (int) seq & mask;
+        timestamps.lazySet(slot, timestampNs);
+        xs.lazySet(slot, Float.floatToRawIntBits(x));
+        ys.lazySet(slot, Float.floatToRawIntBits(y));
+        epochs.lazySet(slot, epoch);
+        writeSeq = seq + 1;
+    }
+
+    /**
+     * Writer thread only: switches to the newest requested epoch, if any.
+     *
+     * @return true if a reset was requested since the last call; the writer should reset its
+     * source before adding the next sample
+     */
+    public boolean beginRequestedEpoch() {
+        int requested = requestedEpoch.get();
+        if (requested == epoch) return false;
+        epoch = requested;
+        return true;
+    }
+
+    // ===========================================================
+    // READERS
+    // ===========================================================
+
+    /**
+     * Starts a new epoch for this reader: nothing written before the writer switches to it is
+     * delivered to the cursor again.
+     *
+     * @return the new epoch
+     */
+    public int requestReset(Cursor cursor) {
+        int next = requestedEpoch.incrementAndGet();
+        cursor.epoch = next;
+        cursor.seq = writeSeq;
+        return next;
+    }
+
+    /** Whether anything was written since the cursor's last drain (possibly of an older epoch). */
+    public boolean hasNew(Cursor cursor) {
+        return writeSeq != cursor.seq;
+    }
+
+    /**
+     * Hands every sample of the cursor's epoch written since its last drain to the consumer,
+     * oldest first, and advances the cursor. Overwritten samples are skipped. A newer epoch
+     * (another reader reset) is adopted; older ones are skipped.
+     *
+     * @return number of samples delivered
+     */
+    public int drain(Cursor cursor, Consumer consumer) {
+        long end = writeSeq;
+        long start = Math.max(cursor.seq, end - capacity());
+        int delivered = 0;
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) seq & mask;
+            int e = epochs.get(slot);
+            long t = timestamps.get(slot);
+            float x = Float.intBitsToFloat(xs.get(slot));
+            float y = Float.intBitsToFloat(ys.get(slot));
+            // The writer may have lapped us while copying: drop the slot rather than show a torn sample
+            if (writeSeq - seq >= capacity()) continue;
+            if (e - cursor.epoch < 0) continue;
+            cursor.epoch = e;
+            consumer.accept(t, x, y);
+            delivered++;
+        }
+        cursor.seq = end;
+        return delivered;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.smartnav;
+
+/**
+ * Bounded-memory 2D trajectory with precomputed levels of detail.
+ *
+ * Every appended point is offered to each level; a level only keeps a point if it is at least
+ * {@code tolerance} metres from the last point it kept (radial-distance decimation). Points are
+ * stored in fixed-size chunks of primitive floats with a bounding box each, so renderers can cull
+ * whole chunks against the viewport.
+ *
+ * Memory is bounded per level: when a level reaches its point budget it doubles its tolerance
+ * and re-decimates itself in place. Coarse levels therefore always cover the whole session,
+ * and fine levels trade detail for coverage only after a very long run.
+ *
+ * Not thread-safe; PathView uses it from the UI thread only.
+ */
+public class TrajectoryStore {
+
+    public static final int CHUNK_SIZE = 512;
+
+    // Metres. Each level is 4x coarser than the previous one.
+    private static final float[] DEFAULT_TOLERANCES = {0.005f, 0.02f, 0.08f, 0.32f, 1.28f};
+    private static final int DEFAULT_MAX_POINTS_PER_LEVEL = 1 << 16;
+
+    private final Level[] levels;
+    private float headX, headY;
+    private boolean hasHead = false;
+    private long appendCount = 0;
+
+    public TrajectoryStore() {
+        this(DEFAULT_TOLERANCES, DEFAULT_MAX_POINTS_PER_LEVEL);
+    }
+
+    public TrajectoryStore(float[] tolerances, int maxPointsPerLevel) {
+        if (maxPointsPerLevel < CHUNK_SIZE) throw new IllegalArgumentException("maxPointsPerLevel < " + CHUNK_SIZE);
+        levels = new Level[tolerances.length];
+        for (int i = 0; i < tolerances.length; i++) {
+            levels[i] = new Level(tolerances[i], maxPointsPerLevel);
+        }
+    }
+
+    public void append(float x, float y) {
+        headX = x;
+        headY = y;
+        hasHead = true;
+        appendCount++;
+        for (Level level : levels) level.offer(x, y);
+    }
+
+    public void clear() {
+        hasHead = false;
+        appendCount = 0;
+        for (Level level : levels) level.clear();
+    }
+
+    /**
+     * Picks the coarsest level whose decimation error stays below {@code maxErrorPx} on screen at
+     * the given zoom, falling back to the finest level when even that one is too coarse.
+     */
+    public int selectLevel(float pixelsPerMeter, float maxErrorPx) {
+        for (int i = levels.length - 1; i > 0; i--) {
+            if (levels[i].tolerance * pixelsPerMeter <= maxErrorPx) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Single-level copy of the finest level and the head, for handing the track to another thread
+     * (MainActivity's background map save) while this store keeps growing.
+     */
+    public TrajectoryStore snapshot() {
+        Level source = levels[0];
+        TrajectoryStore copy = new TrajectoryStore(new float[]{source.tolerance}, source.maxPoints);
+        Level target = copy.levels[0];
+        for (int c = 0; c < source.chunkCount; c++) {
+            Chunk chunk = source.chunks[c];
+            for (int i = 0; i < chunk.size; i++) target.add(chunk.xs[i], chunk.ys[i]);
+        }
+        copy.headX = headX;
+        copy.headY = headY;
+        copy.hasHead = hasHead;
+        copy.appendCount = appendCount;
+        return copy;
+    }
+
+    public int levelCount() { return levels.length; }
+    public Level level(int index) { return levels[index]; }
+
+    /** Most recent point; levels may not have kept it yet, so renderers draw the last leg to it. */
+    public boolean hasHead() { return hasHead; }
+    public float headX() { return headX; }
+    public float headY() { return headY; }
+    public long appendCount() { return appendCount; }
+
+    // ===========================================================
+    // LEVEL + CHUNK
+    // ===========================================================
+    public static final class Level {
+        private final float baseTolerance;
+        private final int maxPoints;
+        private float tolerance;
+
+        private Chunk[] chunks = new Chunk[8];
+        private int chunkCount = 0;
+        private int size = 0;
+        private float lastX, lastY;
+
+        // Chunks released by compaction, reused before allocating new ones
+        private Chunk[] spare = new Chunk[8];
+        private int spareCount = 0;
+
+        Level(float tolerance, int maxPoints) {
+            this.baseTolerance = tolerance;
+            this.tolerance = tolerance;
+            this.maxPoints = maxPoints;
+        }
+
+        public float tolerance() { return tolerance; }
+        public int size() { return size; }
+        public int chunkCount() { return chunkCount; }
+        public Chunk chunk(int index) { return chunks[index]; }
+
+        void offer(float x, float y) {
+            if (size > 0) {
+                float dx = x - lastX, dy = y - lastY;
+                if (dx * dx + dy * dy < tolerance * tolerance) return;
+            }
+            if (size == maxPoints) {
+                compact(tolerance * 2);
+                // The new point may now be too close to the last one kept after compaction
+                float dx = x - lastX, dy = y - lastY;
+                if (dx * dx + dy * dy < tolerance * tolerance) return;
+            }
+            add(x, y);
+        }
+
+        private void add(float x, float y) {
+            Chunk tail = chunkCount == 0 ? null : chunks[chunkCount - 1];
+            if (tail == null || tail.size == CHUNK_SIZE) {
+                tail = obtainChunk();
+                if (chunkCount == chunks.length) {
+                    Chunk[] grown = new Chunk[chunkCount * 2];
+                    System.arraycopy(chunks, 0, grown, 0, chunkCount);
+                    chunks = grown;
+                }
+                chunks[chunkCount++] = tail;
+            }
+            tail.add(x, y);
+            lastX = x;
+            lastY = y;
+            size++;
+        }
+
+        /** Re-runs the decimation over the stored points with a larger tolerance, in place. */
+        private void compact(float newTolerance) {
+            tolerance = newTolerance;
+            float tolSq = newTolerance * newTolerance;
+
+            int writeChunk = 0;
+            Chunk out = chunks[0];
+            int newSize = 0;
+            float keptX = 0, keptY = 0;
+
+            for (int c = 0; c < chunkCount; c++) {
+                Chunk in = chunks[c];
+                int n = in.size;
+                for (int i = 0; i < n; i++) {
+                    float x = in.xs[i], y = in.ys[i];
+                    if (newSize > 0) {
+                        float dx = x - keptX, dy = y - keptY;
+                        if (dx * dx + dy * dy < tolSq) continue;
+                    }
+                    // Writing never overtakes reading, so in-place is safe
+                    if (out.writeIndex == CHUNK_SIZE) out = chunks[++writeChunk];
+                    out.put(out.writeIndex++, x, y);
+                    keptX = x;
+                    keptY = y;
+                    newSize++;
+                }
+            }
+
+            for (int c = 0; c < chunkCount; c++) {
+                Chunk chunk = chunks[c];
+                if (c <= writeChunk) {
+                    chunk.size = chunk.writeIndex;
+                    chunk.writeIndex = 0;
+                    chunk.recomputeBounds();
+                } else {
+                    chunk.size = 0;
+                    chunk.writeIndex = 0;
+                    releaseChunk(chunk);
+                    chunks[c] = null;
+                }
+            }
+            chunkCount = writeChunk + 1;
+            size = newSize;
+            lastX = keptX;
+            lastY = keptY;
+        }
+
+        void clear() {
+            for (int c = 0; c < chunkCount; c++) {
+                chunks[c].size = 0;
+                releaseChunk(chunks[c]);
+                chunks[c] = null;
+            }
+            chunkCount = 0;
+            size = 0;
+            tolerance = baseTolerance;
+        }
+
+        private Chunk obtainChunk() {
+            if (spareCount > 0) {
+                Chunk chunk = spare[--spareCount];
+                spare[spareCount] = null;
+                chunk.resetBounds();
+                return chunk;
+            }
+            return new Chunk();
+        }
+
+        private void releaseChunk(Chunk chunk) {
+            if (spareCount == spare.length) {
+                Chunk[] grown = new Chunk[spareCount * 2];
+                System.arraycopy(spare, 0, grown, 0, spareCount);
+                spare = grown;
+            }
+            spare[spareCount++] = chunk;
+        }
+    }
+
+    public static final class Chunk {
+        public final float[] xs = new float[CHUNK_SIZE];
+        public final float[] ys = new float[CHUNK_SIZE];
+        public int size = 0;
+        public float minX, minY, maxX, maxY;
+
+        // Only used while compacting
+        private int writeIndex = 0;
+
+        Chunk() {
+            resetBounds();
+        }
+
+        void add(float x, float y) {
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+            expand(x, y);
+        }
+
+        private void put(int index, float x, float y) {
+            xs[index] = x;
+            ys[index] = y;
+        }
+
+        private void expand(float x, float y) {
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+
+        void resetBounds() {
+            minX = minY = Float.POSITIVE_INFINITY;
+            maxX = maxY = Float.NEGATIVE_INFINITY;
+        }
+
+        void recomputeBounds() {
+            resetBounds();
+            for (int i = 0; i < size; i++) expand(xs[i], ys[i]);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.smartnav;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable-length integers with zigzag encoding for signed values: small magnitudes (the
+ * usual case for deltas between neighbouring samples) take one or two bytes.
+ */
+public final class VarInts {
+
+    private VarInts() {
+    }
+
+    public static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    public static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static void putVarLong(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static void putSigned(ByteBuffer out, long v) {
+        putVarLong(out, zigzag(v));
+    }
+
+    /** Reads a varint at the buffer's position and advances it. */
+    public static long getVarLong(ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return result;
+            shift += 7;
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+
+    public static long getSigned(ByteBuffer in) {
+        return unzigzag(getVarLong(in));
+    }
+
+    /** Encoded size in bytes. */
+    public static int size(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
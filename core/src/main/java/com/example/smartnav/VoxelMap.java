@@ -0,0 +1,220 @@
+package com.example.smartnav;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Persistent point-cloud map: every frame's (x, y, z, confidence) points are merged into a sparse
+ * voxel grid so the map keeps growing and can be queried.
+ *
+ * Voxels live in a primitive open-addressing hash (linear probing, long keys packed from the
+ * voxel indices, backward-shift deletion), with per-voxel data in parallel arrays. Each voxel
+ * keeps a running centroid and a fused confidence.
+ *
+ * Memory is capped at {@code maxVoxels}. When full, a CLOCK sweep evicts voxels that have not
+ * been observed recently; low-confidence voxels get fewer "second chances" than confident ones,
+ * so noise goes first.
+ *
+ * Not thread-safe; owned by the GL thread.
+ */
+public class VoxelMap {
+
+    private static final long EMPTY = -1L;
+    private static final int AXIS_BITS = 21;
+    private static final int AXIS_BIAS = 1 << (AXIS_BITS - 1);
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+
+    // Observations after which the running averages stop weighting new samples less
+    private static final int MAX_FUSION_WEIGHT = 32;
+    private static final float CONFIDENT = 0.5f;
+
+    private final float voxelSize;
+    private final float inverseVoxelSize;
+    private final int maxVoxels;
+    private final int mask;
+
+    private final long[] keys;
+    private final float[] cx, cy, cz, confidence;
+    private final short[] hits;
+    private final byte[] chances;
+
+    private int size = 0;
+    private int clockHand = 0;
+    private long version = 0;
+    private long evictions = 0;
+
+    public VoxelMap(float voxelSize, int maxVoxels) {
+        this.voxelSize = voxelSize;
+        this.inverseVoxelSize = 1f / voxelSize;
+        this.maxVoxels = maxVoxels;
+        // Keep the load factor at or below 0.5 so probe chains stay short
+        int capacity = Integer.highestOneBit(Math.max(16, maxVoxels * 2) - 1) << 1;
+        mask = capacity - 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        cx = new float[capacity];
+        cy = new float[capacity];
+        cz = new float[capacity];
+        confidence = new float[capacity];
+        hits = new short[capacity];
+        chances = new byte[capacity];
+    }
+
+    /**
+     * Merges a frame of ARCore points (x, y, z, confidence quadruples, as returned by
+     * PointCloud.getPoints()) into the map. The buffer position is left untouched.
+     *
+     * @return number of points merged
+     */
+    public int insertFrame(FloatBuffer points) {
+        int start = points.position();
+        int end = start + (points.remaining() / 4) * 4;
+        for (int i = start; i < end; i += 4) {
+            insert(points.get(i), points.get(i + 1), points.get(i + 2), points.get(i + 3));
+        }
+        return (end - start) / 4;
+    }
+
+    public void insert(float x, float y, float z, float conf) {
+        long key = keyFor(x, y, z);
+        int slot = find(key);
+        if (slot < 0) {
+            if (size >= maxVoxels) evictOne();
+            slot = insertSlot(key);
+            keys[slot] = key;
+            cx[slot] = x;
+            cy[slot] = y;
+            cz[slot] = z;
+            confidence[slot] = conf;
+            hits[slot] = 1;
+            size++;
+        } else {
+            int n = hits[slot];
+            if (n < MAX_FUSION_WEIGHT) hits[slot] = (short) ++n;
+            float w = 1f / n;
+            cx[slot] += (x - cx[slot]) * w;
+            cy[slot] += (y - cy[slot]) * w;
+            cz[slot] += (z - cz[slot]) * w;
+            confidence[slot] += (conf - confidence[slot]) * w;
+        }
+        chances[slot] = (byte) (confidence[slot] >= CONFIDENT ? 3 : 1);
+        version++;
+    }
+
+    /** Fused confidence of the voxel containing the point, or -1 if it is not mapped. */
+    public float confidenceAt(float x, float y, float z) {
+        int slot = find(keyFor(x, y, z));
+        return slot < 0 ? -1f : confidence[slot];
+    }
+
+    /**
+     * Writes the centroids of voxels with at least {@code minConfidence} into {@code out} as
+     * (x, y, z, confidence) quadruples, starting at its current position.
+     *
+     * @return number of voxels written
+     */
+    public int copyTo(FloatBuffer out, float minConfidence, int maxPoints) {
+        int limit = Math.min(maxPoints, out.remaining() / 4);
+        int written = 0;
+        for (int slot = 0; slot <= mask && written < limit; slot++) {
+            if (keys[slot] == EMPTY || confidence[slot] < minConfidence) continue;
+            out.put(cx[slot]).put(cy[slot]).put(cz[slot]).put(confidence[slot]);
+            written++;
+        }
+        return written;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        clockHand = 0;
+        version++;
+    }
+
+    public int size() { return size; }
+    public int maxVoxels() { return maxVoxels; }
+    public float voxelSize() { return voxelSize; }
+    /** Incremented on every change; lets consumers skip work when the map is unchanged. */
+    public long version() { return version; }
+    public long evictions() { return evictions; }
+
+    // ===========================================================
+    // HASHING
+    // ===========================================================
+    private long keyFor(float x, float y, float z) {
+        long ix = ((long) Math.floor(x * inverseVoxelSize) + AXIS_BIAS) & AXIS_MASK;
+        long iy = ((long) Math.floor(y * inverseVoxelSize) + AXIS_BIAS) & AXIS_MASK;
+        long iz = ((long) Math.floor(z * inverseVoxelSize) + AXIS_BIAS) & AXIS_MASK;
+        return (ix << (2 * AXIS_BITS)) | (iy << AXIS_BITS) | iz;
+    }
+
+    private int home(long key) {
+        // MurmurHash3 finalizer
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private int find(long key) {
+        int slot = home(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key) return slot;
+            if (k == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int insertSlot(long key) {
+        int slot = home(key);
+        while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /** CLOCK sweep: spend one chance per visited voxel, evict the first one with none left. */
+    private void evictOne() {
+        while (true) {
+            int slot = clockHand;
+            if (keys[slot] != EMPTY) {
+                if (chances[slot] <= 0) {
+                    remove(slot);
+                    evictions++;
+                    // remove() may have shifted another voxel into this slot; look at it next time
+                    return;
+                }
+                chances[slot]--;
+            }
+            clockHand = (slot + 1) & mask;
+        }
+    }
+
+    /** Linear-probing deletion with backward shift, so no tombstones are needed. */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int ideal = home(keys[next]);
+            // Move next into the hole if its ideal slot is not in (hole, next]
+            boolean movable = hole <= next
+                    ? (ideal <= hole || ideal > next)
+                    : (ideal <= hole && ideal > next);
+            if (movable) {
+                keys[hole] = keys[next];
+                cx[hole] = cx[next];
+                cy[hole] = cy[next];
+                cz[hole] = cz[next];
+                confidence[hole] = confidence[next];
+                hits[hole] = hits[next];
+                chances[hole] = chances[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+}
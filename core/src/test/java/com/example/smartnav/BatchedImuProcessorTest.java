@@ -0,0 +1,119 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchedImuProcessorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /** A generated session split per sensor, as two hardware FIFOs would hold it. */
+    private static final class Fifos implements SessionReplayer.Listener {
+        final int n;
+        final long[] t;
+        final float[] q, a;
+        int rot, acc;
+
+        Fifos(int n) {
+            this.n = n;
+            t = new long[n];
+            q = new float[n * 4];
+            a = new float[n * 3];
+        }
+
+        @Override public void onRotation(long ts, float x, float y, float z, float w) {
+            q[rot * 4] = x; q[rot * 4 + 1] = y; q[rot * 4 + 2] = z; q[rot * 4 + 3] = w;
+            rot++;
+        }
+        @Override public void onAccel(long ts, float ax, float ay, float az) {
+            t[acc] = ts;
+            a[acc * 3] = ax; a[acc * 3 + 1] = ay; a[acc * 3 + 2] = az;
+            acc++;
+        }
+        @Override public void onTrackingState(long ts, int state) { }
+        @Override public void onPose(long ts, float tx, float ty, float tz, float qx, float qy, float qz, float qw) { }
+    }
+
+    private static Fifos generate(double seconds) {
+        SyntheticTrajectoryGenerator.Config config = new SyntheticTrajectoryGenerator.Config();
+        config.durationSeconds = seconds;
+        Fifos f = new Fifos((int) (seconds * config.imuRateHz));
+        new SyntheticTrajectoryGenerator(config).generate(f);
+        return f;
+    }
+
+    @Test
+    public void bursts_inEitherSensorOrder_matchPerEventIntegration() {
+        Fifos f = generate(30);
+
+        DeadReckoningEngine perEvent = new DeadReckoningEngine();
+        for (int i = 0; i < f.n; i++) {
+            perEvent.onRotationVector(f.q[i * 4], f.q[i * 4 + 1], f.q[i * 4 + 2], f.q[i * 4 + 3]);
+            perEvent.onLinearAcceleration(f.t[i], f.a[i * 3], f.a[i * 3 + 1], f.a[i * 3 + 2]);
+        }
+
+        DeadReckoningEngine batched = new DeadReckoningEngine();
+        BatchedImuProcessor processor = new BatchedImuProcessor(512, SECOND, batched::onWorldAcceleration);
+        int burst = 200; // 1 s FIFO latency at 200 Hz
+        for (int start = 0, b = 0; start < f.n; start += burst, b++) {
+            int end = Math.min(f.n, start + burst);
+            // Alternate which FIFO is flushed first
+            if ((b & 1) == 0) {
+                addAccel(processor, f, start, end);
+                addRotation(processor, f, start, end);
+            } else {
+                addRotation(processor, f, start, end);
+                addAccel(processor, f, start, end);
+            }
+            processor.process(f.t[end - 1]);
+        }
+        processor.process(Long.MAX_VALUE);
+
+        assertEquals(perEvent.getSampleCount(), batched.getSampleCount());
+        assertEquals(perEvent.getX(), batched.getX(), 1e-4f);
+        assertEquals(perEvent.getY(), batched.getY(), 1e-4f);
+        assertEquals(0, processor.overflows());
+    }
+
+    @Test
+    public void accelNewerThanRotation_isHeldBack_untilRotationOrTimeout() {
+        int[] out = new int[1];
+        BatchedImuProcessor processor = new BatchedImuProcessor(64, 100_000_000L, (t, e, n, u) -> out[0]++);
+        processor.addRotation(SECOND, 0, 0, 0, 1);
+        processor.addAccel(SECOND, 1, 0, 0);
+        processor.addAccel(SECOND + 5_000_000L, 1, 0, 0);
+
+        assertEquals(1, processor.process(SECOND + 5_000_000L));
+        assertEquals(1, processor.pendingAccel());
+
+        // Rotation stream catches up
+        processor.addRotation(SECOND + 5_000_000L, 0, 0, 0, 1);
+        assertEquals(1, processor.process(SECOND + 6_000_000L));
+
+        // Rotation sensor stalls: released after maxHold with the last known orientation
+        processor.addAccel(SECOND + 10_000_000L, 1, 0, 0);
+        assertEquals(0, processor.process(SECOND + 50_000_000L));
+        assertEquals(1, processor.process(SECOND + 110_000_000L));
+        assertEquals(3, out[0]);
+    }
+
+    @Test
+    public void overflow_processesEarly_withoutLosingSamples() {
+        int[] out = new int[1];
+        BatchedImuProcessor processor = new BatchedImuProcessor(16, SECOND, (t, e, n, u) -> out[0]++);
+        processor.addRotation(1, 0, 0, 0, 1);
+        for (int i = 0; i < 40; i++) processor.addAccel(2 + i, 0, 0, 1);
+        processor.process(Long.MAX_VALUE);
+        assertEquals(40, out[0]);
+        assertTrue(processor.overflows() > 0);
+    }
+
+    private static void addAccel(BatchedImuProcessor p, Fifos f, int start, int end) {
+        for (int i = start; i < end; i++) p.addAccel(f.t[i], f.a[i * 3], f.a[i * 3 + 1], f.a[i * 3 + 2]);
+    }
+
+    private static void addRotation(BatchedImuProcessor p, Fifos f, int start, int end) {
+        for (int i = start; i < end; i++) p.addRotation(f.t[i], f.q[i * 4], f.q[i * 4 + 1], f.q[i * 4 + 2], f.q[i * 4 + 3]);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JVM tests for {@link DeadReckoningEngine}: integration correctness plus allocation and
+ * per-sample cost on long synthetic streams (the engine runs at 400-500 Hz on the sensor thread).
+ */
+public class DeadReckoningEngineTest {
+
+    private static final long DT_NS = 2_000_000L; // 500 Hz
+
+    @Test
+    public void identityOrientation_constantAcceleration_matchesKinematics() {
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        engine.onRotationVector(0, 0, 0, 1);
+
+        long t = 1_000_000_000L;
+        engine.onLinearAcceleration(t, 1f, 0f, 0f);
+        for (int i = 0; i < 500; i++) {
+            t += DT_NS;
+            assertTrue(engine.onLinearAcceleration(t, 1f, 0f, 0f));
+        }
+        // 1 s at 1 m/s^2 -> v = 1 m/s, x ~ 0.5 m (semi-implicit Euler overshoots by a*dt*T/2)
+        assertEquals(1.0f, engine.getVelocityX(), 1e-3f);
+        assertEquals(0.5f, engine.getX(), 0.01f);
+        assertEquals(0f, engine.getY(), 1e-6f);
+    }
+
+    @Test
+    public void yawRotation_mapsDeviceXToWorldY() {
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        // 90 degrees about Z: device +X points to world +Y
+        float s = (float) Math.sin(Math.PI / 4);
+        engine.onRotationVector(0, 0, s);
+
+        long t = 1L;
+        engine.onLinearAcceleration(t, 2f, 0f, 0f);
+        engine.onLinearAcceleration(t + DT_NS, 2f, 0f, 0f);
+        assertEquals(0f, engine.getWorldAccelX(), 1e-5f);
+        assertEquals(2f, engine.getWorldAccelY(), 1e-5f);
+    }
+
+    @Test
+    public void noOrientation_doesNotIntegrate() {
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        assertFalse(engine.onLinearAcceleration(1L, 5f, 5f, 5f));
+        assertFalse(engine.onLinearAcceleration(1L + DT_NS, 5f, 5f, 5f));
+        assertEquals(0f, engine.getX(), 0f);
+    }
+
+    @Test
+    public void reset_clearsStateButKeepsOrientation() {
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        engine.onRotationVector(0, 0, 0, 1);
+        feed(engine, 1000, 1L);
+        engine.reset();
+        assertEquals(0f, engine.getX(), 0f);
+        assertEquals(0, engine.getSampleCount());
+        assertTrue(engine.hasRotation());
+    }
+
+    @Test
+    public void longStream_doesNotAllocate() {
+        com.sun.management.ThreadMXBean bean = threadBean();
+        assumeTrue(bean != null);
+
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        long t = feed(engine, 200_000, 1L); // warm up / JIT
+
+        long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        feed(engine, 1_000_000, t);
+        long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        // One million samples is ~35 minutes at 500 Hz; allow a little slack for the MXBean itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void longStream_perSampleCostIsSmall() {
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        long t = feed(engine, 200_000, 1L);
+
+        int samples = 2_000_000;
+        long start = System.nanoTime();
+        feed(engine, samples, t);
+        long perSample = (System.nanoTime() - start) / samples;
+
+        // The budget at 500 Hz is 2 ms per sample; anything over a microsecond means a regression
+        assertTrue("per-sample cost " + perSample + " ns", perSample < 1_000);
+        assertTrue(Float.isFinite(engine.getX()));
+    }
+
+    /** Interleaves rotation (every 4th sample) and acceleration like the real sensor streams. */
+    private static long feed(DeadReckoningEngine engine, int samples, long t) {
+        for (int i = 0; i < samples; i++) {
+            if ((i & 3) == 0) {
+                float yaw = (i % 10_000) * 1e-4f;
+                engine.onRotationVector(0, 0, (float) Math.sin(yaw / 2), (float) Math.cos(yaw / 2));
+            }
+            // Zero-mean oscillation keeps the integrated state bounded on long runs
+            float a = (i & 1) == 0 ? 0.05f : -0.05f;
+            engine.onLinearAcceleration(t, a, -a, 0.01f * a);
+            t += DT_NS;
+        }
+        return t;
+    }
+
+    /** Per-thread allocation counter, or null where the JVM has none; shared by the engine tests. */
+    static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) return null;
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class DriftMetricsTest {
+
+    private static final long FRAME_NS = 33_333_333L;
+
+    @Test
+    public void identicalTracks_haveNoError() {
+        DriftMetrics m = new DriftMetrics();
+        for (int i = 0; i < 900; i++) {
+            float x = (float) Math.cos(i * 0.01) * 5, y = (float) Math.sin(i * 0.01) * 5;
+            m.add(i * FRAME_NS, x, y, x, y);
+        }
+        assertEquals(0, m.rawAte(), 1e-6);
+        assertEquals(0, m.alignedAte(), 1e-3);
+        assertEquals(0, m.rpe(), 1e-6);
+        assertEquals(0, m.driftPerMeter(), 1e-6);
+        assertEquals(5 * 899 * 0.01, m.pathLength(), 0.01);
+    }
+
+    @Test
+    public void rigidlyMovedTrack_isAlignedAway() {
+        DriftMetrics m = new DriftMetrics();
+        double yaw = Math.toRadians(30);
+        double c = Math.cos(yaw), s = Math.sin(yaw);
+        for (int i = 0; i < 1800; i++) {
+            double t = i / 30.0;
+            double rx = t, ry = 3 * Math.sin(t / 4);
+            // est = R(-yaw) * ref + (2, -1)
+            float ex = (float) (c * rx + s * ry + 2), ey = (float) (-s * rx + c * ry - 1);
+            m.add(i * FRAME_NS, ex, ey, (float) rx, (float) ry);
+        }
+        assertTrue("raw " + m.rawAte(), m.rawAte() > 5);
+        assertEquals(0, m.alignedAte(), 1e-3);
+        assertEquals(yaw, m.alignmentYaw(), 1e-4);
+        assertEquals(0, m.rpe(), 1e-3);
+    }
+
+    @Test
+    public void scaleError_showsAsDriftPerMeter() {
+        DriftMetrics m = new DriftMetrics();
+        for (int i = 0; i < 1800; i++) {
+            float ref = i / 30f; // 1 m/s north
+            m.add(i * FRAME_NS, 0, 1.05f * ref, 0, ref);
+        }
+        assertEquals(0, m.alignmentYaw(), 1e-6);
+        assertEquals(0.05, m.driftPerMeter(), 1e-3);
+        assertEquals(0.25, m.lastRpe(), 0.005); // ~5 s window at 1 m/s
+        assertEquals(60, m.pathLength(), 0.05);
+    }
+
+    @Test
+    public void evaluator_scoresRecordedSession_sameAsLive() throws Exception {
+        SyntheticTrajectoryGenerator generator = new SyntheticTrajectoryGenerator();
+        DriftEvaluator liveDr = new DriftEvaluator(DriftEvaluator.deadReckoning(), new DriftMetrics());
+        DriftEvaluator liveFused = new DriftEvaluator(DriftEvaluator.fused(), new DriftMetrics());
+
+        File file = File.createTempFile("drift", ".snav");
+        try {
+            try (SessionRecorder recorder = new SessionRecorder(file)) {
+                SessionRecorder.Lane lane = recorder.newLane();
+                generator.generate(new SessionReplayer.Listener() {
+                    @Override public void onAccel(long t, float ax, float ay, float az) {
+                        lane.recordAccel(t, ax, ay, az);
+                        liveDr.onAccel(t, ax, ay, az);
+                        liveFused.onAccel(t, ax, ay, az);
+                    }
+                    @Override public void onRotation(long t, float x, float y, float z, float w) {
+                        lane.recordRotation(t, x, y, z, w);
+                        liveDr.onRotation(t, x, y, z, w);
+                        liveFused.onRotation(t, x, y, z, w);
+                    }
+                    @Override public void onTrackingState(long t, int state) {
+                        lane.recordTrackingState(t, state);
+                        liveDr.onTrackingState(t, state);
+                        liveFused.onTrackingState(t, state);
+                    }
+                    @Override public void onPose(long t, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+                        lane.recordPose(t, tx, ty, tz, qx, qy, qz, qw);
+                        liveDr.onPose(t, tx, ty, tz, qx, qy, qz, qw);
+                        liveFused.onPose(t, tx, ty, tz, qx, qy, qz, qw);
+                    }
+                });
+            }
+            DriftMetrics dr = DriftEvaluator.score(file, DriftEvaluator.deadReckoning());
+            DriftMetrics fused = DriftEvaluator.score(file, DriftEvaluator.fused());
+
+            assertTrue(dr.count() > 1000);
+            assertEquals(liveDr.metrics().count(), dr.count());
+            assertEquals(liveDr.metrics().alignedAte(), dr.alignedAte(), 1e-9);
+            // Double-integrated DR drifts; the fused track stays on the poses that correct it
+            assertTrue("dr " + dr.alignedAte() + " fused " + fused.alignedAte(), dr.alignedAte() > 10 * fused.alignedAte());
+            assertTrue(dr.driftPerMeter() > fused.driftPerMeter());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs {@link FusionEngine} against a synthetic walk: 500 Hz noisy, biased world-frame
+ * acceleration in a frame rotated against the SLAM frame, plus 30 Hz noisy SLAM fixes with a
+ * tracking dropout.
+ */
+public class FusionEngineTest {
+
+    private static final long IMU_DT_NS = 2_000_000L;
+    private static final int FRAME_EVERY = 17; // ~30 Hz at 500 Hz IMU
+    private static final double YAW_OFFSET = Math.toRadians(35);
+
+    /** Ground truth: rounded-square walk at ~1 m/s in the SLAM plot frame. */
+    private static final class Walk {
+        double px, py, vx, vy, ax, ay;
+
+        void step(double t, double dt) {
+            // Heading turns 90 degrees every 8 s over 2 s; speed eases in over the first 2 s
+            double phase = t % 8.0;
+            double turnRate = phase > 6.0 ? Math.PI / 4 : 0;
+            double speed = Math.min(1.0, t / 2.0);
+            double heading = Math.atan2(vy, vx);
+            if (speed > 0 && vx == 0 && vy == 0) heading = 0;
+            heading += turnRate * dt;
+            double nvx = speed * Math.cos(heading), nvy = speed * Math.sin(heading);
+            ax = (nvx - vx) / dt;
+            ay = (nvy - vy) / dt;
+            vx = nvx;
+            vy = nvy;
+            px += vx * dt;
+            py += vy * dt;
+        }
+    }
+
+    @Test
+    public void tracksTruthAndLearnsYawOffset() {
+        Result r = run(60, -1, -1);
+        assertTrue("final error " + r.finalError, r.finalError < 0.15);
+        assertTrue("mean error " + r.meanError, r.meanError < 0.15);
+        double yawError = Math.abs(r.engine.getYawOffset() - YAW_OFFSET);
+        assertTrue("yaw error " + Math.toDegrees(yawError), yawError < Math.toRadians(5));
+    }
+
+    @Test
+    public void trackingLoss_fallsBackToInertial_andRecovers() {
+        // 3 s dropout from t = 30 s
+        Result r = run(45, 30, 33);
+        assertTrue("error at end of dropout " + r.errorAtDropoutEnd, r.errorAtDropoutEnd < 1.0);
+        assertTrue("final error " + r.finalError, r.finalError < 0.15);
+        // Plain double integration of the same IMU data drifts far further
+        assertTrue("dr error " + r.drError, r.drError > 5 * r.finalError);
+    }
+
+    @Test
+    public void predictAndCorrect_doNotAllocate() {
+        com.sun.management.ThreadMXBean bean = DeadReckoningEngineTest.threadBean();
+        assumeTrue(bean != null);
+
+        FusionEngine engine = new FusionEngine();
+        long t = 1;
+        for (int i = 0; i < 100_000; i++, t += IMU_DT_NS) step(engine, t, i);
+
+        long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        int samples = 500_000;
+        for (int i = 0; i < samples; i++, t += IMU_DT_NS) step(engine, t, i);
+        long perSample = (System.nanoTime() - start) / samples;
+        long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue("allocated " + allocated, allocated < 1024);
+        // 500 Hz leaves 2 ms per sample; the filter should need a tiny fraction of that
+        assertTrue("per sample " + perSample + " ns", perSample < 20_000);
+    }
+
+    private static void step(FusionEngine engine, long t, int i) {
+        engine.predict(t, 0.01f * (i & 7), -0.01f * (i & 3));
+        if (i % FRAME_EVERY == 0) engine.correct(t, 0.001f * (i % 100), 0);
+    }
+
+    private static final class Result {
+        FusionEngine engine;
+        double finalError, meanError, errorAtDropoutEnd, drError;
+    }
+
+    private static Result run(double seconds, double dropoutStart, double dropoutEnd) {
+        Random random = new Random(42);
+        FusionEngine engine = new FusionEngine();
+        Walk walk = new Walk();
+        double dt = IMU_DT_NS * 1e-9;
+        double c = Math.cos(-YAW_OFFSET), s = Math.sin(-YAW_OFFSET);
+        double biasE = 0.05, biasN = -0.03;
+
+        Result result = new Result();
+        double drx = 0, dry = 0, drvx = 0, drvy = 0;
+        double errorSum = 0;
+        int errorCount = 0;
+        long t = 1_000_000_000L;
+        int steps = (int) (seconds / dt);
+        for (int i = 0; i < steps; i++, t += IMU_DT_NS) {
+            double time = i * dt;
+            walk.step(time, dt);
+
+            // What the DR engine would report: truth rotated into East/North, plus bias and noise
+            float aE = (float) (c * walk.ax - s * walk.ay + biasE + random.nextGaussian() * 0.2);
+            float aN = (float) (s * walk.ax + c * walk.ay + biasN + random.nextGaussian() * 0.2);
+            engine.predict(t, aE, aN);
+
+            // Naive double integration of the same data, rotated with the true offset
+            double cx = Math.cos(YAW_OFFSET), sx = Math.sin(YAW_OFFSET);
+            drvx += (cx * aE - sx * aN) * dt;
+            drvy += (sx * aE + cx * aN) * dt;
+            drx += drvx * dt;
+            dry += drvy * dt;
+
+            boolean tracking = time < dropoutStart || time >= dropoutEnd;
+            if (tracking && i % FRAME_EVERY == 0) {
+                engine.correct(t, (float) (walk.px + random.nextGaussian() * 0.02),
+                        (float) (walk.py + random.nextGaussian() * 0.02));
+            }
+
+            double error = Math.hypot(engine.getX() - walk.px, engine.getY() - walk.py);
+            if (time > 10) {
+                errorSum += error;
+                errorCount++;
+            }
+            if (dropoutEnd > 0 && i == (int) (dropoutEnd / dt) - 1) result.errorAtDropoutEnd = error;
+            result.finalError = error;
+        }
+        result.engine = engine;
+        result.meanError = errorSum / errorCount;
+        result.drError = Math.hypot(drx - walk.px, dry - walk.py);
+        return result;
+    }
+}
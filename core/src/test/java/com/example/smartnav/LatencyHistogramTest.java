@@ -0,0 +1,56 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        LatencyHistogram h = new LatencyHistogram();
+        // 1..10000 us, uniformly
+        for (int us = 1; us <= 10_000; us++) h.record(us * 1000L);
+
+        assertEquals(10_000, h.count());
+        assertRelative(5_000_000, h.percentile(50));
+        assertRelative(9_900_000, h.percentile(99));
+        assertEquals(10_000_000, h.max());
+        assertEquals(5_000_500, h.mean());
+    }
+
+    @Test
+    public void bucketsAreContiguousAndBoundsIncrease() {
+        long previous = 0;
+        for (int b = 0; b < LatencyHistogram.BUCKET_COUNT; b++) {
+            long upper = LatencyHistogram.upperBoundNanos(b);
+            assertTrue(upper > previous);
+            // The largest value that maps to this bucket is just under its upper bound
+            assertEquals(b, LatencyHistogram.bucketFor(upper - 1));
+            previous = upper;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++) h.record(random.nextInt(50_000_000));
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(400_000, h.count());
+    }
+
+    private static void assertRelative(long expected, long actual) {
+        assertTrue("expected ~" + expected + " got " + actual, Math.abs(actual - expected) <= expected * 0.25);
+    }
+}
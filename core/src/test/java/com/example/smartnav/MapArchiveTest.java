@@ -0,0 +1,186 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MapArchiveTest {
+
+    private static final double MM = 0.5e-3 + 1e-5; // quantization plus float rounding
+
+    private static TrajectoryStore walk(int points) {
+        TrajectoryStore store = new TrajectoryStore();
+        for (int i = 0; i < points; i++) {
+            double t = i * 0.01;
+            store.append((float) (t * 0.3 + Math.sin(t) * 4), (float) (Math.cos(t * 0.7) * 6));
+        }
+        return store;
+    }
+
+    @Test
+    public void track_roundTripsToTheMillimetre() throws Exception {
+        TrajectoryStore store = walk(20_000);
+        File file = File.createTempFile("track", ".snmap");
+        try {
+            try (MapArchiveWriter writer = new MapArchiveWriter(file)) {
+                writer.writeTrack(2, store);
+            }
+            MapArchiveReader reader = new MapArchiveReader(file);
+            TrajectoryStore.Level level = store.level(0);
+            assertEquals(level.chunkCount(), reader.chunkCount());
+
+            float[] xs = new float[TrajectoryStore.CHUNK_SIZE + 2], ys = new float[xs.length];
+            for (int c = 0; c < reader.chunkCount(); c++) {
+                assertEquals(MapArchiveWriter.KIND_TRACK, reader.kind(c));
+                assertEquals(2, reader.track(c));
+                int n = reader.readTrack(c, xs, ys);
+                TrajectoryStore.Chunk source = level.chunk(c);
+                // Every chunk after the first starts with the previous chunk's last point
+                int skip = c == 0 ? 0 : 1;
+                if (c > 0) {
+                    TrajectoryStore.Chunk previous = level.chunk(c - 1);
+                    assertEquals(previous.xs[previous.size - 1], xs[0], MM);
+                }
+                for (int i = 0; i < source.size; i++) {
+                    assertEquals(source.xs[i], xs[i + skip], MM);
+                    assertEquals(source.ys[i], ys[i + skip], MM);
+                    assertTrue(reader.intersects(c, xs[i + skip], ys[i + skip], xs[i + skip], ys[i + skip]));
+                }
+                if (c == reader.chunkCount() - 1) {
+                    assertEquals(store.headX(), xs[n - 1], MM);
+                    assertEquals(store.headY(), ys[n - 1], MM);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void track_isAThirdOfNaiveFloats() throws Exception {
+        TrajectoryStore store = walk(20_000);
+        File file = File.createTempFile("track", ".snmap");
+        try {
+            long payload;
+            try (MapArchiveWriter writer = new MapArchiveWriter(file)) {
+                writer.writeTrack(0, store);
+                payload = writer.size() - MapArchiveWriter.FILE_HEADER_SIZE;
+            }
+            long naive = store.level(0).size() * 8L;
+            assertTrue("payload " + payload + " naive " + naive, payload * 3 < naive);
+            assertTrue("file " + file.length(), file.length() * 2 < naive);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void voxels_roundTripByTile_andRegionsDecodeLazily() throws Exception {
+        Random random = new Random(3);
+        int count = 5000;
+        FloatBuffer voxels = FloatBuffer.allocate(count * 4);
+        Map<Long, Float> expected = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            float x = (random.nextFloat() - 0.5f) * 40, y = random.nextFloat() * 3, z = (random.nextFloat() - 0.5f) * 40;
+            float conf = random.nextFloat();
+            voxels.put(x).put(y).put(z).put(conf);
+            expected.put(key(x, y, z), conf);
+        }
+        voxels.flip();
+
+        File file = File.createTempFile("voxels", ".snmap");
+        try {
+            int chunks;
+            try (MapArchiveWriter writer = new MapArchiveWriter(file)) {
+                chunks = writer.writeVoxels(voxels, count);
+            }
+            assertEquals(0, voxels.position());
+            assertEquals(100, chunks); // 40 m / 4 m tiles, squared
+
+            MapArchiveReader reader = new MapArchiveReader(file);
+            assertEquals(count, reader.totalCount(MapArchiveWriter.KIND_VOXELS));
+            FloatBuffer out = FloatBuffer.allocate(count * 4);
+            int visible = 0;
+            for (int c = 0; c < reader.chunkCount(); c++) {
+                if (!reader.intersects(c, 1, 1, 3, 3)) continue; // one tile: x, z in [0, 4)
+                visible++;
+                reader.readVoxels(c, out);
+            }
+            assertEquals(1, visible);
+
+            out.flip();
+            assertTrue(out.remaining() > 0);
+            while (out.hasRemaining()) {
+                float x = out.get(), y = out.get(), z = out.get(), conf = out.get();
+                assertTrue(x >= 0 && x < 4 && z >= 0 && z < 4);
+                Float original = expected.get(key(x, y, z));
+                assertNotNull(original);
+                assertEquals(original, conf, 1 / 255f);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void copyChunks_carriesOverAnEarlierArchive() throws Exception {
+        File first = File.createTempFile("first", ".snmap");
+        File second = File.createTempFile("second", ".snmap");
+        try {
+            try (MapArchiveWriter writer = new MapArchiveWriter(first)) {
+                writer.writeTrack(0, walk(3000));
+            }
+            MapArchiveReader earlier = new MapArchiveReader(first);
+
+            float[] xs = {100, 101, 102}, ys = {5, 5, 6};
+            try (MapArchiveWriter writer = new MapArchiveWriter(second)) {
+                assertEquals(earlier.chunkCount(), writer.copyChunks(earlier, MapArchiveWriter.KIND_TRACK));
+                assertEquals(0, writer.copyChunks(earlier, MapArchiveWriter.KIND_VOXELS));
+                writer.writeTrack(1, xs, ys, 3);
+            }
+            MapArchiveReader merged = new MapArchiveReader(second);
+            assertEquals(earlier.chunkCount() + 1, merged.chunkCount());
+
+            float[] a = new float[TrajectoryStore.CHUNK_SIZE + 2], b = new float[a.length];
+            float[] c = new float[a.length], d = new float[a.length];
+            for (int i = 0; i < earlier.chunkCount(); i++) {
+                assertEquals(earlier.readTrack(i, a, b), merged.readTrack(i, c, d));
+                assertArrayEquals(a, c, 0f);
+                assertEquals(earlier.minA(i), merged.minA(i), 0f);
+            }
+            int last = merged.chunkCount() - 1;
+            assertEquals(1, merged.track(last));
+            assertEquals(3, merged.readTrack(last, c, d));
+            assertEquals(102, c[2], MM);
+            assertEquals(100, merged.minA(last), 1e-6);
+            assertEquals(6, merged.maxB(last), 1e-6);
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unfinishedArchive_isRejected() throws Exception {
+        File file = File.createTempFile("open", ".snmap");
+        try {
+            MapArchiveWriter writer = new MapArchiveWriter(file);
+            writer.writeTrack(0, walk(100));
+            new MapArchiveReader(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static long key(float x, float y, float z) {
+        long qx = MapArchiveWriter.quantize(x), qy = MapArchiveWriter.quantize(y), qz = MapArchiveWriter.quantize(z);
+        return (qx & 0x1FFFFF) << 42 | (qy & 0x1FFFFF) << 21 | (qz & 0x1FFFFF);
+    }
+}
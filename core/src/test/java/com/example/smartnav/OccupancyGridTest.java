@@ -0,0 +1,109 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class OccupancyGridTest {
+
+    private static final float CAMERA_HEIGHT = 1.4f;
+
+    /** A wall 3 m north of the camera (world -z), points from knee to head height. */
+    private static FloatBuffer wall(float confidence) {
+        FloatBuffer cloud = FloatBuffer.allocate(200 * 4);
+        for (int i = 0; i < 200; i++) {
+            float x = -1 + (i % 20) * 0.1f;
+            float y = 0.5f + (i / 20) * 0.12f;
+            cloud.put(x).put(y).put(-3.05f).put(confidence);
+        }
+        cloud.flip();
+        return cloud;
+    }
+
+    @Test
+    public void wall_becomesOccupied_andTheSpaceInFrontFree() {
+        OccupancyGrid grid = new OccupancyGrid();
+        for (int frame = 0; frame < 5; frame++) {
+            assertEquals(200, grid.integrateCloud(wall(0.9f), 0, CAMERA_HEIGHT, 0, 0, 0));
+        }
+        // Plot y = -z: the wall is at y = +3.05
+        assertTrue(grid.logOddsAt(0, 3.05f) >= OccupancyGrid.OCCUPIED);
+        assertTrue(grid.logOddsAt(0.5f, 3.05f) >= OccupancyGrid.OCCUPIED);
+        assertTrue(grid.logOddsAt(0, 1.5f) <= OccupancyGrid.FREE);
+        assertEquals(0, grid.logOddsAt(0, 5f)); // behind the wall: never observed
+        assertEquals(0, grid.logOddsAt(0, -2f));
+        assertEquals(2, grid.tileCount()); // 6.4 m tiles; the wall straddles x = 0
+    }
+
+    @Test
+    public void floorCeilingAndLowConfidence_areIgnored() {
+        OccupancyGrid grid = new OccupancyGrid();
+        FloatBuffer cloud = FloatBuffer.allocate(3 * 4);
+        cloud.put(1).put(0.02f).put(-1).put(0.9f);  // floor
+        cloud.put(1).put(2.6f).put(-1).put(0.9f);   // ceiling
+        cloud.put(1).put(1.2f).put(-1).put(0.1f);   // unreliable
+        cloud.flip();
+        assertEquals(0, grid.integrateCloud(cloud, 0, CAMERA_HEIGHT, 0, 0, 0));
+        assertEquals(0, grid.tileCount());
+        assertEquals(0, grid.updateCount());
+    }
+
+    @Test
+    public void tiles_areAllocatedOnlyWhereObserved_inThePlotFrame() {
+        OccupancyGrid grid = new OccupancyGrid();
+        // Camera 100 m away in world x, walking origin right next to it
+        FloatBuffer cloud = FloatBuffer.allocate(4);
+        cloud.put(101).put(1.4f).put(0).put(0.9f).flip();
+        grid.integrateCloud(cloud, 100, CAMERA_HEIGHT, 0, 100, 0);
+        assertEquals(1, grid.tileCount());
+        OccupancyGrid.Tile tile = grid.tile(0);
+        assertEquals(0, tile.tileX);
+        assertEquals(0, tile.tileY);
+        assertEquals(1, tile.version());
+        assertEquals(OccupancyGrid.HIT, tile.cell(10, 0));
+        assertEquals(OccupancyGrid.MISS, tile.cell(0, 0));
+
+        // Crossing into the neighbouring tile to the west (negative cells)
+        cloud.clear();
+        cloud.put(99).put(1.4f).put(0).put(0.9f).flip();
+        grid.integrateCloud(cloud, 100, CAMERA_HEIGHT, 0, 100, 0);
+        assertEquals(2, grid.tileCount());
+        assertEquals(-1, grid.tile(1).tileX);
+        assertEquals(2, grid.tile(0).version());
+        assertEquals(1, grid.tile(1).version());
+        assertEquals(OccupancyGrid.HIT, grid.logOddsAt(-1f, 0.05f));
+    }
+
+    @Test
+    public void bigClouds_areSubsampled_andLongRaysDropped() {
+        OccupancyGrid grid = new OccupancyGrid(0.1f, -1.2f, 0.5f, 0.3f, 8f, 100);
+        FloatBuffer cloud = FloatBuffer.allocate(1000 * 4);
+        for (int i = 0; i < 1000; i++) {
+            float z = i < 500 ? -2 : -20; // half of them too far away
+            cloud.put(i * 0.001f).put(1.4f).put(z).put(0.9f);
+        }
+        cloud.flip();
+        assertEquals(50, grid.integrateCloud(cloud, 0, CAMERA_HEIGHT, 0, 0, 0));
+        assertEquals(0, cloud.position());
+    }
+
+    @Test
+    public void logOdds_saturate_andClearForgetsEverything() {
+        OccupancyGrid grid = new OccupancyGrid();
+        for (int frame = 0; frame < 100; frame++) grid.integrateCloud(wall(0.9f), 0, CAMERA_HEIGHT, 0, 0, 0);
+        assertEquals(OccupancyGrid.MAX_LOG_ODDS, grid.logOddsAt(0, 3.05f));
+        assertEquals(OccupancyGrid.MIN_LOG_ODDS, grid.logOddsAt(0, 1f));
+        assertTrue(OccupancyGrid.probability(OccupancyGrid.MAX_LOG_ODDS) > 0.99f);
+
+        OccupancyGrid.Tile old = grid.tile(0);
+        grid.clear();
+        assertEquals(0, grid.tileCount());
+        assertEquals(0, grid.logOddsAt(0, 3.05f));
+        grid.integrateCloud(wall(0.9f), 0, CAMERA_HEIGHT, 0, 0, 0);
+        assertNotSame(old, grid.tile(0));
+        assertTrue(grid.logOddsAt(0, 3.05f) >= OccupancyGrid.OCCUPIED);
+        assertTrue(grid.logOddsAt(0, 1f) < 0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PackedTrajectoryTest {
+
+    /** Jittery 200 Hz timestamps along a wandering walk, with an occasional jump (SLAM relocalization). */
+    private static int walk(int n, long seed, long[] ts, float[] xs, float[] ys) {
+        Random random = new Random(seed);
+        long t = 1_000_000_000L;
+        float x = 0, y = 0;
+        double heading = 0;
+        for (int i = 0; i < n; i++) {
+            t += 5_000_000L + (long) (random.nextGaussian() * 20_000);
+            heading += random.nextGaussian() * 0.02;
+            x += (float) Math.cos(heading) * 0.007f;
+            y += (float) Math.sin(heading) * 0.007f;
+            if (random.nextInt(5000) == 0) x += 3f;
+            ts[i] = t;
+            xs[i] = x;
+            ys[i] = y;
+        }
+        return n;
+    }
+
+    @Test
+    public void decodes_everySampleWithinHalfAQuantum() {
+        int n = 50_000;
+        long[] ts = new long[n];
+        float[] xs = new float[n], ys = new float[n];
+        walk(n, 1, ts, xs, ys);
+        PackedTrajectory trajectory = new PackedTrajectory();
+        for (int i = 0; i < n; i++) trajectory.append(ts[i], xs[i], ys[i]);
+        assertEquals(n, trajectory.size());
+
+        float maxError = trajectory.quantum() / 2 + 1e-4f; // float rounding of ~100 m coordinates
+        long[] count = {0};
+        trajectory.forEach(0, n, trajectory.newReader(), (t, x, y) -> {
+            int i = (int) count[0]++;
+            assertTrue(ts[i] - t >= 0 && ts[i] - t < trajectory.timeQuantumNs());
+            assertEquals(xs[i], x, maxError);
+            assertEquals(ys[i], y, maxError);
+        });
+        assertEquals(n, count[0]);
+        assertTrue("bytes per sample " + trajectory.bytesPerSample(), trajectory.bytesPerSample() < 4);
+    }
+
+    @Test
+    public void randomAccess_andTimeLookup_matchSequentialDecode() {
+        int n = 10_000 + 37; // ends inside an open block
+        long[] ts = new long[n];
+        float[] xs = new float[n], ys = new float[n];
+        walk(n, 2, ts, xs, ys);
+        PackedTrajectory trajectory = new PackedTrajectory();
+        for (int i = 0; i < n; i++) trajectory.append(ts[i], xs[i], ys[i]);
+
+        PackedTrajectory.Reader reader = trajectory.newReader();
+        Random random = new Random(3);
+        for (int q = 0; q < 2000; q++) {
+            int i = q == 0 ? n - 1 : random.nextInt(n);
+            trajectory.get(i, reader);
+            assertEquals(i, reader.index());
+            assertEquals(xs[i], reader.x(), 1e-3f);
+
+            long at = ts[i] + 1_000_000L; // between i and i + 1
+            assertEquals(i, trajectory.indexAt(at, reader));
+        }
+        assertEquals(-1, trajectory.indexAt(ts[0] - 1_000_000L, reader));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_pastTheEnd_throws() {
+        PackedTrajectory trajectory = new PackedTrajectory();
+        trajectory.append(1, 0, 0);
+        trajectory.get(1, trajectory.newReader());
+    }
+
+    @Test
+    public void reader_followsAppends_acrossBlockSeals() {
+        PackedTrajectory trajectory = new PackedTrajectory();
+        PackedTrajectory.Reader reader = trajectory.newReader();
+        reader.seek(0);
+        int read = 0;
+        for (int i = 0; i < 1000; i++) {
+            trajectory.append(i * 5_000_000L, i * 0.01f, -i * 0.02f);
+            // Read a few samples at a time, often from inside the open block as it gets packed
+            if (i % 7 == 6) {
+                while (reader.next()) {
+                    assertEquals(read * 0.01f, reader.x(), 1e-3f);
+                    assertEquals(-read * 0.02f, reader.y(), 1e-3f);
+                    read++;
+                }
+            }
+        }
+        while (reader.next()) read++;
+        assertEquals(1000, read);
+
+        trajectory.clear();
+        assertEquals(0, trajectory.size());
+        trajectory.append(7, 1, 1);
+        trajectory.get(0, reader);
+        assertEquals(1f, reader.x(), 0);
+    }
+
+    @Test
+    public void syntheticSession_staysUnderFourBytesPerSample() {
+        SyntheticTrajectoryGenerator.Config config = new SyntheticTrajectoryGenerator.Config();
+        config.durationSeconds = 600;
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        FusionEngine fusion = new FusionEngine();
+        PackedTrajectory drTrack = new PackedTrajectory(), fusedTrack = new PackedTrajectory(), slamTrack = new PackedTrajectory();
+        Random jitter = new Random(4);
+        new SyntheticTrajectoryGenerator(config).generate(new SessionReplayer.Listener() {
+            @Override public void onRotation(long t, float x, float y, float z, float w) { dr.onRotationVector(x, y, z, w); }
+            @Override public void onAccel(long t, float ax, float ay, float az) {
+                // Real sensor timestamps are not evenly spaced
+                t += (long) (jitter.nextGaussian() * 20_000);
+                if (dr.onLinearAcceleration(t, ax, ay, az)) drTrack.append(t, dr.getX(), dr.getY());
+                fusion.predict(t, dr.getWorldAccelX(), dr.getWorldAccelY());
+                fusedTrack.append(t, fusion.getX(), fusion.getY());
+            }
+            @Override public void onTrackingState(long t, int state) { }
+            @Override public void onPose(long t, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+                fusion.correct(t, tx, -tz);
+                slamTrack.append(t, tx, -tz);
+            }
+        });
+        assertTrue("DR " + drTrack.bytesPerSample() + " B/sample", drTrack.bytesPerSample() < 4);
+        assertTrue("fused " + fusedTrack.bytesPerSample() + " B/sample", fusedTrack.bytesPerSample() < 4);
+        assertTrue("SLAM " + slamTrack.bytesPerSample() + " B/sample", slamTrack.bytesPerSample() < 4);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PathPlannerTest {
+
+    private static final float CELL = 0.1f;
+
+    /** Mutable set of blocked cells. */
+    private static final class Walls implements PathPlanner.CostMap {
+        final Set<Long> cells = new HashSet<>();
+
+        void set(int x, int y, boolean blocked) {
+            long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+            if (blocked) cells.add(key);
+            else cells.remove(key);
+        }
+
+        @Override
+        public boolean isBlocked(int x, int y) {
+            return cells.contains(((long) x << 32) | (y & 0xFFFFFFFFL));
+        }
+    }
+
+    /** Vertical wall at cell x from y0 to y1 inclusive, with an optional door cell. */
+    private static void wall(Walls walls, int x, int y0, int y1, int door) {
+        for (int y = y0; y <= y1; y++) if (y != door) walls.set(x, y, true);
+    }
+
+    private static float length(float[] path, int n) {
+        float sum = 0;
+        for (int i = 1; i < n; i++) {
+            sum += (float) Math.hypot(path[i * 2] - path[i * 2 - 2], path[i * 2 + 1] - path[i * 2 - 1]);
+        }
+        return sum;
+    }
+
+    @Test
+    public void openFloor_goesStraight() {
+        PathPlanner planner = new PathPlanner(CELL, 128, new Walls());
+        assertEquals(PathPlanner.NO_GOAL, planner.plan(1000));
+        assertTrue(planner.setGoal(3.05f, 0.05f, 0.05f, 0.05f));
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+        assertEquals(3f, planner.pathCost(), 1e-4);
+
+        float[] path = new float[200];
+        int n = planner.extractPath(path);
+        assertEquals(31, n);
+        assertEquals(0.05f, path[0], 0);
+        assertEquals(3.05f, path[n * 2 - 2], 0);
+        assertEquals(3f, length(path, n), 1e-3);
+    }
+
+    @Test
+    public void wall_routesThroughTheDoor_andReplansWhenItCloses() {
+        Walls walls = new Walls();
+        wall(walls, 10, -20, 20, 15);
+        PathPlanner planner = new PathPlanner(CELL, 128, walls);
+        planner.setGoal(2.05f, 0.05f, 0.05f, 0.05f);
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+
+        float[] path = new float[400];
+        int n = planner.extractPath(path);
+        boolean throughDoor = false;
+        for (int i = 0; i < n; i++) {
+            int x = (int) Math.floor(path[i * 2] / CELL), y = (int) Math.floor(path[i * 2 + 1] / CELL);
+            assertFalse(walls.isBlocked(x, y));
+            if (x == 10 && y == 15) throughDoor = true;
+        }
+        assertTrue(throughDoor);
+        float viaDoor = planner.pathCost();
+        assertTrue(viaDoor > 2.5f);
+
+        // Close the door: the route goes round an end of the wall
+        walls.set(10, 15, true);
+        planner.cellChanged(10, 15);
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+        assertTrue(planner.pathCost() > viaDoor);
+
+        // Seal both ends as well: no route
+        for (int y = -64; y < 64; y++) {
+            walls.set(10, y, true);
+            planner.cellChanged(10, y);
+        }
+        assertEquals(PathPlanner.NO_PATH, planner.plan(100_000));
+        assertEquals(0, planner.extractPath(path));
+
+        // And open it again
+        walls.set(10, 0, false);
+        planner.cellChanged(10, 0);
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+        assertEquals(2f, planner.pathCost(), 1e-4);
+    }
+
+    @Test
+    public void movingStart_matchesAFreshSearch() {
+        Walls walls = new Walls();
+        wall(walls, 10, -20, 20, 15);
+        wall(walls, 25, -30, 10, Integer.MIN_VALUE);
+        PathPlanner incremental = new PathPlanner(CELL, 128, walls);
+        incremental.setGoal(4.05f, 0.05f, 0.05f, 0.05f);
+        assertEquals(PathPlanner.DONE, incremental.plan(100_000));
+
+        float[] path = new float[600];
+        int n = incremental.extractPath(path);
+        long before = incremental.expansions();
+        // Walk a few cells along the route, replanning each step
+        for (int step = 1; step < Math.min(n - 1, 12); step++) {
+            incremental.setStart(path[step * 2], path[step * 2 + 1]);
+            assertEquals(PathPlanner.DONE, incremental.plan(100_000));
+        }
+        long perStep = (incremental.expansions() - before) / 11;
+
+        PathPlanner fresh = new PathPlanner(CELL, 128, walls);
+        fresh.setGoal(4.05f, 0.05f, path[22], path[23]);
+        assertEquals(PathPlanner.DONE, fresh.plan(100_000));
+        assertEquals(fresh.pathCost(), incremental.pathCost(), 1e-4);
+        assertTrue("per step " + perStep + " fresh " + fresh.expansions(), perStep * 10 < fresh.expansions());
+    }
+
+    @Test
+    public void budget_spreadsTheSearchOverCalls() {
+        Walls walls = new Walls();
+        wall(walls, 20, -40, 40, Integer.MIN_VALUE);
+        PathPlanner planner = new PathPlanner(CELL, 128, walls);
+        planner.setGoal(4.05f, 0.05f, 0.05f, 0.05f);
+        int calls = 0;
+        int status;
+        do {
+            status = planner.plan(50);
+            calls++;
+        } while (status == PathPlanner.SEARCHING);
+        assertEquals(PathPlanner.DONE, status);
+        assertTrue(calls > 3);
+
+        PathPlanner oneShot = new PathPlanner(CELL, 128, walls);
+        oneShot.setGoal(4.05f, 0.05f, 0.05f, 0.05f);
+        oneShot.plan(Integer.MAX_VALUE);
+        assertEquals(oneShot.pathCost(), planner.pathCost(), 1e-4);
+    }
+
+    @Test
+    public void goalOutsideTheWindow_isRejected_andLeavingTheWindowRecentres() {
+        PathPlanner planner = new PathPlanner(CELL, 64, new Walls());
+        assertFalse(planner.setGoal(10f, 0f, 0f, 0f));
+        assertFalse(planner.hasGoal());
+
+        assertTrue(planner.setGoal(3f, 0f, 0f, 0f));
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+        planner.setStart(-2f, 0f); // window spans about -1.7 .. 4.7 m
+        assertEquals(PathPlanner.DONE, planner.plan(100_000));
+        assertEquals(5f, planner.pathCost(), 0.11f);
+    }
+
+    @Test
+    public void grid_reportsCellsCrossingTheObstacleThreshold() {
+        OccupancyGrid grid = new OccupancyGrid(0.1f, -1.2f, 0.5f, 0f, 8f, 1024);
+        Walls changed = new Walls();
+        grid.setListener((x, y, occupied) -> changed.set(x, y, occupied));
+        FloatBuffer cloud = FloatBuffer.allocate(4);
+        cloud.put(0.05f).put(0f).put(-2.05f).put(1f).flip(); // plot (0.05, 2.05): cell (0, 20)
+        for (int i = 0; i < 3; i++) grid.integrateCloud(cloud, 0.05f, 0f, -0.05f, 0f, 0f);
+        assertTrue(changed.isBlocked(0, 20));
+        assertTrue(grid.isOccupied(0, 20));
+        assertFalse(grid.isOccupied(0, 10));
+        assertEquals(1, changed.cells.size());
+    }
+}
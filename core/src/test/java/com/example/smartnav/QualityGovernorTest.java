@@ -0,0 +1,125 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QualityGovernorTest {
+
+    private static final long BUDGET_NS = 16_666_667L; // 60 Hz
+    private static final long SECOND = 1_000_000_000L;
+
+    /** Frame cost as a function of the current level, like a scene the governor is shedding. */
+    private interface Load {
+        long workNs(int level);
+    }
+
+    private static final Load LIGHT = level -> 4_000_000L;
+    private static final Load HEAVY = level -> 30_000_000L;
+
+    /** Replays frames for {@code seconds}: a frame over budget also delays the next one. */
+    private static long run(QualityGovernor governor, long t, double seconds, Load load, int[] levelTime) {
+        long end = t + (long) (seconds * SECOND);
+        while (t < end) {
+            long work = load.workNs(governor.level());
+            governor.onFrame(t, work);
+            long interval = Math.max(BUDGET_NS, work);
+            if (levelTime != null) levelTime[governor.level()] += interval / 1_000_000L;
+            t += interval;
+        }
+        return t;
+    }
+
+    @Test
+    public void steadyFrames_stayAtFullQuality() {
+        QualityGovernor governor = new QualityGovernor(BUDGET_NS);
+        run(governor, SECOND, 600, LIGHT, null);
+        assertEquals(0, governor.level());
+        assertEquals(0, governor.changes());
+        // Work close to the budget but not over it: dead band, neither up nor down
+        run(governor, 601 * SECOND, 60, level -> 12_000_000L, null);
+        assertEquals(0, governor.changes());
+    }
+
+    @Test
+    public void overload_stepsDownOneLevelPerDwell_andRecoversWhenCalm() {
+        QualityGovernor governor = new QualityGovernor(BUDGET_NS);
+        long t = run(governor, SECOND, 2.5, HEAVY, null);
+        assertEquals(1, governor.level());
+        assertEquals(QualityGovernor.REASON_FRAME_TIME, governor.reason());
+        t = run(governor, t, 2, HEAVY, null);
+        assertEquals("no second step inside the dwell time", 2, governor.level());
+        t = run(governor, t, 20, HEAVY, null);
+        assertEquals(QualityGovernor.LEVEL_COUNT - 1, governor.level());
+        assertEquals(3, governor.changes());
+
+        // Cheaper settings at every level
+        assertTrue(governor.maxCloudPoints() < 20_000);
+        assertTrue(governor.pointSizePx() < 22f);
+        assertTrue(governor.cloudUpdateIntervalNs() > 0);
+        assertTrue(governor.pathRedrawIntervalMs() > 0);
+        assertTrue(governor.sensorPeriodUs() > 0);
+
+        // Calm: one level per BASE_RECOVERY_WINDOWS calm seconds
+        t = run(governor, t, QualityGovernor.BASE_RECOVERY_WINDOWS - 1.5, LIGHT, null);
+        assertEquals(3, governor.level());
+        t = run(governor, t, 2, LIGHT, null);
+        assertEquals(2, governor.level());
+        assertEquals(QualityGovernor.REASON_RECOVERED, governor.reason());
+        run(governor, t, 3 * QualityGovernor.BASE_RECOVERY_WINDOWS, LIGHT, null);
+        assertEquals(0, governor.level());
+        assertEquals(0, governor.sensorPeriodUs());
+    }
+
+    @Test
+    public void loadAtTheEdgeOfALevel_settlesInsteadOfOscillating() {
+        // Fine at level 2, over budget at level 1 and better: every recovery relapses
+        Load edge = level -> level >= 2 ? 6_000_000L : 22_000_000L;
+        QualityGovernor governor = new QualityGovernor(BUDGET_NS);
+        int[] levelMs = new int[QualityGovernor.LEVEL_COUNT];
+        run(governor, SECOND, 600, edge, levelMs);
+
+        // Without the backoff this would flip every ~6 s, about 200 changes in ten minutes
+        assertTrue("changes " + governor.changes(), governor.changes() <= 16);
+        // Each relapse doubled the wait, up to the cap
+        assertEquals(QualityGovernor.MAX_RECOVERY_WINDOWS, governor.recoveryWindows());
+        assertTrue(levelMs[2] > 0.9 * 600_000);
+        assertEquals(0, levelMs[0] + levelMs[3], 5_000);
+    }
+
+    @Test
+    public void thermalStatus_setsAFloor_appliedAtOnce() {
+        QualityGovernor governor = new QualityGovernor(BUDGET_NS);
+        long t = run(governor, SECOND, 10, LIGHT, null);
+
+        assertTrue(governor.onThermalStatus(t, QualityGovernor.THERMAL_MODERATE));
+        assertEquals(2, governor.level());
+        assertEquals(QualityGovernor.REASON_THERMAL, governor.reason());
+        // Calm frames do not lift quality above the floor
+        t = run(governor, t, 60, LIGHT, null);
+        assertEquals(2, governor.level());
+        // Lighter status: no change by itself, no step below the new floor
+        assertFalse(governor.onThermalStatus(t, QualityGovernor.THERMAL_LIGHT));
+        t = run(governor, t, 60, LIGHT, null);
+        assertEquals(1, governor.level());
+        // Shutdown-imminent statuses clamp to the lowest level
+        assertTrue(governor.onThermalStatus(t, 6));
+        assertEquals(QualityGovernor.LEVEL_COUNT - 1, governor.level());
+
+        // Cooled down: back to full quality through calm windows
+        assertFalse(governor.onThermalStatus(t, QualityGovernor.THERMAL_NONE));
+        t = run(governor, t, 2, LIGHT, null);
+        assertEquals(3, governor.level());
+        run(governor, t, 60, LIGHT, null);
+        assertEquals(0, governor.level());
+    }
+
+    @Test
+    public void pauseGap_isNotAMissedFrame() {
+        QualityGovernor governor = new QualityGovernor(BUDGET_NS);
+        long t = run(governor, SECOND, 0.9, LIGHT, null);
+        // onPause for a minute, then resume
+        t = run(governor, t + 60 * SECOND, 10, LIGHT, null);
+        assertEquals(0, governor.changes());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.smartnav;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trips synthetic sensor + pose streams through {@link SessionRecorder} and
+ * {@link SessionReplayer}, and checks that replayed DR matches the live result.
+ */
+public class SessionRecorderTest {
+
+    private static final long IMU_DT_NS = 2_000_000L;     // 500 Hz
+    private static final long FRAME_DT_NS = 33_333_333L;  // 30 fps
+    private static final long START_NS = 5_000_000_000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".snav");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip_mergesLanesInTimestampOrder_andReproducesDr() throws Exception {
+        int imuSamples = 60 * 500; // one minute
+        DeadReckoningEngine live = new DeadReckoningEngine();
+
+        try (SessionRecorder recorder = new SessionRecorder(file)) {
+            SessionRecorder.Lane sensorLane = recorder.newLane();
+            SessionRecorder.Lane glLane = recorder.newLane();
+
+            // Two producers, like the sensor and GL threads
+            Thread gl = new Thread(() -> {
+                long t = START_NS;
+                for (long end = START_NS + imuSamples * IMU_DT_NS; t < end; t += FRAME_DT_NS) {
+                    glLane.recordTrackingState(t, 0);
+                    glLane.recordPose(t, t * 1e-9f, 0, 0, 0, 0, 0, 1);
+                }
+            });
+            gl.start();
+
+            long t = START_NS;
+            for (int i = 0; i < imuSamples; i++, t += IMU_DT_NS) {
+                if ((i & 3) == 0) {
+                    float z = (float) Math.sin(i * 1e-4);
+                    float w = DeadReckoningEngine.scalarPart(0, 0, z);
+                    sensorLane.recordRotation(t, 0, 0, z, w);
+                    live.onRotationVector(0, 0, z, w);
+                }
+                float a = (float) Math.sin(i * 0.01);
+                sensorLane.recordAccel(t, a, 0.5f * a, 0);
+                live.onLinearAcceleration(t, a, 0.5f * a, 0);
+                // Stay under the pool size so this test does not depend on writer speed
+                if ((i & 255) == 0) Thread.sleep(0, 100_000);
+            }
+            gl.join();
+            assertEquals(0, recorder.getDroppedRecords());
+        }
+
+        SessionReplayer replayer = new SessionReplayer(file);
+        final DeadReckoningEngine replayed = new DeadReckoningEngine();
+        final long[] lastTs = {Long.MIN_VALUE};
+        final int[] poses = {0};
+        long count = replayer.replay(new SessionReplayer.Listener() {
+            @Override public void onAccel(long ts, float ax, float ay, float az) {
+                check(ts);
+                replayed.onLinearAcceleration(ts, ax, ay, az);
+            }
+            @Override public void onRotation(long ts, float x, float y, float z, float w) {
+                check(ts);
+                replayed.onRotationVector(x, y, z, w);
+            }
+            @Override public void onTrackingState(long ts, int state) {
+                check(ts);
+            }
+            @Override public void onPose(long ts, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+                check(ts);
+                poses[0]++;
+            }
+            private void check(long ts) {
+                assertTrue("out of order at " + ts, ts >= lastTs[0]);
+                lastTs[0] = ts;
+            }
+        });
+
+        assertEquals(replayer.countRecords(), count);
+        assertEquals(imuSamples + imuSamples / 4 + 2 * poses[0], count);
+        assertEquals(live.getX(), replayed.getX(), 0f);
+        assertEquals(live.getY(), replayed.getY(), 0f);
+    }
+
+    @Test
+    public void replay_runsManyTimesFasterThanRealTime() throws Exception {
+        int imuSamples = 10 * 60 * 500; // ten minutes
+        try (SessionRecorder recorder = new SessionRecorder(file)) {
+            SessionRecorder.Lane lane = recorder.newLane();
+            long t = START_NS;
+            for (int i = 0; i < imuSamples; i++, t += IMU_DT_NS) {
+                if ((i & 3) == 0) lane.recordRotation(t, 0, 0, 0, 1);
+                lane.recordAccel(t, 0.1f, 0, 0);
+                if ((i & 1023) == 0) Thread.sleep(1);
+            }
+        }
+
+        SessionReplayer replayer = new SessionReplayer(file);
+        DeadReckoningEngine engine = new DeadReckoningEngine();
+        SessionReplayer.Listener listener = new SessionReplayer.Listener() {
+            @Override public void onAccel(long ts, float ax, float ay, float az) { engine.onLinearAcceleration(ts, ax, ay, az); }
+            @Override public void onRotation(long ts, float x, float y, float z, float w) { engine.onRotationVector(x, y, z, w); }
+            @Override public void onTrackingState(long ts, int state) {}
+            @Override public void onPose(long ts, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {}
+        };
+        replayer.replay(listener); // warm up
+
+        long start = System.nanoTime();
+        replayer.replay(listener);
+        long elapsed = System.nanoTime() - start;
+
+        double speedup = (imuSamples * (double) IMU_DT_NS) / elapsed;
+        assertTrue("replay only " + speedup + "x real time", speedup > 50);
+    }
+}
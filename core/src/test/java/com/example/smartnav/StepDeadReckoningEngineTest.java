@@ -0,0 +1,139 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class StepDeadReckoningEngineTest {
+
+    private static final long DT_NS = 20_000_000L; // 50 Hz
+
+    /** Vertical bounce at {@code hz} with the phone held flat, top edge north. */
+    private static long bounce(StepDeadReckoningEngine engine, double seconds, double hz, double amplitude, long t) {
+        engine.onRotationVector(0, 0, 0, 1);
+        for (int i = 0; i < seconds * 50; i++) {
+            double phase = 2 * Math.PI * hz * i * DT_NS * 1e-9;
+            engine.onLinearAcceleration(t, 0, 0, (float) (amplitude * Math.sin(phase)));
+            t += DT_NS;
+        }
+        return t;
+    }
+
+    @Test
+    public void steadyBounce_oneStepPerPeak_alongTheForwardAxis() {
+        StepDeadReckoningEngine engine = new StepDeadReckoningEngine();
+        bounce(engine, 10, 2, 3, 1L);
+        assertEquals(20, engine.getStepCount(), 1);
+        assertEquals(0f, engine.getX(), 1e-4f);
+        assertEquals(engine.getDistance(), engine.getY(), 1e-4f);
+        // Weinberg on the low-passed peak-to-valley: shorter than K * 6^(1/4), not by much
+        float upper = StepDeadReckoningEngine.DEFAULT_WEINBERG_K * (float) Math.pow(6, 0.25);
+        assertTrue(engine.getLastStride() < upper && engine.getLastStride() > 0.8f * upper);
+    }
+
+    /**
+     * Phone upright in front of the body, back camera looking along {@code headingDeg} (0 = north,
+     * 90 = east), rocking {@code tilt} degrees either side of vertical once per step.
+     */
+    private static long uprightWalk(StepDeadReckoningEngine engine, double seconds, double headingDeg, double tilt, long t) {
+        double halfYaw = Math.toRadians(-headingDeg) / 2;
+        for (int i = 0; i < seconds * 50; i++) {
+            double phase = 2 * Math.PI * 2 * i * DT_NS * 1e-9;
+            // About world Z by -heading, after 90 degrees (+/- tilt) about X to stand the phone up
+            double halfPitch = Math.toRadians(90 + tilt * Math.sin(phase + 1)) / 2;
+            engine.onRotationVector((float) (Math.cos(halfYaw) * Math.sin(halfPitch)),
+                    (float) (Math.sin(halfYaw) * Math.sin(halfPitch)),
+                    (float) (Math.sin(halfYaw) * Math.cos(halfPitch)),
+                    (float) (Math.cos(halfYaw) * Math.cos(halfPitch)));
+            engine.onWorldAcceleration(t, 0, 0, (float) (3 * Math.sin(phase)));
+            t += DT_NS;
+        }
+        return t;
+    }
+
+    @Test
+    public void uprightPhone_headsAlongTheCameraLookAxis() {
+        StepDeadReckoningEngine engine = new StepDeadReckoningEngine();
+        // Rocking past vertical flips the sign of the top edge's horizontal projection
+        long t = uprightWalk(engine, 10, 0, 15, 1L);
+        assertEquals(20, engine.getStepCount(), 1);
+        assertEquals(0f, engine.getX(), 0.05f * engine.getDistance());
+        assertEquals(engine.getDistance(), engine.getY(), 0.01f * engine.getDistance());
+
+        float northY = engine.getY();
+        float before = engine.getDistance();
+        uprightWalk(engine, 10, 90, 15, t);
+        float walked = engine.getDistance() - before;
+        assertEquals(walked, engine.getX(), 0.05f * walked);
+        assertEquals(northY, engine.getY(), 0.05f * walked);
+    }
+
+    @Test
+    public void noiseAndSlowSway_areNotSteps() {
+        StepDeadReckoningEngine engine = new StepDeadReckoningEngine();
+        long t = bounce(engine, 10, 2, 0.5, 1L);  // too weak
+        bounce(engine, 10, 0.3, 3, t);             // too slow for a step, and filtered anyway
+        assertTrue(engine.getStepCount() <= 3);
+        // Far above walking cadence: at most one step per MIN_STEP_INTERVAL
+        engine.reset();
+        bounce(engine, 10, 8, 3, 1L);
+        assertTrue(engine.getStepCount() <= 10 * 1_000_000_000L / StepDeadReckoningEngine.MIN_STEP_INTERVAL_NS);
+    }
+
+    @Test
+    public void syntheticWalkAt50Hz_tracksTheTruthFarBetterThanIntegration() {
+        SyntheticTrajectoryGenerator.Config config = new SyntheticTrajectoryGenerator.Config();
+        config.durationSeconds = 300;
+        config.imuRateHz = 50;
+        double[] truthLength = new double[1];
+        float[] last = new float[2];
+
+        StepDeadReckoningEngine steps = new StepDeadReckoningEngine();
+        steps.setForwardAxis(1, 0, 0); // the generator points device +X along the walk
+        DriftEvaluator stepEval = new DriftEvaluator(DriftEvaluator.stepDeadReckoning(steps), new DriftMetrics());
+        DriftEvaluator integrated = new DriftEvaluator(DriftEvaluator.deadReckoning(), new DriftMetrics());
+        SessionReplayer.Listener both = new SessionReplayer.Listener() {
+            @Override public void onRotation(long t, float x, float y, float z, float w) {
+                stepEval.onRotation(t, x, y, z, w);
+                integrated.onRotation(t, x, y, z, w);
+            }
+            @Override public void onAccel(long t, float ax, float ay, float az) {
+                stepEval.onAccel(t, ax, ay, az);
+                integrated.onAccel(t, ax, ay, az);
+            }
+            @Override public void onTrackingState(long t, int state) {
+                stepEval.onTrackingState(t, state);
+                integrated.onTrackingState(t, state);
+            }
+            @Override public void onPose(long t, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+                stepEval.onPose(t, tx, ty, tz, qx, qy, qz, qw);
+                integrated.onPose(t, tx, ty, tz, qx, qy, qz, qw);
+            }
+        };
+        new SyntheticTrajectoryGenerator(config).generate(both, (t, x, y, tracking) -> {
+            truthLength[0] += Math.hypot(x - last[0], y - last[1]);
+            last[0] = x;
+            last[1] = y;
+        });
+
+        double expectedSteps = truthLength[0] / config.walkSpeed * config.stepFrequencyHz;
+        assertEquals(expectedSteps, steps.getStepCount(), expectedSteps * 0.05);
+        assertEquals(truthLength[0], steps.getDistance(), truthLength[0] * 0.1);
+        assertTrue(stepEval.metrics().alignedAte() < 0.1 * integrated.metrics().alignedAte());
+    }
+
+    @Test
+    public void longStream_doesNotAllocate() {
+        com.sun.management.ThreadMXBean bean = DeadReckoningEngineTest.threadBean();
+        assumeTrue(bean != null);
+
+        StepDeadReckoningEngine engine = new StepDeadReckoningEngine();
+        long t = bounce(engine, 4000, 1.8, 3, 1L); // warm up / JIT
+
+        long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        bounce(engine, 20_000, 1.8, 3, t);
+        long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class TelemetryServerTest {
+
+    /** Blocking loopback client, like a laptop viewer behind adb forward. */
+    private static final class Client implements AutoCloseable {
+        final SocketChannel channel;
+        final ByteBuffer header = ByteBuffer.allocate(TelemetryServer.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer payload = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        byte type;
+        int records, seq;
+        long publishNanos, receivedNanos;
+
+        Client(int port) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+
+        /** Reads one frame into header fields and {@link #payload}; false on end of stream. */
+        boolean next() throws IOException {
+            header.clear();
+            if (!readFully(header)) return false;
+            header.flip();
+            assertEquals(TelemetryServer.MAGIC, header.getInt(0));
+            type = header.get(4);
+            records = header.getShort(6);
+            seq = header.getInt(8);
+            int length = header.getInt(12);
+            publishNanos = header.getLong(16);
+            if (payload.capacity() < length) payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            payload.clear().limit(length);
+            if (!readFully(payload)) return false;
+            payload.flip();
+            receivedNanos = System.nanoTime();
+            int recordSize = type == TelemetryServer.TYPE_POSES
+                    ? TelemetryServer.POSE_RECORD_SIZE : TelemetryServer.POINT_RECORD_SIZE;
+            assertEquals(records * recordSize, length);
+            return true;
+        }
+
+        private boolean readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void awaitClients(TelemetryServer server, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (server.clientsAccepted() < count) {
+            assertTrue("client not accepted", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void streamsPoseFrames_toALoopbackClient() throws Exception {
+        // One second of fused poses at 2 kHz, ten times the sensor rate
+        final int poses = 2000;
+        try (TelemetryServer server = new TelemetryServer(0);
+             Client client = new Client(server.port())) {
+            // The app's pose batching: 20 ms, up to 64 records
+            TelemetryServer.Lane lane = server.newLane(TelemetryServer.TYPE_POSES, 64, 20_000_000L);
+            awaitClients(server, 1);
+
+            Thread producer = new Thread(() -> {
+                long next = System.nanoTime();
+                for (int i = 1; i <= poses; i++) {
+                    lane.putPose(i, i * 0.5f, -i, i % 3);
+                    next += 500_000L;
+                    while (System.nanoTime() < next) LockSupport.parkNanos(50_000L);
+                }
+                lane.publish();
+            });
+            producer.start();
+
+            long[] latencies = new long[poses];
+            int frames = 0, received = 0, lastSeq = -1;
+            long lastT = 0;
+            while (client.next()) {
+                assertEquals(TelemetryServer.TYPE_POSES, client.type);
+                assertTrue(client.seq > lastSeq);
+                // Poses may only be missing where whole frames are (a gap in seq)
+                boolean framesSkipped = client.seq != lastSeq + 1;
+                lastSeq = client.seq;
+                latencies[frames++] = client.receivedNanos - client.publishNanos;
+                for (int r = 0; r < client.records; r++) {
+                    long t = client.payload.getLong();
+                    if (r == 0 && framesSkipped) assertTrue(t > lastT);
+                    else assertEquals(lastT + 1, t);
+                    lastT = t;
+                    assertEquals(t * 0.5f, client.payload.getFloat(), 0);
+                    assertEquals(-t, client.payload.getFloat(), 0);
+                    assertEquals(t % 3, client.payload.getInt());
+                }
+                received += client.records;
+                if (lastT == poses) break;
+            }
+            producer.join();
+
+            // A client that keeps up gets everything, in order. Only a descheduled server thread
+            // loses poses, as whole stale frames (possible on a loaded single-core machine), and
+            // the server accounts for every one of them.
+            assertEquals(poses - server.recordsDropped(), received);
+            assertEquals(lastSeq + 1, frames + server.framesDropped());
+            Arrays.sort(latencies, 0, frames);
+            assertTrue(latencies[frames / 2] < 50_000_000L);
+        }
+    }
+
+    @Test
+    public void floodedCloudLane_sendsNewestFramesAtFullSpeed() throws Exception {
+        try (TelemetryServer server = new TelemetryServer(0);
+             Client client = new Client(server.port())) {
+            TelemetryServer.Lane lane = server.newLane(TelemetryServer.TYPE_CLOUD, 1024, Long.MAX_VALUE);
+            awaitClients(server, 1);
+
+            final int frames = 20_000;
+            Thread producer = new Thread(() -> {
+                for (int frame = 0; frame < frames; frame++) {
+                    for (int p = 0; p < 1024; p++) lane.putPoint(frame, p, 0, 1);
+                }
+            });
+            producer.start();
+            int received = 0, lastSeq = -1;
+            while (lastSeq < frames - 1 && client.next()) {
+                assertTrue(client.seq > lastSeq);
+                lastSeq = client.seq;
+                received++;
+            }
+            producer.join();
+
+            assertEquals(frames - 1, lastSeq);
+            // The last frame can arrive before the server thread counts it as sent
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (server.framesSent() + server.framesDropped() < server.framesPublished() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(server.framesPublished(), server.framesSent() + server.framesDropped());
+            assertEquals(received, server.framesSent());
+            assertEquals(server.framesDropped() * 1024, server.recordsDropped());
+        }
+    }
+
+    @Test
+    public void stalledClient_dropsStaleFrames_withoutBlockingTheProducer() throws Exception {
+        try (TelemetryServer server = new TelemetryServer(0);
+             Client client = new Client(server.port())) {
+            TelemetryServer.Lane lane = server.newLane(TelemetryServer.TYPE_CLOUD, 1024, Long.MAX_VALUE);
+            awaitClients(server, 1);
+
+            // 16 KB frames, far more than the socket buffers hold, while the client reads nothing
+            long start = System.nanoTime();
+            for (int frame = 0; frame < 5000; frame++) {
+                for (int p = 0; p < 1024; p++) lane.putPoint(frame, p, 0, 1);
+            }
+            long elapsed = System.nanoTime() - start;
+            assertTrue("producer blocked for " + elapsed / 1_000_000 + " ms", elapsed < 2_000_000_000L);
+            assertEquals(5000, server.framesPublished());
+            assertTrue(server.framesDropped() > 0);
+
+            // The stream is intact and ends with the newest frame
+            int lastSeq = -1;
+            while (client.next()) {
+                assertEquals(TelemetryServer.TYPE_CLOUD, client.type);
+                assertEquals(1024, client.records);
+                assertTrue(client.seq > lastSeq);
+                lastSeq = client.seq;
+                assertEquals((float) lastSeq, client.payload.getFloat(0), 0);
+                if (lastSeq == 4999) break;
+            }
+            assertEquals(4999, lastSeq);
+        }
+    }
+
+    @Test
+    public void newClient_replacesTheOldOne() throws Exception {
+        try (TelemetryServer server = new TelemetryServer(0)) {
+            TelemetryServer.Lane lane = server.newLane(TelemetryServer.TYPE_POSES, 1, 0);
+            Client first = new Client(server.port());
+            awaitClients(server, 1);
+            lane.putPose(1, 0, 0, 0);
+            assertTrue(first.next());
+
+            try (Client second = new Client(server.port())) {
+                awaitClients(server, 2);
+                assertFalse(first.next());
+                first.close();
+                lane.putPose(2, 0, 0, 0);
+                assertTrue(second.next());
+                assertEquals(2, second.payload.getLong(0));
+            }
+        }
+    }
+
+    @Test
+    public void cloudDelta_sendsOnlyNewConfidentPoints_withinBudget() {
+        CloudDelta delta = new CloudDelta();
+        int[] out = new int[64];
+
+        // Ids 0..99, every tenth below the confidence floor
+        IntBuffer ids = IntBuffer.allocate(100);
+        FloatBuffer points = FloatBuffer.allocate(400);
+        for (int i = 0; i < 100; i++) {
+            ids.put(i);
+            points.put(i).put(0).put(0).put(i % 10 == 0 ? 0.1f : 0.9f);
+        }
+        ids.flip();
+        points.flip();
+        int n = delta.select(ids, points, 0.5f, 30, out);
+        assertEquals(30, n);
+        for (int k = 0; k < n; k++) assertNotEquals(0, out[k] % 10);
+        assertTrue("spread over the cloud", out[n - 1] > 80);
+
+        // Same cloud shifted by 50 ids: only 100..149 are new
+        ids.clear();
+        for (int i = 0; i < 100; i++) ids.put(i + 50);
+        ids.flip();
+        n = delta.select(ids, points, 0.5f, 64, out);
+        assertEquals(45, n);
+        for (int k = 0; k < n; k++) assertTrue(ids.get(out[k]) >= 100);
+
+        // Unchanged cloud: nothing to send, until reset
+        assertEquals(0, delta.select(ids, points, 0.5f, 64, out));
+        delta.reset();
+        assertEquals(64, delta.select(ids, points, 0.5f, 64, out));
+    }
+}
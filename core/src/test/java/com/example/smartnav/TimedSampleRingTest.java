@@ -0,0 +1,138 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TimedSampleRingTest {
+
+    @Test
+    public void sampleAt_interpolatesBetweenNeighbours() {
+        TimedSampleRing ring = new TimedSampleRing(16, 2);
+        float[] v = new float[2];
+        for (int i = 0; i < 5; i++) {
+            v[0] = i;
+            v[1] = -10 * i;
+            ring.add(1000 + 100 * i, v);
+        }
+        float[] out = new float[2];
+        assertTrue(ring.sampleAt(1250, out));
+        assertEquals(2.5f, out[0], 1e-6f);
+        assertEquals(-25f, out[1], 1e-5f);
+        assertTrue(ring.sampleAt(1400, out));
+        assertEquals(4f, out[0], 1e-6f);
+
+        assertFalse(ring.sampleAt(999, out));
+        assertFalse(ring.sampleAt(1401, out));
+        assertEquals(1400, ring.latest(out));
+
+        ring.clear();
+        assertFalse(ring.sampleAt(1250, out));
+        assertEquals(-1, ring.latest(out));
+    }
+
+    @Test
+    public void orientationAt_slerpsAlongShortestArc() {
+        TimedSampleRing ring = new TimedSampleRing(16, 4);
+        float s = (float) Math.sin(Math.PI / 4), c = (float) Math.cos(Math.PI / 4);
+        ring.add(0, 0, 0, 0, 1);      // yaw 0
+        ring.add(100, 0, 0, -s, -c);  // yaw 90 degrees, stored with the opposite sign
+        float[] q = new float[4];
+        assertTrue(ring.orientationAt(50, q));
+        double yaw = 2 * Math.atan2(q[2], q[3]);
+        assertEquals(Math.PI / 4, yaw, 1e-5);
+        assertEquals(1, q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3], 1e-5);
+    }
+
+    @Test
+    public void orientationAtOrLatest_pastTheNewestSample_usesTheNewest() {
+        // As MainActivity feeds DR: each acceleration sample is rotated by the orientation at its time
+        TimedSampleRing ring = new TimedSampleRing(16, 4);
+        float s = (float) Math.sin(Math.PI / 4), c = (float) Math.cos(Math.PI / 4);
+        ring.add(0, 0, 0, 0, 1);    // R(t0): identity
+        ring.add(1000, 0, 0, s, c); // R(t1): 90 degrees about Z, device +X to world +Y
+        DeadReckoningEngine dr = new DeadReckoningEngine();
+        float[] q = new float[4];
+
+        assertTrue(ring.orientationAtOrLatest(100, q));
+        dr.onRotationVector(q[0], q[1], q[2], q[3]);
+        dr.onLinearAcceleration(100, 1, 0, 0);
+        // Between the rotations: slerped halfway, 45 degrees
+        assertTrue(ring.orientationAtOrLatest(500, q));
+        dr.onRotationVector(q[0], q[1], q[2], q[3]);
+        dr.onLinearAcceleration(500, 1, 0, 0);
+        assertEquals(c, dr.getWorldAccelX(), 1e-4f);
+        assertEquals(s, dr.getWorldAccelY(), 1e-4f);
+        // Past R(t1): R(t1) itself, not the stale interpolated rotation left in the engine
+        assertFalse(ring.orientationAt(1500, q));
+        assertTrue(ring.orientationAtOrLatest(1500, q));
+        dr.onRotationVector(q[0], q[1], q[2], q[3]);
+        dr.onLinearAcceleration(1500, 1, 0, 0);
+        assertEquals(0f, dr.getWorldAccelX(), 1e-5f);
+        assertEquals(1f, dr.getWorldAccelY(), 1e-5f);
+
+        // Before the window, or nothing recorded: no orientation
+        assertFalse(new TimedSampleRing(16, 4).orientationAtOrLatest(1500, q));
+        ring.add(2000, 0, 0, 0, 1);
+        assertTrue(ring.orientationAtOrLatest(1500, q));
+        assertEquals(Math.sin(Math.PI / 8), q[2], 1e-4);
+    }
+
+    @Test
+    public void wrapAround_keepsOnlyTheRecentWindow() {
+        TimedSampleRing ring = new TimedSampleRing(64, 1);
+        float[] v = new float[1];
+        for (int i = 0; i < 1000; i++) {
+            v[0] = i;
+            ring.add(i * 10L, v);
+        }
+        float[] out = new float[1];
+        assertTrue(ring.sampleAt(9_985, out));
+        assertEquals(998.5f, out[0], 1e-3f);
+        // Readers only use the newest 3/4 of the ring
+        assertTrue(ring.sampleAt(9_600, out));
+        assertFalse(ring.sampleAt(9_400, out));
+    }
+
+    @Test
+    public void concurrentReaders_neverSeeTornSamples() throws Exception {
+        TimedSampleRing ring = new TimedSampleRing(256, 2);
+        AtomicLong written = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        long deadline = System.nanoTime() + 300_000_000L;
+
+        Thread writer = new Thread(() -> {
+            float[] v = new float[2];
+            for (long t = 1; System.nanoTime() < deadline; t++) {
+                v[0] = t;
+                v[1] = 2 * t;
+                ring.add(t * 1000, v);
+                written.set(t);
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                float[] out = new float[2];
+                while (System.nanoTime() < deadline) {
+                    long newest = written.get();
+                    if (newest < 100) continue;
+                    long t = (newest - 50) * 1000 + 500;
+                    // Every sample satisfies v1 == 2 * v0, so any interpolation of intact samples does too
+                    if (ring.sampleAt(t, out) && Math.abs(out[1] - 2 * out[0]) > 1e-3f * Math.abs(out[1])) {
+                        failure.compareAndSet(null, "torn read at " + t + ": " + out[0] + ", " + out[1]);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread r : readers) r.start();
+        writer.join();
+        for (Thread r : readers) r.join();
+        assertNull(failure.get(), failure.get());
+        assertTrue(written.get() > 1000);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TrackIndexTest {
+
+    /** Two wandering tracks, about 5 cm per step. */
+    private static TrackIndex walk(TrackIndex index, int steps, long seed) {
+        Random random = new Random(seed);
+        float[] x = new float[2], y = new float[2];
+        double[] heading = new double[2];
+        for (int i = 0; i < steps; i++) {
+            for (int t = 0; t < 2; t++) {
+                heading[t] += random.nextGaussian() * 0.2;
+                x[t] += (float) Math.cos(heading[t]) * 0.05f;
+                y[t] += (float) Math.sin(heading[t]) * 0.05f;
+                index.add(t, x[t], y[t]);
+            }
+        }
+        return index;
+    }
+
+    private static int bruteNearest(TrackIndex index, float x, float y, float maxDistance, int mask) {
+        int best = -1;
+        double bestSq = (double) maxDistance * maxDistance;
+        for (int id = 0; id < index.size(); id++) {
+            if ((mask & (1 << index.track(id))) == 0) continue;
+            double dx = index.x(id) - x, dy = index.y(id) - y;
+            if (dx * dx + dy * dy < bestSq) {
+                bestSq = dx * dx + dy * dy;
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void nearest_matchesALinearScan() {
+        TrackIndex index = walk(new TrackIndex(1f, 0.01f, 1 << 16), 5000, 1);
+        Random random = new Random(2);
+        for (int q = 0; q < 2000; q++) {
+            float x = (random.nextFloat() - 0.5f) * 40, y = (random.nextFloat() - 0.5f) * 40;
+            float maxDistance = q % 2 == 0 ? 3f : Float.MAX_VALUE;
+            int mask = q % 3 == 0 ? 0b01 : 0b11;
+            int expected = bruteNearest(index, x, y, maxDistance, mask);
+            int actual = index.nearest(x, y, maxDistance, mask);
+            if (expected != actual) {
+                // Ties are fine; a different point at a different distance is not
+                assertTrue(actual >= 0 && expected >= 0);
+                assertEquals(Math.hypot(index.x(expected) - x, index.y(expected) - y),
+                        Math.hypot(index.x(actual) - x, index.y(actual) - y), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void radiusAndRange_findExactlyThePointsInside() {
+        TrackIndex index = walk(new TrackIndex(0.5f, 0.01f, 1 << 16), 5000, 3);
+        Set<Integer> found = new HashSet<>();
+        int n = index.radius(1f, -2f, 2.5f, 0b10, found::add);
+        assertEquals(found.size(), n);
+        for (int id = 0; id < index.size(); id++) {
+            boolean inside = index.track(id) == 1 && Math.hypot(index.x(id) - 1f, index.y(id) + 2f) <= 2.5f;
+            assertEquals(inside, found.contains(id));
+        }
+
+        // Small box (cells walked) and a huge one (allocated cells walked)
+        float[][] boxes = {{-3, -1, 2, 4}, {-1e6f, -1e6f, 1e6f, 1e6f}};
+        for (float[] box : boxes) {
+            found.clear();
+            index.range(box[0], box[1], box[2], box[3], 0b11, found::add);
+            for (int id = 0; id < index.size(); id++) {
+                float x = index.x(id), y = index.y(id);
+                boolean inside = x >= box[0] && x <= box[2] && y >= box[1] && y <= box[3];
+                assertEquals(inside, found.contains(id));
+            }
+        }
+        assertEquals(index.size(), found.size());
+    }
+
+    @Test
+    public void add_decimatesPerTrack_andLinksNeighbours() {
+        TrackIndex index = new TrackIndex(1f, 0.1f, 1024);
+        assertTrue(index.add(0, 0, 0));
+        assertFalse(index.add(0, 0.05f, 0));
+        assertTrue(index.add(1, 0.05f, 0)); // other track: its own spacing
+        assertTrue(index.add(0, 0.1f, 0));
+        assertEquals(3, index.size());
+        assertEquals(2, index.last(0));
+        assertEquals(0, index.prev(2));
+        assertEquals(2, index.next(0));
+        assertEquals(-1, index.prev(1));
+        assertEquals(-1, index.next(1));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.last(0));
+        assertEquals(-1, index.nearest(0, 0, 10, 0xFF));
+    }
+
+    @Test
+    public void nearest_skipsMaskedTracks_evenWhenTheyAreCloser() {
+        // PathView's ids: goals snap to SLAM / fused only, never to the drifting DR track
+        final int dr = 0, slam = 1, fused = 2;
+        int goalSnapTracks = 1 << slam | 1 << fused;
+        TrackIndex index = new TrackIndex(1f, 0.01f, 1024);
+        index.add(dr, 2.02f, 0);
+        index.add(slam, 2.3f, 0);
+        index.add(fused, 1.5f, 0);
+
+        int any = index.nearest(2f, 0, 0.5f, ~0);
+        assertEquals(dr, index.track(any));
+        int snapped = index.nearest(2f, 0, 0.5f, goalSnapTracks);
+        assertEquals(slam, index.track(snapped));
+        assertEquals(2.3f, index.x(snapped), 0);
+        // Only DR within reach: no snap at all
+        assertEquals(-1, index.nearest(2f, 0, 0.1f, goalSnapTracks));
+    }
+
+    @Test
+    public void full_compactsToCoarserSpacing_andStaysConsistent() {
+        TrackIndex index = walk(new TrackIndex(1f, 0.01f, 2048), 10_000, 4);
+        assertTrue(index.size() <= 2048);
+        assertTrue(index.spacing() > 0.01f);
+        for (int t = 0; t < 2; t++) {
+            // Walk each track backwards through the links: spacing kept, every point reachable
+            int steps = 0;
+            for (int id = index.last(t); index.prev(id) >= 0; id = index.prev(id)) {
+                int p = index.prev(id);
+                assertEquals(t, index.track(p));
+                assertEquals(id, index.next(p));
+                assertTrue(Math.hypot(index.x(id) - index.x(p), index.y(id) - index.y(p)) >= index.spacing() * 0.999);
+                steps++;
+            }
+            assertTrue(steps > 100);
+        }
+        int id = index.last(1);
+        assertEquals(id, index.nearest(index.x(id), index.y(id), 0.001f, 0b10));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TrajectoryBufferTest {
+
+    /** Collects drained x values. */
+    private static final class Collector implements TrajectoryBuffer.Consumer {
+        final List<Float> xs = new ArrayList<>();
+
+        @Override
+        public void accept(long timestampNs, float x, float y) {
+            xs.add(x);
+        }
+    }
+
+    @Test
+    public void drain_deliversOnlyWhatIsNew_andSkipsOverwrittenSamples() {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(8);
+        TrajectoryBuffer.Cursor cursor = new TrajectoryBuffer.Cursor();
+        Collector out = new Collector();
+        assertFalse(buffer.hasNew(cursor));
+
+        for (int i = 0; i < 3; i++) buffer.add(i, i, 0);
+        assertTrue(buffer.hasNew(cursor));
+        assertEquals(3, buffer.drain(cursor, out));
+        assertEquals(0, buffer.drain(cursor, out));
+        assertEquals(3, cursor.seq());
+
+        // Twenty more into a ring of eight: only the newest seven are safe to read, the eighth
+        // slot is the one the writer fills next
+        for (int i = 3; i < 23; i++) buffer.add(i, i, 0);
+        out.xs.clear();
+        assertEquals(7, buffer.drain(cursor, out));
+        assertEquals(16f, out.xs.get(0), 0);
+        assertEquals(22f, out.xs.get(6), 0);
+    }
+
+    @Test
+    public void reset_dropsWhatTheWriterAddsBeforeSwitchingEpochs() {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(64);
+        TrajectoryBuffer.Cursor cursor = new TrajectoryBuffer.Cursor();
+        Collector out = new Collector();
+        buffer.add(1, 10, 0);
+        assertEquals(1, buffer.requestReset(cursor));
+        assertEquals(1, cursor.epoch());
+
+        // The writer has not seen the request yet: still the old trajectory
+        buffer.add(2, 11, 0);
+        buffer.add(3, 12, 0);
+        assertEquals(0, buffer.drain(cursor, out));
+
+        assertTrue(buffer.beginRequestedEpoch());
+        assertFalse(buffer.beginRequestedEpoch());
+        buffer.add(4, 0, 0);
+        buffer.add(5, 0.5f, 0);
+        assertEquals(2, buffer.drain(cursor, out));
+        assertEquals(0f, out.xs.get(0), 0);
+    }
+
+    @Test
+    public void secondReader_followsAnotherReadersReset() {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(64);
+        TrajectoryBuffer.Cursor resetting = new TrajectoryBuffer.Cursor(), passive = new TrajectoryBuffer.Cursor();
+        Collector a = new Collector(), b = new Collector();
+        buffer.add(1, 1, 0);
+        buffer.drain(passive, b);
+
+        buffer.requestReset(resetting);
+        buffer.add(2, 2, 0);
+        buffer.beginRequestedEpoch();
+        buffer.add(3, 0, 0);
+
+        assertEquals(1, buffer.drain(resetting, a));
+        // Sees the tail of the old epoch, then moves on with the writer
+        assertEquals(2, buffer.drain(passive, b));
+        assertEquals(1, passive.epoch());
+        buffer.add(4, 1, 0);
+        assertEquals(1, buffer.drain(passive, b));
+        assertEquals(4, b.xs.size());
+    }
+
+    @Test
+    public void concurrentReader_neverSeesTornSamples() throws Exception {
+        TrajectoryBuffer buffer = new TrajectoryBuffer(256);
+        AtomicLong written = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        long deadline = System.nanoTime() + 300_000_000L;
+
+        Thread writer = new Thread(() -> {
+            for (long t = 1; System.nanoTime() < deadline; t++) {
+                buffer.add(t, t, 2 * t);
+                written.set(t);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            TrajectoryBuffer.Cursor cursor = new TrajectoryBuffer.Cursor();
+            long[] last = {0};
+            TrajectoryBuffer.Consumer check = (t, x, y) -> {
+                if (x != (float) t || y != (float) (2 * t) || t <= last[0]) {
+                    failure.compareAndSet(null, "torn or out of order at " + t + ": " + x + ", " + y);
+                }
+                last[0] = t;
+            };
+            while (System.nanoTime() < deadline) buffer.drain(cursor, check);
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure.get(), failure.get());
+        assertTrue(written.get() > 1000);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrajectoryStoreTest {
+
+    @Test
+    public void levelsDecimateByTolerance() {
+        TrajectoryStore store = new TrajectoryStore(new float[]{0.0095f, 0.095f}, 4096);
+        // 1 m straight line in 1 mm steps
+        for (int i = 0; i <= 1000; i++) store.append(i * 0.001f, 0);
+
+        assertEquals(101, store.level(0).size());
+        assertEquals(11, store.level(1).size());
+        assertEquals(1.0f, store.headX(), 1e-6f);
+    }
+
+    @Test
+    public void memoryStaysBoundedAndCoverageIsKept() {
+        int maxPoints = 2048;
+        TrajectoryStore store = new TrajectoryStore(new float[]{0.005f, 0.05f}, maxPoints);
+        // ~1 hour of walking at 1.2 m/s sampled at 500 Hz
+        int samples = 500 * 3600;
+        float x = 0, y = 0;
+        for (int i = 0; i < samples; i++) {
+            double heading = i * 1e-5;
+            x += (float) (Math.cos(heading) * 1.2 / 500);
+            y += (float) (Math.sin(heading) * 1.2 / 500);
+            store.append(x, y);
+        }
+
+        for (int l = 0; l < store.levelCount(); l++) {
+            TrajectoryStore.Level level = store.level(l);
+            assertTrue(level.size() <= maxPoints);
+            assertTrue(level.chunkCount() <= maxPoints / TrajectoryStore.CHUNK_SIZE);
+
+            // Still starts at the origin after compaction, and bounds enclose every point
+            TrajectoryStore.Chunk first = level.chunk(0);
+            assertEquals(0f, first.xs[0], 0.01f);
+            for (int c = 0; c < level.chunkCount(); c++) {
+                TrajectoryStore.Chunk chunk = level.chunk(c);
+                for (int i = 0; i < chunk.size; i++) {
+                    assertTrue(chunk.xs[i] >= chunk.minX && chunk.xs[i] <= chunk.maxX);
+                    assertTrue(chunk.ys[i] >= chunk.minY && chunk.ys[i] <= chunk.maxY);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void snapshot_copiesTheFinestLevel_andStaysPutWhileTheStoreGrows() {
+        TrajectoryStore store = new TrajectoryStore(new float[]{0.01f, 0.1f}, 2048);
+        for (int i = 0; i < 1500; i++) store.append(i * 0.01f, 0);
+        store.append(14.995f, 0); // head closer than the tolerance: not kept by the levels
+
+        TrajectoryStore copy = store.snapshot();
+        assertEquals(1, copy.levelCount());
+        assertEquals(store.level(0).size(), copy.level(0).size());
+        assertEquals(store.level(0).chunkCount(), copy.level(0).chunkCount());
+        assertEquals(store.appendCount(), copy.appendCount());
+        assertEquals(14.995f, copy.headX(), 0);
+        TrajectoryStore.Chunk last = copy.level(0).chunk(copy.level(0).chunkCount() - 1);
+        assertEquals(14.99f, last.xs[last.size - 1], 1e-4f);
+        assertEquals(14.99f, last.maxX, 1e-4f);
+
+        int size = copy.level(0).size();
+        for (int i = 0; i < 1000; i++) store.append(15 + i * 0.01f, 1);
+        assertEquals(size, copy.level(0).size());
+        assertEquals(14.995f, copy.headX(), 0);
+    }
+
+    @Test
+    public void selectLevel_followsZoom() {
+        TrajectoryStore store = new TrajectoryStore();
+        assertEquals(0, store.selectLevel(500f, 1f));
+        assertEquals(store.levelCount() - 1, store.selectLevel(0.5f, 1f));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.smartnav;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoxelMapTest {
+
+    @Test
+    public void pointsInSameVoxelAreFused() {
+        VoxelMap map = new VoxelMap(0.1f, 1000);
+        map.insert(0.01f, 0.01f, 0.01f, 0.2f);
+        map.insert(0.03f, 0.03f, 0.03f, 0.6f);
+        map.insert(-0.01f, 0.01f, 0.01f, 0.9f); // neighbouring voxel (negative side)
+
+        assertEquals(2, map.size());
+        assertEquals(0.4f, map.confidenceAt(0.05f, 0.05f, 0.05f), 1e-6f);
+        assertEquals(0.9f, map.confidenceAt(-0.05f, 0.05f, 0.05f), 1e-6f);
+        assertEquals(-1f, map.confidenceAt(5f, 5f, 5f), 0f);
+    }
+
+    @Test
+    public void memoryCap_isEnforced_andLowConfidenceGoesFirst() {
+        int cap = 5_000;
+        VoxelMap map = new VoxelMap(0.05f, cap);
+        Random random = new Random(1);
+
+        // A confident "wall" that keeps being re-observed, plus a stream of one-off noise points
+        for (int frame = 0; frame < 200; frame++) {
+            for (int i = 0; i < 1000; i++) map.insert(i * 0.05f + 0.01f, 1.01f, 2.01f, 0.9f);
+            for (int i = 0; i < 500; i++) {
+                map.insert(random.nextFloat() * 50, random.nextFloat() * 50, random.nextFloat() * 50, 0.1f);
+            }
+            assertTrue(map.size() <= cap);
+        }
+
+        assertTrue(map.evictions() > 0);
+        int wallKept = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (map.confidenceAt(i * 0.05f + 0.01f, 1.01f, 2.01f) > 0) wallKept++;
+        }
+        assertEquals(1000, wallKept);
+    }
+
+    @Test
+    public void eviction_keepsHashConsistent() {
+        VoxelMap map = new VoxelMap(1f, 64);
+        for (int i = 0; i < 10_000; i++) {
+            map.insert(i % 997, (i * 7) % 13, 0, (i % 3) * 0.4f);
+            // Everything just inserted must be findable even after backward-shift deletions
+            assertTrue(map.confidenceAt(i % 997, (i * 7) % 13, 0) >= 0);
+        }
+        FloatBuffer out = FloatBuffer.allocate(64 * 4);
+        assertEquals(map.size(), map.copyTo(out, 0f, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void insertFrame_staysWellUnderOneMillisecond() {
+        VoxelMap map = new VoxelMap(0.05f, 200_000);
+        Random random = new Random(7);
+        int pointsPerFrame = 4000;
+        FloatBuffer frame = ByteBuffer.allocateDirect(pointsPerFrame * 16).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        long total = 0;
+        int frames = 600;
+        for (int f = 0; f < frames + 200; f++) {
+            frame.clear();
+            float ox = f * 0.02f;
+            for (int i = 0; i < pointsPerFrame; i++) {
+                frame.put(ox + random.nextFloat() * 4).put(random.nextFloat() * 2)
+                        .put(random.nextFloat() * 4).put(random.nextFloat());
+            }
+            frame.flip();
+            long start = System.nanoTime();
+            assertEquals(pointsPerFrame, map.insertFrame(frame));
+            if (f >= 200) total += System.nanoTime() - start; // first frames are JIT warm-up
+            assertEquals(0, frame.position());
+        }
+        long perFrameUs = total / frames / 1000;
+        assertTrue("insertFrame took " + perFrameUs + " us", perFrameUs < 1000);
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "Smart Nav"
 include(":app")
+include(":core")
@@ -16,9 +16,16 @@ import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Display;
+import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.TextView;
@@ -34,15 +41,23 @@ import com.google.ar.core.Session;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class MainActivity extends AppCompatActivity implements SensorEventListener, GLSurfaceView.Renderer {
 
+    private static final String TAG = "SmartNav";
+
     // ===========================================================
     // SHADER 1: BACKGROUND CAMERA
     // ===========================================================
@@ -64,42 +79,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                     "    gl_FragColor = texture2D(sTexture, vTexCoord);\n" +
                     "}";
 
-    // ===========================================================
-    // SHADER 2: POINT CLOUD (GREEN DOTS)
-    // ===========================================================
-    private static final String POINT_VERTEX_SHADER =
-            "uniform mat4 u_ModelViewProjection;\n" +
-                    "attribute vec4 a_Position;\n" +
-                    "varying float v_confidence;\n" +
-                    "void main() {\n" +
-                    "    gl_Position = u_ModelViewProjection * vec4(a_Position.xyz, 1.0);\n" +
-                    "    v_confidence = a_Position.w;   // Pass confidence to fragment shader\n" +
-                    "    gl_PointSize = 22.0;\n" +
-                    "}";
-
-    private static final String POINT_FRAGMENT_SHADER =
-            "precision mediump float;\n" +
-                    "varying float v_confidence;\n" +
-                    "void main() {\n" +
-                    "    float dist = length(gl_PointCoord - vec2(0.5));\n" +
-                    "    float alpha = smoothstep(0.5, 0.2, dist);\n" +
-                    "\n" +
-                    "    // Map confidence → color\n" +
-                    "    vec3 low = vec3(1.0, 0.0, 0.0);     // Red\n" +
-                    "    vec3 mid = vec3(1.0, 1.0, 0.0);     // Yellow\n" +
-                    "    vec3 high = vec3(0.0, 1.0, 0.0);    // Green\n" +
-                    "\n" +
-                    "    vec3 color;\n" +
-                    "    if (v_confidence < 0.5) {\n" +
-                    "       color = mix(low, mid, v_confidence * 2.0);\n" +
-                    "    } else {\n" +
-                    "       color = mix(mid, high, (v_confidence - 0.5) * 2.0);\n" +
-                    "    }\n" +
-                    "\n" +
-                    "    gl_FragColor = vec4(color, alpha);\n" +
-                    "}";
-
-
     // OpenGL State
     private int programId;
     private int textureId = -1;
@@ -110,15 +89,48 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private FloatBuffer transformedTexCoordBuffer;
 
     // Point Cloud State
-    private int pointProgramId;
-    private int pointPositionAttrib;
-    private int pointMvpUniform;
+    private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
+    private volatile boolean showAccumulatedMap = false;
+
+    // Global map: every frame's points are merged in on the GL thread (5 cm voxels, ~4 MB cap)
+    private final VoxelMap voxelMap = new VoxelMap(0.05f, 200_000);
+    private long lastMergedPointCloudTimestamp = 0;
+
+    // Floor-plan occupancy grid: the GL thread copies each new cloud into a pooled batch and the
+    // map thread integrates it, so ray casting never delays a frame. With no free batch (map
+    // thread still busy) the cloud is skipped and counted.
+    private static final int MAX_CLOUD_POINTS = 8192;
+    private final OccupancyGrid occupancyGrid = new OccupancyGrid();
+    private final ArrayBlockingQueue<CloudBatch> freeCloudBatches = new ArrayBlockingQueue<>(2);
+    private HandlerThread mapThread;
+    private volatile Handler mapHandler;
+    private volatile boolean occupancyResetRequested = false;
+    private long shownOccupancyUpdate = 0;
+    private long lastOccupancyRefreshNs = 0;
+
+    // Route to a goal tapped in PathView, planned on the map thread over the occupancy grid. The
+    // planner follows grid changes and the camera position incrementally and runs a bounded
+    // number of expansions per step; an unfinished search is re-posted behind the next cloud.
+    // Finished routes go to the UI through a pool of two, newest one wins.
+    private static final int PLAN_WINDOW_CELLS = 256; // 25.6 m square at 10 cm cells
+    private static final int PLAN_EXPANSIONS_PER_STEP = 2000;
+    private static final int MAX_ROUTE_POINTS = 2048;
+    private final PathPlanner planner = new PathPlanner(occupancyGrid.cellSize(), PLAN_WINDOW_CELLS, occupancyGrid::isOccupied);
+    private final ArrayBlockingQueue<PlannedRoute> freeRoutes = new ArrayBlockingQueue<>(2);
+    private final AtomicReference<PlannedRoute> newestRoute = new AtomicReference<>();
+    private float planStartX, planStartY; // map thread: camera of the newest cloud, plot frame
+    private boolean planStepPosted = false; // map thread
 
     // Matrices
     private final float[] projectionMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
     private final float[] viewProjectionMatrix = new float[16];
 
+    // GL-thread frame state: skip per-frame work when ARCore has no new camera image
+    private long lastFrameTimestamp = 0;
+    private Session cameraTextureSession = null;
+    private boolean uvTransformValid = false;
+
     // Quad coords
     private static final float[] QUAD_COORDS = {-1.0f, -1.0f, -1.0f, +1.0f, +1.0f, -1.0f, +1.0f, +1.0f};
     private static final float[] QUAD_TEX_COORDS = {0.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 0.0f};
@@ -128,27 +140,135 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     // ===========================================================
     private SensorManager sensorManager;
     private Sensor linearAccelerator, rotationVectorSensor;
-    private float[] rotationMatrix = new float[16];
-    private float[] position = new float[]{0, 0, 0};
-    private float[] velocity = new float[]{0, 0, 0};
-    private float[] phoneLinearAcceleration = new float[3];
-
-    // --- TIMESTAMPS (FIXED) ---
-    private long lastSensorTimestamp = 0;      // For DR (Blue Line)
-    private long lastPointCloudTimestamp = 0;  // For SLAM Dots (Green Dots)
-
-    private static final float NANO_TO_SEC = 1.0f / 1_000_000_000.0f;
+    // DR (blue line): acceleration integration at the full sensor rate, or step detection at 50 Hz.
+    // The UI requests the mode; the sensor thread switches engines and carries the position over.
+    private static final int STEP_DR_SAMPLING_PERIOD_US = 20_000;
+    private final DeadReckoningEngine integratingDr = new DeadReckoningEngine();
+    private final StepDeadReckoningEngine stepDr = new StepDeadReckoningEngine();
+    private DeadReckoner drEngine = integratingDr; // sensor thread only
+    private volatile boolean stepDrRequested = false;
+
+    // Sensor events are handled off the main looper; the UI pulls the newest DR state once per vsync
+    private HandlerThread sensorThread;
+    private Handler sensorHandler;
+    private final TrajectoryBuffer drSamples = new TrajectoryBuffer(4096);
+    private final TrajectoryBuffer.Cursor drCursor = new TrajectoryBuffer.Cursor();
+    private float latestDrX = 0, latestDrY = 0;
+    private float shownDrX = Float.NaN, shownDrY = Float.NaN;
+
+    // Timestamped history written by the sensor thread, so other threads can ask "where/how was
+    // the device at time t" (e.g. at a camera frame's timestamp) instead of using whatever is newest
+    private final TimedSampleRing orientationHistory = new TimedSampleRing(1024, 4); // qx, qy, qz, qw
+    private final TimedSampleRing drHistory = new TimedSampleRing(1024, 4);          // aEast, aNorth, x, y
+    private final float[] alignedRotation = new float[4];
+    private final float[] drHistorySample = new float[4];
+
+    // Batched mode: the sensor hub buffers samples in its FIFO for up to BATCH_LATENCY_US and
+    // delivers them in bursts; each burst is staged and processed in one pass after it arrives
+    private static final int BATCH_LATENCY_US = 1_000_000;
+    private static final long SENSOR_WAKEUP_GAP_NS = 2_000_000L;
+    private volatile boolean batchedSensors = false;
+    private final BatchedImuProcessor imuBatch = new BatchedImuProcessor(1024, 2_000L * BATCH_LATENCY_US,
+            (t, east, north, up) -> {
+                // The step engine takes its heading from the orientation at the sample, not the newest one
+                if (drEngine == stepDr && orientationHistory.orientationAtOrLatest(t, alignedRotation)) {
+                    float[] q = alignedRotation;
+                    stepDr.onRotationVector(q[0], q[1], q[2], q[3]);
+                }
+                afterImuSample(t, drEngine.onWorldAcceleration(t, east, north, up));
+            });
+    private boolean imuBatchPosted = false;
+    private long lastSensorDeliveryNs = 0;
+
+    // Fusion (green line): predicts on the sensor thread, corrected with SLAM poses from the GL thread
+    private final FusionEngine fusionEngine = new FusionEngine();
+    // Published by the GL thread once per new camera frame (tracking state + SLAM plot position)
+    private final PoseHandoff slamHandoff = new PoseHandoff();
+    private final PoseHandoff.Sample slamForFusion = new PoseHandoff.Sample();
+    private final PoseHandoff.Sample slamForUi = new PoseHandoff.Sample();
+    private boolean slamCorrectionPending = false;
+    // DR position interpolated at each camera frame's timestamp (GL thread -> UI), for the DR/SLAM gap
+    private final PoseHandoff drAtFrameHandoff = new PoseHandoff();
+    private final PoseHandoff.Sample drAtFrameForUi = new PoseHandoff.Sample();
+    private final float[] drAtFrame = new float[4];
+    // DR vs SLAM drift, fed from those aligned pairs (UI thread only)
+    private final DriftMetrics drift = new DriftMetrics();
+    private long lastDriftRefreshNs = 0;
+    private static final TrackingState[] TRACKING_STATES = TrackingState.values();
+    private static final int TRACKING = TrackingState.TRACKING.ordinal();
+    private int shownTrackingState = -1;
+    private final TrajectoryBuffer fusedSamples = new TrajectoryBuffer(4096);
+    private final TrajectoryBuffer.Cursor fusedCursor = new TrajectoryBuffer.Cursor();
+    // Every DR, fused and SLAM sample of the session, packed to about 2 B each (UI thread only).
+    // PathView only keeps what it draws; this is the full-rate history for analysis.
+    private final PackedTrajectory drTrack = new PackedTrajectory();
+    private final PackedTrajectory fusedTrack = new PackedTrajectory();
+    private final PackedTrajectory slamTrack = new PackedTrajectory();
+
+    // Session recording (off unless toggled); each producing thread writes through its own lane
+    private volatile SessionRecorder recorder;
+    private volatile SessionRecorder.Lane sensorLane, glLane;
+
+    // Live telemetry on loopback (off unless toggled); reach it with adb forward tcp:7007 tcp:7007.
+    // Fused poses stream from the sensor thread, new cloud points from the GL thread.
+    private static final long TELEMETRY_POSE_BATCH_NS = 20_000_000L;
+    private static final int TELEMETRY_MAX_POSES = 64;
+    private static final int TELEMETRY_MAX_CLOUD_POINTS = 512;
+    private static final float TELEMETRY_MIN_CONFIDENCE = 0.3f;
+    private volatile TelemetryServer telemetry;
+    private volatile TelemetryServer.Lane telemetryPoseLane, telemetryCloudLane;
+    private final CloudDelta cloudDelta = new CloudDelta();                      // GL thread only
+    private final int[] cloudDeltaIndices = new int[TELEMETRY_MAX_CLOUD_POINTS]; // GL thread only
+    private long lastStreamedCloudTimestamp = 0, streamedClients = 0;           // GL thread only
+
+    // Adaptive quality: the GL thread feeds frame timing and the thermal status into the governor
+    // and applies its level to the point cloud; the UI thread applies the published level to
+    // PathView and the sensor rate. Thermal callbacks (API 29+) arrive on the main thread.
+    private static final String[] QUALITY_REASONS = {"-", "frame time", "thermal", "recovered"};
+    private QualityGovernor governor;                                // GL thread only
+    private long lastCloudUpdateTimestamp = 0;                       // GL thread only
+    private volatile int qualityLevel = 0;
+    private volatile int qualityReason = QualityGovernor.REASON_NONE;
+    private volatile int thermalStatus = QualityGovernor.THERMAL_NONE;
+    private int appliedQualityLevel = 0;                             // UI thread only
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    // Saved map: earlier tracks (+ voxels) in files/maps. Saved on pause and on reset; the archive
+    // loaded at start is carried over chunk by chunk, so only the live tracks are re-encoded.
+    // The UI thread snapshots the tracks / voxels and MapSaveThread writes them, one save at a
+    // time, for the whole life of the activity.
+    private static final String MAP_FILE = "current.snmap";
+    private MapArchiveReader mapArchive;                             // UI thread: shown by PathView
+    private MapArchiveReader savedArchive;                           // MapSaveThread: carried over
+    private int mapGeneration = 0;                                   // UI thread, bumped by forgetMap
+    private HandlerThread mapSaveThread;
+    private Handler mapSaveHandler;
+    private final ArrayBlockingQueue<FloatBuffer> freeVoxelSnapshots = new ArrayBlockingQueue<>(1);
 
     private Session arSession;
     private GLSurfaceView surfaceView;
     private boolean installRequested;
+    // SLAM anchor (plot origin): GL thread only. Resets go through epochs like drSamples: the UI
+    // thread requests one, the GL thread drops its anchor before its next frame, re-anchors and
+    // only then acknowledges, so SLAM poses are used only once the acknowledged epoch matches.
     private boolean isSlamInitialized = false;
     private float startAnchorX = 0, startAnchorZ = 0;
+    private int slamEpoch = 0;                                       // GL thread only
+    private volatile int requestedSlamEpoch = 0;                     // written by the UI thread
+    private volatile int anchoredSlamEpoch = -1;                     // written by the GL thread
+
+    // Instrumentation: recorded on the sensor/GL/UI threads, shown in the tv_metrics overlay
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final StringBuilder metricsText = new StringBuilder();
+    private static final long METRICS_REFRESH_NS = 500_000_000L;
+    private long lastMetricsRefreshNs = 0;
+    private long lastSensorEventTimestamp = 0;
+    private long latestDrTimestamp = 0;
 
     // UI
     private PathView pathView;
-    private TextView tvPositionX, tvSlamPos, tvStatus;
-    private Button btnReset;
+    private TextView tvPositionX, tvSlamPos, tvStatus, tvMetrics, tvDrift;
+    private Button btnReset, btnRecord, btnPoints, btnBatch, btnDr;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -159,12 +279,22 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         tvPositionX = findViewById(R.id.tv_position_x);
         tvSlamPos = findViewById(R.id.tv_slam_pos);
         tvStatus = findViewById(R.id.tv_status);
+        tvMetrics = findViewById(R.id.tv_metrics);
+        tvDrift = findViewById(R.id.tv_drift);
         btnReset = findViewById(R.id.btn_reset);
+        btnRecord = findViewById(R.id.btn_record);
+        btnPoints = findViewById(R.id.btn_points);
+        btnBatch = findViewById(R.id.btn_batch);
+        btnDr = findViewById(R.id.btn_dr);
 
         sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         linearAccelerator = sensorManager.getDefaultSensor(Sensor.TYPE_LINEAR_ACCELERATION);
         rotationVectorSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
 
+        // One refresh of the display is the frame budget; ARCore's update() does not block
+        float refreshHz = getWindowManager().getDefaultDisplay().getRefreshRate();
+        governor = new QualityGovernor((long) (1e9 / Math.max(30f, refreshHz)));
+
         surfaceView = findViewById(R.id.surfaceview);
         surfaceView.setPreserveEGLContextOnPause(true);
         surfaceView.setEGLContextClientVersion(2);
@@ -173,6 +303,33 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
 
         btnReset.setOnClickListener(v -> resetPaths());
+        btnReset.setOnLongClickListener(v -> {
+            forgetMap();
+            return true;
+        });
+        btnRecord.setOnClickListener(v -> {
+            if (recorder == null) startRecording();
+            else stopRecording();
+        });
+        btnRecord.setOnLongClickListener(v -> {
+            if (telemetry == null) startTelemetry();
+            else stopTelemetry();
+            return true;
+        });
+        tvStatus.setOnLongClickListener(v -> {
+            tvMetrics.setVisibility(tvMetrics.getVisibility() == View.VISIBLE ? View.GONE : View.VISIBLE);
+            return true;
+        });
+        tvMetrics.setOnLongClickListener(v -> {
+            dumpMetrics();
+            return true;
+        });
+        btnPoints.setOnClickListener(v -> {
+            showAccumulatedMap = !showAccumulatedMap;
+            btnPoints.setText(showAccumulatedMap ? "Points: Map" : "Points: Frame");
+        });
+        btnBatch.setOnClickListener(v -> setBatchedSensors(!batchedSensors));
+        btnDr.setOnClickListener(v -> setStepDr(!stepDrRequested));
 
         // Init Buffers
         vertexBuffer = ByteBuffer.allocateDirect(QUAD_COORDS.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
@@ -180,20 +337,245 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         texCoordBuffer = ByteBuffer.allocateDirect(QUAD_TEX_COORDS.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
         texCoordBuffer.put(QUAD_TEX_COORDS).position(0);
         transformedTexCoordBuffer = ByteBuffer.allocateDirect(QUAD_TEX_COORDS.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        while (freeCloudBatches.remainingCapacity() > 0) freeCloudBatches.add(new CloudBatch());
+        pathView.setOccupancyGrid(occupancyGrid);
+        while (freeRoutes.remainingCapacity() > 0) freeRoutes.add(new PlannedRoute());
+        occupancyGrid.setListener((cellX, cellY, occupied) -> planner.cellChanged(cellX, cellY));
+        pathView.setOnGoalListener(new PathView.OnGoalListener() {
+            @Override
+            public void onGoalSelected(float x, float y) {
+                Handler map = mapHandler;
+                if (map == null || !isSlamAnchored()) {
+                    pathView.clearGoal();
+                    Toast.makeText(MainActivity.this, "Navigation needs SLAM tracking", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                map.post(() -> setGoalOnMapThread(x, y));
+            }
+
+            @Override
+            public void onGoalCleared() {
+                Handler map = mapHandler;
+                if (map != null) map.post(clearGoalOnMapThread);
+            }
+        });
+
+        loadMap();
+        // Started after loadMap(), so the thread sees savedArchive
+        mapSaveThread = new HandlerThread("MapSaveThread", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mapSaveThread.start();
+        mapSaveHandler = new Handler(mapSaveThread.getLooper());
     }
 
-    private void resetPaths() {
-        lastSensorTimestamp = 0; // Reset Sensor time
-        // Do NOT reset PointCloud timestamp, or it might flicker
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // A save posted by the last onPause() still runs to completion
+        mapSaveThread.quitSafely();
+    }
 
-        position = new float[]{0, 0, 0};
-        velocity = new float[]{0, 0, 0};
-        isSlamInitialized = false;
+    // ==================== MAP PERSISTENCE ====================
+    private File mapFile() {
+        return new File(new File(getFilesDir(), "maps"), MAP_FILE);
+    }
+
+    private void loadMap() {
+        File file = mapFile();
+        if (!file.isFile()) return;
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            // Only the index is read here; PathView decodes the chunks it shows
+            mapArchive = new MapArchiveReader(file);
+            savedArchive = mapArchive;
+            pathView.setArchive(mapArchive);
+            Log.i(TAG, "Map loaded: " + mapArchive.chunkCount() + " chunks, "
+                    + mapArchive.totalCount(MapArchiveWriter.KIND_TRACK) + " track points in "
+                    + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + " us");
+        } catch (IOException e) {
+            Log.e(TAG, "Discarding unreadable map " + file, e);
+            file.delete();
+        }
+    }
+
+    /**
+     * Snapshots the live tracks and queues a save on MapSaveThread. {@code voxels} is a snapshot of
+     * the voxel map from {@link #freeVoxelSnapshots} (returned there once written), or null to keep
+     * the archived voxels. With {@code reopen} the saved file becomes the archive that PathView
+     * shows and later saves carry over, for when the live tracks are cleared.
+     */
+    private void saveMap(FloatBuffer voxels, int voxelCount, boolean reopen) {
+        TrajectoryStore[] tracks = pathView.snapshotTracks();
+        int generation = mapGeneration;
+        mapSaveHandler.post(() -> {
+            boolean saved = writeMap(tracks, voxels, voxelCount);
+            if (voxels != null) freeVoxelSnapshots.offer(voxels);
+            if (!saved || !reopen) return;
+            try {
+                MapArchiveReader archive = new MapArchiveReader(mapFile());
+                savedArchive = archive;
+                runOnUiThread(() -> {
+                    if (generation != mapGeneration) return; // forgotten meanwhile
+                    mapArchive = archive;
+                    pathView.setArchive(archive);
+                });
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot reopen map", e);
+            }
+        });
+    }
+
+    /**
+     * Writes the carried-over archive plus the track snapshots to a temporary file and swaps it in,
+     * so an interrupted save leaves the previous map intact. MapSaveThread only.
+     */
+    private boolean writeMap(TrajectoryStore[] tracks, FloatBuffer voxels, int voxelCount) {
+        File file = mapFile();
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+            return false;
+        }
+        File tmp = new File(dir, MAP_FILE + ".tmp");
+        long start = SystemClock.elapsedRealtimeNanos();
+        try (MapArchiveWriter writer = new MapArchiveWriter(tmp)) {
+            if (savedArchive != null) writer.copyChunks(savedArchive, MapArchiveWriter.KIND_TRACK);
+            for (int track = 0; track < tracks.length; track++) {
+                if (tracks[track] != null) writer.writeTrack(track, tracks[track]);
+            }
+            if (voxels != null) writer.writeVoxels(voxels, voxelCount);
+            else if (savedArchive != null) writer.copyChunks(savedArchive, MapArchiveWriter.KIND_VOXELS);
+        } catch (IOException e) {
+            Log.e(TAG, "Map save failed", e);
+            tmp.delete();
+            return false;
+        }
+        // The old mappings stay valid after the rename, so mapArchive / savedArchive keep working
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Cannot replace " + file);
+            return false;
+        }
+        Log.i(TAG, "Map saved: " + file.length() + " bytes in "
+                + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + " us");
+        return true;
+    }
+
+    private void forgetMap() {
+        mapGeneration++;
+        mapArchive = null;
+        pathView.setArchive(null);
+        // Behind any queued save, so nothing writes the file back
+        mapSaveHandler.post(() -> {
+            savedArchive = null;
+            mapFile().delete();
+        });
+        Toast.makeText(this, "Saved map cleared", Toast.LENGTH_SHORT).show();
+    }
+
+    private void resetPaths() {
+        // Keep what was walked so far: fold the live tracks into the archive, then reopen it
+        saveMap(null, 0, true);
+        // DR state belongs to the sensor thread: it resets itself on the next event. Until then it
+        // keeps writing the old epoch, which the cursors now skip.
+        drSamples.requestReset(drCursor);
+        fusedSamples.requestReset(fusedCursor);
+        latestDrX = latestDrY = 0;
+        shownDrX = shownDrY = Float.NaN;
+        requestedSlamEpoch++;
         pathView.resetPath();
+        pathView.clearGoal();
+        drTrack.clear();
+        fusedTrack.clear();
+        slamTrack.clear();
+        // The grid and planner belong to the map thread: cleared before its next update
+        occupancyResetRequested = true;
+        Handler map = mapHandler;
+        if (map != null) map.post(applyOccupancyReset);
+        drift.reset();
+        tvDrift.setText("ATE -- | RPE -- | --/m");
         tvPositionX.setText("DR: 0.00, 0.00");
         tvSlamPos.setText("SLAM: 0.00, 0.00");
     }
 
+    private void dumpMetrics() {
+        File dir = new File(getExternalFilesDir(null), "metrics");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Toast.makeText(this, "Cannot create " + dir, Toast.LENGTH_LONG).show();
+            return;
+        }
+        File file = new File(dir, "metrics-" + System.currentTimeMillis() + ".csv");
+        try (Writer out = new FileWriter(file)) {
+            out.write("# " + Build.MODEL + " / " + Build.VERSION.RELEASE + "\n");
+            metrics.dump(out);
+            Toast.makeText(this, "Metrics saved to " + file.getName(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Metrics Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void startRecording() {
+        File dir = new File(getExternalFilesDir(null), "sessions");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Toast.makeText(this, "Cannot create " + dir, Toast.LENGTH_LONG).show();
+            return;
+        }
+        File file = new File(dir, "session-" + System.currentTimeMillis() + ".snav");
+        try {
+            SessionRecorder r = new SessionRecorder(file);
+            sensorLane = r.newLane();
+            glLane = r.newLane();
+            recorder = r;
+            btnRecord.setText("Stop");
+            Toast.makeText(this, "Recording to " + file.getName(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Record Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void stopRecording() {
+        SessionRecorder r = recorder;
+        if (r == null) return;
+        recorder = null;
+        sensorLane = null;
+        glLane = null;
+        btnRecord.setText("Record");
+        try {
+            r.close();
+            if (r.getDroppedRecords() > 0) {
+                Toast.makeText(this, "Recording dropped " + r.getDroppedRecords() + " records", Toast.LENGTH_LONG).show();
+            }
+        } catch (IOException e) {
+            Toast.makeText(this, "Record Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void startTelemetry() {
+        try {
+            TelemetryServer server = new TelemetryServer(TelemetryServer.DEFAULT_PORT);
+            telemetryPoseLane = server.newLane(TelemetryServer.TYPE_POSES, TELEMETRY_MAX_POSES, TELEMETRY_POSE_BATCH_NS);
+            telemetryCloudLane = server.newLane(TelemetryServer.TYPE_CLOUD, TELEMETRY_MAX_CLOUD_POINTS, Long.MAX_VALUE);
+            telemetry = server;
+            Toast.makeText(this, "Telemetry on port " + server.port(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Telemetry Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void stopTelemetry() {
+        TelemetryServer server = telemetry;
+        if (server == null) return;
+        telemetry = null;
+        telemetryPoseLane = null;
+        telemetryCloudLane = null;
+        try {
+            // A producer still holding a lane only fills pooled buffers nobody sends
+            server.close();
+            Toast.makeText(this, "Telemetry stopped (" + server.framesSent() + " frames sent, "
+                    + server.framesDropped() + " dropped)", Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Telemetry Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -210,7 +592,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 arSession = new Session(this);
                 Config config = new Config(arSession);
                 config.setFocusMode(Config.FocusMode.AUTO);
-                config.setUpdateMode(Config.UpdateMode.BLOCKING);
+                // Non-blocking: update() returns the latest camera image instead of waiting for a new one
+                config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
                 arSession.configure(config);
             }
             arSession.resume();
@@ -219,16 +602,102 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             tvStatus.setText("AR Error: " + e.getMessage());
         }
 
-        if (linearAccelerator != null) sensorManager.registerListener(this, linearAccelerator, SensorManager.SENSOR_DELAY_FASTEST);
-        if (rotationVectorSensor != null) sensorManager.registerListener(this, rotationVectorSensor, SensorManager.SENSOR_DELAY_FASTEST);
+        sensorThread = new HandlerThread("SensorThread", android.os.Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        sensorThread.start();
+        sensorHandler = new Handler(sensorThread.getLooper());
+        registerSensors();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Delivers the current status right away, then every change
+            thermalListener = status -> thermalStatus = status;
+            getSystemService(PowerManager.class).addThermalStatusListener(thermalListener);
+        }
+        mapThread = new HandlerThread("MapThread", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        mapThread.start();
+        mapHandler = new Handler(mapThread.getLooper());
+        Choreographer.getInstance().postFrameCallback(uiFrameCallback);
+    }
+
+    private void registerSensors() {
+        int latencyUs = batchedSensors ? BATCH_LATENCY_US : 0;
+        // The slower of what the DR mode and the quality level ask for (SENSOR_DELAY_FASTEST is 0)
+        int periodUs = Math.max(stepDrRequested ? STEP_DR_SAMPLING_PERIOD_US : SensorManager.SENSOR_DELAY_FASTEST,
+                QualityGovernor.sensorPeriodUs(appliedQualityLevel));
+        if (linearAccelerator != null) {
+            sensorManager.registerListener(this, linearAccelerator, periodUs, latencyUs, sensorHandler);
+        }
+        if (rotationVectorSensor != null) {
+            sensorManager.registerListener(this, rotationVectorSensor, periodUs, latencyUs, sensorHandler);
+        }
+    }
+
+    private void setStepDr(boolean steps) {
+        stepDrRequested = steps;
+        btnDr.setText(steps ? "DR: Steps" : "DR: Integrate");
+        metrics.reset();
+        reregisterSensors();
+    }
+
+    private void setBatchedSensors(boolean batched) {
+        if (batched && (linearAccelerator == null || linearAccelerator.getFifoMaxEventCount() == 0)) {
+            // Without a FIFO the latency is ignored and we would just pay for staging
+            Toast.makeText(this, "Sensor batching not supported on this device", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        batchedSensors = batched;
+        btnBatch.setText(batched ? "IMU: Batched" : "IMU: Live");
+        metrics.reset();
+        reregisterSensors();
+    }
+
+    private void reregisterSensors() {
+        if (sensorHandler == null) return; // paused; applied in onResume
+        sensorManager.unregisterListener(this);
+        // Anything still staged from the old registration goes through before the switch
+        sensorHandler.post(() -> imuBatch.process(Long.MAX_VALUE));
+        registerSensors();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        stopRecording();
+        stopTelemetry();
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            getSystemService(PowerManager.class).removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
         if (arSession != null) arSession.pause();
         surfaceView.onPause();
+        // The GL thread is parked once onPause() returns, so its voxel map can be read here; only
+        // the copy happens on this thread, the encoding and file writes on MapSaveThread.
+        // Voxels stay in ARCore world coordinates and are only archived: a new ARCore session
+        // starts with a different world origin, so they are not merged back into the live map.
+        int voxelCount = voxelMap.size();
+        if (voxelCount > 0) {
+            // Pool empty: the previous pause's save is still running, give this one its own buffer
+            FloatBuffer snapshot = freeVoxelSnapshots.poll();
+            if (snapshot == null) snapshot = FloatBuffer.allocate(voxelMap.maxVoxels() * 4);
+            snapshot.clear();
+            voxelCount = voxelMap.copyTo(snapshot, 0f, voxelMap.maxVoxels());
+            snapshot.flip();
+            saveMap(snapshot, voxelCount, false);
+        } else {
+            saveMap(null, 0, false);
+        }
         sensorManager.unregisterListener(this);
+        if (sensorHandler != null) sensorHandler.post(() -> imuBatch.process(Long.MAX_VALUE));
+        Choreographer.getInstance().removeFrameCallback(uiFrameCallback);
+        if (sensorThread != null) {
+            sensorThread.quitSafely();
+            sensorThread = null;
+            sensorHandler = null;
+        }
+        if (mapThread != null) {
+            // Batches still queued run before the thread exits and return to the pool
+            mapHandler = null;
+            mapThread.quitSafely();
+            mapThread = null;
+        }
     }
 
     @Override
@@ -240,32 +709,190 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     // ==================== SENSOR LOGIC (DR - BLUE LINE) ====================
+    // Runs on SensorThread at full sensor rate; only writes into the ring buffers
     @Override
     public void onSensorChanged(SensorEvent event) {
+        // Not short-circuited: both buffers move to their requested epoch
+        if (drSamples.beginRequestedEpoch() | fusedSamples.beginRequestedEpoch()) {
+            lastSensorEventTimestamp = 0;
+            drEngine.reset();
+            fusionEngine.reset();
+            drHistory.clear();
+        }
+        DeadReckoner wantedDr = stepDrRequested ? stepDr : integratingDr;
+        if (wantedDr != drEngine) {
+            // The blue line continues from where the other engine got to
+            wantedDr.reset();
+            wantedDr.setPosition(drEngine.getX(), drEngine.getY());
+            drEngine = wantedDr;
+        }
+        metrics.increment(PipelineMetrics.COUNT_SENSOR_EVENTS);
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (now - lastSensorDeliveryNs > SENSOR_WAKEUP_GAP_NS) metrics.increment(PipelineMetrics.COUNT_SENSOR_WAKEUPS);
+        lastSensorDeliveryNs = now;
+
+        boolean batched = batchedSensors;
+        float[] v = event.values;
+        SessionRecorder.Lane lane = sensorLane;
         if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-            SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
+            float w = v.length >= 4 ? v[3] : DeadReckoningEngine.scalarPart(v[0], v[1], v[2]);
+            orientationHistory.add(event.timestamp, v[0], v[1], v[2], w);
+            if (batched) imuBatch.addRotation(event.timestamp, v[0], v[1], v[2], w);
+            else drEngine.onRotationVector(v[0], v[1], v[2], w);
+            if (lane != null) lane.recordRotation(event.timestamp, v[0], v[1], v[2], w);
         }
         if (event.sensor.getType() == Sensor.TYPE_LINEAR_ACCELERATION) {
-            System.arraycopy(event.values, 0, phoneLinearAcceleration, 0, 3);
-            if (lastSensorTimestamp != 0) {
-                float dt = (event.timestamp - lastSensorTimestamp) * NANO_TO_SEC;
-                float[] worldLinearAccel = new float[4];
-                float[] phoneAccelVec = new float[]{phoneLinearAcceleration[0], phoneLinearAcceleration[1], phoneLinearAcceleration[2], 0};
-                android.opengl.Matrix.multiplyMV(worldLinearAccel, 0, rotationMatrix, 0, phoneAccelVec, 0);
-
-                velocity[0] += worldLinearAccel[0] * dt;
-                velocity[1] += worldLinearAccel[1] * dt;
-                position[0] += velocity[0] * dt;
-                position[1] += velocity[1] * dt;
-
-                runOnUiThread(() -> {
-                    pathView.updateDrPosition(position[0], position[1]);
-                    tvPositionX.setText(String.format("DR: %.2f, %.2f", position[0], position[1]));
-                });
+            if (lane != null) lane.recordAccel(event.timestamp, v[0], v[1], v[2]);
+            if (lastSensorEventTimestamp != 0) {
+                metrics.record(PipelineMetrics.STAGE_SENSOR_INTERVAL, event.timestamp - lastSensorEventTimestamp);
+            }
+            lastSensorEventTimestamp = event.timestamp;
+            if (batched) {
+                imuBatch.addAccel(event.timestamp, v[0], v[1], v[2]);
+            } else {
+                // Rotate by the orientation at this sample's time: interpolated if a later rotation
+                // already arrived, otherwise the newest one. Always set it, since an earlier sample may
+                // have left an older interpolated rotation in the engine.
+                if (orientationHistory.orientationAtOrLatest(event.timestamp, alignedRotation)) {
+                    float[] q = alignedRotation;
+                    drEngine.onRotationVector(q[0], q[1], q[2], q[3]);
+                }
+                afterImuSample(event.timestamp, drEngine.onLinearAcceleration(event.timestamp, v[0], v[1], v[2]));
             }
-            lastSensorTimestamp = event.timestamp; // Update SENSOR time only
+        }
+        if (batched && !imuBatchPosted) {
+            // A FIFO flush is dispatched as one run of callbacks; this runs right after it
+            imuBatchPosted = true;
+            sensorHandler.post(processImuBatch);
+        }
+    }
+
+    private final Runnable processImuBatch = () -> {
+        imuBatchPosted = false;
+        long start = System.nanoTime();
+        imuBatch.process(SystemClock.elapsedRealtimeNanos());
+        metrics.record(PipelineMetrics.STAGE_SENSOR_BATCH, System.nanoTime() - start);
+        metrics.increment(PipelineMetrics.COUNT_SENSOR_BATCHES);
+    };
+
+    /** Fusion and UI hand-off for one acceleration sample, after DR has integrated it. */
+    private void afterImuSample(long timestampNs, boolean drAdvanced) {
+        if (drAdvanced) {
+            drSamples.add(timestampNs, drEngine.getX(), drEngine.getY());
+            float[] h = drHistorySample;
+            h[0] = drEngine.getWorldAccelX();
+            h[1] = drEngine.getWorldAccelY();
+            h[2] = drEngine.getX();
+            h[3] = drEngine.getY();
+            drHistory.add(timestampNs, h);
+        }
+        // Fusion predicts from every sample (inertial-only while SLAM is not tracking)
+        fusionEngine.predict(timestampNs, drEngine.getWorldAccelX(), drEngine.getWorldAccelY());
+        boolean anchored = isSlamAnchored();
+        if (slamHandoff.readIfNewer(slamForFusion)) {
+            slamCorrectionPending = anchored && slamForFusion.trackingState == TRACKING;
+        }
+        // A batch replays up to a second of IMU at once: hold the pose until integration reaches it
+        if (slamCorrectionPending && slamForFusion.timestampNs <= timestampNs) {
+            slamCorrectionPending = false;
+            fusionEngine.correct(slamForFusion.timestampNs, slamForFusion.x, slamForFusion.y);
+        }
+        fusedSamples.add(timestampNs, fusionEngine.getX(), fusionEngine.getY());
+        TelemetryServer.Lane telemetryLane = telemetryPoseLane;
+        if (telemetryLane != null) {
+            telemetryLane.putPose(timestampNs, fusionEngine.getX(), fusionEngine.getY(), slamForFusion.trackingState);
         }
     }
+
+    // ==================== UI FRAME LOOP (once per vsync) ====================
+    private final TrajectoryBuffer.Consumer drPathAppender = (timestampNs, x, y) -> {
+        drTrack.append(timestampNs, x, y);
+        pathView.updateDrPosition(x, y);
+        latestDrX = x;
+        latestDrY = y;
+        latestDrTimestamp = timestampNs;
+    };
+
+    private final TrajectoryBuffer.Consumer fusedPathAppender = (timestampNs, x, y) -> {
+        fusedTrack.append(timestampNs, x, y);
+        pathView.updateFusedPosition(x, y);
+    };
+
+    private final Choreographer.FrameCallback uiFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (drSamples.hasNew(drCursor) && drSamples.drain(drCursor, drPathAppender) > 0) {
+                // Sensor timestamps share the elapsedRealtimeNanos() timebase
+                metrics.record(PipelineMetrics.STAGE_SENSOR_TO_UI, SystemClock.elapsedRealtimeNanos() - latestDrTimestamp);
+            }
+            if (fusedSamples.hasNew(fusedCursor)) fusedSamples.drain(fusedCursor, fusedPathAppender);
+            boolean slamAnchored = isSlamAnchored();
+            if (slamHandoff.readIfNewer(slamForUi)) {
+                if (slamForUi.trackingState != shownTrackingState) {
+                    shownTrackingState = slamForUi.trackingState;
+                    tvStatus.setText("Status: " + TRACKING_STATES[shownTrackingState]);
+                }
+                // Poses from before a reset are in the old plot frame
+                if (slamForUi.trackingState == TRACKING && slamAnchored) {
+                    pathView.updateSlamPosition(slamForUi.x, slamForUi.y);
+                    slamTrack.append(slamForUi.timestampNs, slamForUi.x, slamForUi.y);
+                    // Published before the SLAM pose of the same frame, so it is already visible here
+                    drAtFrameHandoff.readIfNewer(drAtFrameForUi);
+                    if (drAtFrameForUi.timestampNs == slamForUi.timestampNs) {
+                        drift.add(slamForUi.timestampNs, drAtFrameForUi.x, drAtFrameForUi.y, slamForUi.x, slamForUi.y);
+                        float gap = (float) Math.hypot(drAtFrameForUi.x - slamForUi.x, drAtFrameForUi.y - slamForUi.y);
+                        tvSlamPos.setText(String.format("SLAM: %.2f, %.2f  (DR gap %.2f m)", slamForUi.x, slamForUi.y, gap));
+                    } else {
+                        tvSlamPos.setText(String.format("SLAM: %.2f, %.2f", slamForUi.x, slamForUi.y));
+                    }
+                }
+            }
+            int level = qualityLevel;
+            if (level != appliedQualityLevel) {
+                boolean sensorRateChanged = QualityGovernor.sensorPeriodUs(level) != QualityGovernor.sensorPeriodUs(appliedQualityLevel);
+                appliedQualityLevel = level;
+                pathView.setMinRedrawInterval(QualityGovernor.pathRedrawIntervalMs(level));
+                if (sensorRateChanged) reregisterSensors();
+            }
+            // PathView.invalidate() is coalesced by the framework; only the text needs deduplicating
+            float x = latestDrX;
+            float y = latestDrY;
+            if (x != shownDrX || y != shownDrY) {
+                shownDrX = x;
+                shownDrY = y;
+                tvPositionX.setText(String.format("DR: %.2f, %.2f", x, y));
+            }
+            if (drift.count() > 0 && frameTimeNanos - lastDriftRefreshNs > METRICS_REFRESH_NS) {
+                lastDriftRefreshNs = frameTimeNanos;
+                tvDrift.setText(String.format("ATE %.2f | RPE %.2f | %.1f%%/m",
+                        drift.alignedAte(), drift.rpe(), drift.driftPerMeter() * 100));
+            }
+            // The occupancy layer is part of PathView's cached bitmap: rebuild it at most twice a second
+            PlannedRoute route = newestRoute.getAndSet(null);
+            if (route != null) {
+                if (route.status == PathPlanner.NO_GOAL) pathView.clearGoal();
+                else pathView.setRoute(route.points, route.count);
+                freeRoutes.offer(route);
+            }
+            if (occupancyGrid.updateCount() != shownOccupancyUpdate && frameTimeNanos - lastOccupancyRefreshNs > METRICS_REFRESH_NS) {
+                lastOccupancyRefreshNs = frameTimeNanos;
+                shownOccupancyUpdate = occupancyGrid.updateCount();
+                pathView.onOccupancyChanged();
+            }
+            if (tvMetrics.getVisibility() == View.VISIBLE && frameTimeNanos - lastMetricsRefreshNs > METRICS_REFRESH_NS) {
+                lastMetricsRefreshNs = frameTimeNanos;
+                metrics.formatOverlay(metricsText);
+                long samples = drTrack.size() + fusedTrack.size() + slamTrack.size();
+                long bytes = drTrack.bytesUsed() + fusedTrack.bytesUsed() + slamTrack.bytesUsed();
+                metricsText.append(String.format("%nhistory %d samples in %d KB (%.2f B/sample)",
+                        samples, bytes / 1024, samples == 0 ? 0f : bytes / (float) samples));
+                metricsText.append(String.format("%nquality level %d (%s, thermal %d)", appliedQualityLevel,
+                        QUALITY_REASONS[qualityReason], thermalStatus));
+                tvMetrics.setText(metricsText);
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
     @Override public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 
     // ==================== OPENGL RENDERING (SLAM + POINTS) ====================
@@ -284,14 +911,17 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
 
         // 2. Camera Program
-        programId = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        programId = ShaderUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
         positionAttrib = GLES20.glGetAttribLocation(programId, "vPosition");
         texCoordAttrib = GLES20.glGetAttribLocation(programId, "aTexCoord");
 
-        // 3. Point Cloud Program
-        pointProgramId = createProgram(POINT_VERTEX_SHADER, POINT_FRAGMENT_SHADER);
-        pointPositionAttrib = GLES20.glGetAttribLocation(pointProgramId, "a_Position");
-        pointMvpUniform = GLES20.glGetUniformLocation(pointProgramId, "u_ModelViewProjection");
+        // 3. Point Cloud Program + VBOs
+        pointCloudRenderer.createOnGlThread();
+
+        // New context: the texture name and UV transform must be handed to ARCore again
+        cameraTextureSession = null;
+        uvTransformValid = false;
+        lastFrameTimestamp = 0;
     }
 
     @Override
@@ -303,16 +933,231 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
+    /** @return how long the merge took, for the voxel.merge stage */
+    private long mergeIntoMap(PointCloud pointCloud) {
+        long start = System.nanoTime();
+        lastMergedPointCloudTimestamp = pointCloud.getTimestamp();
+        voxelMap.insertFrame(pointCloud.getPoints());
+        long elapsed = System.nanoTime() - start;
+        metrics.record(PipelineMetrics.STAGE_VOXEL_MERGE, elapsed);
+        return elapsed;
+    }
+
+    private void applyQuality(long frameStart, long frameNs) {
+        int thermal = thermalStatus;
+        boolean changed = thermal != governor.thermalStatus() && governor.onThermalStatus(frameStart, thermal);
+        changed |= governor.onFrame(frameStart, frameNs);
+        if (!changed) return;
+        pointCloudRenderer.setMaxPoints(governor.maxCloudPoints());
+        pointCloudRenderer.setPointSize(governor.pointSizePx());
+        qualityReason = governor.reason();
+        qualityLevel = governor.level();
+    }
+
+    private void publishSlamPose(Frame frame, Camera camera) {
+        TrackingState state = camera.getTrackingState();
+        SessionRecorder.Lane lane = glLane;
+        if (lane != null) lane.recordTrackingState(frame.getTimestamp(), state.ordinal());
+
+        if (state != TrackingState.TRACKING) {
+            slamHandoff.publish(frame.getTimestamp(), 0, 0, state.ordinal());
+            return;
+        }
+        Pose pose = camera.getPose();
+        if (lane != null) {
+            lane.recordPose(frame.getTimestamp(), pose.tx(), pose.ty(), pose.tz(),
+                    pose.qx(), pose.qy(), pose.qz(), pose.qw());
+        }
+        float x = pose.tx();
+        float z = pose.tz();
+
+        boolean anchored = !isSlamInitialized;
+        if (anchored) {
+            startAnchorX = x;
+            startAnchorZ = z;
+            isSlamInitialized = true;
+        }
+        float plotX = x - startAnchorX;
+        float plotY = -(z - startAnchorZ);
+        // Camera and IMU timestamps share a timebase: take DR where it was when this image was exposed
+        if (drHistory.sampleAt(frame.getTimestamp(), drAtFrame)) {
+            drAtFrameHandoff.publish(frame.getTimestamp(), drAtFrame[2], drAtFrame[3], state.ordinal());
+        }
+        slamHandoff.publish(frame.getTimestamp(), plotX, plotY, state.ordinal());
+        // After the publish: a reader that sees the new epoch also sees a pose from the new anchor
+        if (anchored) anchoredSlamEpoch = slamEpoch;
+    }
+
+    /** GL thread, before anything uses the anchor this frame: drops it if a reset was requested. */
+    private void beginRequestedSlamEpoch() {
+        int requested = requestedSlamEpoch;
+        if (requested == slamEpoch) return;
+        slamEpoch = requested;
+        isSlamInitialized = false;
+    }
+
+    /** Whether SLAM poses belong to the current epoch; read before taking a pose from the handoff. */
+    private boolean isSlamAnchored() {
+        return anchoredSlamEpoch == requestedSlamEpoch;
+    }
+
+    /** GL thread: streams the points that are new since the previous cloud, in the plot frame. */
+    private void streamCloudDelta(PointCloud pointCloud, Camera camera) {
+        TelemetryServer server = telemetry;
+        TelemetryServer.Lane lane = telemetryCloudLane;
+        if (server == null || lane == null || !isSlamInitialized || camera.getTrackingState() != TrackingState.TRACKING) return;
+        if (pointCloud.getTimestamp() == lastStreamedCloudTimestamp) return;
+        lastStreamedCloudTimestamp = pointCloud.getTimestamp();
+        // A new client has seen none of the earlier points
+        if (server.clientsAccepted() != streamedClients) {
+            streamedClients = server.clientsAccepted();
+            cloudDelta.reset();
+        }
+        FloatBuffer points = pointCloud.getPoints();
+        int count = cloudDelta.select(pointCloud.getIds(), points, TELEMETRY_MIN_CONFIDENCE,
+                TELEMETRY_MAX_CLOUD_POINTS, cloudDeltaIndices);
+        int base = points.position();
+        for (int k = 0; k < count; k++) {
+            int p = base + cloudDeltaIndices[k] * 4;
+            lane.putPoint(points.get(p) - startAnchorX, -(points.get(p + 2) - startAnchorZ),
+                    points.get(p + 1), points.get(p + 3));
+        }
+        lane.publish();
+    }
+
+    // ==================== OCCUPANCY GRID (MAP THREAD) ====================
+    /** GL thread: hands the cloud of a tracked frame to the map thread, or drops it if busy. */
+    private void queueOccupancyUpdate(PointCloud pointCloud, Camera camera) {
+        Handler map = mapHandler;
+        if (map == null || !isSlamInitialized || camera.getTrackingState() != TrackingState.TRACKING) return;
+        CloudBatch batch = freeCloudBatches.poll();
+        if (batch == null) {
+            metrics.increment(PipelineMetrics.COUNT_CLOUDS_DROPPED);
+            return;
+        }
+        Pose pose = camera.getPose();
+        batch.fill(pointCloud.getPoints(), pose.tx(), pose.ty(), pose.tz(), startAnchorX, startAnchorZ);
+        map.post(batch);
+    }
+
+    private final Runnable applyOccupancyReset = () -> {
+        if (occupancyResetRequested) {
+            occupancyResetRequested = false;
+            occupancyGrid.clear();
+            planner.clearGoal();
+        }
+    };
+
+    // ==================== ROUTE PLANNING (MAP THREAD) ====================
+    private void setGoalOnMapThread(float x, float y) {
+        applyOccupancyReset.run();
+        if (!planner.setGoal(x, y, planStartX, planStartY)) {
+            runOnUiThread(() -> {
+                pathView.clearGoal();
+                Toast.makeText(this, "Goal is too far away", Toast.LENGTH_SHORT).show();
+            });
+            return;
+        }
+        planStep.run();
+    }
+
+    private final Runnable clearGoalOnMapThread = () -> {
+        planner.clearGoal();
+        publishRoute(PathPlanner.NO_GOAL);
+    };
+
+    private final Runnable planStep = () -> {
+        planStepPosted = false;
+        if (!planner.hasGoal()) return;
+        long start = System.nanoTime();
+        int status = planner.plan(PLAN_EXPANSIONS_PER_STEP);
+        metrics.record(PipelineMetrics.STAGE_PLANNER, System.nanoTime() - start);
+        if (status != PathPlanner.SEARCHING) {
+            publishRoute(status);
+            return;
+        }
+        // Out of budget: carry on behind whatever is already queued (e.g. the next cloud)
+        Handler map = mapHandler;
+        if (map != null && !planStepPosted) {
+            planStepPosted = true;
+            map.post(planStep);
+        }
+    };
+
+    private void publishRoute(int status) {
+        PlannedRoute route = freeRoutes.poll();
+        if (route == null) return; // the UI is copying one; the next step publishes again
+        route.status = status;
+        route.count = planner.extractPath(route.points);
+        PlannedRoute unread = newestRoute.getAndSet(route);
+        if (unread != null) freeRoutes.offer(unread);
+    }
+
+    private static final class PlannedRoute {
+        final float[] points = new float[MAX_ROUTE_POINTS * 2];
+        int count;
+        int status;
+    }
+
+    /** A copied cloud plus the camera and plot origin it was taken with; runs on the map thread. */
+    private final class CloudBatch implements Runnable {
+        private final FloatBuffer points = FloatBuffer.allocate(MAX_CLOUD_POINTS * 4);
+        private float cameraX, cameraY, cameraZ, originX, originZ;
+
+        void fill(FloatBuffer cloud, float cameraX, float cameraY, float cameraZ, float originX, float originZ) {
+            int position = cloud.position(), limit = cloud.limit();
+            points.clear();
+            cloud.limit(position + Math.min(cloud.remaining(), points.capacity()));
+            points.put(cloud);
+            points.flip();
+            cloud.limit(limit);
+            cloud.position(position);
+            this.cameraX = cameraX;
+            this.cameraY = cameraY;
+            this.cameraZ = cameraZ;
+            this.originX = originX;
+            this.originZ = originZ;
+        }
+
+        @Override
+        public void run() {
+            applyOccupancyReset.run();
+            long start = System.nanoTime();
+            occupancyGrid.integrateCloud(points, cameraX, cameraY, cameraZ, originX, originZ);
+            metrics.record(PipelineMetrics.STAGE_OCCUPANCY, System.nanoTime() - start);
+            planStartX = cameraX - originX;
+            planStartY = -(cameraZ - originZ);
+            freeCloudBatches.offer(this);
+
+            // New walls and a new start: repair the route
+            if (!planner.hasGoal()) return;
+            planner.setStart(planStartX, planStartY);
+            if (planner.hasGoal()) planStep.run();
+            else publishRoute(PathPlanner.NO_GOAL); // walked too far from the goal
+        }
+    }
+
     @Override
     public void onDrawFrame(GL10 gl) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
         if (arSession == null) return;
 
+        long frameStart = System.nanoTime();
         try {
-            if (textureId != -1) arSession.setCameraTextureName(textureId);
+            if (cameraTextureSession != arSession && textureId != -1) {
+                arSession.setCameraTextureName(textureId);
+                cameraTextureSession = arSession;
+            }
             Frame frame = arSession.update();
+            long afterUpdate = System.nanoTime();
+            metrics.record(PipelineMetrics.STAGE_AR_UPDATE, afterUpdate - frameStart);
             Camera camera = frame.getCamera();
+            long frameTimestamp = frame.getTimestamp();
+            boolean newFrame = frameTimestamp != lastFrameTimestamp;
+            lastFrameTimestamp = frameTimestamp;
+            metrics.increment(newFrame ? PipelineMetrics.COUNT_AR_FRAMES_NEW : PipelineMetrics.COUNT_AR_FRAMES_REPEATED);
+            beginRequestedSlamEpoch();
 
             // 1. DRAW CAMERA BACKGROUND
             GLES20.glUseProgram(programId);
@@ -323,86 +1168,72 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             GLES20.glVertexAttribPointer(positionAttrib, 2, GLES20.GL_FLOAT, false, 0, vertexBuffer);
             GLES20.glEnableVertexAttribArray(positionAttrib);
 
-            frame.transformDisplayUvCoords(texCoordBuffer, transformedTexCoordBuffer);
+            if (frame.hasDisplayGeometryChanged() || !uvTransformValid) {
+                frame.transformDisplayUvCoords(texCoordBuffer, transformedTexCoordBuffer);
+                uvTransformValid = true;
+            }
             GLES20.glVertexAttribPointer(texCoordAttrib, 2, GLES20.GL_FLOAT, false, 0, transformedTexCoordBuffer);
             GLES20.glEnableVertexAttribArray(texCoordAttrib);
 
             GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
             GLES20.glDisableVertexAttribArray(positionAttrib);
             GLES20.glDisableVertexAttribArray(texCoordAttrib);
-
-            // 2. DRAW POINT CLOUD (GREEN DOTS)
-            try (PointCloud pointCloud = frame.acquirePointCloud()) {
-
-                GLES20.glUseProgram(pointProgramId);
-
-                // Enable blending for glow effect
-                GLES20.glEnable(GLES20.GL_BLEND);
-                GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
+            long afterBackground = System.nanoTime();
+            metrics.record(PipelineMetrics.STAGE_BACKGROUND, afterBackground - afterUpdate);
+
+            // The pointcloud stage is upload + draw only; merging, hand-offs and the pose have their own
+            long pointCloudNs = 0;
+            long drawStart = afterBackground;
+
+            // Same camera image as last time: the pose, cloud and matrices are unchanged too,
+            // so only redraw what is already resident on the GPU
+            if (newFrame) {
+                // 2. UPDATE POINT CLOUD (GREEN DOTS)
+                try (PointCloud pointCloud = frame.acquirePointCloud()) {
+                    long mergeNs = 0;
+                    // Lower quality levels upload and merge clouds less often; in between the
+                    // renderer keeps drawing what is already on the GPU
+                    if (frameTimestamp - lastCloudUpdateTimestamp >= governor.cloudUpdateIntervalNs()) {
+                        if (showAccumulatedMap) {
+                            // Merge new clouds into the map, then show the map itself
+                            if (pointCloud.getTimestamp() != lastMergedPointCloudTimestamp) {
+                                mergeNs = mergeIntoMap(pointCloud);
+                            }
+                            pointCloudRenderer.update(voxelMap, frameTimestamp);
+                            lastCloudUpdateTimestamp = frameTimestamp;
+                        } else if (pointCloudRenderer.update(pointCloud)) {
+                            mergeNs = mergeIntoMap(pointCloud);
+                            lastCloudUpdateTimestamp = frameTimestamp;
+                        }
+                    }
+                    long afterCloud = System.nanoTime();
+                    pointCloudNs = afterCloud - afterBackground - mergeNs;
+                    queueOccupancyUpdate(pointCloud, camera);
+                    long afterOccupancy = System.nanoTime();
+                    metrics.record(PipelineMetrics.STAGE_OCCUPANCY_COPY, afterOccupancy - afterCloud);
+                    streamCloudDelta(pointCloud, camera);
+                    metrics.record(PipelineMetrics.STAGE_TELEMETRY, System.nanoTime() - afterOccupancy);
+                }
+                long poseStart = System.nanoTime();
                 camera.getProjectionMatrix(projectionMatrix, 0, 0.1f, 100f);
                 camera.getViewMatrix(viewMatrix, 0);
                 Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
 
-                GLES20.glUniformMatrix4fv(pointMvpUniform, 1, false, viewProjectionMatrix, 0);
-
-                FloatBuffer points = pointCloud.getPoints();
-                int numPoints = points.remaining() / 4;
-
-                GLES20.glVertexAttribPointer(pointPositionAttrib, 4,
-                        GLES20.GL_FLOAT, false, 4 * 4, points);
-
-                GLES20.glEnableVertexAttribArray(pointPositionAttrib);
-
-                GLES20.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
-
-                GLES20.glDisableVertexAttribArray(pointPositionAttrib);
-                GLES20.glDisable(GLES20.GL_BLEND);
-            }
-
-
-            // 3. UPDATE UI (SLAM - RED LINE)
-            TrackingState state = camera.getTrackingState();
-            runOnUiThread(() -> tvStatus.setText("Status: " + state.toString()));
-
-            if (state == TrackingState.TRACKING) {
-                Pose pose = camera.getPose();
-                float x = pose.tx();
-                float z = pose.tz();
-
-                if (!isSlamInitialized) {
-                    startAnchorX = x;
-                    startAnchorZ = z;
-                    isSlamInitialized = true;
-                }
-                float plotX = x - startAnchorX;
-                float plotY = -(z - startAnchorZ);
-
-                runOnUiThread(() -> {
-                    pathView.updateSlamPosition(plotX, plotY);
-                    tvSlamPos.setText(String.format("SLAM: %.2f, %.2f", plotX, plotY));
-                });
+                // 3. PUBLISH SLAM POSE (RED LINE); UI and fusion pick it up from the handoff
+                publishSlamPose(frame, camera);
+                drawStart = System.nanoTime();
+                metrics.record(PipelineMetrics.STAGE_POSE, drawStart - poseStart);
             }
-
+            pointCloudRenderer.draw(viewProjectionMatrix);
+            long frameEnd = System.nanoTime();
+            metrics.record(PipelineMetrics.STAGE_POINT_CLOUD, pointCloudNs + frameEnd - drawStart);
+            metrics.record(PipelineMetrics.STAGE_FRAME, frameEnd - frameStart);
+            applyQuality(frameStart, frameEnd - frameStart);
         } catch (Exception e) {
-            // Prevent crash
+            // Prevent crash, but keep count and log the first one and every 100th after it
+            metrics.increment(PipelineMetrics.COUNT_DRAW_EXCEPTIONS);
+            long n = metrics.counter(PipelineMetrics.COUNT_DRAW_EXCEPTIONS);
+            if (n == 1 || n % 100 == 0) Log.e(TAG, "onDrawFrame failed (" + n + " so far)", e);
         }
     }
-
-    private int createProgram(String vertex, String fragment) {
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertex);
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragment);
-        int program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLES20.glAttachShader(program, fragmentShader);
-        GLES20.glLinkProgram(program);
-        return program;
-    }
-
-    private int loadShader(int type, String shaderCode) {
-        int shader = GLES20.glCreateShader(type);
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
-        return shader;
-    }
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package com.example.smartnav;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
+import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
@@ -13,20 +15,99 @@ import android.view.View;
 
 import androidx.annotation.Nullable;
 
+import java.util.Arrays;
+import java.util.Locale;
+
 public class PathView extends View {
 
-    private Paint drPaint, slamPaint, gridPaint, markerPaint;
-    private Path drPath, slamPath;
+    // Track ids in saved map archives
+    public static final int TRACK_DR = 0;
+    public static final int TRACK_SLAM = 1;
+    public static final int TRACK_FUSED = 2;
+
+    private Paint gridPaint, markerPaint;
+    private TrackLayer drLayer, slamLayer, fusedLayer;
+
+    // Tracks of earlier sessions, drawn faded under the live ones. Chunks are decoded from the
+    // mapped archive only when they intersect the viewport, and kept in a small LRU cache.
+    private static final int ARCHIVE_CACHE_CHUNKS = 32;
+    private MapArchiveReader archive;
+    private final Paint[] archivePaints = new Paint[3];
+    private final int[] cachedChunk = new int[ARCHIVE_CACHE_CHUNKS];
+    private final long[] cachedUse = new long[ARCHIVE_CACHE_CHUNKS];
+    private float[][] cachedXs, cachedYs;
+    private int[] cachedCount;
+    private long archiveUseClock = 0;
+
+    // Occupancy grid (written by the map thread), drawn under the tracks. Each tile is rendered
+    // to a small bitmap, one pixel per cell, re-rendered only when the tile's version changes.
+    private static final int OCCUPIED_COLOR = 0x424242;
+    private static final int FREE_COLOR = 0x2290CAF9;
+    private OccupancyGrid occupancy;
+    private Bitmap[] tileBitmaps = new Bitmap[0];
+    private OccupancyGrid.Tile[] tileBitmapSources = new OccupancyGrid.Tile[0];
+    private int[] tileBitmapVersions = new int[0];
+    private final int[] tilePixels = new int[OccupancyGrid.TILE_CELLS * OccupancyGrid.TILE_CELLS];
+    private final Paint tilePaint = new Paint();
+    private final RectF tileRect = new RectF();
+
+    // Navigation goal picked by a tap and the planned route to it; both small, drawn live on top
+    public interface OnGoalListener {
+        void onGoalSelected(float x, float y);
+        void onGoalCleared();
+    }
+    private static final float GOAL_TOUCH_SLOP_PX = 48;
+    private OnGoalListener goalListener;
+    private boolean hasGoal = false;
+    private float goalX, goalY;
+    private float[] route = new float[0];
+    private int routeCount = 0;
+    private Paint routePaint, goalPaint;
+
+    // Every live track point (decimated to the index spacing) in a uniform grid: long-press
+    // inspects the nearest point, goals snap to visited places, and zoomed-in views draw the
+    // visible cells instead of walking the whole track
+    private static final String[] TRACK_NAMES = {"DR", "SLAM", "Fused"};
+    private static final float SNAP_SLOP_PX = 32;
+    // Goals are planned in the SLAM plot frame; DR drifts in its own sensor frame, so it is never a snap target
+    private static final int GOAL_SNAP_TRACKS = 1 << TRACK_SLAM | 1 << TRACK_FUSED;
+    private final TrackIndex trackIndex = new TrackIndex();
+    private final SegmentCollector segmentCollector = new SegmentCollector();
+    private boolean inspecting = false;
+    private int inspectedTrack;
+    private float inspectedX, inspectedY;
+    private Paint labelPaint;
+
+    // Max on-screen deviation (px) a decimated level may introduce before a finer one is used
+    private static final float MAX_LOD_ERROR_PX = 1.0f;
+
+    // While a gesture is this recent, the cached layer is reprojected instead of rebuilt
+    private static final long GESTURE_SETTLE_MS = 120;
+
+    // Track updates redraw at most this often (0 = on every update); set by the quality governor
+    private long minRedrawIntervalMs = 0;
+    private long lastDrawMs = 0;
+    private boolean redrawPending = false;
+
+    // Reused by drawTrack(): one chunk worth of line segments (x0,y0,x1,y1 per segment)
+    private final float[] lineBuffer = new float[(TrajectoryStore.CHUNK_SIZE + 1) * 4];
 
     // Touch Detectors
     private ScaleGestureDetector scaleDetector;
     private GestureDetector gestureDetector;
+    private long lastGestureTime = 0;
 
     // View State
     private float scaleFactor = 50.0f; // Default Zoom: 50 pixels = 1 meter
     private float translateX = 0f;
     private float translateY = 0f;
 
+    // Offscreen layer holding grid + tracks, and the view transform it was rendered with
+    private Bitmap cacheBitmap;
+    private Canvas cacheCanvas;
+    private boolean cacheValid = false;
+    private float cacheScale, cacheTranslateX, cacheTranslateY;
+
     public PathView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
         init(context);
@@ -34,17 +115,14 @@ public class PathView extends View {
 
     private void init(Context context) {
         // Setup Paints
-        drPaint = new Paint();
-        drPaint.setColor(Color.BLUE);
-        drPaint.setStyle(Paint.Style.STROKE);
-        drPaint.setStrokeWidth(5);
-        drPaint.setStrokeCap(Paint.Cap.ROUND);
-
-        slamPaint = new Paint();
-        slamPaint.setColor(Color.RED);
-        slamPaint.setStyle(Paint.Style.STROKE);
-        slamPaint.setStrokeWidth(5);
-        slamPaint.setStrokeCap(Paint.Cap.ROUND);
+        drLayer = new TrackLayer(TRACK_DR, Color.BLUE);
+        slamLayer = new TrackLayer(TRACK_SLAM, Color.RED);
+        fusedLayer = new TrackLayer(TRACK_FUSED, 0xFF00C853); // Green
+        int[] archiveColors = {0x602962FF, 0x60FF1744, 0x6000C853}; // Same hues, faded
+        for (int i = 0; i < archivePaints.length; i++) {
+            archivePaints[i] = new Paint(drLayer.paint);
+            archivePaints[i].setColor(archiveColors[i]);
+        }
 
         gridPaint = new Paint();
         gridPaint.setColor(0xFFDDDDDD); // Light Grey
@@ -54,10 +132,18 @@ public class PathView extends View {
         markerPaint.setColor(Color.BLACK);
         markerPaint.setStyle(Paint.Style.FILL);
 
-        drPath = new Path();
-        drPath.moveTo(0,0);
-        slamPath = new Path();
-        slamPath.moveTo(0,0);
+        tilePaint.setFilterBitmap(false); // One crisp square per cell when zoomed in
+
+        routePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        routePaint.setColor(0xFFAA00FF); // Purple
+        routePaint.setStyle(Paint.Style.STROKE);
+        routePaint.setStrokeCap(Paint.Cap.ROUND);
+        routePaint.setStrokeJoin(Paint.Join.ROUND);
+        goalPaint = new Paint(routePaint);
+
+        labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        labelPaint.setColor(Color.BLACK);
+        labelPaint.setTextSize(14 * getResources().getDisplayMetrics().scaledDensity);
 
         // Setup Input Listeners
         scaleDetector = new ScaleGestureDetector(context, new ScaleListener());
@@ -65,58 +151,541 @@ public class PathView extends View {
     }
 
     public void updateDrPosition(float x, float y) {
-        drPath.lineTo(x, y);
-        invalidate();
+        drLayer.append(x, y);
+        invalidateTracks();
     }
 
     public void updateSlamPosition(float x, float y) {
-        slamPath.lineTo(x, y);
+        slamLayer.append(x, y);
+        invalidateTracks();
+    }
+
+    public void updateFusedPosition(float x, float y) {
+        fusedLayer.append(x, y);
+        invalidateTracks();
+    }
+
+    /**
+     * Limits redraws caused by track updates; points appended in between are flushed together on
+     * the next draw. Gestures and other changes still redraw immediately.
+     */
+    public void setMinRedrawInterval(long intervalMs) {
+        minRedrawIntervalMs = intervalMs;
+    }
+
+    private void invalidateTracks() {
+        if (minRedrawIntervalMs <= 0) {
+            invalidate();
+            return;
+        }
+        if (redrawPending) return;
+        long wait = lastDrawMs + minRedrawIntervalMs - SystemClock.uptimeMillis();
+        if (wait <= 0) {
+            invalidate();
+        } else {
+            redrawPending = true;
+            postInvalidateDelayed(wait);
+        }
+    }
+
+    /** Shows the tracks of a saved map under the live ones; null hides them. */
+    public void setArchive(@Nullable MapArchiveReader archive) {
+        this.archive = archive;
+        Arrays.fill(cachedChunk, -1);
+        if (archive != null && cachedXs == null) {
+            cachedXs = new float[ARCHIVE_CACHE_CHUNKS][TrajectoryStore.CHUNK_SIZE + 2];
+            cachedYs = new float[ARCHIVE_CACHE_CHUNKS][TrajectoryStore.CHUNK_SIZE + 2];
+            cachedCount = new int[ARCHIVE_CACHE_CHUNKS];
+        }
+        cacheValid = false;
+        invalidate();
+    }
+
+    public void setOccupancyGrid(@Nullable OccupancyGrid grid) {
+        occupancy = grid;
+        cacheValid = false;
+        invalidate();
+    }
+
+    /** The occupancy grid changed; the cached layer is rebuilt on the next draw. */
+    public void onOccupancyChanged() {
+        cacheValid = false;
+        invalidate();
+    }
+
+    public void setOnGoalListener(@Nullable OnGoalListener listener) {
+        goalListener = listener;
+    }
+
+    /** Shows a goal marker; the route to it follows via {@link #setRoute}. */
+    public void setGoal(float x, float y) {
+        hasGoal = true;
+        goalX = x;
+        goalY = y;
+        routeCount = 0;
+        invalidate();
+    }
+
+    public void clearGoal() {
+        hasGoal = false;
+        routeCount = 0;
+        invalidate();
+    }
+
+    /** Copies a planned route ((x, y) pairs, plot frame); count 0 means no route to the goal. */
+    public void setRoute(float[] points, int count) {
+        if (route.length < count * 2) route = new float[count * 2];
+        System.arraycopy(points, 0, route, 0, count * 2);
+        routeCount = count;
         invalidate();
     }
 
+    /**
+     * Copies of the live tracks for a map save on another thread, indexed by TRACK_*; null for a
+     * track still at its start point.
+     */
+    public TrajectoryStore[] snapshotTracks() {
+        TrajectoryStore[] tracks = new TrajectoryStore[3];
+        for (TrackLayer layer : new TrackLayer[]{drLayer, slamLayer, fusedLayer}) {
+            if (layer.track.appendCount() > 1) tracks[layer.id] = layer.track.snapshot();
+        }
+        return tracks;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (cacheBitmap != null) cacheBitmap.recycle();
+        cacheBitmap = null;
+        cacheCanvas = null;
+        if (w > 0 && h > 0) {
+            cacheBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            cacheCanvas = new Canvas(cacheBitmap);
+        }
+        cacheValid = false;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        lastDrawMs = SystemClock.uptimeMillis();
+        redrawPending = false;
+        if (cacheBitmap == null) return;
+
+        boolean transformChanged = scaleFactor != cacheScale
+                || translateX != cacheTranslateX || translateY != cacheTranslateY;
+
+        if (cacheValid && transformChanged
+                && SystemClock.uptimeMillis() - lastGestureTime < GESTURE_SETTLE_MS) {
+            // Mid-gesture: stretch the old layer; a full rebuild follows once the gesture settles
+            drawReprojectedCache(canvas);
+            postInvalidateDelayed(GESTURE_SETTLE_MS);
+        } else {
+            if (!cacheValid || transformChanged) {
+                rebuildCache();
+            } else {
+                // Same transform: only the segments appended since the last frame are new
+                applyViewTransform(cacheCanvas);
+                float pathWidth = 5.0f / scaleFactor;
+                drLayer.flushPending(cacheCanvas, pathWidth);
+                slamLayer.flushPending(cacheCanvas, pathWidth);
+                fusedLayer.flushPending(cacheCanvas, pathWidth);
+                cacheCanvas.restore();
+            }
+            canvas.drawBitmap(cacheBitmap, 0, 0, null);
+        }
+
+        // Center Marker is cheap and always drawn live on top
+        canvas.save();
+        applyViewTransformTo(canvas);
+        canvas.drawCircle(0, 0, 0.1f, markerPaint);
+        if (hasGoal) drawRoute(canvas);
+        if (inspecting) canvas.drawCircle(inspectedX, inspectedY, 6.0f / scaleFactor, markerPaint);
+        canvas.restore();
+        if (inspecting) drawInspectedLabel(canvas);
+    }
+
+    private void drawInspectedLabel(Canvas canvas) {
+        float sx = getWidth() / 2f + translateX + inspectedX * scaleFactor;
+        float sy = getHeight() / 2f + translateY - inspectedY * scaleFactor;
+        String label = String.format(Locale.US, "%s  %.2f, %.2f m", TRACK_NAMES[inspectedTrack], inspectedX, inspectedY);
+        canvas.drawText(label, sx + 12, sy - 12, labelPaint);
+    }
+
+    private void drawRoute(Canvas canvas) {
+        float width = 4.0f / scaleFactor;
+        routePaint.setStrokeWidth(width);
+        for (int i = 1; i < routeCount; i++) {
+            canvas.drawLine(route[i * 2 - 2], route[i * 2 - 1], route[i * 2], route[i * 2 + 1], routePaint);
+        }
+        // Filled goal: route found; ring: searching or unreachable
+        goalPaint.setStrokeWidth(width);
+        goalPaint.setStyle(routeCount > 0 ? Paint.Style.FILL : Paint.Style.STROKE);
+        canvas.drawCircle(goalX, goalY, 8.0f / scaleFactor, goalPaint);
+    }
+
+    private void applyViewTransform(Canvas canvas) {
         canvas.save();
+        applyViewTransformTo(canvas);
+    }
 
+    private void applyViewTransformTo(Canvas canvas) {
         // 1. Move Origin to Center of Screen
         canvas.translate(getWidth() / 2f, getHeight() / 2f);
-
         // 2. Apply Panning
         canvas.translate(translateX, translateY);
-
         // 3. Apply Zoom
         canvas.scale(scaleFactor, -scaleFactor); // Flip Y
+    }
+
+    /** Maps the layer rendered at the cached transform onto the current one. */
+    private void drawReprojectedCache(Canvas canvas) {
+        float halfW = getWidth() / 2f, halfH = getHeight() / 2f;
+        float ratio = scaleFactor / cacheScale;
+        canvas.save();
+        canvas.translate(halfW + translateX, halfH + translateY);
+        canvas.scale(ratio, ratio);
+        canvas.translate(-(halfW + cacheTranslateX), -(halfH + cacheTranslateY));
+        canvas.drawBitmap(cacheBitmap, 0, 0, null);
+        canvas.restore();
+    }
+
+    private void rebuildCache() {
+        cacheBitmap.eraseColor(Color.TRANSPARENT);
+        Canvas c = cacheCanvas;
+        applyViewTransform(c);
+
+        // Visible world rectangle (Y is flipped)
+        float halfW = getWidth() / 2f, halfH = getHeight() / 2f;
+        float minX = (-halfW - translateX) / scaleFactor;
+        float maxX = (halfW - translateX) / scaleFactor;
+        float minY = (translateY - halfH) / scaleFactor;
+        float maxY = (translateY + halfH) / scaleFactor;
 
-        // 4. Draw Grid (Fixed 20m x 20m area)
+        if (occupancy != null) drawOccupancy(c, minX, minY, maxX, maxY);
+
+        // Draw Grid (Fixed 20m x 20m area), only the lines that are on screen
         float strokeWidth = 2.0f / scaleFactor;
         gridPaint.setStrokeWidth(strokeWidth);
-        for (int i = -20; i <= 20; i+=2) {
-            canvas.drawLine(i, -20, i, 20, gridPaint);
-            canvas.drawLine(-20, i, 20, i, gridPaint);
+        if (maxX >= -20 && minX <= 20 && maxY >= -20 && minY <= 20) {
+            for (int i = -20; i <= 20; i += 2) {
+                if (i >= minX && i <= maxX) c.drawLine(i, -20, i, 20, gridPaint);
+                if (i >= minY && i <= maxY) c.drawLine(-20, i, 20, i, gridPaint);
+            }
         }
 
-        // 5. Draw Paths
+        // Draw Paths, padded by the stroke so line caps at the edge are not clipped
         float pathWidth = 5.0f / scaleFactor;
-        drPaint.setStrokeWidth(pathWidth);
-        slamPaint.setStrokeWidth(pathWidth);
+        if (archive != null) {
+            drawArchive(c, pathWidth, minX - pathWidth, minY - pathWidth, maxX + pathWidth, maxY + pathWidth);
+        }
+        drLayer.paint.setStrokeWidth(pathWidth);
+        slamLayer.paint.setStrokeWidth(pathWidth);
+        fusedLayer.paint.setStrokeWidth(pathWidth);
+        drawTrack(c, drLayer, minX - pathWidth, minY - pathWidth, maxX + pathWidth, maxY + pathWidth);
+        drawTrack(c, slamLayer, minX - pathWidth, minY - pathWidth, maxX + pathWidth, maxY + pathWidth);
+        drawTrack(c, fusedLayer, minX - pathWidth, minY - pathWidth, maxX + pathWidth, maxY + pathWidth);
 
-        canvas.drawPath(drPath, drPaint);
-        canvas.drawPath(slamPath, slamPaint);
+        c.restore();
+        cacheScale = scaleFactor;
+        cacheTranslateX = translateX;
+        cacheTranslateY = translateY;
+        cacheValid = true;
+    }
 
-        // 6. Draw Center Marker
-        canvas.drawCircle(0, 0, 0.1f, markerPaint);
+    /**
+     * Draws the level of detail matching the current zoom, skipping chunks whose bounding box
+     * (extended to the previous point, so connecting segments are kept) is off screen. The
+     * number of segments therefore depends on zoom and viewport, not on session length.
+     */
+    private void drawTrack(Canvas canvas, TrackLayer layer,
+                           float minX, float minY, float maxX, float maxY) {
+        TrajectoryStore track = layer.track;
+        layer.markDrawn();
+        if (!track.hasHead()) return;
+        TrajectoryStore.Level level = track.level(track.selectLevel(scaleFactor, MAX_LOD_ERROR_PX));
+        float tolerance = level.tolerance();
+        if (trackIndex.spacing() <= tolerance && tolerance <= 4 * trackIndex.spacing()) {
+            // The index has about the detail this zoom needs: draw only its visible cells
+            drawIndexed(canvas, layer, minX, minY, maxX, maxY);
+            return;
+        }
+        float[] buf = lineBuffer;
+        boolean hasPrev = false;
+        float prevX = 0, prevY = 0;
 
-        canvas.restore();
+        for (int c = 0; c < level.chunkCount(); c++) {
+            TrajectoryStore.Chunk chunk = level.chunk(c);
+            if (chunk.size == 0) continue;
+
+            float bMinX = chunk.minX, bMinY = chunk.minY, bMaxX = chunk.maxX, bMaxY = chunk.maxY;
+            if (hasPrev) {
+                bMinX = Math.min(bMinX, prevX); bMaxX = Math.max(bMaxX, prevX);
+                bMinY = Math.min(bMinY, prevY); bMaxY = Math.max(bMaxY, prevY);
+            }
+            if (bMaxX < minX || bMinX > maxX || bMaxY < minY || bMinY > maxY) {
+                prevX = chunk.xs[chunk.size - 1];
+                prevY = chunk.ys[chunk.size - 1];
+                hasPrev = true;
+                continue;
+            }
+
+            int n = 0;
+            for (int i = 0; i < chunk.size; i++) {
+                float x = chunk.xs[i], y = chunk.ys[i];
+                if (hasPrev) {
+                    buf[n++] = prevX; buf[n++] = prevY;
+                    buf[n++] = x; buf[n++] = y;
+                }
+                prevX = x; prevY = y;
+                hasPrev = true;
+            }
+            if (n > 0) canvas.drawLines(buf, 0, n, layer.paint);
+        }
+
+        // The level may not have kept the newest point yet; close the gap to it
+        if (hasPrev && (prevX != track.headX() || prevY != track.headY())) {
+            canvas.drawLine(prevX, prevY, track.headX(), track.headY(), layer.paint);
+        }
+    }
+
+    /** Draws the occupancy tiles that intersect the viewport, refreshing stale tile bitmaps. */
+    private void drawOccupancy(Canvas canvas, float minX, float minY, float maxX, float maxY) {
+        OccupancyGrid grid = occupancy;
+        int count = grid.tileCount();
+        if (tileBitmaps.length < count) {
+            int size = Math.max(count, tileBitmaps.length * 2);
+            tileBitmaps = Arrays.copyOf(tileBitmaps, size);
+            tileBitmapSources = Arrays.copyOf(tileBitmapSources, size);
+            tileBitmapVersions = Arrays.copyOf(tileBitmapVersions, size);
+        }
+        float size = grid.tileSize();
+        for (int i = 0; i < count; i++) {
+            OccupancyGrid.Tile tile = grid.tile(i);
+            float x0 = tile.tileX * size, y0 = tile.tileY * size;
+            if (x0 > maxX || x0 + size < minX || y0 > maxY || y0 + size < minY) continue;
+
+            int version = tile.version();
+            if (tileBitmapSources[i] != tile || tileBitmapVersions[i] != version) {
+                renderTile(i, tile);
+                tileBitmapSources[i] = tile;
+                tileBitmapVersions[i] = version;
+            }
+            // Bitmap row 0 is the tile's lowest y; the flipped view transform puts it at the bottom
+            tileRect.set(x0, y0, x0 + size, y0 + size);
+            canvas.drawBitmap(tileBitmaps[i], null, tileRect, tilePaint);
+        }
+    }
+
+    /** Draws the segments touching the viewport from the track index, plus the gap to the head. */
+    private void drawIndexed(Canvas canvas, TrackLayer layer, float minX, float minY, float maxX, float maxY) {
+        SegmentCollector segments = segmentCollector;
+        segments.begin(canvas, layer.paint, minX, minY, maxX, maxY);
+        trackIndex.range(minX, minY, maxX, maxY, 1 << layer.id, segments);
+        segments.flush();
+        int last = trackIndex.last(layer.id);
+        TrajectoryStore track = layer.track;
+        if (last >= 0 && (trackIndex.x(last) != track.headX() || trackIndex.y(last) != track.headY())) {
+            canvas.drawLine(trackIndex.x(last), trackIndex.y(last), track.headX(), track.headY(), layer.paint);
+        }
+    }
+
+    /**
+     * Turns visible index points into line segments: each point brings the segment from its
+     * predecessor, and the one to its successor when that lies outside (nobody else draws it).
+     */
+    private final class SegmentCollector implements TrackIndex.Visitor {
+        private Canvas canvas;
+        private Paint paint;
+        private float minX, minY, maxX, maxY;
+        private int n;
+
+        void begin(Canvas canvas, Paint paint, float minX, float minY, float maxX, float maxY) {
+            this.canvas = canvas;
+            this.paint = paint;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            n = 0;
+        }
+
+        @Override
+        public void visit(int id) {
+            int p = trackIndex.prev(id);
+            if (p >= 0) add(p, id);
+            int next = trackIndex.next(id);
+            if (next >= 0) {
+                float x = trackIndex.x(next), y = trackIndex.y(next);
+                if (x < minX || x > maxX || y < minY || y > maxY) add(id, next);
+            }
+        }
+
+        private void add(int from, int to) {
+            float[] buf = lineBuffer;
+            if (n == buf.length) flush();
+            buf[n++] = trackIndex.x(from);
+            buf[n++] = trackIndex.y(from);
+            buf[n++] = trackIndex.x(to);
+            buf[n++] = trackIndex.y(to);
+        }
+
+        void flush() {
+            if (n > 0) canvas.drawLines(lineBuffer, 0, n, paint);
+            n = 0;
+        }
+    }
+
+    private void renderTile(int index, OccupancyGrid.Tile tile) {
+        int cells = OccupancyGrid.TILE_CELLS;
+        int[] pixels = tilePixels;
+        for (int y = 0; y < cells; y++) {
+            for (int x = 0; x < cells; x++) {
+                int v = tile.cell(x, y);
+                int color = 0;
+                if (v >= OccupancyGrid.OCCUPIED) {
+                    // Opacity grows with certainty, from half to full at the clamp
+                    int alpha = 0x80 + 0x7F * (v - OccupancyGrid.OCCUPIED)
+                            / (OccupancyGrid.MAX_LOG_ODDS - OccupancyGrid.OCCUPIED);
+                    color = alpha << 24 | OCCUPIED_COLOR;
+                } else if (v <= OccupancyGrid.FREE) {
+                    color = FREE_COLOR;
+                }
+                pixels[y * cells + x] = color;
+            }
+        }
+        Bitmap bitmap = tileBitmaps[index];
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(cells, cells, Bitmap.Config.ARGB_8888);
+            tileBitmaps[index] = bitmap;
+        }
+        bitmap.setPixels(pixels, 0, cells, 0, 0, cells, cells);
+    }
+
+    /**
+     * Draws the archived track chunks that intersect the viewport. Archive chunks hold full
+     * detail, so points closer than the LOD error on screen to the last drawn one are skipped.
+     */
+    private void drawArchive(Canvas canvas, float pathWidth,
+                             float minX, float minY, float maxX, float maxY) {
+        MapArchiveReader archive = this.archive;
+        float[] buf = lineBuffer;
+        float minStep = MAX_LOD_ERROR_PX / scaleFactor;
+        float minStepSq = minStep * minStep;
+        for (Paint paint : archivePaints) paint.setStrokeWidth(pathWidth);
+
+        for (int c = 0; c < archive.chunkCount(); c++) {
+            if (archive.kind(c) != MapArchiveWriter.KIND_TRACK) continue;
+            int track = archive.track(c);
+            if (track < 0 || track >= archivePaints.length || archive.count(c) > TrajectoryStore.CHUNK_SIZE + 2) continue;
+            if (!archive.intersects(c, minX, minY, maxX, maxY)) continue;
+
+            int slot = decodeArchiveChunk(c);
+            float[] xs = cachedXs[slot], ys = cachedYs[slot];
+            int count = cachedCount[slot];
+            int n = 0;
+            float prevX = xs[0], prevY = ys[0];
+            for (int i = 1; i < count; i++) {
+                float x = xs[i], y = ys[i];
+                float dx = x - prevX, dy = y - prevY;
+                // Always keep the chunk's last point so it joins the next chunk
+                if (dx * dx + dy * dy < minStepSq && i < count - 1) continue;
+                buf[n++] = prevX; buf[n++] = prevY;
+                buf[n++] = x; buf[n++] = y;
+                prevX = x; prevY = y;
+            }
+            if (n > 0) canvas.drawLines(buf, 0, n, archivePaints[track]);
+        }
+    }
+
+    /** @return cache slot holding the decoded chunk */
+    private int decodeArchiveChunk(int chunk) {
+        int victim = 0;
+        for (int s = 0; s < ARCHIVE_CACHE_CHUNKS; s++) {
+            if (cachedChunk[s] == chunk) {
+                cachedUse[s] = ++archiveUseClock;
+                return s;
+            }
+            if (cachedUse[s] < cachedUse[victim]) victim = s;
+        }
+        cachedCount[victim] = archive.readTrack(chunk, cachedXs[victim], cachedYs[victim]);
+        cachedChunk[victim] = chunk;
+        cachedUse[victim] = ++archiveUseClock;
+        return victim;
     }
 
     public void resetPath() {
-        drPath.reset(); drPath.moveTo(0,0);
-        slamPath.reset(); slamPath.moveTo(0,0);
+        trackIndex.clear();
+        inspecting = false;
+        drLayer.reset();
+        slamLayer.reset();
+        fusedLayer.reset();
         translateX = 0; translateY = 0;
+        cacheValid = false;
         invalidate();
     }
 
+    // ===========================================================
+    // TRACK LAYER: store + segments not yet drawn into the cache
+    // ===========================================================
+    private final class TrackLayer {
+        private static final int MAX_PENDING_SEGMENTS = 1024;
+
+        final int id;
+        final TrajectoryStore track = new TrajectoryStore();
+        final Paint paint = new Paint();
+        private final float[] pending = new float[MAX_PENDING_SEGMENTS * 4];
+        private int pendingCount = 0;
+        private float drawnX, drawnY;
+
+        TrackLayer(int id, int color) {
+            this.id = id;
+            paint.setColor(color);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(5);
+            paint.setStrokeCap(Paint.Cap.ROUND);
+            reset();
+        }
+
+        void append(float x, float y) {
+            track.append(x, y);
+            trackIndex.add(id, x, y);
+            if (!cacheValid) return;
+            if (pendingCount == pending.length) {
+                // Too far behind for incremental drawing; rebuild instead
+                cacheValid = false;
+                return;
+            }
+            pending[pendingCount++] = drawnX;
+            pending[pendingCount++] = drawnY;
+            pending[pendingCount++] = x;
+            pending[pendingCount++] = y;
+            drawnX = x;
+            drawnY = y;
+        }
+
+        void flushPending(Canvas canvas, float strokeWidth) {
+            if (pendingCount == 0) return;
+            paint.setStrokeWidth(strokeWidth);
+            canvas.drawLines(pending, 0, pendingCount, paint);
+            pendingCount = 0;
+        }
+
+        /** The cache now shows everything up to the head. */
+        void markDrawn() {
+            pendingCount = 0;
+            drawnX = track.headX();
+            drawnY = track.headY();
+        }
+
+        void reset() {
+            track.clear();
+            track.append(0, 0);
+            trackIndex.add(id, 0, 0);
+            markDrawn();
+        }
+    }
+
     // --- IMPROVED TOUCH HANDLING ---
     @Override
     public boolean onTouchEvent(MotionEvent event) {
@@ -126,23 +695,73 @@ public class PathView extends View {
         return true;
     }
 
+    // Screen -> plot frame, inverting applyViewTransformTo()
+    private float toPlotX(float screenX) {
+        return (screenX - getWidth() / 2f - translateX) / scaleFactor;
+    }
+
+    private float toPlotY(float screenY) {
+        return -(screenY - getHeight() / 2f - translateY) / scaleFactor;
+    }
+
     private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
         @Override
         public boolean onScale(ScaleGestureDetector detector) {
             scaleFactor *= detector.getScaleFactor();
             // Clamp zoom (Min: 5px/m, Max: 500px/m)
             scaleFactor = Math.max(5.0f, Math.min(scaleFactor, 500.0f));
+            lastGestureTime = SystemClock.uptimeMillis();
             invalidate();
             return true;
         }
     }
 
     private class ScrollListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            if (inspecting) {
+                // First tap only dismisses the label
+                inspecting = false;
+                invalidate();
+                return true;
+            }
+            if (goalListener == null) return false;
+            float x = toPlotX(e.getX()), y = toPlotY(e.getY());
+            if (hasGoal && Math.hypot(x - goalX, y - goalY) * scaleFactor < GOAL_TOUCH_SLOP_PX) {
+                // Tapping the goal again removes it
+                clearGoal();
+                goalListener.onGoalCleared();
+            } else {
+                // Snap to a place that was actually walked, if one is close on screen
+                int snapped = trackIndex.nearest(x, y, SNAP_SLOP_PX / scaleFactor, GOAL_SNAP_TRACKS);
+                if (snapped >= 0) {
+                    x = trackIndex.x(snapped);
+                    y = trackIndex.y(snapped);
+                }
+                setGoal(x, y);
+                goalListener.onGoalSelected(x, y);
+            }
+            return true;
+        }
+
+        @Override
+        public void onLongPress(MotionEvent e) {
+            int id = trackIndex.nearest(toPlotX(e.getX()), toPlotY(e.getY()), SNAP_SLOP_PX / scaleFactor, ~0);
+            inspecting = id >= 0;
+            if (inspecting) {
+                inspectedTrack = trackIndex.track(id);
+                inspectedX = trackIndex.x(id);
+                inspectedY = trackIndex.y(id);
+            }
+            invalidate();
+        }
+
         @Override
         public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
             // Move the camera opposite to the drag direction
             translateX -= distanceX;
             translateY -= distanceY;
+            lastGestureTime = SystemClock.uptimeMillis();
             invalidate();
             return true;
         }
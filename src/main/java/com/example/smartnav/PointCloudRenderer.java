@@ -0,0 +1,212 @@
+package com.example.smartnav;
+
+import android.opengl.GLES20;
+
+import com.google.ar.core.PointCloud;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws ARCore points (the current frame's cloud, or the accumulated {@link VoxelMap}) from
+ * GPU-resident vertex buffers.
+ *
+ * Points are filtered by confidence and capped at a point budget on the CPU, then uploaded into
+ * the back buffer of a double-buffered VBO, only when the source actually changed (new
+ * PointCloud timestamp / new map version). Frames in between redraw the front buffer without
+ * touching client memory. All methods must be called on the GL thread.
+ */
+public class PointCloudRenderer {
+
+    private static final String POINT_VERTEX_SHADER =
+            "uniform mat4 u_ModelViewProjection;\n" +
+                    "uniform float u_PointSize;\n" +
+                    "attribute vec4 a_Position;\n" +
+                    "varying float v_confidence;\n" +
+                    "void main() {\n" +
+                    "    gl_Position = u_ModelViewProjection * vec4(a_Position.xyz, 1.0);\n" +
+                    "    v_confidence = a_Position.w;   // Pass confidence to fragment shader\n" +
+                    "    gl_PointSize = u_PointSize;\n" +
+                    "}";
+
+    private static final String POINT_FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying float v_confidence;\n" +
+                    "void main() {\n" +
+                    "    float dist = length(gl_PointCoord - vec2(0.5));\n" +
+                    "    float alpha = smoothstep(0.5, 0.2, dist);\n" +
+                    "\n" +
+                    "    // Map confidence → color\n" +
+                    "    vec3 low = vec3(1.0, 0.0, 0.0);     // Red\n" +
+                    "    vec3 mid = vec3(1.0, 1.0, 0.0);     // Yellow\n" +
+                    "    vec3 high = vec3(0.0, 1.0, 0.0);    // Green\n" +
+                    "\n" +
+                    "    vec3 color;\n" +
+                    "    if (v_confidence < 0.5) {\n" +
+                    "       color = mix(low, mid, v_confidence * 2.0);\n" +
+                    "    } else {\n" +
+                    "       color = mix(mid, high, (v_confidence - 0.5) * 2.0);\n" +
+                    "    }\n" +
+                    "\n" +
+                    "    gl_FragColor = vec4(color, alpha);\n" +
+                    "}";
+
+    private static final int FLOATS_PER_POINT = 4;
+    private static final int BYTES_PER_POINT = FLOATS_PER_POINT * 4;
+
+    // The map changes every tracked frame; re-uploading it more often than this is wasted work
+    private static final long MAP_UPLOAD_INTERVAL_NS = 250_000_000L;
+
+    private int programId;
+    private int positionAttrib;
+    private int mvpUniform;
+    private int pointSizeUniform;
+
+    // Double-buffered VBO: upload into vbos[1 - front] while vbos[front] may still be in flight
+    private final int[] vbos = new int[2];
+    private final int[] vboCapacityBytes = new int[2];
+    private int front = 0;
+    private int frontPointCount = 0;
+
+    private FloatBuffer staging;
+    private float confidenceThreshold = 0.1f;
+    private int maxPoints = 20_000;
+    private float pointSize = 22f;
+
+    private long lastPointCloudTimestamp = 0;
+    private long lastMapVersion = -1;
+    private long lastMapUploadNs = 0;
+
+    public void createOnGlThread() {
+        programId = ShaderUtil.createProgram(POINT_VERTEX_SHADER, POINT_FRAGMENT_SHADER);
+        positionAttrib = GLES20.glGetAttribLocation(programId, "a_Position");
+        mvpUniform = GLES20.glGetUniformLocation(programId, "u_ModelViewProjection");
+        pointSizeUniform = GLES20.glGetUniformLocation(programId, "u_PointSize");
+
+        GLES20.glGenBuffers(2, vbos, 0);
+        vboCapacityBytes[0] = vboCapacityBytes[1] = 0;
+        front = 0;
+        frontPointCount = 0;
+        // A new context has empty buffers: force the next update to upload
+        lastPointCloudTimestamp = 0;
+        lastMapVersion = -1;
+        ensureStaging();
+    }
+
+    public void setConfidenceThreshold(float threshold) {
+        confidenceThreshold = threshold;
+        lastPointCloudTimestamp = 0;
+        lastMapVersion = -1;
+    }
+
+    public void setMaxPoints(int maxPoints) {
+        this.maxPoints = Math.max(1, maxPoints);
+        ensureStaging();
+        lastPointCloudTimestamp = 0;
+        lastMapVersion = -1;
+    }
+
+    /** Sprite size in pixels; fewer, smaller sprites are less fill rate for the GPU. */
+    public void setPointSize(float pixels) {
+        pointSize = pixels;
+    }
+
+    public int getMaxPoints() { return maxPoints; }
+    public int getPointCount() { return frontPointCount; }
+
+    /**
+     * Uploads the frame's cloud if its timestamp changed since the last upload.
+     *
+     * @return true if new data was uploaded
+     */
+    public boolean update(PointCloud pointCloud) {
+        long timestamp = pointCloud.getTimestamp();
+        if (timestamp == lastPointCloudTimestamp) return false;
+        lastPointCloudTimestamp = timestamp;
+        lastMapVersion = -1;
+
+        FloatBuffer points = pointCloud.getPoints();
+        int start = points.position();
+        int available = points.remaining() / FLOATS_PER_POINT;
+        // Over budget: take an even stride through the cloud rather than its first N points
+        float step = available > maxPoints ? (float) available / maxPoints : 1f;
+
+        FloatBuffer out = staging;
+        out.clear();
+        int count = 0;
+        for (float p = 0; p < available && count < maxPoints; p += step) {
+            int i = start + (int) p * FLOATS_PER_POINT;
+            float confidence = points.get(i + 3);
+            if (confidence < confidenceThreshold) continue;
+            out.put(points.get(i)).put(points.get(i + 1)).put(points.get(i + 2)).put(confidence);
+            count++;
+        }
+        upload(count);
+        return true;
+    }
+
+    /**
+     * Uploads the accumulated map if it changed, at most every {@link #MAP_UPLOAD_INTERVAL_NS}.
+     *
+     * @return true if new data was uploaded
+     */
+    public boolean update(VoxelMap map, long nowNs) {
+        if (map.version() == lastMapVersion || nowNs - lastMapUploadNs < MAP_UPLOAD_INTERVAL_NS) return false;
+        lastMapVersion = map.version();
+        lastMapUploadNs = nowNs;
+        lastPointCloudTimestamp = 0;
+
+        staging.clear();
+        upload(map.copyTo(staging, confidenceThreshold, maxPoints));
+        return true;
+    }
+
+    public void draw(float[] viewProjectionMatrix) {
+        if (frontPointCount == 0) return;
+
+        GLES20.glUseProgram(programId);
+
+        // Enable blending for glow effect
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        GLES20.glUniformMatrix4fv(mvpUniform, 1, false, viewProjectionMatrix, 0);
+        GLES20.glUniform1f(pointSizeUniform, pointSize);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[front]);
+        GLES20.glVertexAttribPointer(positionAttrib, FLOATS_PER_POINT, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
+        GLES20.glEnableVertexAttribArray(positionAttrib);
+
+        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, frontPointCount);
+
+        GLES20.glDisableVertexAttribArray(positionAttrib);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glDisable(GLES20.GL_BLEND);
+    }
+
+    private void upload(int count) {
+        int back = 1 - front;
+        int bytes = count * BYTES_PER_POINT;
+        staging.position(0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[back]);
+        if (bytes > vboCapacityBytes[back]) {
+            // Grow straight to the budget so the store is allocated once
+            vboCapacityBytes[back] = maxPoints * BYTES_PER_POINT;
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboCapacityBytes[back], null, GLES20.GL_DYNAMIC_DRAW);
+        }
+        if (bytes > 0) GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, bytes, staging);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        front = back;
+        frontPointCount = count;
+    }
+
+    private void ensureStaging() {
+        int floats = maxPoints * FLOATS_PER_POINT;
+        if (staging == null || staging.capacity() < floats) {
+            staging = ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    }
+}
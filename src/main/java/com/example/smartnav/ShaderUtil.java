@@ -0,0 +1,26 @@
+package com.example.smartnav;
+
+import android.opengl.GLES20;
+
+/** Shader compile/link helpers shared by the GL passes. */
+final class ShaderUtil {
+
+    private ShaderUtil() {}
+
+    static int createProgram(String vertex, String fragment) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertex);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragment);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        return program;
+    }
+
+    static int loadShader(int type, String shaderCode) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, shaderCode);
+        GLES20.glCompileShader(shader);
+        return shader;
+    }
+}